@@ -0,0 +1,14 @@
+#!/bin/sh
+set -e
+
+CURRENT_DIR="$(pwd)"
+BUILD_DIR="$( cd "$( dirname "$0" )" && pwd )"/../target
+BENCHMARK_CLASSPATH=${BUILD_DIR}/class-path.txt
+BENCHMARK_CLASSES=${BUILD_DIR}/classes
+
+if [ ! -f ${BENCHMARK_CLASSPATH} ]
+then
+	echo "The replication benchmark classpath file was not found; please run 'mvn clean install -Pbenchmarks' from the parent directory"
+else
+    java -cp `cat ${BENCHMARK_CLASSPATH}`:${BENCHMARK_CLASSES} c5db.replication.ReplicationBenchmark "$@"
+fi
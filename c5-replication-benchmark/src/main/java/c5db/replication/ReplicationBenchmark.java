@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.GeneralizedReplicator;
+import c5db.interfaces.replication.ReplicateSubmissionInfo;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static c5db.replication.ReplicationBenchmarkCluster.QuorumLeader;
+
+/**
+ * Measures the throughput and latency of GeneralizedReplicator#replicate, from submission to
+ * commit, on a cluster of complete nodes running in this process.
+ * <p>
+ * The workload is open-loop: batches of requests are submitted on a fixed schedule, round-robin
+ * across the quorums, regardless of whether earlier requests have completed. Latency is reported
+ * for four stages of each request: the receipt from the leader's replicator, the entry becoming
+ * durable in the leader's log, the leader learning that a majority has it (the leader's commit
+ * notice), and the notification of commitment to the caller of replicate.
+ */
+public class ReplicationBenchmark {
+  // Time allowed, after the workload stops, for outstanding requests to complete.
+  private static final long COMPLETION_GRACE_PERIOD_SECONDS = 10;
+
+  public static void main(String[] args) throws Exception {
+    final ReplicationBenchmarkOptions options;
+    try {
+      options = ReplicationBenchmarkOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(ReplicationBenchmarkOptions.USAGE);
+      System.exit(-1);
+      return;
+    }
+
+    final boolean usingTemporaryDirectory = options.basePath == null;
+    final Path basePath = usingTemporaryDirectory ? Files.createTempDirectory("c5-replication-benchmark")
+        : options.basePath;
+
+    System.out.println("Replication benchmark: " + options);
+
+    final ReplicationLatencyRecorder recorder = new ReplicationLatencyRecorder(options.nodeCount);
+    try (ReplicationBenchmarkCluster cluster =
+             new ReplicationBenchmarkCluster(options.nodeCount, basePath, recorder)) {
+      final List<QuorumLeader> leaders = new ArrayList<>();
+      for (int i = 0; i < options.quorumCount; i++) {
+        leaders.add(cluster.createQuorum("benchmark-quorum-" + i));
+      }
+
+      new ReplicationBenchmark(options, leaders, recorder).run();
+    } finally {
+      if (usingTemporaryDirectory) {
+        deleteRecursively(basePath);
+      }
+    }
+
+    // Some of the cluster's threads may linger after shutting down
+    System.exit(0);
+  }
+
+  private final ReplicationBenchmarkOptions options;
+  private final List<QuorumLeader> leaders;
+  private final ReplicationLatencyRecorder recorder;
+  private final byte[] payload;
+
+  private ReplicationBenchmark(ReplicationBenchmarkOptions options,
+                               List<QuorumLeader> leaders,
+                               ReplicationLatencyRecorder recorder) {
+    this.options = options;
+    this.leaders = leaders;
+    this.recorder = recorder;
+
+    payload = new byte[options.payloadSize];
+    new Random().nextBytes(payload);
+  }
+
+  private void run() throws Exception {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final AtomicLong batchCount = new AtomicLong(0);
+    final long intervalNanos = options.batchIntervalNanos();
+    final long startNanos = System.nanoTime();
+
+    scheduler.scheduleAtFixedRate(() -> {
+      final long batchNumber = batchCount.getAndIncrement();
+      // If the scheduler falls behind, this is still the time the batch should have been submitted
+      final long scheduledNanos = startNanos + batchNumber * intervalNanos;
+      final QuorumLeader leader = leaders.get((int) (batchNumber % leaders.size()));
+
+      for (int i = 0; i < options.batchSize; i++) {
+        submit(leader, scheduledNanos);
+      }
+    }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+    TimeUnit.SECONDS.sleep(options.warmupSeconds + options.durationSeconds);
+    scheduler.shutdownNow();
+    TimeUnit.SECONDS.sleep(COMPLETION_GRACE_PERIOD_SECONDS);
+
+    final long windowStartNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+    final long windowEndNanos = windowStartNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+    recorder.printReport(System.out, windowStartNanos, windowEndNanos);
+  }
+
+  private void submit(QuorumLeader leader, long scheduledNanos) {
+    final ListenableFuture<ReplicateSubmissionInfo> submissionFuture;
+    try {
+      submissionFuture = leader.replicator.replicate(Lists.newArrayList(ByteBuffer.wrap(payload)));
+    } catch (InterruptedException | GeneralizedReplicator.InvalidReplicatorStateException e) {
+      recorder.recordFailure();
+      return;
+    }
+
+    Futures.addCallback(submissionFuture, new FutureCallback<ReplicateSubmissionInfo>() {
+      @Override
+      public void onSuccess(ReplicateSubmissionInfo submissionInfo) {
+        final long receiptNanos = System.nanoTime();
+
+        Futures.addCallback(submissionInfo.completedFuture, new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+            recorder.recordCompletion(leader.quorumId, leader.nodeId, submissionInfo.sequenceNumber,
+                scheduledNanos, receiptNanos, System.nanoTime());
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            recorder.recordFailure();
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        recorder.recordFailure();
+      }
+    });
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.ReplicatorConstants;
+import c5db.SimpleModuleInformationProvider;
+import c5db.discovery.BeaconService;
+import c5db.interfaces.DiscoveryModule;
+import c5db.interfaces.LogModule;
+import c5db.interfaces.ReplicationModule;
+import c5db.interfaces.replication.GeneralizedReplicator;
+import c5db.util.C5Futures;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.FiberSupplier;
+import c5db.util.NettyTransport;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Service;
+import com.google.common.util.concurrent.SettableFuture;
+import io.netty.channel.EventLoopGroup;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.PoolFiberFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A cluster of complete replication nodes, each with its own ReplicatorService, LogService, and
+ * BeaconService, all running in this process and communicating over loopback TCP. Every node is
+ * a member of every quorum.
+ */
+class ReplicationBenchmarkCluster implements AutoCloseable {
+  private static final int NUMBER_OF_PROCESSORS = Runtime.getRuntime().availableProcessors();
+  private static final int DISCOVERY_PORT = 54333;
+
+  private final ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_PROCESSORS);
+  private final PoolFiberFactory fiberFactory = new PoolFiberFactory(executorService);
+  private final FiberSupplier fiberSupplier =
+      (throwableHandler) -> fiberFactory.create(new ExceptionHandlingBatchExecutor(throwableHandler));
+  private final Fiber mainFiber = fiberSupplier.getNewFiber(this::handleThrowable);
+
+  private final EventLoopGroup bossGroup =
+      NettyTransport.preferred().newEventLoopGroup(Math.max(1, NUMBER_OF_PROCESSORS / 3));
+  private final EventLoopGroup workerGroup =
+      NettyTransport.preferred().newEventLoopGroup(Math.max(1, NUMBER_OF_PROCESSORS / 3));
+
+  private final ReplicationLatencyRecorder recorder;
+  private final List<Long> nodeIds = new ArrayList<>();
+  private final List<Node> nodes = new ArrayList<>();
+
+  ReplicationBenchmarkCluster(int nodeCount, Path basePath, ReplicationLatencyRecorder recorder) throws Exception {
+    this.recorder = recorder;
+    mainFiber.start();
+
+    for (long nodeId = 1; nodeId <= nodeCount; nodeId++) {
+      nodeIds.add(nodeId);
+    }
+
+    int port = ReplicatorConstants.REPLICATOR_PORT_MIN;
+    for (long nodeId : nodeIds) {
+      nodes.add(new Node(nodeId, port, basePath.resolve("node" + nodeId)));
+      port++;
+    }
+  }
+
+  /**
+   * Create a replicator for the given quorum on every node, and wait until one of them is elected
+   * leader.
+   *
+   * @return The leader's replicator.
+   */
+  QuorumLeader createQuorum(String quorumId) throws Exception {
+    final SettableFuture<QuorumLeader> leaderFuture = SettableFuture.create();
+
+    for (Node node : nodes) {
+      final GeneralizedReplicator generalizedReplicator = new C5GeneralizedReplicator(
+          node.replicationModule.createReplicator(quorumId, nodeIds).get(), startNewFiber());
+
+      C5Futures.addCallback(generalizedReplicator.isAvailableFuture(),
+          (ignore) -> leaderFuture.set(new QuorumLeader(quorumId, node.nodeId, generalizedReplicator)),
+          leaderFuture::setException,
+          mainFiber);
+    }
+
+    return leaderFuture.get();
+  }
+
+  @Override
+  public void close() {
+    nodes.forEach(Node::stop);
+    bossGroup.shutdownGracefully();
+    workerGroup.shutdownGracefully();
+    fiberFactory.dispose();
+    executorService.shutdownNow();
+  }
+
+  private Fiber startNewFiber() {
+    final Fiber fiber = fiberSupplier.getNewFiber(this::handleThrowable);
+    fiber.start();
+    return fiber;
+  }
+
+  private void handleThrowable(Throwable throwable) {
+    System.err.println("Exception thrown within the benchmark cluster: " + throwable);
+    throwable.printStackTrace();
+  }
+
+  /**
+   * The replicator currently accepting requests for a quorum, and the node it's on.
+   */
+  static class QuorumLeader {
+    final String quorumId;
+    final long nodeId;
+    final GeneralizedReplicator replicator;
+
+    private QuorumLeader(String quorumId, long nodeId, GeneralizedReplicator replicator) {
+      this.quorumId = quorumId;
+      this.nodeId = nodeId;
+      this.replicator = replicator;
+    }
+  }
+
+  private class Node {
+    private final long nodeId;
+    private final SimpleModuleInformationProvider moduleInfo;
+    private final ReplicationModule replicationModule;
+    private final LogModule logModule;
+    private final DiscoveryModule discoveryModule;
+
+    private Node(long nodeId, int port, Path nodePath) throws Exception {
+      final Consumer<Throwable> exceptionHandler = ReplicationBenchmarkCluster.this::handleThrowable;
+
+      this.nodeId = nodeId;
+      moduleInfo = new SimpleModuleInformationProvider(mainFiber, exceptionHandler);
+      logModule = new TimingLogService(nodePath, fiberSupplier, nodeId, recorder);
+      replicationModule = new ReplicatorService(bossGroup, workerGroup, nodeId, port, moduleInfo, fiberSupplier,
+          new NioQuorumFileReaderWriter(nodePath));
+      discoveryModule = new BeaconService(nodeId, DISCOVERY_PORT, workerGroup, moduleInfo, fiberSupplier);
+
+      final List<ListenableFuture<Service.State>> startFutures = new ArrayList<>();
+      startFutures.add(moduleInfo.startModule(logModule));
+      startFutures.add(moduleInfo.startModule(discoveryModule));
+      startFutures.add(moduleInfo.startModule(replicationModule));
+
+      // Block waiting for everything to start.
+      Futures.allAsList(startFutures).get();
+    }
+
+    private void stop() {
+      replicationModule.stopAndWait();
+      discoveryModule.stopAndWait();
+      logModule.stopAndWait();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Settings for a run of {@link ReplicationBenchmark}, parsed from command line arguments of the
+ * form --name=value. Any setting not given on the command line keeps its default.
+ */
+class ReplicationBenchmarkOptions {
+  static final String USAGE =
+      "Usage: ReplicationBenchmark [--nodes=N] [--quorums=M] [--rate=requests per second]\n"
+          + "  [--payload=bytes per request] [--batch=requests submitted together]\n"
+          + "  [--warmup=seconds] [--duration=seconds] [--dir=data directory]";
+
+  int nodeCount = 3;
+  int quorumCount = 1;
+  int targetRate = 1000;
+  int payloadSize = 1024;
+  int batchSize = 1;
+  int warmupSeconds = 5;
+  int durationSeconds = 30;
+  Path basePath = null;
+
+  static ReplicationBenchmarkOptions parse(String[] args) {
+    final ReplicationBenchmarkOptions options = new ReplicationBenchmarkOptions();
+
+    for (String arg : args) {
+      final List<String> nameAndValue = Lists.newArrayList(Splitter.on('=').limit(2).split(arg));
+      if (nameAndValue.size() != 2 || !arg.startsWith("--")) {
+        throw new IllegalArgumentException("Unrecognized argument: " + arg);
+      }
+
+      final String value = nameAndValue.get(1);
+      switch (nameAndValue.get(0)) {
+        case "--nodes":
+          options.nodeCount = positiveInt(arg, value);
+          break;
+        case "--quorums":
+          options.quorumCount = positiveInt(arg, value);
+          break;
+        case "--rate":
+          options.targetRate = positiveInt(arg, value);
+          break;
+        case "--payload":
+          options.payloadSize = positiveInt(arg, value);
+          break;
+        case "--batch":
+          options.batchSize = positiveInt(arg, value);
+          break;
+        case "--warmup":
+          options.warmupSeconds = Integer.parseInt(value);
+          break;
+        case "--duration":
+          options.durationSeconds = positiveInt(arg, value);
+          break;
+        case "--dir":
+          options.basePath = Paths.get(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unrecognized argument: " + arg);
+      }
+    }
+
+    return options;
+  }
+
+  /**
+   * The time between successive batches of requests, needed to achieve the target rate.
+   */
+  long batchIntervalNanos() {
+    return 1_000_000_000L * batchSize / targetRate;
+  }
+
+  @Override
+  public String toString() {
+    return "nodes=" + nodeCount
+        + " quorums=" + quorumCount
+        + " rate=" + targetRate + "/s"
+        + " payload=" + payloadSize + "B"
+        + " batch=" + batchSize
+        + " warmup=" + warmupSeconds + "s"
+        + " duration=" + durationSeconds + "s";
+  }
+
+  private static int positiveInt(String arg, String value) {
+    final int parsed = Integer.parseInt(value);
+    if (parsed <= 0) {
+      throw new IllegalArgumentException("Expected a positive number: " + arg);
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the times at which replication requests pass through each stage of the replication
+ * pipeline, and summarizes their latencies as percentiles.
+ * <p>
+ * The first and last stages are observed per request, by the caller of replicate: the last when
+ * the caller learns the request is committed. The stages in between are derived from the log
+ * writes on every node, each of which may cover many requests; so for those, the recorder keeps,
+ * per node, a map from the last index written to the time the write completed, and matches them
+ * with requests when the report is made. A request is locally durable once the leader has written
+ * it, and majority acked once a majority of the nodes have, which is when the last acknowledgement
+ * the leader needs to commit it can be sent. All latencies are measured from the time each
+ * request was scheduled to be submitted, so that a stalled pipeline delays the measurement of the
+ * requests queued behind it, rather than hiding them.
+ */
+class ReplicationLatencyRecorder {
+  enum Stage {
+    RECEIPT,
+    LOCAL_DURABLE,
+    MAJORITY_ACKED,
+    COMMIT_NOTICE
+  }
+
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+  private final int majority;
+  private final Map<String, Map<Long, NavigableMap<Long, Long>>> localDurableTimes = new ConcurrentHashMap<>();
+  private final Queue<CompletedRequest> completedRequests = new ConcurrentLinkedQueue<>();
+  private final AtomicLong failedRequests = new AtomicLong(0);
+
+  /**
+   * @param nodeCount Number of nodes in every quorum.
+   */
+  ReplicationLatencyRecorder(int nodeCount) {
+    this.majority = nodeCount / 2 + 1;
+  }
+
+  void recordLocalDurable(String quorumId, long nodeId, long lastIndex, long nanoTime) {
+    localDurableTimes
+        .computeIfAbsent(quorumId, (key) -> new ConcurrentHashMap<>())
+        .computeIfAbsent(nodeId, (key) -> new ConcurrentSkipListMap<>())
+        .putIfAbsent(lastIndex, nanoTime);
+  }
+
+  void recordCompletion(String quorumId, long leaderId, long seqNum,
+                        long scheduledNanos, long receiptNanos, long commitNoticeNanos) {
+    completedRequests.add(
+        new CompletedRequest(quorumId, leaderId, seqNum, scheduledNanos, receiptNanos, commitNoticeNanos));
+  }
+
+  void recordFailure() {
+    failedRequests.incrementAndGet();
+  }
+
+  /**
+   * Print throughput and latency percentiles for each stage, considering only requests which were
+   * scheduled within the given window.
+   */
+  void printReport(PrintStream out, long windowStartNanos, long windowEndNanos) {
+    final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+    for (Stage stage : Stage.values()) {
+      histograms.put(stage, new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+    }
+
+    long requestsInWindow = 0;
+    for (CompletedRequest request : completedRequests) {
+      if (request.scheduledNanos < windowStartNanos || request.scheduledNanos >= windowEndNanos) {
+        continue;
+      }
+      requestsInWindow++;
+
+      record(histograms.get(Stage.RECEIPT), request, request.receiptNanos);
+      record(histograms.get(Stage.LOCAL_DURABLE), request, leaderDurableTime(request));
+      record(histograms.get(Stage.MAJORITY_ACKED), request, majorityDurableTime(request));
+      record(histograms.get(Stage.COMMIT_NOTICE), request, request.commitNoticeNanos);
+    }
+
+    final double windowSeconds = (windowEndNanos - windowStartNanos) / 1e9;
+    out.printf("Completed requests: %d (%.1f per second); failed requests: %d%n",
+        requestsInWindow, requestsInWindow / windowSeconds, failedRequests.get());
+
+    out.printf("%-16s%10s", "stage (us)", "count");
+    for (double percentile : PERCENTILES) {
+      out.printf("%10s", "p" + percentile);
+    }
+    out.printf("%10s%n", "max");
+
+    for (Stage stage : Stage.values()) {
+      final Histogram histogram = histograms.get(stage);
+      out.printf("%-16s%10d", stage.name().toLowerCase(), histogram.getTotalCount());
+      for (double percentile : PERCENTILES) {
+        out.printf("%10d", histogram.getValueAtPercentile(percentile));
+      }
+      out.printf("%10d%n", histogram.getMaxValue());
+    }
+  }
+
+  private static void record(Histogram histogram, CompletedRequest request, long stageNanos) {
+    if (stageNanos == 0) {
+      return;
+    }
+    final long latencyMicros = TimeUnit.NANOSECONDS.toMicros(stageNanos - request.scheduledNanos);
+    histogram.recordValue(Math.max(0, Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS)));
+  }
+
+  /**
+   * @return The time at which the node that was leader when the request was submitted wrote it, or 0
+   * if no such write was recorded.
+   */
+  private long leaderDurableTime(CompletedRequest request) {
+    final NavigableMap<Long, Long> times = durableTimesFor(request.quorumId).get(request.leaderId);
+    return times == null ? 0 : firstTimeCovering(times, request.seqNum);
+  }
+
+  /**
+   * @return The time by which a majority of the nodes had written the request, or 0 if fewer than a
+   * majority of them were recorded writing it.
+   */
+  private long majorityDurableTime(CompletedRequest request) {
+    final List<Long> nodeTimes = new ArrayList<>();
+    for (NavigableMap<Long, Long> times : durableTimesFor(request.quorumId).values()) {
+      final long time = firstTimeCovering(times, request.seqNum);
+      if (time != 0) {
+        nodeTimes.add(time);
+      }
+    }
+
+    if (nodeTimes.size() < majority) {
+      return 0;
+    }
+    Collections.sort(nodeTimes);
+    return nodeTimes.get(majority - 1);
+  }
+
+  private Map<Long, NavigableMap<Long, Long>> durableTimesFor(String quorumId) {
+    return localDurableTimes.getOrDefault(quorumId, Collections.emptyMap());
+  }
+
+  /**
+   * @return The earliest of the given times recorded for a write covering seqNum, or 0 if there is none.
+   */
+  private static long firstTimeCovering(NavigableMap<Long, Long> times, long seqNum) {
+    final Map.Entry<Long, Long> covering = times.ceilingEntry(seqNum);
+    return covering == null ? 0 : covering.getValue();
+  }
+
+  private static class CompletedRequest {
+    private final String quorumId;
+    private final long leaderId;
+    private final long seqNum;
+    private final long scheduledNanos;
+    private final long receiptNanos;
+    private final long commitNoticeNanos;
+
+    private CompletedRequest(String quorumId, long leaderId, long seqNum,
+                             long scheduledNanos, long receiptNanos, long commitNoticeNanos) {
+      this.quorumId = quorumId;
+      this.leaderId = leaderId;
+      this.seqNum = seqNum;
+      this.scheduledNanos = scheduledNanos;
+      this.receiptNanos = receiptNanos;
+      this.commitNoticeNanos = commitNoticeNanos;
+    }
+  }
+}
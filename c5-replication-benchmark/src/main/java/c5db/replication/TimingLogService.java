@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReplicatorLog;
+import c5db.interfaces.replication.TermRun;
+import c5db.log.LogService;
+import c5db.replication.generated.LogEntry;
+import c5db.util.FiberSupplier;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * LogService whose ReplicatorLogs report the completion of each write, so that the benchmark
+ * can observe when entries become locally durable without any change to the log itself.
+ */
+class TimingLogService extends LogService {
+  private final long nodeId;
+  private final ReplicationLatencyRecorder recorder;
+
+  TimingLogService(Path basePath, FiberSupplier fiberSupplier, long nodeId, ReplicationLatencyRecorder recorder) {
+    super(basePath, fiberSupplier);
+    this.nodeId = nodeId;
+    this.recorder = recorder;
+  }
+
+  @Override
+  public ListenableFuture<ReplicatorLog> getReplicatorLog(String quorumId) {
+    return Futures.transform(super.getReplicatorLog(quorumId),
+        (ReplicatorLog log) -> {
+          return new TimingReplicatorLog(quorumId, log);
+        });
+  }
+
+  private class TimingReplicatorLog implements ReplicatorLog {
+    private final String quorumId;
+    private final ReplicatorLog delegate;
+
+    private TimingReplicatorLog(String quorumId, ReplicatorLog delegate) {
+      this.quorumId = quorumId;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ListenableFuture<Boolean> logEntries(List<LogEntry> entries) {
+      final ListenableFuture<Boolean> writeFuture = delegate.logEntries(entries);
+      if (!entries.isEmpty()) {
+        final long lastIndex = entries.get(entries.size() - 1).getIndex();
+        Futures.addCallback(writeFuture, new FutureCallback<Boolean>() {
+          @Override
+          public void onSuccess(Boolean result) {
+            recorder.recordLocalDurable(quorumId, nodeId, lastIndex, System.nanoTime());
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+          }
+        });
+      }
+      return writeFuture;
+    }
+
+    @Override
+    public ListenableFuture<List<LogEntry>> getLogEntries(long start, long end) {
+      return delegate.getLogEntries(start, end);
+    }
+
+    @Override
+    public ListenableFuture<List<LogEntry>> getLogEntries(long start, long end, long maxBytes) {
+      return delegate.getLogEntries(start, end, maxBytes);
+    }
+
+    @Override
+    public long getLogTerm(long index) {
+      return delegate.getLogTerm(index);
+    }
+
+    @Override
+    public List<TermRun> getTermRuns(long firstIndex, long lastIndex) {
+      return delegate.getTermRuns(firstIndex, lastIndex);
+    }
+
+    @Override
+    public long getLastTerm() {
+      return delegate.getLastTerm();
+    }
+
+    @Override
+    public long getLastIndex() {
+      return delegate.getLastIndex();
+    }
+
+    @Override
+    public long getFirstIndex() {
+      return delegate.getFirstIndex();
+    }
+
+    @Override
+    public ListenableFuture<Boolean> truncateLog(long entryIndex) {
+      return delegate.truncateLog(entryIndex);
+    }
+
+    @Override
+    public ListenableFuture<Boolean> resetLog(long baseIndex, long baseTerm, QuorumConfiguration baseConfiguration) {
+      return delegate.resetLog(baseIndex, baseTerm, baseConfiguration);
+    }
+
+    @Override
+    public QuorumConfiguration getLastConfiguration() {
+      return delegate.getLastConfiguration();
+    }
+
+    @Override
+    public long getLastConfigurationIndex() {
+      return delegate.getLastConfigurationIndex();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import c5db.messages.generated.ModuleType;
 import c5db.util.C5Futures;
 import c5db.util.FiberOnly;
 import c5db.util.FiberSupplier;
+import c5db.util.NettyTransport;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
@@ -46,7 +47,6 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import org.jetbrains.annotations.NotNull;
 import org.jetlang.channels.MemoryChannel;
 import org.jetlang.channels.MemoryRequestChannel;
@@ -322,7 +322,7 @@ public class BeaconService extends AbstractService implements DiscoveryModule {
     eventLoopGroup.next().execute(() -> {
       bootstrap = new Bootstrap();
       bootstrap.group(eventLoopGroup)
-          .channel(NioDatagramChannel.class)
+          .channel(NettyTransport.of(eventLoopGroup).datagramChannelClass())
           .option(ChannelOption.SO_BROADCAST, true)
           .option(ChannelOption.SO_REUSEADDR, true)
           .handler(new ChannelInitializer<DatagramChannel>() {
@@ -60,6 +60,27 @@ public interface GeneralizedReplicator {
    */
   ListenableFuture<Void> isAvailableFuture();
 
+  /**
+   * Return a future which will yield a sequence number at least as great as that of every
+   * replicate request known, when this method is called, to have been durably replicated.
+   * Once the data up to and including that sequence number has been applied, a read of the
+   * resulting state is linearizable. Unlike replicating a request solely to order a read,
+   * this does not usually write anything: only if the leader has yet to commit an entry in
+   * its current term does it first replicate an entry with no data. Such an entry is not
+   * marked in any way, so readers of the log see it as a ReplicatorEntry whose data list is
+   * empty, and should skip it, just as they would an empty replicate request. The future
+   * will contain an InvalidReplicatorStateException if this GeneralizedReplicator is not in
+   * a state in which it can accept replicate() requests.
+   */
+  ListenableFuture<Long> readBarrier();
+
+  /**
+   * Provide the means to transfer snapshots of the replicated state machine between the cooperating
+   * GeneralizedReplicators, so that one which is new, or far behind, can be brought up to date
+   * without replicating to it every request in the sequence. See {@link SnapshotProvider}.
+   */
+  void setSnapshotProvider(SnapshotProvider snapshotProvider);
+
   /**
    * An exception thrown when attempting to replicate but the GeneralizedReplicator is not
    * accepting replication requests -- perhaps because the replicator must be in a certain
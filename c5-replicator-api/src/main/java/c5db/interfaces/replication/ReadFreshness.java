@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.interfaces.replication;
+
+/**
+ * How fresh a read served by a Replicator would be, for reads which can tolerate bounded staleness. A read
+ * reflecting the entries up to readIndex is behind the leader's commit index, as last reported by the
+ * leader, by entriesBehindLeader entries; and that report is millisSinceLeaderContact milliseconds old,
+ * so the leader may have committed further entries in the meantime.
+ */
+public class ReadFreshness {
+  /**
+   * Value of millisSinceLeaderContact when the Replicator has not heard from a leader.
+   */
+  public static final long NO_LEADER_CONTACT = Long.MAX_VALUE;
+
+  public final long readIndex;
+  public final long leaderCommitIndex;
+  public final long entriesBehindLeader;
+  public final long millisSinceLeaderContact;
+
+  public ReadFreshness(long readIndex, long leaderCommitIndex, long millisSinceLeaderContact) {
+    this.readIndex = readIndex;
+    this.leaderCommitIndex = leaderCommitIndex;
+    this.entriesBehindLeader = Math.max(leaderCommitIndex - readIndex, 0);
+    this.millisSinceLeaderContact = millisSinceLeaderContact;
+  }
+
+  /**
+   * @return True if a read would be no more than the given number of milliseconds, and of entries, stale.
+   */
+  public boolean isWithin(long maxMillis, long maxEntries) {
+    return millisSinceLeaderContact <= maxMillis && entriesBehindLeader <= maxEntries;
+  }
+
+  @Override
+  public String toString() {
+    return "ReadFreshness{" +
+        "readIndex=" + readIndex +
+        ", leaderCommitIndex=" + leaderCommitIndex +
+        ", entriesBehindLeader=" + entriesBehindLeader +
+        ", millisSinceLeaderContact=" + millisSinceLeaderContact +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ReadFreshness that = (ReadFreshness) o;
+
+    return readIndex == that.readIndex
+        && leaderCommitIndex == that.leaderCommitIndex
+        && millisSinceLeaderContact == that.millisSinceLeaderContact;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (readIndex ^ (readIndex >>> 32));
+    result = 31 * result + (int) (leaderCommitIndex ^ (leaderCommitIndex >>> 32));
+    result = 31 * result + (int) (millisSinceLeaderContact ^ (millisSinceLeaderContact >>> 32));
+    return result;
+  }
+}
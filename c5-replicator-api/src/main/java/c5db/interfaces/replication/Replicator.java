@@ -70,6 +70,35 @@ public interface Replicator {
    */
   ListenableFuture<ReplicatorReceipt> logData(List<ByteBuffer> data) throws InterruptedException;
 
+  /**
+   * Obtain a read barrier, for serving a linearizable read without logging anything. The returned future
+   * yields a commit index at least as great as the index of every entry committed before this method was
+   * called; once the entries up to that index have been applied, the state they produce may be read.
+   * <p>
+   * The leader confirms that it is still the leader before returning the index, either by a round of
+   * AppendEntries requests to which a majority of the quorum reply, or, if leader leases are enabled, by
+   * holding a lease obtained from recent such replies. If the leader has yet to commit an entry in its
+   * current term, it first logs an entry with no data, and waits for that entry to commit. That entry is
+   * an ordinary data entry with an empty data list, and is seen as such by anything reading the log.
+   *
+   * @return a future which will yield the read index; or, if this replicator is not the leader, or
+   * ceases to be the leader before confirming its leadership, a future containing an
+   * {@link GeneralizedReplicator.InvalidReplicatorStateException}.
+   */
+  ListenableFuture<Long> readBarrier();
+
+  /**
+   * Report how fresh a read served by this replicator would be, without contacting the leader, so that
+   * reads which tolerate bounded staleness may be served by any replicator in the quorum. A follower
+   * reports its own commit index, and compares it with the leader's commit index and the time as of the
+   * last AppendEntries request it received from the leader; the time does not include the request's
+   * delay in transit. A leader reports its own commit index, and the time since a majority of the quorum
+   * last confirmed its leadership.
+   *
+   * @return a future which will yield the freshness of a read served now.
+   */
+  ListenableFuture<ReadFreshness> getReadFreshness();
+
   /**
    * @return The numerical ID for the server, or node, on which this Replicator resides. More
    * than one Replicator may have the same node ID, but any two Replicators operating at the same
@@ -103,4 +132,12 @@ public interface Replicator {
    * to the quorum.
    */
   Subscriber<IndexCommitNotice> getCommitNoticeChannel();
+
+  /**
+   * Provide the means for the Replicator to transfer snapshots of the replicated state machine, in
+   * order to bring up to date a peer which needs entries no longer retained in the log, or which is
+   * too far behind to replay the log. Until this is called, peers are caught up from the log alone,
+   * and snapshots sent by other peers are refused.
+   */
+  void setSnapshotProvider(SnapshotProvider snapshotProvider);
 }
@@ -30,6 +30,8 @@ package c5db.interfaces.replication;
  * <li>Leader deposed: as a leader, I was deposed by someone else and have unbecome leader</li>
  * <li>Quorum configuration committed: a new configuration of peers has been committed</li>
  * <li>Quorum failure: with Throwable</li>
+ * <li>Quorum quiesced: the quorum was idle, so heartbeats and election checks have stopped</li>
+ * <li>Quorum woken: heartbeats and election checks have resumed after quiescence</li>
  * </ul>
  */
 public class ReplicatorInstanceEvent {
@@ -41,6 +43,8 @@ public class ReplicatorInstanceEvent {
     LEADER_DEPOSED,
     QUORUM_CONFIGURATION_COMMITTED,
     QUORUM_FAILURE,
+    QUORUM_QUIESCED,
+    QUORUM_WOKEN,
   }
 
   public final Replicator instance;
@@ -43,6 +43,9 @@ public interface ReplicatorLog {
    * full sync to the client.  This also implies that once this call returns, calls to the other methods
    * of this interface must now return data from these entries.  For example calling getLogTerm(long) should
    * return data from these entries even if they haven't been quite sync'ed to disk yet.
+   * <p>
+   * The entries' data may be views of network buffers which are reused once the returned future completes,
+   * so an implementation must copy any data it retains beyond then.
    *
    * @param entries new log entries
    * @return an future that indicates success.
@@ -59,6 +62,20 @@ public interface ReplicatorLog {
    */
   ListenableFuture<List<LogEntry>> getLogEntries(long start, long end);
 
+  /**
+   * Get a future which will return the longest initial portion of the entries in the range of indexes
+   * from start, inclusive, to end, exclusive, whose total data size does not exceed maxBytes. Unless start
+   * and end are equal, at least one entry will be returned, even if that entry alone exceeds maxBytes. So,
+   * a caller can retrieve a range of any size, while bounding the memory used for each retrieval, by
+   * repeating the call from one beyond the last index returned.
+   *
+   * @param start    the index of the low endpoint of the range (inclusive)
+   * @param end      the index of the high endpoint of the range (exclusive)
+   * @param maxBytes the limit on the total size of the data of the returned entries
+   * @return a future which will yield the requested entries, or an exception if an error occurs.
+   */
+  ListenableFuture<List<LogEntry>> getLogEntries(long start, long end, long maxBytes);
+
   /**
    * Get the term for a given log index. If the given index is not present in the log, then this
    * will return 0. A term value of 0 should be considered invalid. This is expected to be fast,
@@ -69,6 +86,19 @@ public interface ReplicatorLog {
    */
   long getLogTerm(long index);
 
+  /**
+   * Divide the indexes from firstIndex through lastIndex, inclusive, into runs of consecutive indexes
+   * having the same term, as getLogTerm(long) would report it for each index. This is expected to take
+   * time proportional to the number of distinct terms in the range, rather than the number of indexes,
+   * and like getLogTerm it is synchronous.
+   *
+   * @param firstIndex the first index of the range
+   * @param lastIndex  the last index of the range, inclusive
+   * @return the runs, in ascending order of index, together covering the range exactly; or an empty
+   * list if lastIndex is less than firstIndex.
+   */
+  List<TermRun> getTermRuns(long firstIndex, long lastIndex);
+
   /**
    * Gets the term value for the last entry in the log. if the log is empty, then this will return
    * 0. A term value of 0 should never be valid.
@@ -85,6 +115,14 @@ public interface ReplicatorLog {
    */
   long getLastIndex();
 
+  /**
+   * Gets the index of the oldest entry retained in the log. Entries before this index are unavailable,
+   * having been replaced by a snapshot (see {@link #resetLog}).
+   *
+   * @return the index of the oldest entry; or if the log is empty, getLastIndex() + 1.
+   */
+  long getFirstIndex();
+
   /**
    * Delete all log entries after and including the specified index.
    * <p>
@@ -95,6 +133,20 @@ public interface ReplicatorLog {
    */
   ListenableFuture<Boolean> truncateLog(long entryIndex);
 
+  /**
+   * Discard every entry in the log, and begin it anew following the given base index, as when a snapshot
+   * whose last included entry has that index has been installed in place of the entries. After this call
+   * returns, getLastIndex() will return baseIndex; getLastTerm(), and getLogTerm(baseIndex), will return
+   * baseTerm; the next entry logged must have index baseIndex + 1; and unless baseConfiguration is empty,
+   * it will be the last configuration, with index baseIndex.
+   *
+   * @param baseIndex         the index of the last entry the log is to be considered to have contained.
+   * @param baseTerm          the term of that entry.
+   * @param baseConfiguration the latest configuration as of that entry.
+   * @return A future set to true upon completion, or set with an exception upon failure.
+   */
+  ListenableFuture<Boolean> resetLog(long baseIndex, long baseTerm, QuorumConfiguration baseConfiguration);
+
   /**
    * Get the latest, and thus current, configuration of the replicator's peers. (The configuration is
    * logged just like any other entry.)
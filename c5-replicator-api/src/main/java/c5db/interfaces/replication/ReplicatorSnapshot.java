@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.interfaces.replication;
+
+/**
+ * Value-type immutable object describing a snapshot of a replicated state machine: the snapshot
+ * reflects every entry up to and including lastIncludedIndex, and takes the place of those entries
+ * for a replicator which needs them but whose leader no longer retains them, or which is too far
+ * behind to replay them economically. The snapshot's data itself is read and written through a
+ * {@link SnapshotProvider}.
+ */
+public class ReplicatorSnapshot {
+  public final long lastIncludedIndex;
+  public final long lastIncludedTerm;
+  public final QuorumConfiguration lastIncludedConfiguration;
+  public final long sizeBytes;
+
+  /**
+   * @param lastIncludedIndex         Index of the last entry reflected in the snapshot.
+   * @param lastIncludedTerm          Term of the last entry reflected in the snapshot.
+   * @param lastIncludedConfiguration The latest quorum configuration as of lastIncludedIndex.
+   * @param sizeBytes                 Total size of the snapshot's data.
+   */
+  public ReplicatorSnapshot(long lastIncludedIndex,
+                            long lastIncludedTerm,
+                            QuorumConfiguration lastIncludedConfiguration,
+                            long sizeBytes) {
+    this.lastIncludedIndex = lastIncludedIndex;
+    this.lastIncludedTerm = lastIncludedTerm;
+    this.lastIncludedConfiguration = lastIncludedConfiguration;
+    this.sizeBytes = sizeBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicatorSnapshot{" +
+        "lastIncludedIndex=" + lastIncludedIndex +
+        ", lastIncludedTerm=" + lastIncludedTerm +
+        ", lastIncludedConfiguration=" + lastIncludedConfiguration +
+        ", sizeBytes=" + sizeBytes +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ReplicatorSnapshot that = (ReplicatorSnapshot) o;
+    return lastIncludedIndex == that.lastIncludedIndex
+        && lastIncludedTerm == that.lastIncludedTerm
+        && sizeBytes == that.sizeBytes
+        && lastIncludedConfiguration.equals(that.lastIncludedConfiguration);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (lastIncludedIndex ^ (lastIncludedIndex >>> 32));
+    result = 31 * result + (int) (lastIncludedTerm ^ (lastIncludedTerm >>> 32));
+    result = 31 * result + lastIncludedConfiguration.hashCode();
+    result = 31 * result + (int) (sizeBytes ^ (sizeBytes >>> 32));
+    return result;
+  }
+}
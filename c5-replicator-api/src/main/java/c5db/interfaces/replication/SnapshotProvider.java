@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.interfaces.replication;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplied by the user of a replicator -- the owner of the replicated state machine -- so that
+ * the replicator can bring a follower up to date by transferring a snapshot of the state machine,
+ * rather than by sending it every entry it lacks.
+ * <p>
+ * On the leader, the replicator reads the latest snapshot in chunks, and streams them to the
+ * follower. On the follower, the replicator writes the chunks it receives, in order; upon writing
+ * the last chunk, the state machine should take on the state the snapshot describes, after which
+ * the replicator resets its log to begin after the snapshot's last included entry.
+ * <p>
+ * The replicator calls these methods from a single thread at a time.
+ */
+public interface SnapshotProvider {
+
+  /**
+   * @return The most recent snapshot available to be read, or null if there is none. A snapshot must
+   * reflect only entries which have been committed.
+   */
+  ReplicatorSnapshot getLatestSnapshot();
+
+  /**
+   * Read a chunk of a snapshot previously returned by getLatestSnapshot.
+   *
+   * @param snapshot The snapshot to read.
+   * @param offset   Position within the snapshot's data at which to begin reading.
+   * @param maxBytes Maximum number of bytes to read.
+   * @return A future which will yield a buffer containing at least one byte (unless offset is at the
+   * end of the snapshot) and no more than maxBytes bytes; or an exception if the read fails.
+   */
+  ListenableFuture<ByteBuffer> readSnapshot(ReplicatorSnapshot snapshot, long offset, int maxBytes);
+
+  /**
+   * Write a chunk of a snapshot received from the leader. Chunks are written in order; a chunk at
+   * offset zero begins a new snapshot, abandoning any partially-written one.
+   *
+   * @param snapshot The snapshot being received.
+   * @param offset   Position of this chunk within the snapshot's data.
+   * @param data     The chunk's data; it may be a view of a network buffer which is reused once the
+   *                 returned future completes, so it must be copied if it is needed beyond then.
+   * @param done     True if this is the last chunk; when the returned future completes, the state
+   *                 machine must reflect the snapshot.
+   * @return A future which will complete when the chunk has been written, or yield an exception
+   * if the write fails.
+   */
+  ListenableFuture<Void> writeSnapshot(ReplicatorSnapshot snapshot, long offset, ByteBuffer data, boolean done);
+
+  /**
+   * SnapshotProvider for a replicator whose state machine does not take snapshots: followers
+   * are always caught up from the log.
+   */
+  SnapshotProvider NONE = new SnapshotProvider() {
+    @Override
+    public ReplicatorSnapshot getLatestSnapshot() {
+      return null;
+    }
+
+    @Override
+    public ListenableFuture<ByteBuffer> readSnapshot(ReplicatorSnapshot snapshot, long offset, int maxBytes) {
+      return Futures.immediateFailedFuture(new IOException("No snapshots are available"));
+    }
+
+    @Override
+    public ListenableFuture<Void> writeSnapshot(ReplicatorSnapshot snapshot, long offset, ByteBuffer data,
+                                                boolean done) {
+      return Futures.immediateFailedFuture(new IOException("Unable to install a snapshot"));
+    }
+  };
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.LogBenchmarkUtil.PersistenceType;
+import static c5db.log.LogBenchmarkUtil.createPersistence;
+import static c5db.log.LogBenchmarkUtil.createTemporaryDirectory;
+import static c5db.log.LogBenchmarkUtil.deleteRecursively;
+import static c5db.log.LogBenchmarkUtil.makeEntries;
+import static c5db.log.LogBenchmarkUtil.someData;
+import static c5db.log.LogPersistenceService.BytePersistence;
+
+/**
+ * Measures appending single entries to an EncodedSequentialLog, and reading runs of entries back
+ * with subSequence, for each kind of persistence. Appends are not synced, so for file persistence
+ * this measures writes into the operating system's page cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class EncodedSequentialLogBenchmark {
+  private static final int ENTRIES_IN_READ_LOG = 10_000;
+  // The append log is truncated back to empty after this many bytes, to bound its size.
+  private static final long APPEND_LOG_MAX_BYTES = 64L * 1024 * 1024;
+
+  @Param({"MEMORY", "FILE"})
+  public PersistenceType persistenceType;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  @Param({"1", "32"})
+  public int entriesPerRead;
+
+  private final OLogEntry.Codec codec = new OLogEntry.Codec();
+  private Path directory;
+  private byte[] data;
+  private SequentialLog<OLogEntry> appendLog;
+  private SequentialLog<OLogEntry> readLog;
+  private long nextAppendSeqNum;
+  private long nextReadSeqNum;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = createTemporaryDirectory();
+    data = someData(entrySize);
+
+    appendLog = createLog();
+    nextAppendSeqNum = 1;
+
+    readLog = createLog();
+    readLog.append(makeEntries(1, ENTRIES_IN_READ_LOG + 1, data));
+    nextReadSeqNum = 1;
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    appendLog.close();
+    readLog.close();
+    deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public void append() throws Exception {
+    if ((nextAppendSeqNum - 1) * entrySize >= APPEND_LOG_MAX_BYTES) {
+      appendLog.truncate(1);
+      nextAppendSeqNum = 1;
+    }
+    appendLog.append(makeEntries(nextAppendSeqNum, nextAppendSeqNum + 1, data));
+    nextAppendSeqNum++;
+  }
+
+  @Benchmark
+  public List<OLogEntry> subSequence() throws Exception {
+    if (nextReadSeqNum + entriesPerRead > ENTRIES_IN_READ_LOG + 1) {
+      nextReadSeqNum = 1;
+    }
+    final long start = nextReadSeqNum;
+    nextReadSeqNum += entriesPerRead;
+    return readLog.subSequence(start, start + entriesPerRead);
+  }
+
+  @Benchmark
+  public OLogEntry getLastEntry() throws Exception {
+    return readLog.getLastEntry();
+  }
+
+  private SequentialLog<OLogEntry> createLog() throws Exception {
+    final BytePersistence persistence = createPersistence(persistenceType, directory);
+    return new EncodedSequentialLog<>(persistence, codec, new InMemoryPersistenceNavigator<>(persistence, codec));
+  }
+}
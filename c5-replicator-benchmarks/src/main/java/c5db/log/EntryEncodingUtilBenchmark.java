@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.log.generated.OLogContentType;
+import c5db.log.generated.OLogEntryHeader;
+import com.google.common.collect.Lists;
+import io.protostuff.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.LogBenchmarkUtil.concatenate;
+import static c5db.log.LogBenchmarkUtil.someData;
+
+/**
+ * Measures the length-and-CRC framing used for every entry in the log: encoding and verifying a
+ * header message, and computing and verifying the CRC of an entry's content.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class EntryEncodingUtilBenchmark {
+  private static final Schema<OLogEntryHeader> SCHEMA = OLogEntryHeader.getSchema();
+
+  @Param({"64", "1024", "16384"})
+  public int contentSize;
+
+  private OLogEntryHeader header;
+  private byte[] encodedHeader;
+  private List<ByteBuffer> content;
+  private byte[] contentWithCrc;
+
+  @Setup
+  public void setUp() throws Exception {
+    header = new OLogEntryHeader(1L, 1L, contentSize, OLogContentType.DATA);
+    encodedHeader = concatenate(toArray(EntryEncodingUtil.encodeWithLengthAndCrc(SCHEMA, header)));
+    content = Lists.newArrayList(ByteBuffer.wrap(someData(contentSize)));
+    contentWithCrc = concatenate(toArray(EntryEncodingUtil.appendCrcToBufferList(content)));
+  }
+
+  @Benchmark
+  public List<ByteBuffer> encodeHeader() {
+    return EntryEncodingUtil.encodeWithLengthAndCrc(SCHEMA, header);
+  }
+
+  @Benchmark
+  public OLogEntryHeader decodeHeader() throws Exception {
+    return EntryEncodingUtil.decodeAndCheckCrc(new ByteArrayInputStream(encodedHeader), SCHEMA);
+  }
+
+  @Benchmark
+  public List<ByteBuffer> appendContentCrc() throws Exception {
+    return EntryEncodingUtil.appendCrcToBufferList(content);
+  }
+
+  @Benchmark
+  public ByteBuffer checkContentCrc() throws Exception {
+    return EntryEncodingUtil.getAndCheckContent(new ByteArrayInputStream(contentWithCrc), contentSize);
+  }
+
+  private static ByteBuffer[] toArray(List<ByteBuffer> buffers) {
+    return buffers.toArray(new ByteBuffer[buffers.size()]);
+  }
+}
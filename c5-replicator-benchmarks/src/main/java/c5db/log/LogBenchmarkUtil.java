@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static c5db.log.LogPersistenceService.BytePersistence;
+
+/**
+ * Helpers shared by the log benchmarks: making entries of a given size, and creating persistence
+ * of either kind the log supports, so that a benchmark can be run against memory and against disk.
+ */
+public final class LogBenchmarkUtil {
+  static final String QUORUM_ID = "benchmark";
+
+  private static final long TERM = 1;
+  private static final Random RANDOM = new Random(1);
+
+  private LogBenchmarkUtil() {
+  }
+
+  public enum PersistenceType {
+    MEMORY,
+    FILE
+  }
+
+  static LogPersistenceService<?> createPersistenceService(PersistenceType type, Path directory) throws IOException {
+    switch (type) {
+      case MEMORY:
+        return new InMemoryLogPersistenceService();
+      case FILE:
+        return new LogFileService(directory);
+      default:
+        throw new IllegalArgumentException("Unknown persistence type " + type);
+    }
+  }
+
+  static BytePersistence createPersistence(PersistenceType type, Path directory) throws IOException {
+    return createPersistenceService(type, directory).create(QUORUM_ID);
+  }
+
+  static byte[] someData(int size) {
+    final byte[] data = new byte[size];
+    RANDOM.nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Make an entry whose content wraps the passed array. The array is not copied, so many entries
+   * may share one array; but each entry's buffers are consumed when it is written to persistence,
+   * so an entry may only be written once.
+   */
+  static OLogEntry makeEntry(long seqNum, byte[] data) {
+    return new OLogEntry(seqNum, TERM, new OLogRawDataContent(Lists.newArrayList(ByteBuffer.wrap(data))));
+  }
+
+  /**
+   * Make entries with consecutive sequence numbers from start, inclusive, to end, exclusive.
+   */
+  static List<OLogEntry> makeEntries(long start, long end, byte[] data) {
+    final List<OLogEntry> entries = new ArrayList<>();
+    for (long seqNum = start; seqNum < end; seqNum++) {
+      entries.add(makeEntry(seqNum, data));
+    }
+    return entries;
+  }
+
+  static byte[] concatenate(ByteBuffer[] buffers) {
+    int length = 0;
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+
+    final ByteBuffer concatenated = ByteBuffer.allocate(length);
+    for (ByteBuffer buffer : buffers) {
+      concatenated.put(buffer.duplicate());
+    }
+    return concatenated.array();
+  }
+
+  static Path createTemporaryDirectory() throws IOException {
+    return Files.createTempDirectory("c5-log-benchmark");
+  }
+
+  static void deleteRecursively(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
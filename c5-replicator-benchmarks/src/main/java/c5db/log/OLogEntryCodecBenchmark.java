@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.LogBenchmarkUtil.concatenate;
+import static c5db.log.LogBenchmarkUtil.makeEntry;
+import static c5db.log.LogBenchmarkUtil.someData;
+
+/**
+ * Measures the cost of encoding an OLogEntry to its on-disk form, and of decoding it again,
+ * independently of any persistence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OLogEntryCodecBenchmark {
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  private final OLogEntry.Codec codec = new OLogEntry.Codec();
+  private OLogEntry entry;
+  private byte[] encodedEntry;
+
+  @Setup
+  public void setUp() {
+    entry = makeEntry(1, someData(entrySize));
+    encodedEntry = concatenate(codec.encode(entry));
+  }
+
+  @Benchmark
+  public ByteBuffer[] encode() {
+    return codec.encode(entry);
+  }
+
+  @Benchmark
+  public OLogEntry decode() throws Exception {
+    return codec.decode(new ByteArrayInputStream(encodedEntry));
+  }
+
+  @Benchmark
+  public long skipEntry() throws Exception {
+    return codec.skipEntryAndReturnSeqNum(new ByteArrayInputStream(encodedEntry));
+  }
+}
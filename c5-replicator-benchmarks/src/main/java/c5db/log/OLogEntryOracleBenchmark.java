@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.interfaces.replication.QuorumConfiguration;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.OLogEntryOracle.QuorumConfigurationWithSeqNum;
+
+/**
+ * Measures the bookkeeping the log does for every entry in NavigableMapOLogEntryOracle: noting
+ * each logged entry, and looking up the term at a given seqNum, with terms changing at the given
+ * interval. The oracle keeps no persistent data, so only in-memory behavior is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OLogEntryOracleBenchmark {
+  private static final int NUMBER_OF_ENTRIES = 65536;
+  private static final int ENTRIES_PER_CONFIGURATION = 1000;
+  private static final int LOOKUP_STRIDE = 7919;
+
+  @Param({"1", "100", "65536"})
+  public int entriesPerTerm;
+
+  private final OLogEntryOracle populatedOracle = new NavigableMapOLogEntryOracle();
+  private final OLogEntry[] entries = new OLogEntry[NUMBER_OF_ENTRIES + 1];
+  private OLogEntryOracle loggingOracle;
+  private int nextLoggedSeqNum;
+  private long lookupCount;
+
+  @Setup
+  public void setUp() {
+    final OLogContent data = new OLogRawDataContent(Lists.newArrayList(ByteBuffer.wrap(new byte[10])));
+    final OLogContent configuration = new OLogProtostuffContent<>(
+        QuorumConfiguration.of(Longs.asList(1, 2, 3)).toProtostuff());
+
+    for (int seqNum = 1; seqNum <= NUMBER_OF_ENTRIES; seqNum++) {
+      final long term = 1 + (seqNum - 1) / entriesPerTerm;
+      final OLogContent content = seqNum % ENTRIES_PER_CONFIGURATION == 0 ? configuration : data;
+      entries[seqNum] = new OLogEntry(seqNum, term, content);
+      populatedOracle.notifyLogging(entries[seqNum]);
+    }
+
+    loggingOracle = new NavigableMapOLogEntryOracle();
+    nextLoggedSeqNum = 1;
+  }
+
+  @Benchmark
+  public void notifyLogging() {
+    if (nextLoggedSeqNum > NUMBER_OF_ENTRIES) {
+      loggingOracle.notifyTruncation(1);
+      nextLoggedSeqNum = 1;
+    }
+    loggingOracle.notifyLogging(entries[nextLoggedSeqNum]);
+    nextLoggedSeqNum++;
+  }
+
+  @Benchmark
+  public long getTermAtSeqNum() {
+    lookupCount++;
+    return populatedOracle.getTermAtSeqNum(1 + (lookupCount * LOOKUP_STRIDE) % NUMBER_OF_ENTRIES);
+  }
+
+  @Benchmark
+  public QuorumConfigurationWithSeqNum getLastQuorumConfig() {
+    return populatedOracle.getLastQuorumConfig();
+  }
+}
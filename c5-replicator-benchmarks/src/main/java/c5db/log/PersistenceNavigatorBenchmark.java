@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.LogBenchmarkUtil.PersistenceType;
+import static c5db.log.LogBenchmarkUtil.createPersistence;
+import static c5db.log.LogBenchmarkUtil.createTemporaryDirectory;
+import static c5db.log.LogBenchmarkUtil.deleteRecursively;
+import static c5db.log.LogBenchmarkUtil.makeEntry;
+import static c5db.log.LogBenchmarkUtil.someData;
+import static c5db.log.LogPersistenceService.BytePersistence;
+
+/**
+ * Measures how long InMemoryPersistenceNavigator takes to find an entry, depending on how many
+ * entries it may have to skip over from the nearest indexed entry (its "max entry seek").
+ * <p>
+ * The navigator adds every entry it finds to its index, so repeated lookups of the same entry
+ * would only measure the index. Instead, each iteration starts with a freshly built navigator and
+ * looks up a fixed batch of distinct entries; the reported time is for the whole batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 10, batchSize = PersistenceNavigatorBenchmark.LOOKUPS_PER_ITERATION)
+@Measurement(iterations = 20, batchSize = PersistenceNavigatorBenchmark.LOOKUPS_PER_ITERATION)
+public class PersistenceNavigatorBenchmark {
+  static final int LOOKUPS_PER_ITERATION = 1000;
+  private static final int NUMBER_OF_ENTRIES = 65536;
+  // Relatively prime to NUMBER_OF_ENTRIES, so stepping by it visits every entry before repeating.
+  private static final int LOOKUP_STRIDE = 7919;
+
+  @Param({"MEMORY", "FILE"})
+  public PersistenceType persistenceType;
+
+  @Param({"1", "16", "256"})
+  public int maxEntrySeek;
+
+  @Param({"64", "4096"})
+  public int entrySize;
+
+  private final OLogEntry.Codec codec = new OLogEntry.Codec();
+  private Path directory;
+  private BytePersistence persistence;
+  private final long[] addresses = new long[NUMBER_OF_ENTRIES + 1];
+  private InMemoryPersistenceNavigator<OLogEntry> navigator;
+  private long lookupCount;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = createTemporaryDirectory();
+    persistence = createPersistence(persistenceType, directory);
+
+    final byte[] data = someData(entrySize);
+    for (int seqNum = 1; seqNum <= NUMBER_OF_ENTRIES; seqNum++) {
+      addresses[seqNum] = persistence.size();
+      persistence.append(codec.encode(makeEntry(seqNum, data)));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void buildNavigator() throws Exception {
+    navigator = new InMemoryPersistenceNavigator<>(persistence, codec);
+    navigator.setMaxEntrySeek(maxEntrySeek);
+    for (int seqNum = 1; seqNum <= NUMBER_OF_ENTRIES; seqNum++) {
+      navigator.notifyLogging(seqNum, addresses[seqNum]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    persistence.close();
+    deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public long getAddressOfEntry() throws Exception {
+    return navigator.getAddressOfEntry(nextSeqNum());
+  }
+
+  @Benchmark
+  public int readAtSeqNum() throws Exception {
+    try (InputStream inputStream = navigator.getStreamAtSeqNum(nextSeqNum())) {
+      return inputStream.read();
+    }
+  }
+
+  private long nextSeqNum() {
+    lookupCount++;
+    return 1 + (lookupCount * LOOKUP_STRIDE) % NUMBER_OF_ENTRIES;
+  }
+}
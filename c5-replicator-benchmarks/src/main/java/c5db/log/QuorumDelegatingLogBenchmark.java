@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.LogConstants;
+import c5db.util.ByteBudget;
+import c5db.util.WrappingKeySerializingExecutor;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.log.LogBenchmarkUtil.PersistenceType;
+import static c5db.log.LogBenchmarkUtil.createPersistenceService;
+import static c5db.log.LogBenchmarkUtil.createTemporaryDirectory;
+import static c5db.log.LogBenchmarkUtil.deleteRecursively;
+import static c5db.log.LogBenchmarkUtil.makeEntries;
+import static c5db.log.LogBenchmarkUtil.someData;
+
+/**
+ * Measures QuorumDelegatingLog#logEntries end to end, from the call until the returned future
+ * completes, set up the same way LogService sets up the log. Each operation logs one batch of
+ * entries to every one of the quorums, concurrently, and waits for all of them to be persisted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class QuorumDelegatingLogBenchmark {
+  // Each quorum's log is truncated back to empty after this many bytes, to bound its size.
+  private static final long QUORUM_LOG_MAX_BYTES = 64L * 1024 * 1024;
+
+  @Param({"MEMORY", "FILE"})
+  public PersistenceType persistenceType;
+
+  @Param({"1", "4", "16"})
+  public int quorumCount;
+
+  @Param({"64", "1024", "16384"})
+  public int entrySize;
+
+  @Param({"1", "16"})
+  public int entriesPerBatch;
+
+  private final List<String> quorumIds = new ArrayList<>();
+  private Path directory;
+  private byte[] data;
+  private OLog log;
+  private long nextSeqNum;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = createTemporaryDirectory();
+    data = someData(entrySize);
+
+    log = new QuorumDelegatingLog(
+        createPersistenceService(persistenceType, directory),
+        new WrappingKeySerializingExecutor(Executors.newFixedThreadPool(LogConstants.LOG_THREAD_POOL_SIZE)),
+        NavigableMapOLogEntryOracle::new,
+        InMemoryPersistenceNavigator::new,
+        MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(LogConstants.LOG_SEGMENT_READ_THREAD_POOL_SIZE)),
+        ByteBudget.unlimited());
+
+    for (int i = 0; i < quorumCount; i++) {
+      final String quorumId = "quorum" + i;
+      quorumIds.add(quorumId);
+      log.openAsync(quorumId).get();
+    }
+    nextSeqNum = 1;
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    log.close();
+    deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public List<Boolean> logEntries() throws Exception {
+    if ((nextSeqNum - 1) * entrySize >= QUORUM_LOG_MAX_BYTES) {
+      truncateAllQuorums();
+    }
+
+    final List<ListenableFuture<Boolean>> futures = new ArrayList<>(quorumCount);
+    for (String quorumId : quorumIds) {
+      futures.add(log.logEntries(makeEntries(nextSeqNum, nextSeqNum + entriesPerBatch, data), quorumId));
+    }
+    nextSeqNum += entriesPerBatch;
+
+    return Futures.allAsList(futures).get();
+  }
+
+  private void truncateAllQuorums() throws Exception {
+    final List<ListenableFuture<Boolean>> futures = new ArrayList<>(quorumCount);
+    for (String quorumId : quorumIds) {
+      futures.add(log.truncateLog(1, quorumId));
+    }
+    Futures.allAsList(futures).get();
+    nextSeqNum = 1;
+  }
+}
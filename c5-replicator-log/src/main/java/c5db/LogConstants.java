@@ -23,7 +23,10 @@ public class LogConstants {
   public static final Path LOG_ROOT_DIRECTORY_RELATIVE_PATH = Paths.get("logs");
   public static final Path LOG_FILE_SUBDIRECTORY_RELATIVE_PATH = Paths.get("files");
   public static final int LOG_THREAD_POOL_SIZE = 1;
+  public static final int LOG_SEGMENT_READ_THREAD_POOL_SIZE = 4;
   public static final int LOG_CLOSE_TIMEOUT_SECONDS = 15;
   public static final int LOG_NAVIGATOR_DEFAULT_MAX_ENTRY_SEEK = 256;
   public static final boolean LOG_USE_FILE_CHANNEL_FORCE = true;
+  public static final int LOG_IN_MEMORY_CHUNK_SIZE_BYTES = 1024 * 1024;
+  public static final long LOG_IN_MEMORY_MAX_ALLOCATED_BYTES = 1024L * 1024 * 1024;
 }
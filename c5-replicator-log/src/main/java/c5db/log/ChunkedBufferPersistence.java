@@ -0,0 +1,273 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static c5db.log.LogPersistenceService.BytePersistence;
+import static c5db.log.LogPersistenceService.PersistenceReader;
+
+/**
+ * A BytePersistence held in memory, outside the Java heap, as a list of fixed-size direct
+ * ByteBuffer chunks. Appending copies the appended data once, into the last chunk (allocating
+ * new chunks as needed); truncating discards whole chunks beyond the new size. Readers read
+ * directly from the chunks, without copying the persistence's data up front.
+ * <p>
+ * Several ChunkedBufferPersistence instances may refer to the same underlying Chunks; closing
+ * an instance only prevents further use of that instance. The chunks themselves are released
+ * by the owner of the Chunks object, e.g. {@link InMemoryLogPersistenceService}, once it has
+ * taken ownership of them. Until then, closing any instance referring to them releases them.
+ */
+public class ChunkedBufferPersistence implements BytePersistence {
+  final Chunks chunks;
+  private volatile boolean closed;
+
+  ChunkedBufferPersistence(Chunks chunks) {
+    this.chunks = chunks;
+  }
+
+  @Override
+  public boolean isEmpty() throws IOException {
+    return size() == 0;
+  }
+
+  @Override
+  public long size() throws IOException {
+    ensureNotClosed();
+    return chunks.size();
+  }
+
+  @Override
+  public void append(ByteBuffer[] buffers) throws IOException {
+    ensureNotClosed();
+    chunks.append(buffers);
+  }
+
+  @Override
+  public PersistenceReader getReader() throws IOException {
+    ensureNotClosed();
+    return new ChunkedBufferReader(chunks);
+  }
+
+  @Override
+  public void truncate(long size) throws IOException {
+    ensureNotClosed();
+    chunks.truncate(size);
+  }
+
+  @Override
+  public void sync() throws IOException {
+    ensureNotClosed();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    chunks.releaseUnlessOwned();
+  }
+
+  private void ensureNotClosed() throws IOException {
+    if (closed) {
+      throw new IOException("attempted to use ChunkedBufferPersistence, but it is closed");
+    }
+  }
+
+  /**
+   * Interface used to limit the total memory allocated for chunks.
+   */
+  interface ChunkAllocator {
+    ByteBuffer allocate(int chunkSize) throws IOException;
+
+    void free(int chunkSize);
+  }
+
+  /**
+   * The underlying data store: a sequence of bytes kept in a list of equally-sized chunks.
+   */
+  static class Chunks {
+    private final int chunkSize;
+    private final ChunkAllocator allocator;
+    private final List<ByteBuffer> chunkList = new ArrayList<>();
+    private long size;
+    private boolean owned;
+    private boolean released;
+
+    Chunks(int chunkSize, ChunkAllocator allocator) {
+      this.chunkSize = chunkSize;
+      this.allocator = allocator;
+    }
+
+    synchronized long size() throws IOException {
+      ensureNotReleased();
+      return size;
+    }
+
+    synchronized void append(ByteBuffer[] buffers) throws IOException {
+      ensureNotReleased();
+
+      for (ByteBuffer buffer : buffers) {
+        final ByteBuffer source = buffer.duplicate();
+
+        while (source.hasRemaining()) {
+          final ByteBuffer chunk = chunkForWriting();
+          final int bytesToCopy = Math.min(source.remaining(), chunk.remaining());
+          final ByteBuffer sourceSlice = source.slice();
+          sourceSlice.limit(bytesToCopy);
+          chunk.put(sourceSlice);
+          source.position(source.position() + bytesToCopy);
+          size += bytesToCopy;
+        }
+        buffer.position(buffer.limit());
+      }
+    }
+
+    synchronized void truncate(long newSize) throws IOException {
+      ensureNotReleased();
+      if (newSize > size || newSize < 0) {
+        throw new IllegalArgumentException("Truncation may not grow the persistence");
+      }
+
+      final int chunksNeeded = Ints.checkedCast((newSize + chunkSize - 1) / chunkSize);
+      while (chunkList.size() > chunksNeeded) {
+        chunkList.remove(chunkList.size() - 1);
+        allocator.free(chunkSize);
+      }
+      size = newSize;
+    }
+
+    /**
+     * Copy bytes beginning at the given position into dst, returning the number of bytes copied,
+     * or -1 if the position is at or beyond the end of the data.
+     */
+    synchronized int read(long position, ByteBuffer dst) throws IOException {
+      ensureNotReleased();
+      if (position >= size) {
+        return -1;
+      }
+
+      int bytesCopied = 0;
+      long readPosition = position;
+      while (dst.hasRemaining() && readPosition < size) {
+        final ByteBuffer chunk = chunkList.get(Ints.checkedCast(readPosition / chunkSize)).duplicate();
+        final int offsetInChunk = (int) (readPosition % chunkSize);
+        final int bytesInChunk = (int) Math.min(chunkSize - offsetInChunk, size - readPosition);
+        final int bytesToCopy = Math.min(bytesInChunk, dst.remaining());
+
+        chunk.limit(offsetInChunk + bytesToCopy);
+        chunk.position(offsetInChunk);
+        dst.put(chunk);
+
+        bytesCopied += bytesToCopy;
+        readPosition += bytesToCopy;
+      }
+      return bytesCopied;
+    }
+
+    /**
+     * Make the caller responsible for releasing the chunks; until this is called, they are released
+     * as soon as a ChunkedBufferPersistence referring to them is closed.
+     */
+    synchronized void takeOwnership() throws IOException {
+      ensureNotReleased();
+      owned = true;
+    }
+
+    synchronized void releaseUnlessOwned() {
+      if (!owned && !released) {
+        release();
+      }
+    }
+
+    synchronized void release() {
+      for (int i = 0; i < chunkList.size(); i++) {
+        allocator.free(chunkSize);
+      }
+      chunkList.clear();
+      size = 0;
+      released = true;
+    }
+
+    private ByteBuffer chunkForWriting() throws IOException {
+      final int chunkIndex = Ints.checkedCast(size / chunkSize);
+      if (chunkIndex == chunkList.size()) {
+        chunkList.add(allocator.allocate(chunkSize));
+      }
+
+      final ByteBuffer chunk = chunkList.get(chunkIndex);
+      // A chunk may hold stale bytes beyond the current size, left over from a truncation.
+      chunk.clear();
+      chunk.position((int) (size % chunkSize));
+      return chunk;
+    }
+
+    private void ensureNotReleased() throws IOException {
+      if (released) {
+        throw new IOException("attempted to access data which has been deleted");
+      }
+    }
+  }
+
+  private static class ChunkedBufferReader implements PersistenceReader {
+    private final Chunks chunks;
+    private long position;
+    private boolean open = true;
+
+    private ChunkedBufferReader(Chunks chunks) {
+      this.chunks = chunks;
+    }
+
+    @Override
+    public long position() throws IOException {
+      return position;
+    }
+
+    @Override
+    public void position(long newPos) throws IOException {
+      if (newPos > chunks.size()) {
+        throw new IllegalArgumentException("Trying to set the reader position beyond the end of the readable bytes");
+      }
+      position = newPos;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!open) {
+        throw new IOException("attempted to read from a closed reader");
+      }
+      final int bytesRead = chunks.read(position, dst);
+      if (bytesRead > 0) {
+        position += bytesRead;
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+      open = false;
+    }
+  }
+}
@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import static c5db.interfaces.log.SequentialEntryIterable.SequentialEntryIterator;
-import static c5db.log.LogPersistenceService.PersistenceNavigator;
 
 /**
  * Implementation of SequentialEntryIterator for logs encoded with a SequentialEntryCodec.
@@ -34,11 +33,13 @@ class EncodedSequentialEntryIterator<E extends SequentialEntry> implements Seque
   private final InputStream inputStream;
   private E nextEntry;
 
-  EncodedSequentialEntryIterator(PersistenceNavigator persistenceNavigator, SequentialEntryCodec<E> codec)
-      throws IOException {
-
+  /**
+   * @param inputStream Stream positioned at the beginning of the first entry to iterate over; the
+   *                    iterator takes responsibility for closing it.
+   */
+  EncodedSequentialEntryIterator(InputStream inputStream, SequentialEntryCodec<E> codec) throws IOException {
     this.codec = codec;
-    this.inputStream = persistenceNavigator.getStreamAtFirstEntry();
+    this.inputStream = inputStream;
     this.nextEntry = fetchNext();
   }
 
@@ -90,7 +90,12 @@ public class EncodedSequentialLog<E extends SequentialEntry> implements Sequenti
 
   @Override
   public SequentialEntryIterator<E> iterator() throws IOException {
-    return new EncodedSequentialEntryIterator<>(persistenceNavigator, codec);
+    return new EncodedSequentialEntryIterator<>(persistenceNavigator.getStreamAtFirstEntry(), codec);
+  }
+
+  @Override
+  public SequentialEntryIterator<E> iterator(long start) throws IOException, LogEntryNotFound {
+    return new EncodedSequentialEntryIterator<>(persistenceNavigator.getStreamAtSeqNum(start), codec);
   }
 
   @Override
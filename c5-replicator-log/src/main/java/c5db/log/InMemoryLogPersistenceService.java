@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.LogConstants;
+import c5db.util.CheckedSupplier;
+import com.google.common.collect.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static c5db.log.ChunkedBufferPersistence.ChunkAllocator;
+import static c5db.log.ChunkedBufferPersistence.Chunks;
+
+/**
+ * LogPersistenceService using ChunkedBufferPersistence objects, which hold their data in direct
+ * (off-heap) memory. Nothing is written to disk, so the log record does not survive the process;
+ * this is intended for quorums which don't require durability, and for measuring the performance
+ * of the rest of the system independently of disk.
+ * <p>
+ * The total memory allocated by all data stores served by one instance is limited to a maximum.
+ * An append which would exceed it fails with an IOException. Memory is reclaimed when data is
+ * truncated, when a data store is removed by {@link #truncate(String)}, or when a data store which
+ * was created but never appended to a quorum's list is closed.
+ * <p>
+ * Each quorum's data stores may be accessed concurrently, e.g. read by one thread while another
+ * appends a new data store.
+ */
+public class InMemoryLogPersistenceService implements LogPersistenceService<ChunkedBufferPersistence> {
+  private final Map<String, Deque<Chunks>> quorumMap = new ConcurrentHashMap<>();
+  private final int chunkSize;
+  private final long maxAllocatedBytes;
+  private final AtomicLong allocatedBytes = new AtomicLong(0);
+  private final ChunkAllocator allocator = new ChunkAllocator() {
+    @Override
+    public ByteBuffer allocate(int chunkSize) throws IOException {
+      if (allocatedBytes.addAndGet(chunkSize) > maxAllocatedBytes) {
+        allocatedBytes.addAndGet(-chunkSize);
+        throw new IOException("InMemoryLogPersistenceService: unable to allocate memory beyond the maximum of "
+            + maxAllocatedBytes + " bytes");
+      }
+      return ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    @Override
+    public void free(int chunkSize) {
+      allocatedBytes.addAndGet(-chunkSize);
+    }
+  };
+
+  public InMemoryLogPersistenceService() {
+    this(LogConstants.LOG_IN_MEMORY_CHUNK_SIZE_BYTES, LogConstants.LOG_IN_MEMORY_MAX_ALLOCATED_BYTES);
+  }
+
+  /**
+   * @param chunkSize         Size in bytes of each of the buffers in which data stores keep their data.
+   * @param maxAllocatedBytes Limit on the total size of the buffers allocated by all data stores.
+   */
+  public InMemoryLogPersistenceService(int chunkSize, long maxAllocatedBytes) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("InMemoryLogPersistenceService: chunk size must be positive");
+    }
+    this.chunkSize = chunkSize;
+    this.maxAllocatedBytes = maxAllocatedBytes;
+  }
+
+  @Nullable
+  @Override
+  public ChunkedBufferPersistence getCurrent(String quorumId) throws IOException {
+    final Chunks current = getDeque(quorumId).peek();
+    if (current == null) {
+      return null;
+    } else {
+      return new ChunkedBufferPersistence(current);
+    }
+  }
+
+  @NotNull
+  @Override
+  public ChunkedBufferPersistence create(String quorumId) throws IOException {
+    return new ChunkedBufferPersistence(new Chunks(chunkSize, allocator));
+  }
+
+  @Override
+  public void append(String quorumId, @NotNull ChunkedBufferPersistence persistence) throws IOException {
+    persistence.chunks.takeOwnership();
+    getDeque(quorumId).push(persistence.chunks);
+  }
+
+  @Override
+  public void truncate(String quorumId) throws IOException {
+    final Chunks removed = getDeque(quorumId).poll();
+    if (removed != null) {
+      removed.release();
+    }
+  }
+
+  @Override
+  public ImmutableList<CheckedSupplier<ChunkedBufferPersistence, IOException>> getList(String quorumId)
+      throws IOException {
+    final ImmutableList.Builder<CheckedSupplier<ChunkedBufferPersistence, IOException>> persistenceSupplierBuilder =
+        ImmutableList.builder();
+
+    for (Chunks chunks : getDeque(quorumId)) {
+      persistenceSupplierBuilder.add(() -> new ChunkedBufferPersistence(chunks));
+    }
+
+    return persistenceSupplierBuilder.build();
+  }
+
+  /**
+   * @return The total size in bytes of the buffers currently allocated by all data stores.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  private Deque<Chunks> getDeque(String quorumId) {
+    return quorumMap.computeIfAbsent(quorumId, q -> new ConcurrentLinkedDeque<>());
+  }
+}
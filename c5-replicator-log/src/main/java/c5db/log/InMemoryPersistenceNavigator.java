@@ -19,6 +19,7 @@ package c5db.log;
 import c5db.LogConstants;
 import c5db.interfaces.log.SequentialEntry;
 import c5db.interfaces.log.SequentialEntryCodec;
+import c5db.util.MetricRegistry;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -29,6 +30,7 @@ import java.util.TreeMap;
 
 import static c5db.log.LogPersistenceService.BytePersistence;
 import static c5db.log.LogPersistenceService.PersistenceNavigator;
+import static c5db.log.LogPersistenceService.PersistenceNavigatorFactory;
 import static c5db.log.LogPersistenceService.PersistenceReader;
 import static c5db.log.SequentialLog.LogEntryNotFound;
 
@@ -40,6 +42,9 @@ import static c5db.log.SequentialLog.LogEntryNotFound;
  * then store it. k is a configurable parameter, maxEntrySeek. Also, if requested to get the
  * address of a specific entry, and that address is not already stored, store it once it is
  * found.
+ * <p>
+ * The number of entries skipped past to find each requested entry, its seek distance, is recorded
+ * into a histogram, if one is supplied.
  */
 public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements PersistenceNavigator {
 
@@ -48,6 +53,7 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
 
   private final NavigableMap<Long, Long> index = new TreeMap<>();
   private final long fileOffset;
+  private final MetricRegistry.Histogram seekDistance;
   private int maxEntrySeek = LogConstants.LOG_NAVIGATOR_DEFAULT_MAX_ENTRY_SEEK;
 
   public InMemoryPersistenceNavigator(BytePersistence persistence, SequentialEntryCodec<E> codec) {
@@ -55,14 +61,29 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
   }
 
   public InMemoryPersistenceNavigator(BytePersistence persistence, SequentialEntryCodec<E> codec, long offset) {
+    this(persistence, codec, offset, MetricRegistry.NO_OP.histogram(LogMetrics.NAVIGATOR_SEEK_ENTRIES));
+  }
+
+  public InMemoryPersistenceNavigator(BytePersistence persistence,
+                                      SequentialEntryCodec<E> codec,
+                                      long offset,
+                                      MetricRegistry.Histogram seekDistance) {
     this.persistence = persistence;
     this.codec = codec;
     this.fileOffset = offset;
+    this.seekDistance = seekDistance;
 
     // Logic is simplified if the index NavigableMap is guaranteed to have at least one entry.
     index.put(0L, 0L);
   }
 
+  /**
+   * @return A factory creating navigators which record their seek distances into the given histogram.
+   */
+  public static PersistenceNavigatorFactory factory(MetricRegistry.Histogram seekDistance) {
+    return (persistence, codec, offset) -> create(persistence, codec, offset, seekDistance);
+  }
+
   public void setMaxEntrySeek(int numberOfEntries) {
     if (numberOfEntries < 1) {
       throw new IllegalArgumentException("InMemoryPersistenceNavigator#setMaxEntrySeek");
@@ -119,6 +140,7 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
     PersistenceReader reader = persistence.getReader();
     reader.position(lastEntryAddress);
     InputStream inputStream = Channels.newInputStream(reader);
+    long entriesSkipped = 0;
 
     try {
       //noinspection InfiniteLoopStatement
@@ -126,10 +148,13 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
         long entryStartAddress = reader.position();
         lastEntrySeqNum = codec.skipEntryAndReturnSeqNum(inputStream);
         lastEntryAddress = entryStartAddress;
+        entriesSkipped++;
       }
     } catch (EOFException ignore) {
     }
 
+    seekDistance.record(entriesSkipped);
+
     reader.position(lastEntryAddress);
     addToIndex(lastEntrySeqNum, lastEntryAddress);
     return inputStream;
@@ -139,11 +164,13 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
     PersistenceReader reader = persistence.getReader();
     if (index.containsKey(seqNum)) {
       reader.position(index.get(seqNum));
+      seekDistance.record(0);
       return reader;
     }
 
     reader.position(nearestAddressTo(seqNum));
     InputStream inputStream = Channels.newInputStream(reader);
+    long entriesSkipped = 0;
 
     try {
       while (true) {
@@ -152,14 +179,22 @@ public class InMemoryPersistenceNavigator<E extends SequentialEntry> implements
         if (seqNum == entrySeqNum) {
           reader.position(entryStartAddress);
           addToIndex(seqNum, entryStartAddress);
+          seekDistance.record(entriesSkipped);
           return reader;
         }
+        entriesSkipped++;
       }
     } catch (EOFException e) {
+      seekDistance.record(entriesSkipped);
       throw new LogEntryNotFound("EOF reached before finding requested seqNum (" + seqNum + ")");
     }
   }
 
+  private static <E extends SequentialEntry> InMemoryPersistenceNavigator<E> create(
+      BytePersistence persistence, SequentialEntryCodec<E> codec, long offset, MetricRegistry.Histogram seekDistance) {
+    return new InMemoryPersistenceNavigator<>(persistence, codec, offset, seekDistance);
+  }
+
   /**
    * @return The greatest seqNum in the index, or 0 if no seqNum has ever been added to the index.
    */
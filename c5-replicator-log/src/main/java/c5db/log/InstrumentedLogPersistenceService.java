@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.util.CheckedSupplier;
+import com.google.common.collect.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static c5db.log.LogMetrics.QuorumLogMetrics;
+import static c5db.log.LogPersistenceService.BytePersistence;
+
+/**
+ * LogPersistenceService decorating another, so that the BytePersistence objects it serves record
+ * the number of bytes appended, and the latencies of appends and syncs, into LogMetrics.
+ *
+ * @param <P> The type of BytePersistence served by the decorated service.
+ */
+class InstrumentedLogPersistenceService<P extends BytePersistence>
+    implements LogPersistenceService<InstrumentedLogPersistenceService.InstrumentedPersistence> {
+  private final LogPersistenceService<P> delegate;
+  private final LogMetrics metrics;
+
+  private InstrumentedLogPersistenceService(LogPersistenceService<P> delegate, LogMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  static <P extends BytePersistence> LogPersistenceService<?> decorate(LogPersistenceService<P> delegate,
+                                                                       LogMetrics metrics) {
+    return new InstrumentedLogPersistenceService<>(delegate, metrics);
+  }
+
+  @Nullable
+  @Override
+  public InstrumentedPersistence getCurrent(String quorumId) throws IOException {
+    final P persistence = delegate.getCurrent(quorumId);
+    if (persistence == null) {
+      return null;
+    } else {
+      return new InstrumentedPersistence(persistence, metrics.forQuorum(quorumId));
+    }
+  }
+
+  @NotNull
+  @Override
+  public InstrumentedPersistence create(String quorumId) throws IOException {
+    return new InstrumentedPersistence(delegate.create(quorumId), metrics.forQuorum(quorumId));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void append(String quorumId, @NotNull InstrumentedPersistence persistence) throws IOException {
+    // Every InstrumentedPersistence this service receives was created by this service, from one of the delegate's.
+    delegate.append(quorumId, (P) persistence.delegate);
+  }
+
+  @Override
+  public void truncate(String quorumId) throws IOException {
+    delegate.truncate(quorumId);
+  }
+
+  @Override
+  public ImmutableList<CheckedSupplier<InstrumentedPersistence, IOException>> getList(String quorumId)
+      throws IOException {
+    final QuorumLogMetrics quorumMetrics = metrics.forQuorum(quorumId);
+    final ImmutableList.Builder<CheckedSupplier<InstrumentedPersistence, IOException>> persistenceSupplierBuilder =
+        ImmutableList.builder();
+
+    for (CheckedSupplier<P, IOException> supplier : delegate.getList(quorumId)) {
+      persistenceSupplierBuilder.add(() -> new InstrumentedPersistence(supplier.get(), quorumMetrics));
+    }
+
+    return persistenceSupplierBuilder.build();
+  }
+
+  static class InstrumentedPersistence implements BytePersistence {
+    private final BytePersistence delegate;
+    private final QuorumLogMetrics quorumMetrics;
+
+    private InstrumentedPersistence(BytePersistence delegate, QuorumLogMetrics quorumMetrics) {
+      this.delegate = delegate;
+      this.quorumMetrics = quorumMetrics;
+    }
+
+    @Override
+    public boolean isEmpty() throws IOException {
+      return delegate.isEmpty();
+    }
+
+    @Override
+    public long size() throws IOException {
+      return delegate.size();
+    }
+
+    @Override
+    public void append(ByteBuffer[] buffers) throws IOException {
+      final long sizeBefore = delegate.size();
+      final long startNanos = LogMetrics.nanoTime();
+      delegate.append(buffers);
+      quorumMetrics.writeMicros.record(LogMetrics.microsSince(startNanos));
+      quorumMetrics.appendBytes.record(delegate.size() - sizeBefore);
+    }
+
+    @Override
+    public LogPersistenceService.PersistenceReader getReader() throws IOException {
+      return delegate.getReader();
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+      delegate.truncate(size);
+    }
+
+    @Override
+    public void sync() throws IOException {
+      final long startNanos = LogMetrics.nanoTime();
+      delegate.sync();
+      quorumMetrics.syncMicros.record(LogMetrics.microsSince(startNanos));
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
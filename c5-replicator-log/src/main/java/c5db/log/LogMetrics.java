@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.util.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import static c5db.util.MetricRegistry.Counter;
+import static c5db.util.MetricRegistry.Histogram;
+
+/**
+ * The instruments with which a QuorumDelegatingLog records the cost of its I/O. Measurements of a
+ * quorum's log record are recorded twice: under the name "log.quorum.(quorum ID).(measurement)",
+ * and under "log.device.(device name).(measurement)", which aggregates all the quorums whose data
+ * stores reside on the same device. Latencies are recorded in microseconds unless their names say
+ * otherwise.
+ * <p>
+ * Given the no-op registry, LogMetrics is disabled, and its users may skip work done only for the
+ * sake of measurement, such as reading the clock or wrapping persistence objects.
+ */
+class LogMetrics {
+  static final String QUORUM_PREFIX = "log.quorum.";
+  static final String DEVICE_PREFIX = "log.device.";
+  static final String NAVIGATOR_SEEK_ENTRIES = "log.node.navigatorSeekEntries";
+
+  private final MetricRegistry registry;
+  private final String devicePrefix;
+
+  LogMetrics(MetricRegistry registry, String deviceName) {
+    this.registry = registry;
+    this.devicePrefix = DEVICE_PREFIX + deviceName + ".";
+  }
+
+  boolean isEnabled() {
+    return registry != MetricRegistry.NO_OP;
+  }
+
+  QuorumLogMetrics forQuorum(String quorumId) {
+    return new QuorumLogMetrics(registry, QUORUM_PREFIX + quorumId + ".", devicePrefix);
+  }
+
+  static long nanoTime() {
+    return System.nanoTime();
+  }
+
+  static long microsSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanoTime() - startNanos);
+  }
+
+  /**
+   * Instruments for one quorum's log record.
+   */
+  static class QuorumLogMetrics {
+    final Histogram appendBytes;
+    final Histogram writeMicros;
+    final Histogram syncMicros;
+    final Histogram taskQueueWaitMicros;
+    final Histogram recoveryMillis;
+    final Counter segments;
+
+    private final MetricRegistry registry;
+    private final String quorumPrefix;
+    private final String devicePrefix;
+
+    private QuorumLogMetrics(MetricRegistry registry, String quorumPrefix, String devicePrefix) {
+      this.registry = registry;
+      this.quorumPrefix = quorumPrefix;
+      this.devicePrefix = devicePrefix;
+
+      appendBytes = histogram("appendBytes");
+      writeMicros = histogram("writeMicros");
+      syncMicros = histogram("syncMicros");
+      taskQueueWaitMicros = histogram("taskQueueWaitMicros");
+      recoveryMillis = histogram("recoveryMillis");
+      segments = counter("segments");
+    }
+
+    private Counter counter(String measurement) {
+      final Counter quorumCounter = registry.counter(quorumPrefix + measurement);
+      final Counter deviceCounter = registry.counter(devicePrefix + measurement);
+      return (delta) -> {
+        quorumCounter.add(delta);
+        deviceCounter.add(delta);
+      };
+    }
+
+    private Histogram histogram(String measurement) {
+      final Histogram quorumHistogram = registry.histogram(quorumPrefix + measurement);
+      final Histogram deviceHistogram = registry.histogram(devicePrefix + measurement);
+      return (value) -> {
+        quorumHistogram.record(value);
+        deviceHistogram.record(value);
+      };
+    }
+  }
+}
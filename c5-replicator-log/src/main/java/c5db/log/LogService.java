@@ -22,15 +22,19 @@ import c5db.interfaces.log.SequentialEntry;
 import c5db.interfaces.log.SequentialEntryCodec;
 import c5db.interfaces.replication.ReplicatorLog;
 import c5db.messages.generated.ModuleType;
+import c5db.util.ByteBudget;
 import c5db.util.FiberSupplier;
 import c5db.util.KeySerializingExecutor;
+import c5db.util.MetricRegistry;
 import c5db.util.WrappingKeySerializingExecutor;
 import com.google.common.util.concurrent.AbstractService;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import org.jetlang.fibers.Fiber;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,6 +46,8 @@ import java.util.concurrent.Executors;
 public class LogService extends AbstractService implements LogModule {
   private final Path basePath;
   private final FiberSupplier fiberSupplier;
+  private final ByteBudget byteBudget;
+  private final MetricRegistry metricRegistry;
 
   // This map may only be read or written from tasks running on the fiber.
   private final Map<String, Mooring> moorings = new HashMap<>();
@@ -51,8 +57,26 @@ public class LogService extends AbstractService implements LogModule {
   private Fiber fiber;
 
   public LogService(Path basePath, FiberSupplier fiberSupplier) {
+    this(basePath, fiberSupplier, ByteBudget.unlimited());
+  }
+
+  /**
+   * @param byteBudget Node-wide budget in which the log accounts for entries awaiting persistence.
+   */
+  public LogService(Path basePath, FiberSupplier fiberSupplier, ByteBudget byteBudget) {
+    this(basePath, fiberSupplier, byteBudget, MetricRegistry.NO_OP);
+  }
+
+  /**
+   * @param metricRegistry Registry into which the log records measurements of its I/O, per quorum and
+   *                       per device; a snapshot of them is available through acceptCommand.
+   */
+  public LogService(Path basePath, FiberSupplier fiberSupplier, ByteBudget byteBudget,
+                    MetricRegistry metricRegistry) {
     this.basePath = basePath;
     this.fiberSupplier = fiberSupplier;
+    this.byteBudget = byteBudget;
+    this.metricRegistry = metricRegistry;
   }
 
   @Override
@@ -66,7 +90,12 @@ public class LogService extends AbstractService implements LogModule {
           logFileService,
           executor,
           NavigableMapOLogEntryOracle::new,
-          InMemoryPersistenceNavigator::new);
+          InMemoryPersistenceNavigator.factory(metricRegistry.histogram(LogMetrics.NAVIGATOR_SEEK_ENTRIES)),
+          MoreExecutors.listeningDecorator(
+              Executors.newFixedThreadPool(LogConstants.LOG_SEGMENT_READ_THREAD_POOL_SIZE)),
+          byteBudget,
+          metricRegistry,
+          Files.getFileStore(basePath).name());
 
       // TODO start the flush threads as necessary
       // TODO log maintenance threads can go here too.
@@ -133,6 +162,9 @@ public class LogService extends AbstractService implements LogModule {
 
   @Override
   public String acceptCommand(String commandString) {
+    if (MetricRegistry.DESCRIBE_COMMAND.equals(commandString)) {
+      return metricRegistry.describe();
+    }
     return null;
   }
 
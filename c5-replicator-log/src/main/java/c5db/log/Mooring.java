@@ -18,8 +18,8 @@ package c5db.log;
 
 import c5db.interfaces.replication.QuorumConfiguration;
 import c5db.interfaces.replication.ReplicatorLog;
+import c5db.interfaces.replication.TermRun;
 import c5db.replication.generated.LogEntry;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
@@ -96,11 +96,21 @@ public class Mooring implements ReplicatorLog {
     return Futures.transform(log.getLogEntries(start, end, quorumId), Mooring::toProtostuffMessages);
   }
 
+  @Override
+  public ListenableFuture<List<LogEntry>> getLogEntries(long start, long end, long maxBytes) {
+    return Futures.transform(log.getLogEntries(start, end, maxBytes, quorumId), Mooring::toProtostuffMessages);
+  }
+
   @Override
   public long getLogTerm(long index) {
     return log.getLogTerm(index, quorumId);
   }
 
+  @Override
+  public List<TermRun> getTermRuns(long firstIndex, long lastIndex) {
+    return log.getTermRuns(firstIndex, lastIndex, quorumId);
+  }
+
   @Override
   public long getLastTerm() {
     return currentTerm;
@@ -124,6 +134,20 @@ public class Mooring implements ReplicatorLog {
     return truncateFuture;
   }
 
+  @Override
+  public long getFirstIndex() {
+    return log.getFirstSeqNum(quorumId);
+  }
+
+  @Override
+  public ListenableFuture<Boolean> resetLog(long baseIndex, long baseTerm, QuorumConfiguration baseConfiguration) {
+    lastIndex = baseIndex;
+    currentTerm = baseTerm;
+    ListenableFuture<Boolean> resetFuture = log.resetLog(baseIndex, baseTerm, baseConfiguration, quorumId);
+    setQuorumConfigFromLog();
+    return resetFuture;
+  }
+
   @Override
   public QuorumConfiguration getLastConfiguration() {
     return lastQuorumConfig;
@@ -140,8 +164,16 @@ public class Mooring implements ReplicatorLog {
     lastQuorumConfigIndex = configFromLog.seqNum;
   }
 
+  /**
+   * Convert the entries once, up front: a lazily transformed view would convert an entry again each time
+   * it was accessed. The conversion shares each entry's content, rather than copying it.
+   */
   private static List<LogEntry> toProtostuffMessages(List<OLogEntry> entries) {
-    return Lists.transform(entries, OLogEntry::toProtostuff);
+    final List<LogEntry> protostuffEntries = new ArrayList<>(entries.size());
+    for (OLogEntry entry : entries) {
+      protostuffEntries.add(entry.toProtostuff());
+    }
+    return protostuffEntries;
   }
 
   private void updateCachedTermAndIndex(List<OLogEntry> entriesToLog) {
@@ -17,10 +17,13 @@
 package c5db.log;
 
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
 import c5db.log.generated.OLogContentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -83,6 +86,27 @@ public class NavigableMapOLogEntryOracle implements OLogEntryOracle {
     return entry == null ? 0 : entry.getValue();
   }
 
+  @Override
+  public List<TermRun> getTermRuns(long firstSeqNum, long lastSeqNum) {
+    final List<TermRun> runs = new ArrayList<>();
+    if (lastSeqNum < firstSeqNum) {
+      return runs;
+    }
+
+    // Each key in termMap is the first seqNum of a term, so the runs begin at firstSeqNum and at
+    // each of the keys after it, up to lastSeqNum.
+    long runStart = firstSeqNum;
+    long runTerm = getTermAtSeqNum(firstSeqNum);
+    for (Map.Entry<Long, Long> termStart : termMap.subMap(firstSeqNum, false, lastSeqNum, true).entrySet()) {
+      runs.add(new TermRun(runStart, termStart.getKey() - 1, runTerm));
+      runStart = termStart.getKey();
+      runTerm = termStart.getValue();
+    }
+    runs.add(new TermRun(runStart, lastSeqNum, runTerm));
+
+    return runs;
+  }
+
   @Override
   public QuorumConfigurationWithSeqNum getLastQuorumConfig() {
     if (configMap.isEmpty()) {
@@ -16,6 +16,8 @@
 
 package c5db.log;
 
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
@@ -70,6 +72,24 @@ public interface OLog extends AutoCloseable {
    */
   ListenableFuture<List<OLogEntry>> getLogEntries(long start, long end, String quorumId);
 
+  /**
+   * Asynchronously retrieve the longest initial portion of the range of entries from sequence
+   * number 'start', inclusive, to sequence number 'end', exclusive, such that the total content
+   * length of the retrieved entries does not exceed maxBytes. Entries are read one at a time, so
+   * the range is never materialized beyond what is returned. Unless start equals end, at least one
+   * entry is retrieved, even if that entry alone exceeds maxBytes; so a caller may retrieve a range
+   * of any size by repeating the call from one beyond the last entry retrieved.
+   *
+   * @param start    First seqNum in range
+   * @param end      One beyond the last seqNum in the desired range; must be greater than or
+   *                 equal to start.
+   * @param maxBytes Limit on the total content length ({@link OLogEntry#getContentLength()}) of
+   *                 the retrieved entries.
+   * @param quorumId Quorum id of entries to retrieve
+   * @return Future containing a list of log entries with consecutive seqNums, beginning at start.
+   */
+  ListenableFuture<List<OLogEntry>> getLogEntries(long start, long end, long maxBytes, String quorumId);
+
   /**
    * Logically delete entries from the tail of the log.
    *
@@ -79,6 +99,32 @@ public interface OLog extends AutoCloseable {
    */
   ListenableFuture<Boolean> truncateLog(long entrySeqNum, String quorumId);
 
+  /**
+   * Discard all of a quorum's entries, and begin its log anew following the given base: the
+   * next entry logged must have sequence number baseSeqNum + 1; the term at baseSeqNum will be
+   * baseTerm; and the last quorum configuration will be baseConfiguration, established at
+   * baseSeqNum. The data stores holding the discarded entries are removed from the
+   * persistence service.
+   *
+   * @param baseSeqNum        Sequence number the log is to be considered to follow.
+   * @param baseTerm          Term of the entry with sequence number baseSeqNum.
+   * @param baseConfiguration Quorum configuration as of baseSeqNum.
+   * @param quorumId          Quorum id whose log to reset.
+   * @return Future indicating completion.
+   */
+  ListenableFuture<Boolean> resetLog(long baseSeqNum, long baseTerm, QuorumConfiguration baseConfiguration,
+                                     String quorumId);
+
+  /**
+   * Gets the sequence number of the oldest entry retained for the given quorum. It is one
+   * unless the log has been reset.
+   *
+   * @param quorumId Quorum id
+   * @return The sequence number of the oldest entry retained; or if there are none, the
+   * sequence number the log expects to receive next.
+   */
+  long getFirstSeqNum(String quorumId);
+
   /**
    * Gets the sequence number the log expects to receive next for the given quorum. After
    * logging an entry, the next sequence number will be the entry's sequence number plus one.
@@ -106,6 +152,17 @@ public interface OLog extends AutoCloseable {
    */
   long getLogTerm(long seqNum, String quorumId);
 
+  /**
+   * Divide the sequence numbers from firstSeqNum through lastSeqNum, inclusive, into runs of
+   * consecutive sequence numbers having the same term, as getLogTerm would report it for each.
+   *
+   * @param firstSeqNum First sequence number of the range
+   * @param lastSeqNum  Last sequence number of the range, inclusive
+   * @param quorumId    Log entry quorum
+   * @return The runs, in ascending order; or an empty list if lastSeqNum is less than firstSeqNum.
+   */
+  List<TermRun> getTermRuns(long firstSeqNum, long lastSeqNum, String quorumId);
+
   /**
    * Retrieve the latest quorum configuration and the sequence number on which it was
    * established.
@@ -32,11 +32,13 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import static c5db.log.EntryEncodingUtil.CheckedContent;
 import static c5db.log.EntryEncodingUtil.CrcError;
 import static c5db.log.EntryEncodingUtil.appendCrcToBufferList;
+import static c5db.log.EntryEncodingUtil.computeCrc;
 import static c5db.log.EntryEncodingUtil.decodeAndCheckCrc;
 import static c5db.log.EntryEncodingUtil.encodeWithLengthAndCrc;
-import static c5db.log.EntryEncodingUtil.getAndCheckContent;
+import static c5db.log.EntryEncodingUtil.getAndCheckContentWithCrc;
 import static c5db.log.EntryEncodingUtil.skip;
 import static c5db.log.EntryEncodingUtil.sumRemaining;
 
@@ -46,19 +48,34 @@ import static c5db.log.EntryEncodingUtil.sumRemaining;
  * to be written to an {@link EncodedSequentialLog}. Its serialized form consists of a
  * header together with some content ({@link OLogContent}).
  * <p>
+ * The content is the same bytes a LogEntry carries over the network, and the conversions
+ * to and from LogEntry share them rather than copying them. The CRC of the content travels
+ * with it too, so that it's computed only once, where the entry originates, rather than
+ * again by each log which stores the entry.
+ * <p>
  * An OLogEntry is the kind of entry written to, and retrieved from, {@link OLog}.
  */
 public final class OLogEntry extends SequentialEntry {
   private final long electionTerm;
   private final OLogContent content;
+  private final long contentCrc;
 
   public OLogEntry(long seqNum, long electionTerm, OLogContent content) {
+    this(seqNum, electionTerm, content, 0);
+  }
+
+  /**
+   * @param contentCrc CRC of the serialized content, as computed by {@link EntryEncodingUtil#computeCrc};
+   *                   or 0 if it is not known, in which case it is computed when needed.
+   */
+  public OLogEntry(long seqNum, long electionTerm, OLogContent content, long contentCrc) {
     super(seqNum);
 
     assert content != null;
 
     this.electionTerm = electionTerm;
     this.content = content;
+    this.contentCrc = contentCrc;
   }
 
   public long getElectionTerm() {
@@ -73,13 +90,20 @@ public final class OLogEntry extends SequentialEntry {
     return content.getType();
   }
 
+  /**
+   * Return the length in bytes of this entry's serialized content, excluding any header or CRC.
+   */
+  public int getContentLength() {
+    return sumRemaining(content.serialize());
+  }
+
   public LogEntry toProtostuff() {
     switch (content.getType()) {
       case DATA:
-        return new LogEntry(electionTerm, seqNum, ((OLogRawDataContent) content).getRawData(), null);
+        return new LogEntry(electionTerm, seqNum, ((OLogRawDataContent) content).getRawData(), null, contentCrc);
       case QUORUM_CONFIGURATION:
         return new LogEntry(electionTerm, seqNum, new ArrayList<>(),
-            (QuorumConfigurationMessage) ((OLogProtostuffContent) content).getMessage());
+            (QuorumConfigurationMessage) ((OLogProtostuffContent) content).getMessage(), contentCrc);
     }
 
     throw new RuntimeException("OLogEntry#toProtostuff");
@@ -93,7 +117,7 @@ public final class OLogEntry extends SequentialEntry {
       content = new OLogRawDataContent(entry.getDataList());
     }
 
-    return new OLogEntry(entry.getIndex(), entry.getTerm(), content);
+    return new OLogEntry(entry.getIndex(), entry.getTerm(), content, entry.getContentCrc());
   }
 
   @Override
@@ -135,7 +159,7 @@ public final class OLogEntry extends SequentialEntry {
         final OLogEntryHeader header = createHeader(entry, contentLength);
 
         final List<ByteBuffer> entryBufs = encodeWithLengthAndCrc(SCHEMA, header);
-        entryBufs.addAll(appendCrcToBufferList(contentBufs));
+        entryBufs.addAll(appendCrcToBufferList(contentBufs, contentCrcOf(entry, contentBufs)));
 
         return Iterables.toArray(entryBufs, ByteBuffer.class);
       } catch (IOException e) {
@@ -146,12 +170,13 @@ public final class OLogEntry extends SequentialEntry {
     @Override
     public OLogEntry decode(InputStream inputStream) throws IOException, CrcError {
       final OLogEntryHeader header = decodeAndCheckCrc(inputStream, SCHEMA);
-      final ByteBuffer contentBuf = getAndCheckContent(inputStream, header.getContentLength());
+      final CheckedContent content = getAndCheckContentWithCrc(inputStream, header.getContentLength());
 
       return new OLogEntry(
           header.getSeqNum(),
           header.getTerm(),
-          OLogContent.deserialize(contentBuf, header.getType()));
+          OLogContent.deserialize(content.content, header.getType()),
+          content.crc);
     }
 
     @Override
@@ -171,6 +196,14 @@ public final class OLogEntry extends SequentialEntry {
       skip(inputStream, IntMath.checkedAdd(contentLength, CRC_BYTES));
     }
 
+    private static long contentCrcOf(OLogEntry entry, List<ByteBuffer> contentBufs) {
+      if (entry.contentCrc != 0) {
+        return entry.contentCrc;
+      } else {
+        return computeCrc(contentBufs);
+      }
+    }
+
     private static OLogEntryHeader createHeader(OLogEntry entry, int contentLength) {
       return new OLogEntryHeader(
           entry.getSeqNum(),
@@ -17,6 +17,9 @@
 package c5db.log;
 
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
+
+import java.util.List;
 
 /**
  * Keeps track of, and provides answers about, logged OLogEntries.
@@ -65,6 +68,17 @@ public interface OLogEntryOracle {
    */
   long getTermAtSeqNum(long seqNum);
 
+  /**
+   * Divide the sequence numbers from firstSeqNum through lastSeqNum, inclusive, into runs of
+   * consecutive sequence numbers having the same term, as getTermAtSeqNum would report it for
+   * each. This should take time proportional to the number of runs, not the length of the range.
+   *
+   * @param firstSeqNum First sequence number of the range
+   * @param lastSeqNum  Last sequence number of the range, inclusive
+   * @return The runs, in ascending order; or an empty list if lastSeqNum is less than firstSeqNum.
+   */
+  List<TermRun> getTermRuns(long firstSeqNum, long lastSeqNum);
+
   /**
    * Get the last quorum configuration, together with the sequence number at which it was
    * established. If there is none, return the empty quorum configuration and a seqNum
@@ -20,6 +20,8 @@ import c5db.log.generated.OLogContentType;
 import com.google.common.collect.Lists;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -37,11 +39,11 @@ public final class OLogRawDataContent extends OLogContent {
   }
 
   public List<ByteBuffer> getRawData() {
-    return rawData;
+    return duplicateAll(rawData);
   }
 
   public List<ByteBuffer> serialize() {
-    return rawData;
+    return duplicateAll(rawData);
   }
 
   public static OLogContent deserialize(ByteBuffer buffer) {
@@ -74,7 +76,27 @@ public final class OLogRawDataContent extends OLogContent {
   }
 
 
+  /**
+   * Slice each buffer once, up front. (A lazily transformed view would slice again on every access,
+   * and the content is accessed each time it's measured or serialized.)
+   */
   private static List<ByteBuffer> sliceAll(List<ByteBuffer> buffers) {
-    return Lists.transform(buffers, ByteBuffer::slice);
+    final List<ByteBuffer> slices = new ArrayList<>(buffers.size());
+    for (ByteBuffer buffer : buffers) {
+      slices.add(buffer.slice());
+    }
+    return Collections.unmodifiableList(slices);
+  }
+
+  /**
+   * Give each caller buffers of its own, sharing the data, so that reading them, e.g. to write them
+   * to a log, does not move the positions of the buffers this content holds.
+   */
+  private static List<ByteBuffer> duplicateAll(List<ByteBuffer> buffers) {
+    final List<ByteBuffer> duplicates = new ArrayList<>(buffers.size());
+    for (ByteBuffer buffer : buffers) {
+      duplicates.add(buffer.duplicate());
+    }
+    return duplicates;
   }
 }
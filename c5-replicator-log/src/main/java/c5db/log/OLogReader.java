@@ -65,7 +65,7 @@ public class OLogReader<E extends SequentialEntry> implements Reader<E> {
             BytePersistence persistence = persistenceSupplier.get();
             PersistenceNavigator navigator =
                 SequentialLogWithHeader.createNavigatorFromPersistence(persistence, navigatorFactory, codec);
-            return new EncodedSequentialEntryIterator<>(navigator, codec);
+            return new EncodedSequentialEntryIterator<>(navigator.getStreamAtFirstEntry(), codec);
           });
     }
 
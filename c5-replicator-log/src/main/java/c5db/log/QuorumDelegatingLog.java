@@ -18,16 +18,20 @@ package c5db.log;
 
 import c5db.LogConstants;
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
 import c5db.log.generated.OLogHeader;
+import c5db.util.ByteBudget;
 import c5db.util.C5Iterators;
 import c5db.util.CheckedSupplier;
 import c5db.util.KeySerializingExecutor;
+import c5db.util.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -37,10 +41,15 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import static c5db.interfaces.log.SequentialEntryIterable.SequentialEntryIterator;
+import static c5db.log.LogMetrics.QuorumLogMetrics;
 import static c5db.log.LogPersistenceService.BytePersistence;
 import static c5db.log.LogPersistenceService.PersistenceNavigatorFactory;
 import static c5db.log.OLogEntryOracle.OLogEntryOracleFactory;
@@ -56,11 +65,23 @@ import static c5db.log.SequentialLog.LogEntryNotInSequence;
  * to work.
  * <p>
  * Each quorum's log record is a sequence of SequentialLogs, each based on its own persistence (e.g.,
- * a file) served from the LogPersistenceService injected on creation.
+ * a file) served from the LogPersistenceService injected on creation. A retrieval spanning more than
+ * one of these logs reads only the logs overlapping the requested range, and reads them in parallel
+ * using the (optional) segment read executor.
+ * <p>
+ * The content of entries which have been submitted for logging, but not yet written and synced, is
+ * accounted for in a ByteBudget, which may be shared with other users of memory on the same node.
+ * <p>
+ * Given a MetricRegistry, the log records the bytes it appends, write and sync latencies, the time
+ * tasks wait on the executor, the number of data stores, and the time taken to open (recover) each
+ * quorum's log record.
  */
 public class QuorumDelegatingLog implements OLog, AutoCloseable {
   private final LogPersistenceService<?> persistenceService;
   private final KeySerializingExecutor taskExecutor;
+  private final ListeningExecutorService segmentReadExecutor;
+  private final ByteBudget byteBudget;
+  private final LogMetrics metrics;
   private final Map<String, PerQuorum> quorumMap = new ConcurrentHashMap<>();
 
   private final OLogEntryOracleFactory OLogEntryOracleFactory;
@@ -71,8 +92,51 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
                              OLogEntryOracleFactory OLogEntryOracleFactory,
                              PersistenceNavigatorFactory persistenceNavigatorFactory
   ) {
-    this.persistenceService = persistenceService;
+    this(persistenceService, taskExecutor, OLogEntryOracleFactory, persistenceNavigatorFactory,
+        MoreExecutors.sameThreadExecutor(), ByteBudget.unlimited());
+  }
+
+  /**
+   * @param segmentReadExecutor Executor used to read from several of a quorum's logs at once, when
+   *                            a retrieval spans more than one of them. It must not be the same
+   *                            executor that underlies taskExecutor, because tasks running on
+   *                            taskExecutor wait for these reads to complete.
+   * @param byteBudget          Budget in which to account for entries awaiting persistence. The log
+   *                            never refuses entries on account of the budget, but entries it holds
+   *                            count against the budget for its other users.
+   */
+  public QuorumDelegatingLog(LogPersistenceService<?> persistenceService,
+                             KeySerializingExecutor taskExecutor,
+                             OLogEntryOracleFactory OLogEntryOracleFactory,
+                             PersistenceNavigatorFactory persistenceNavigatorFactory,
+                             ListeningExecutorService segmentReadExecutor,
+                             ByteBudget byteBudget
+  ) {
+    this(persistenceService, taskExecutor, OLogEntryOracleFactory, persistenceNavigatorFactory,
+        segmentReadExecutor, byteBudget, MetricRegistry.NO_OP, "none");
+  }
+
+  /**
+   * @param metricRegistry Registry into which to record measurements of the log's I/O.
+   * @param deviceName     Name of the device holding the data stores served by persistenceService;
+   *                       measurements are aggregated for each device as well as for each quorum.
+   */
+  public QuorumDelegatingLog(LogPersistenceService<?> persistenceService,
+                             KeySerializingExecutor taskExecutor,
+                             OLogEntryOracleFactory OLogEntryOracleFactory,
+                             PersistenceNavigatorFactory persistenceNavigatorFactory,
+                             ListeningExecutorService segmentReadExecutor,
+                             ByteBudget byteBudget,
+                             MetricRegistry metricRegistry,
+                             String deviceName
+  ) {
+    this.metrics = new LogMetrics(metricRegistry, deviceName);
+    this.persistenceService = metrics.isEnabled()
+        ? InstrumentedLogPersistenceService.decorate(persistenceService, metrics)
+        : persistenceService;
     this.taskExecutor = taskExecutor;
+    this.segmentReadExecutor = segmentReadExecutor;
+    this.byteBudget = byteBudget;
     this.OLogEntryOracleFactory = OLogEntryOracleFactory;
     this.persistenceNavigatorFactory = persistenceNavigatorFactory;
   }
@@ -93,11 +157,17 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     getQuorumStructure(quorumId).ensureEntriesAreConsecutive(entries);
     updateOracleWithNewEntries(entries, quorumId);
 
-    return submitQuorumTask(quorumId, () -> {
+    final long contentLength = totalContentLength(entries);
+    byteBudget.forceAcquire(contentLength);
+
+    final ListenableFuture<Boolean> writeFuture = submitQuorumTask(quorumId, () -> {
       currentLog(quorumId).append(entries);
       maybeSyncLogForQuorum(quorumId);
       return true;
     });
+
+    writeFuture.addListener(() -> byteBudget.release(contentLength), MoreExecutors.sameThreadExecutor());
+    return writeFuture;
   }
 
   @Override
@@ -117,6 +187,17 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     });
   }
 
+  @Override
+  public ListenableFuture<List<OLogEntry>> getLogEntries(long start, long end, long maxBytes, String quorumId) {
+    if (end < start) {
+      throw new IllegalArgumentException("getLogEntries: end < start");
+    } else if (end == start) {
+      return Futures.immediateFuture(new ArrayList<>());
+    }
+
+    return submitQuorumTask(quorumId, () -> boundedGet(start, end, maxBytes, quorumId));
+  }
+
   @Override
   public ListenableFuture<Boolean> truncateLog(long seqNum, String quorumId) {
     getQuorumStructure(quorumId).setExpectedNextSequenceNumber(seqNum);
@@ -133,6 +214,28 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     });
   }
 
+  @Override
+  public ListenableFuture<Boolean> resetLog(long baseSeqNum, long baseTerm, QuorumConfiguration baseConfiguration,
+                                            String quorumId) {
+    final PerQuorum quorumStructure = getQuorumStructure(quorumId);
+    final OLogHeader newLogHeader = new OLogHeader(baseTerm, baseSeqNum, baseConfiguration.toProtostuff());
+
+    quorumStructure.setExpectedNextSequenceNumber(baseSeqNum + 1);
+    quorumStructure.setFirstSequenceNumber(baseSeqNum + 1);
+    oLogEntryOracle(quorumId).notifyTruncation(0);
+    oLogEntryOracle(quorumId).notifyLogging(headerEntry(newLogHeader));
+
+    return submitQuorumTask(quorumId, () -> {
+      quorumStructure.reset(newLogHeader);
+      return true;
+    });
+  }
+
+  @Override
+  public long getFirstSeqNum(String quorumId) {
+    return getQuorumStructure(quorumId).getFirstSequenceNumber();
+  }
+
   @Override
   public long getNextSeqNum(String quorumId) {
     return getQuorumStructure(quorumId).getExpectedNextSequenceNumber();
@@ -148,6 +251,11 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     return oLogEntryOracle(quorumId).getTermAtSeqNum(seqNum);
   }
 
+  @Override
+  public List<TermRun> getTermRuns(long firstSeqNum, long lastSeqNum, String quorumId) {
+    return oLogEntryOracle(quorumId).getTermRuns(firstSeqNum, lastSeqNum);
+  }
+
   @Override
   public QuorumConfigurationWithSeqNum getLastQuorumConfig(String quorumId) {
     return oLogEntryOracle(quorumId).getLastQuorumConfig();
@@ -167,6 +275,7 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
   public void close() throws IOException {
     try {
       taskExecutor.shutdownAndAwaitTermination(LogConstants.LOG_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      segmentReadExecutor.shutdown();
     } catch (InterruptedException | TimeoutException e) {
       throw new RuntimeException(e);
     }
@@ -183,6 +292,11 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
    * opened, it loads the current such object, if there is one, or else is creates a new
    * one. Additional objects are only loaded or created as necessary.
    * <p>
+   * Loaded objects are kept in logDeque, most recent first, and are also indexed by the base
+   * seqNum of their header, so that the logs containing a given range of entries can be found
+   * without reading any of the others. Older objects are loaded at the tail of logDeque; so, at
+   * any time, logDeque holds some number of the most recent objects in the persistence list.
+   * <p>
    * TODO This could use more clarity about its concurrency safety; perhaps methods which
    * TODO  must be called synchronously by the user of the QuorumDelegatingLog should be
    * TODO  broken out into their own class?
@@ -190,20 +304,34 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
   private class PerQuorum {
     private final String quorumId;
     private final Deque<SequentialLogWithHeader> logDeque = new LinkedList<>();
+    private final NavigableMap<Long, SequentialLogWithHeader> logsByBaseSeqNum = new TreeMap<>();
+    private final QuorumLogMetrics quorumMetrics;
 
     /**
      * These fields may only be accessed synchronously with the caller of the QuorumDelegatingLog
      * public methods; in other words, they may not be accessed from an executing task.
      */
     private volatile long expectedNextSequenceNumber = 1;
+    private volatile long firstSequenceNumber = 1;
     public final OLogEntryOracle oLogEntryOracle = OLogEntryOracleFactory.create();
 
     public PerQuorum(String quorumId) {
       this.quorumId = quorumId;
+      this.quorumMetrics = metrics.forQuorum(quorumId);
     }
 
     public void open() throws IOException {
+      final long startNanos = LogMetrics.nanoTime();
+      if (metrics.isEnabled()) {
+        // Count the data stores which already exist; one created by loading is counted as it's created.
+        quorumMetrics.segments.add(persistenceService.getList(quorumId).size());
+      }
       loadCurrentOrNewLog();
+      setFirstSequenceNumber(oldestBaseSeqNum() + 1);
+
+      if (metrics.isEnabled()) {
+        quorumMetrics.recoveryMillis.record(TimeUnit.NANOSECONDS.toMillis(LogMetrics.nanoTime() - startNanos));
+      }
     }
 
     public void ensureEntriesAreConsecutive(List<OLogEntry> entries) {
@@ -225,6 +353,14 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
       return expectedNextSequenceNumber;
     }
 
+    public void setFirstSequenceNumber(long seqNum) {
+      firstSequenceNumber = seqNum;
+    }
+
+    public long getFirstSequenceNumber() {
+      return Math.min(firstSequenceNumber, expectedNextSequenceNumber);
+    }
+
     @NotNull
     public SequentialLogWithHeader currentLogWithHeader() throws IOException {
       if (logDeque.isEmpty()) {
@@ -237,29 +373,54 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
       SequentialLogWithHeader newLog = SequentialLogWithHeader.writeNewLog(persistenceService,
           persistenceNavigatorFactory, newLogHeader, quorumId);
       logDeque.push(newLog);
+      logsByBaseSeqNum.put(baseSeqNum(newLog), newLog);
+      quorumMetrics.segments.increment();
     }
 
     public void deleteCurrentLog() throws IOException {
       persistenceService.truncate(quorumId);
-      logDeque.pop();
+      quorumMetrics.segments.decrement();
+      SequentialLogWithHeader deletedLog = logDeque.pop();
+      logsByBaseSeqNum.remove(baseSeqNum(deletedLog), deletedLog);
+
+      // A log rolled before anything was appended to it shares its base seqNum with the next log
+      SequentialLogWithHeader nextLog = logDeque.peek();
+      if (nextLog != null) {
+        logsByBaseSeqNum.putIfAbsent(baseSeqNum(nextLog), nextLog);
+      }
+    }
+
+    /**
+     * Delete every one of the quorum's persistence objects, and begin a new log with the given header.
+     */
+    public void reset(OLogHeader newLogHeader) throws IOException {
+      close();
+      logDeque.clear();
+      logsByBaseSeqNum.clear();
+
+      final int persistenceCount = persistenceService.getList(quorumId).size();
+      for (int i = 0; i < persistenceCount; i++) {
+        persistenceService.truncate(quorumId);
+      }
+      quorumMetrics.segments.add(-persistenceCount);
+
+      roll(newLogHeader);
     }
 
-    public Iterator<SequentialLogWithHeader> getLogIterator() throws IOException {
-      final Iterator<SequentialLogWithHeader> dequeIterator = logDeque.iterator();
-      final int dequeSize = logDeque.size();
+    /**
+     * Find the logs containing any of the entries in the range [start, end), and return them
+     * in ascending seqNum order. Logs not already loaded are loaded, most recent first, only
+     * as far back as necessary to find start.
+     */
+    public List<SequentialLogWithHeader> logsOverlapping(long start, long end) throws IOException, LogEntryNotFound {
+      loadLogsBackTo(start);
+
+      final Long firstBaseSeqNum = logsByBaseSeqNum.floorKey(start - 1);
+      if (firstBaseSeqNum == null) {
+        throw new LogEntryNotFound("Unable to locate a log containing the requested entries");
+      }
 
-      // First return the log(s) already in memory, then read additional logs from the persistence.
-      return Iterators.concat(
-          dequeIterator,
-          Iterators.transform(C5Iterators.advanced(persistenceService.getList(quorumId).iterator(), dequeSize),
-              (persistenceSupplier) -> {
-                try {
-                  return SequentialLogWithHeader.readLogFromPersistence(persistenceSupplier.get(),
-                      persistenceNavigatorFactory);
-                } catch (IOException e) {
-                  throw new IteratorIOException(e);
-                }
-              }));
+      return new ArrayList<>(logsByBaseSeqNum.subMap(firstBaseSeqNum, true, end - 1, false).values());
     }
 
     public void close() throws IOException {
@@ -276,21 +437,62 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
       if (persistence == null) {
         logWithHeader = SequentialLogWithHeader.writeNewLog(persistenceService, persistenceNavigatorFactory,
             newQuorumHeader(), quorumId);
+        quorumMetrics.segments.increment();
       } else {
         logWithHeader = SequentialLogWithHeader.readLogFromPersistence(persistence, persistenceNavigatorFactory);
       }
 
       logDeque.push(logWithHeader);
+      logsByBaseSeqNum.put(baseSeqNum(logWithHeader), logWithHeader);
       prepareLogOracle(logWithHeader);
       increaseExpectedNextSeqNumTo(oLogEntryOracle.getGreatestSeqNum() + 1);
     }
 
+    private void loadLogsBackTo(long seqNum) throws IOException {
+      if (!seqNumPrecedesLog(seqNum, oldestLoadedLog())) {
+        return;
+      }
+
+      final Iterator<? extends CheckedSupplier<? extends BytePersistence, IOException>> unloadedPersistenceIterator =
+          C5Iterators.advanced(persistenceService.getList(quorumId).iterator(), logDeque.size());
+
+      while (seqNumPrecedesLog(seqNum, oldestLoadedLog()) && unloadedPersistenceIterator.hasNext()) {
+        final SequentialLogWithHeader olderLog = SequentialLogWithHeader.readLogFromPersistence(
+            unloadedPersistenceIterator.next().get(), persistenceNavigatorFactory);
+        logDeque.addLast(olderLog);
+        logsByBaseSeqNum.putIfAbsent(baseSeqNum(olderLog), olderLog);
+      }
+    }
+
+    /**
+     * Find the base seqNum of the oldest of the quorum's logs, reading only its header if it is not loaded.
+     */
+    private long oldestBaseSeqNum() throws IOException {
+      final List<? extends CheckedSupplier<? extends BytePersistence, IOException>> persistenceList =
+          persistenceService.getList(quorumId);
+
+      if (persistenceList.size() <= logDeque.size()) {
+        return baseSeqNum(oldestLoadedLog());
+      }
+
+      try (BytePersistence oldestPersistence = Iterables.getLast(persistenceList).get()) {
+        return SequentialLogWithHeader.readHeaderFromPersistence(oldestPersistence).getBaseSeqNum();
+      }
+    }
+
+    @NotNull
+    private SequentialLogWithHeader oldestLoadedLog() throws IOException {
+      if (logDeque.isEmpty()) {
+        loadCurrentOrNewLog();
+      }
+      return logDeque.peekLast();
+    }
+
     private void prepareLogOracle(SequentialLogWithHeader logWithHeader) throws IOException {
       SequentialLog<OLogEntry> log = logWithHeader.log;
       final OLogHeader header = logWithHeader.header;
 
-      oLogEntryOracle.notifyLogging(new OLogEntry(header.getBaseSeqNum(), header.getBaseTerm(),
-          new OLogProtostuffContent<>(header.getBaseConfiguration())));
+      oLogEntryOracle.notifyLogging(headerEntry(header));
       // TODO it isn't necessary to read the content of every entry; only those which refer to configurations.
       // TODO Also should the navigator be updated on the last entry?
       log.forEach(oLogEntryOracle::notifyLogging);
@@ -303,15 +505,6 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     }
   }
 
-  /**
-   * Exception thrown if an IOException occurs during
-   */
-  class IteratorIOException extends RuntimeException {
-    public IteratorIOException(Throwable cause) {
-      super(cause);
-    }
-  }
-
   private List<OLogEntry> validateAndMakeDefensiveCopy(List<OLogEntry> entries) {
     if (entries.isEmpty()) {
       throw new IllegalArgumentException("Attempting to log an empty entry list");
@@ -320,28 +513,59 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     return ImmutableList.copyOf(entries);
   }
 
-  private List<OLogEntry> multiLogGet(long start, long end, String quorumId)
-      throws IOException, LogEntryNotFound, LogEntryNotInSequence {
-    final Iterator<SequentialLogWithHeader> logIterator = getQuorumStructure(quorumId).getLogIterator();
-    final Deque<List<OLogEntry>> entries = new LinkedList<>();
+  private List<OLogEntry> multiLogGet(long start, long end, String quorumId) throws Exception {
+    final List<SequentialLogWithHeader> logs = getQuorumStructure(quorumId).logsOverlapping(start, end);
+    final List<ListenableFuture<List<OLogEntry>>> subSequenceFutures = new ArrayList<>(logs.size());
 
-    long remainingEnd = end;
+    for (int i = 0; i < logs.size(); i++) {
+      final SequentialLogWithHeader logWithHeader = logs.get(i);
+      final long rangeStart = Math.max(start, baseSeqNum(logWithHeader) + 1);
+      final long rangeEnd = (i + 1 < logs.size()) ? Math.min(end, baseSeqNum(logs.get(i + 1)) + 1) : end;
 
-    while (remainingEnd > start) {
-      if (!logIterator.hasNext()) {
-        throw new LogEntryNotFound("Unable to locate a log containing the requested entries");
-      }
+      subSequenceFutures.add(
+          segmentReadExecutor.submit(() -> logWithHeader.log.subSequence(rangeStart, rangeEnd)));
+    }
 
-      SequentialLogWithHeader logWithHeader = logIterator.next();
-      long firstSeqNumInLog = logWithHeader.header.getBaseSeqNum() + 1;
+    try {
+      return Lists.newArrayList(Iterables.concat(Futures.allAsList(subSequenceFutures).get()));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
 
-      if (remainingEnd > firstSeqNumInLog) {
-        entries.push(logWithHeader.log.subSequence(Math.max(firstSeqNumInLog, start), remainingEnd));
-        remainingEnd = firstSeqNumInLog;
+  private List<OLogEntry> boundedGet(long start, long end, long maxBytes, String quorumId)
+      throws IOException, LogEntryNotFound, LogEntryNotInSequence {
+    final List<OLogEntry> entries = new ArrayList<>();
+    long nextSeqNum = start;
+    long remainingBytes = maxBytes;
+
+    for (SequentialLogWithHeader logWithHeader : getQuorumStructure(quorumId).logsOverlapping(start, end)) {
+      try (SequentialEntryIterator<OLogEntry> iterator = logWithHeader.log.iterator(nextSeqNum)) {
+        while (nextSeqNum < end && iterator.hasNext()) {
+          final OLogEntry entry = iterator.next();
+          if (entry.getSeqNum() != nextSeqNum) {
+            throw new LogEntryNotInSequence("Expected seqNum " + nextSeqNum + " but read " + entry.getSeqNum());
+          }
+
+          remainingBytes -= entry.getContentLength();
+          if (remainingBytes < 0 && !entries.isEmpty()) {
+            return entries;
+          }
+
+          entries.add(entry);
+          nextSeqNum++;
+        }
       }
     }
 
-    return Lists.newArrayList(Iterables.concat(entries));
+    if (nextSeqNum < end) {
+      throw new LogEntryNotFound("Unable to locate all requested entries: seqNum range ["
+          + start + ", " + end + ")");
+    }
+    return entries;
   }
 
   private void maybeSyncLogForQuorum(String quorumId) throws IOException {
@@ -381,12 +605,32 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
     return new OLogHeader(baseTerm, baseSeqNum, baseConfiguration.toProtostuff());
   }
 
+  /**
+   * An entry conveying a header's base term and configuration, for the oracle's benefit.
+   */
+  private static OLogEntry headerEntry(OLogHeader header) {
+    return new OLogEntry(header.getBaseSeqNum(), header.getBaseTerm(),
+        new OLogProtostuffContent<>(header.getBaseConfiguration()));
+  }
+
   private OLogHeader newQuorumHeader() {
     return new OLogHeader(0, 0, QuorumConfiguration.EMPTY.toProtostuff());
   }
 
   private boolean seqNumPrecedesLog(long seqNum, @NotNull SequentialLogWithHeader logWithHeader) {
-    return seqNum <= logWithHeader.header.getBaseSeqNum();
+    return seqNum <= baseSeqNum(logWithHeader);
+  }
+
+  private static long totalContentLength(List<OLogEntry> entries) {
+    long length = 0;
+    for (OLogEntry entry : entries) {
+      length += entry.getContentLength();
+    }
+    return length;
+  }
+
+  private static long baseSeqNum(SequentialLogWithHeader logWithHeader) {
+    return logWithHeader.header.getBaseSeqNum();
   }
 
   private void quorumNotOpen(String quorumId) {
@@ -394,6 +638,15 @@ public class QuorumDelegatingLog implements OLog, AutoCloseable {
   }
 
   private <T> ListenableFuture<T> submitQuorumTask(String quorumId, CheckedSupplier<T, Exception> task) {
-    return taskExecutor.submit(quorumId, task);
+    if (!metrics.isEnabled()) {
+      return taskExecutor.submit(quorumId, task);
+    }
+
+    final QuorumLogMetrics quorumMetrics = getQuorumStructure(quorumId).quorumMetrics;
+    final long submitNanos = LogMetrics.nanoTime();
+    return taskExecutor.submit(quorumId, () -> {
+      quorumMetrics.taskQueueWaitMicros.record(LogMetrics.microsSince(submitNanos));
+      return task.get();
+    });
   }
 }
@@ -54,6 +54,17 @@ public interface SequentialLog<E extends SequentialEntry> extends AutoCloseable,
    */
   List<E> subSequence(long start, long end) throws IOException, LogEntryNotFound, LogEntryNotInSequence;
 
+  /**
+   * Return an iterator over the entries of the log, beginning with the entry with the given sequence
+   * number and continuing to the end of the log. Entries are only read from the log as the iterator
+   * is advanced. The caller takes responsibility for closing the iterator.
+   *
+   * @param start The sequence number of the first entry to iterate over.
+   * @return A new iterator.
+   * @throws IOException, LogEntryNotFound
+   */
+  SequentialEntryIterator<E> iterator(long start) throws IOException, LogEntryNotFound;
+
   /**
    * Return true if the log contains no entries.
    *
@@ -69,10 +69,21 @@ class SequentialLogWithHeader {
                                                                PersistenceNavigatorFactory navigatorFactory)
       throws IOException {
 
-    HeaderWithSize headerWithSize = readHeaderFromPersistence(persistence);
+    HeaderWithSize headerWithSize = readHeaderWithSizeFromPersistence(persistence);
     return create(persistence, navigatorFactory, headerWithSize);
   }
 
+  /**
+   * Read only the header from a preexisting BytePersistence, checking its CRC.
+   *
+   * @param persistence A BytePersistence representing an existing log
+   * @return The OLogHeader at the start of the persistence
+   * @throws java.io.IOException
+   */
+  public static OLogHeader readHeaderFromPersistence(BytePersistence persistence) throws IOException {
+    return readHeaderWithSizeFromPersistence(persistence).header;
+  }
+
   /**
    * Create a new log and header and write them to a new persistence. The header corresponds to the
    * current position and state of the current log (if there is one).
@@ -89,8 +100,14 @@ class SequentialLogWithHeader {
       OLogHeader header, String quorumId) throws IOException {
 
     final P persistence = persistenceService.create(quorumId);
-    HeaderWithSize headerWithSize = writeHeaderToPersistence(persistence, header);
-    persistenceService.append(quorumId, persistence);
+    final HeaderWithSize headerWithSize;
+    try {
+      headerWithSize = writeHeaderToPersistence(persistence, header);
+      persistenceService.append(quorumId, persistence);
+    } catch (IOException | RuntimeException e) {
+      persistence.close();
+      throw e;
+    }
 
     return create(persistence, navigatorFactory, headerWithSize);
   }
@@ -110,7 +127,7 @@ class SequentialLogWithHeader {
                                                                     SequentialEntryCodec<?> entryCodec)
       throws IOException {
 
-    HeaderWithSize headerWithSize = readHeaderFromPersistence(persistence);
+    HeaderWithSize headerWithSize = readHeaderWithSizeFromPersistence(persistence);
 
     return createNavigatorForHeader(persistence, navigatorFactory, entryCodec, headerWithSize);
   }
@@ -140,7 +157,7 @@ class SequentialLogWithHeader {
     return new SequentialLogWithHeader(log, headerWithSize.header);
   }
 
-  private static HeaderWithSize readHeaderFromPersistence(BytePersistence persistence) throws IOException {
+  private static HeaderWithSize readHeaderWithSizeFromPersistence(BytePersistence persistence) throws IOException {
 
     try (CountingInputStream input = getCountingInputStream(persistence.getReader())) {
       final OLogHeader header = decodeAndCheckCrc(input, HEADER_SCHEMA);
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.util.WrappingKeySerializingExecutor;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static c5db.FutureMatchers.resultsIn;
+import static c5db.log.LogMatchers.aListOfEntriesWithConsecutiveSeqNums;
+import static c5db.log.LogPersistenceService.BytePersistence;
+import static c5db.log.LogPersistenceService.PersistenceReader;
+import static c5db.log.LogTestUtil.someConsecutiveEntries;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class InMemoryLogPersistenceServiceTest {
+  private static final String QUORUM_ID = "q";
+  private static final int CHUNK_SIZE = 16;
+  private static final long MAX_ALLOCATED_BYTES = 64;
+
+  private final InMemoryLogPersistenceService persistenceService =
+      new InMemoryLogPersistenceService(CHUNK_SIZE, MAX_ALLOCATED_BYTES);
+
+  @Test
+  public void readsBackDataAppendedAcrossSeveralChunks() throws Exception {
+    try (BytePersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 25), bytesFrom(25, 40)});
+
+      assertThat(persistence.size(), is(equalTo(40L)));
+      assertThat(readAll(persistence), is(equalTo(byteArrayFrom(0, 40))));
+    }
+  }
+
+  @Test
+  public void readsFromAnArbitraryPositionSetOnTheReader() throws Exception {
+    try (BytePersistence persistence = persistenceService.create(QUORUM_ID);
+         PersistenceReader reader = persistence.getReader()) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 40)});
+
+      reader.position(14);
+      ByteBuffer readBuffer = ByteBuffer.allocate(4);
+      reader.read(readBuffer);
+
+      assertThat(readBuffer.array(), is(equalTo(byteArrayFrom(14, 18))));
+      assertThat(reader.position(), is(equalTo(18L)));
+    }
+  }
+
+  @Test
+  public void truncatesDataAndReclaimsTheChunksBeyondTheNewSize() throws Exception {
+    try (BytePersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 40)});
+      assertThat(persistenceService.getAllocatedBytes(), is(equalTo(48L)));
+
+      persistence.truncate(10);
+      persistence.append(new ByteBuffer[]{bytesFrom(10, 20)});
+
+      assertThat(persistenceService.getAllocatedBytes(), is(equalTo(32L)));
+      assertThat(readAll(persistence), is(equalTo(byteArrayFrom(0, 20))));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void throwsAnExceptionIfAnAppendWouldExceedTheMaximumAllocatedMemory() throws Exception {
+    try (BytePersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 70)});
+    }
+  }
+
+  @Test
+  public void reclaimsTheMemoryOfTheCurrentDataStoreWhenItIsTruncated() throws Exception {
+    try (ChunkedBufferPersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 40)});
+      persistenceService.append(QUORUM_ID, persistence);
+    }
+
+    persistenceService.truncate(QUORUM_ID);
+
+    assertThat(persistenceService.getCurrent(QUORUM_ID), is(nullValue()));
+    assertThat(persistenceService.getAllocatedBytes(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void reclaimsTheMemoryOfADataStoreWhichIsClosedWithoutHavingBeenAppended() throws Exception {
+    try (BytePersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 40)});
+    }
+
+    assertThat(persistenceService.getAllocatedBytes(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void keepsTheDataOfAnAppendedDataStoreAfterItIsClosed() throws Exception {
+    try (ChunkedBufferPersistence persistence = persistenceService.create(QUORUM_ID)) {
+      persistence.append(new ByteBuffer[]{bytesFrom(0, 40)});
+      persistenceService.append(QUORUM_ID, persistence);
+    }
+
+    assertThat(persistenceService.getAllocatedBytes(), is(equalTo(48L)));
+    try (BytePersistence current = persistenceService.getCurrent(QUORUM_ID)) {
+      assertThat(readAll(current), is(equalTo(byteArrayFrom(0, 40))));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void listsTheDataStoresOfAQuorumWhileAnotherThreadAppendsToIt() throws Exception {
+    final int dataStores = 10000;
+    final Thread appender = new Thread(() -> {
+      try {
+        for (int i = 0; i < dataStores; i++) {
+          persistenceService.append(QUORUM_ID, persistenceService.create(QUORUM_ID));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    appender.start();
+
+    while (appender.isAlive()) {
+      persistenceService.getList(QUORUM_ID);
+    }
+
+    assertThat(persistenceService.getList(QUORUM_ID).size(), is(equalTo(dataStores)));
+  }
+
+  @Test
+  public void canServeAsThePersistenceForAQuorumDelegatingLog() throws Exception {
+    final String quorumId = "quorumId";
+    try (OLog log = new QuorumDelegatingLog(
+        new InMemoryLogPersistenceService(),
+        new WrappingKeySerializingExecutor(MoreExecutors.sameThreadExecutor()),
+        NavigableMapOLogEntryOracle::new,
+        InMemoryPersistenceNavigator::new)) {
+
+      log.openAsync(quorumId).get();
+      log.logEntries(someConsecutiveEntries(1, 6), quorumId);
+      log.roll(quorumId);
+      log.logEntries(someConsecutiveEntries(6, 11), quorumId);
+
+      assertThat(log.getLogEntries(2, 9, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(2, 9)));
+    }
+  }
+
+  private static ByteBuffer bytesFrom(int start, int end) {
+    return ByteBuffer.wrap(byteArrayFrom(start, end));
+  }
+
+  private static byte[] byteArrayFrom(int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = (byte) i;
+    }
+    return bytes;
+  }
+
+  private static byte[] readAll(BytePersistence persistence) throws Exception {
+    try (PersistenceReader reader = persistence.getReader()) {
+      ByteBuffer readBuffer = ByteBuffer.allocate((int) persistence.size() + 1);
+      while (reader.read(readBuffer) > 0) {
+        // keep reading
+      }
+      return Arrays.copyOf(readBuffer.array(), readBuffer.position());
+    }
+  }
+}
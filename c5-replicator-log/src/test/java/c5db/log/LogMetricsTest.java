@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.util.ByteBudget;
+import c5db.util.SimpleMetricRegistry;
+import c5db.util.WrappingKeySerializingExecutor;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static c5db.log.LogTestUtil.someConsecutiveEntries;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+public class LogMetricsTest {
+  private static final String QUORUM_ID = "q";
+  private static final String DEVICE_NAME = "device";
+
+  private final SimpleMetricRegistry metricRegistry = new SimpleMetricRegistry();
+  private final InMemoryLogPersistenceService persistenceService = new InMemoryLogPersistenceService();
+  private final QuorumDelegatingLog log = new QuorumDelegatingLog(
+      persistenceService,
+      new WrappingKeySerializingExecutor(MoreExecutors.sameThreadExecutor()),
+      NavigableMapOLogEntryOracle::new,
+      InMemoryPersistenceNavigator.factory(metricRegistry.histogram(LogMetrics.NAVIGATOR_SEEK_ENTRIES)),
+      MoreExecutors.sameThreadExecutor(),
+      ByteBudget.unlimited(),
+      metricRegistry,
+      DEVICE_NAME);
+
+  @Before
+  public void openTheLog() throws Exception {
+    log.openAsync(QUORUM_ID).get();
+  }
+
+  @After
+  public void closeTheLog() throws Exception {
+    log.close();
+  }
+
+  @Test
+  public void recordsTheBytesAppendedAndTheLatencyOfWritesAndSyncsPerQuorumAndPerDevice() throws Exception {
+    final long bytesRecordedBeforeLogging = quorumHistogram("appendBytes").getSum();
+    final long sizeBeforeLogging = persistenceService.getCurrent(QUORUM_ID).size();
+
+    log.logEntries(someConsecutiveEntries(1, 6), QUORUM_ID).get();
+
+    final long bytesLogged = persistenceService.getCurrent(QUORUM_ID).size() - sizeBeforeLogging;
+    assertThat(quorumHistogram("appendBytes").getSum() - bytesRecordedBeforeLogging, is(equalTo(bytesLogged)));
+    assertThat(deviceHistogram("appendBytes").getSum(), is(equalTo(quorumHistogram("appendBytes").getSum())));
+    assertThat(quorumHistogram("writeMicros").getCount(), is(greaterThan(0L)));
+    assertThat(quorumHistogram("syncMicros").getCount(), is(greaterThan(0L)));
+  }
+
+  @Test
+  public void recordsRecoveryExecutorQueueingAndTheNumberOfDataStores() throws Exception {
+    log.logEntries(someConsecutiveEntries(1, 6), QUORUM_ID);
+    log.roll(QUORUM_ID).get();
+
+    assertThat(quorumHistogram("recoveryMillis").getCount(), is(equalTo(1L)));
+    assertThat(quorumHistogram("taskQueueWaitMicros").getCount(), is(equalTo(3L)));
+    assertThat(segmentCount(metricRegistry), is(equalTo(2L)));
+  }
+
+  @Test
+  public void countsTheFirstDataStoreOfANewQuorumOnce() throws Exception {
+    assertThat(persistenceService.getList(QUORUM_ID).size(), is(equalTo(1)));
+    assertThat(segmentCount(metricRegistry), is(equalTo(1L)));
+  }
+
+  @Test
+  public void countsTheDataStoresItFindsWhenItOpensAQuorumWithAnExistingLog() throws Exception {
+    log.logEntries(someConsecutiveEntries(1, 6), QUORUM_ID);
+    log.roll(QUORUM_ID).get();
+
+    final SimpleMetricRegistry reopenedMetricRegistry = new SimpleMetricRegistry();
+    try (QuorumDelegatingLog reopenedLog = new QuorumDelegatingLog(
+        persistenceService,
+        new WrappingKeySerializingExecutor(MoreExecutors.sameThreadExecutor()),
+        NavigableMapOLogEntryOracle::new,
+        InMemoryPersistenceNavigator::new,
+        MoreExecutors.sameThreadExecutor(),
+        ByteBudget.unlimited(),
+        reopenedMetricRegistry,
+        DEVICE_NAME)) {
+      reopenedLog.openAsync(QUORUM_ID).get();
+
+      assertThat(segmentCount(reopenedMetricRegistry), is(equalTo(2L)));
+    }
+  }
+
+  @Test
+  public void recordsTheNumberOfEntriesTheNavigatorScansPerLookup() throws Exception {
+    log.logEntries(someConsecutiveEntries(1, 11), QUORUM_ID);
+    log.getLogEntries(5, 8, QUORUM_ID).get();
+
+    assertThat(metricRegistry.histogram(LogMetrics.NAVIGATOR_SEEK_ENTRIES).getMax(), is(equalTo(4L)));
+  }
+
+  private static long segmentCount(SimpleMetricRegistry registry) {
+    return registry.counter(LogMetrics.QUORUM_PREFIX + QUORUM_ID + ".segments").get();
+  }
+
+  private SimpleMetricRegistry.SimpleHistogram quorumHistogram(String measurement) {
+    return metricRegistry.histogram(LogMetrics.QUORUM_PREFIX + QUORUM_ID + "." + measurement);
+  }
+
+  private SimpleMetricRegistry.SimpleHistogram deviceHistogram(String measurement) {
+    return metricRegistry.histogram(LogMetrics.DEVICE_PREFIX + DEVICE_NAME + "." + measurement);
+  }
+}
@@ -17,6 +17,7 @@
 package c5db.log;
 
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
 import c5db.replication.ReplicatorTestUtil;
 import c5db.replication.generated.LogEntry;
 import com.google.common.collect.Lists;
@@ -27,6 +28,8 @@ import static c5db.log.OLogEntryOracle.QuorumConfigurationWithSeqNum;
 import static c5db.replication.ReplicatorTestUtil.entries;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 
 public class NavigableMapOLogEntryOracleTest {
@@ -47,6 +50,26 @@ public class NavigableMapOLogEntryOracleTest {
     assertThat(oracle.getTermAtSeqNum(10), is(equalTo(18L)));
   }
 
+  @Test
+  public void dividesARangeOfSeqNumsIntoRunsOfTheSameTerm() throws Exception {
+    havingLogged(
+        entries()
+            .term(17).seqNums(5, 6, 7)
+            .term(18).seqNums(8)
+            .term(20).seqNums(9, 10));
+
+    assertThat(oracle.getTermRuns(3, 10), contains(
+        new TermRun(3, 4, 0),
+        new TermRun(5, 7, 17),
+        new TermRun(8, 8, 18),
+        new TermRun(9, 10, 20)));
+    assertThat(oracle.getTermRuns(6, 9), contains(
+        new TermRun(6, 7, 17),
+        new TermRun(8, 8, 18),
+        new TermRun(9, 9, 20)));
+    assertThat(oracle.getTermRuns(6, 5), is(empty()));
+  }
+
   @Test
   public void handlesTruncationsAndUpdatesTermInformationAccordingly() throws Exception {
     havingLogged(
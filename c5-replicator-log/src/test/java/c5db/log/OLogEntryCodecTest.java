@@ -17,6 +17,7 @@
 package c5db.log;
 
 import c5db.interfaces.log.SequentialEntryCodec;
+import c5db.replication.generated.LogEntry;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -27,6 +28,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 
+import static c5db.log.EntryEncodingUtil.CrcError;
+import static c5db.log.EntryEncodingUtil.computeCrc;
 import static c5db.log.LogTestUtil.anOLogConfigurationEntry;
 import static c5db.log.LogTestUtil.anOLogEntry;
 import static c5db.log.LogTestUtil.makeEntry;
@@ -79,6 +82,30 @@ public class OLogEntryCodecTest {
     assertThat(reconstructedEntry, is(equalTo(configurationEntry)));
   }
 
+  @Test
+  public void carriesTheContentCrcFromTheLogToTheProtostuffEntryAndBack() throws Exception {
+    final OLogEntry entryToEncode = anOLogEntry();
+    final long contentCrc = computeCrc(entryToEncode.getContent().serialize());
+
+    havingEncodedAndWrittenEntry(entryToEncode);
+
+    final LogEntry protostuffEntry = codec.decode(readFromMe).toProtostuff();
+    assertThat(protostuffEntry.getContentCrc(), is(equalTo(contentCrc)));
+
+    havingEncodedAndWrittenEntry(OLogEntry.fromProtostuff(protostuffEntry));
+    assertThat(codec.decode(readFromMe), is(equalTo(entryToEncode)));
+  }
+
+  @Test(expected = CrcError.class)
+  public void storesTheContentCrcAnEntryCarriesRatherThanComputingItAgain() throws Exception {
+    final OLogEntry entry = anOLogEntry();
+    final long wrongCrc = computeCrc(entry.getContent().serialize()) ^ 1;
+
+    havingEncodedAndWrittenEntry(
+        new OLogEntry(entry.getSeqNum(), entry.getElectionTerm(), entry.getContent(), wrongCrc));
+
+    codec.decode(readFromMe);
+  }
 
   private static void writeBuffersToPipe(ByteBuffer[] buffers, WritableByteChannel byteChannel) throws Exception {
     for (ByteBuffer b : buffers) {
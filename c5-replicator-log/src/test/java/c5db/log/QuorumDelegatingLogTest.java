@@ -18,6 +18,7 @@ package c5db.log;
 
 import c5db.C5CommonTestUtil;
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.util.ByteBudget;
 import c5db.util.WrappingKeySerializingExecutor;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -27,14 +28,17 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static c5db.FutureMatchers.resultsIn;
 import static c5db.FutureMatchers.resultsInException;
 import static c5db.log.LogMatchers.aListOfEntriesWithConsecutiveSeqNums;
 import static c5db.log.LogTestUtil.emptyEntryList;
+import static c5db.log.LogTestUtil.makeEntry;
 import static c5db.log.LogTestUtil.makeSingleEntryList;
 import static c5db.log.LogTestUtil.someConsecutiveEntries;
 import static c5db.log.OLogEntryOracle.QuorumConfigurationWithSeqNum;
@@ -253,6 +257,82 @@ public class QuorumDelegatingLogTest {
     assertThat(log.getLogEntries(3, 15, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(3, 15)));
   }
 
+  @Test
+  public void fulfillsGetRequestsContainedWithinASingleOlderLogFile() throws Exception {
+    log.logEntries(someConsecutiveEntries(1, 6), quorumId);
+    log.roll(quorumId);
+    log.logEntries(someConsecutiveEntries(6, 11), quorumId);
+    log.roll(quorumId);
+    log.logEntries(someConsecutiveEntries(11, 16), quorumId);
+
+    assertThat(log.getLogEntries(7, 9, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(7, 9)));
+  }
+
+  @Test
+  public void fulfillsGetRequestsThatSpanMultipleLogFilesAfterTheLogIsReopened() throws Exception {
+    log.logEntries(someConsecutiveEntries(1, 6), quorumId);
+    log.roll(quorumId);
+    log.logEntries(someConsecutiveEntries(6, 11), quorumId);
+    log.roll(quorumId);
+    log.logEntries(someConsecutiveEntries(11, 16), quorumId);
+    log.close();
+
+    log = new QuorumDelegatingLog(
+        logFileService,
+        new WrappingKeySerializingExecutor(MoreExecutors.sameThreadExecutor()),
+        NavigableMapOLogEntryOracle::new,
+        InMemoryPersistenceNavigator::new,
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2)),
+        ByteBudget.unlimited());
+    log.openAsync(quorumId).get();
+
+    assertThat(log.getLogEntries(8, 13, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(8, 13)));
+    assertThat(log.getLogEntries(1, 16, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(1, 16)));
+  }
+
+  @Test
+  public void retrievesTheLongestPrefixOfTheRequestedRangeThatFitsWithinTheByteLimit() throws Exception {
+    log.logEntries(entriesWithTenBytesOfDataEach(1, 6), quorumId);
+    log.roll(quorumId);
+    log.logEntries(entriesWithTenBytesOfDataEach(6, 11), quorumId);
+
+    assertThat(log.getLogEntries(4, 11, 35, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(4, 7)));
+    assertThat(log.getLogEntries(4, 6, 35, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(4, 6)));
+  }
+
+  @Test
+  public void retrievesAtLeastOneEntryEvenIfItExceedsTheByteLimit() throws Exception {
+    log.logEntries(entriesWithTenBytesOfDataEach(1, 6), quorumId);
+
+    assertThat(log.getLogEntries(2, 6, 0, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(2, 3)));
+  }
+
+  @Test
+  public void resetsTheLogToFollowAGivenBaseAndPreservesTheResetUponReopening() throws Exception {
+    final QuorumConfiguration config = QuorumConfiguration.of(Sets.newHashSet(1L, 2L, 3L));
+    log.logEntries(entriesWithTenBytesOfDataEach(1, 6), quorumId);
+    log.roll(quorumId);
+    log.logEntries(entriesWithTenBytesOfDataEach(6, 11), quorumId);
+
+    log.resetLog(seqNum(20), term(7), config, quorumId).get();
+    log.logEntries(makeSingleEntryList(seqNum(21), term(8), "data"), quorumId);
+
+    log.close();
+    log = new QuorumDelegatingLog(
+        logFileService,
+        new WrappingKeySerializingExecutor(MoreExecutors.sameThreadExecutor()),
+        NavigableMapOLogEntryOracle::new,
+        InMemoryPersistenceNavigator::new);
+    log.openAsync(quorumId).get();
+
+    assertThat(log.getFirstSeqNum(quorumId), is(equalTo(seqNum(21))));
+    assertThat(log.getNextSeqNum(quorumId), is(equalTo(seqNum(22))));
+    assertThat(log.getLogTerm(seqNum(20), quorumId), is(equalTo(term(7))));
+    assertThat(log.getLogTerm(seqNum(10), quorumId), is(equalTo(0L)));
+    assertThat(log.getLastQuorumConfig(quorumId), is(equalTo(new QuorumConfigurationWithSeqNum(config, seqNum(20)))));
+    assertThat(log.getLogEntries(21, 22, quorumId), resultsIn(aListOfEntriesWithConsecutiveSeqNums(21, 22)));
+  }
+
   /**
    * Private methods
    */
@@ -268,6 +348,14 @@ public class QuorumDelegatingLogTest {
     return testSequenceNumber;
   }
 
+  private static List<OLogEntry> entriesWithTenBytesOfDataEach(long start, long end) {
+    List<OLogEntry> entries = Lists.newArrayList();
+    for (long seqNum = start; seqNum < end; seqNum++) {
+      entries.add(makeEntry(seqNum, term(1), ByteBuffer.allocate(10)));
+    }
+    return entries;
+  }
+
   private static List<OLogEntry> singleConfigurationEntryList(QuorumConfiguration config, long seqNum) {
     return Lists.newArrayList(
         OLogEntry.fromProtostuff(
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.protostuff.ByteString;
+import io.protostuff.Input;
+import io.protostuff.Output;
+import io.protostuff.Schema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static io.protostuff.WireFormat.WIRETYPE_END_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED32;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED64;
+import static io.protostuff.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static io.protostuff.WireFormat.WIRETYPE_START_GROUP;
+import static io.protostuff.WireFormat.WIRETYPE_VARINT;
+import static io.protostuff.WireFormat.getTagFieldNumber;
+import static io.protostuff.WireFormat.getTagWireType;
+import static io.protostuff.WireFormat.makeTag;
+
+/**
+ * Read a protostuff object, in 'protobuf' format, from a ByteBuf. Unlike ByteBufferInput, ByteBuffer-typed
+ * bytes fields (such as LogEntry data) are not copied: each is a view of the bytes in the ByteBuf. So the
+ * ByteBuf must not be released, or otherwise reused, until the object read from it is no longer needed.
+ * Other bytes fields, and strings, are copied.
+ */
+public class ByteBufInput implements Input {
+  private final ByteBuf buffer;
+  private int limit;
+  private int lastTag;
+
+  /**
+   * @param buffer The buffer to read, from its reader index to its writer index; reading advances its reader index.
+   */
+  public ByteBufInput(ByteBuf buffer) {
+    this.buffer = buffer;
+    this.limit = buffer.writerIndex();
+  }
+
+  @Override
+  public <T> void handleUnknownField(int fieldNumber, Schema<T> schema) throws IOException {
+    skipField(lastTag);
+  }
+
+  @Override
+  public <T> int readFieldNumber(Schema<T> schema) throws IOException {
+    if (buffer.readerIndex() >= limit) {
+      lastTag = 0;
+      return 0;
+    }
+
+    final int tag = readRawVarInt32();
+    final int fieldNumber = getTagFieldNumber(tag);
+    if (fieldNumber == 0) {
+      throw new IOException("ByteBufInput: protocol message contained an invalid tag (zero)");
+    }
+    lastTag = tag;
+    return fieldNumber;
+  }
+
+  @Override
+  public int readInt32() throws IOException {
+    return readRawVarInt32();
+  }
+
+  @Override
+  public int readUInt32() throws IOException {
+    return readRawVarInt32();
+  }
+
+  @Override
+  public int readSInt32() throws IOException {
+    final int value = readRawVarInt32();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public int readFixed32() throws IOException {
+    ensureReadable(4);
+    return Integer.reverseBytes(buffer.readInt());
+  }
+
+  @Override
+  public int readSFixed32() throws IOException {
+    return readFixed32();
+  }
+
+  @Override
+  public long readInt64() throws IOException {
+    return readRawVarInt64();
+  }
+
+  @Override
+  public long readUInt64() throws IOException {
+    return readRawVarInt64();
+  }
+
+  @Override
+  public long readSInt64() throws IOException {
+    final long value = readRawVarInt64();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public long readFixed64() throws IOException {
+    ensureReadable(8);
+    return Long.reverseBytes(buffer.readLong());
+  }
+
+  @Override
+  public long readSFixed64() throws IOException {
+    return readFixed64();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readFixed32());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readFixed64());
+  }
+
+  @Override
+  public boolean readBool() throws IOException {
+    return readRawVarInt32() != 0;
+  }
+
+  @Override
+  public int readEnum() throws IOException {
+    return readRawVarInt32();
+  }
+
+  @Override
+  public String readString() throws IOException {
+    final int length = readLength();
+    final String value = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);
+    buffer.skipBytes(length);
+    return value;
+  }
+
+  @Override
+  public ByteString readBytes() throws IOException {
+    return ByteString.copyFrom(readByteArray());
+  }
+
+  @Override
+  public byte[] readByteArray() throws IOException {
+    final byte[] value = new byte[readLength()];
+    buffer.readBytes(value);
+    return value;
+  }
+
+  @Override
+  public ByteBuffer readByteBuffer() throws IOException {
+    final int length = readLength();
+    final ByteBuffer value = buffer.nioBuffer(buffer.readerIndex(), length);
+    buffer.skipBytes(length);
+    return value;
+  }
+
+  @Override
+  public <T> T mergeObject(T value, Schema<T> schema) throws IOException {
+    final int length = readLength();
+    final int outerLimit = limit;
+    limit = buffer.readerIndex() + length;
+
+    final T message = value == null ? schema.newMessage() : value;
+    schema.mergeFrom(this, message);
+    if (!schema.isInitialized(message)) {
+      throw new IOException("ByteBufInput: nested message " + schema.messageFullName() + " is not initialized");
+    }
+    if (lastTag != 0) {
+      throw new IOException("ByteBufInput: nested message did not end at its expected length");
+    }
+
+    buffer.readerIndex(limit);
+    limit = outerLimit;
+    return message;
+  }
+
+  @Override
+  public void transferByteRangeTo(Output output, boolean utf8String, int fieldNumber, boolean repeated)
+      throws IOException {
+    final byte[] value = readByteArray();
+    output.writeByteRange(utf8String, fieldNumber, value, 0, value.length, repeated);
+  }
+
+  private void skipField(int tag) throws IOException {
+    switch (getTagWireType(tag)) {
+      case WIRETYPE_VARINT:
+        readRawVarInt64();
+        break;
+      case WIRETYPE_FIXED64:
+        ensureReadable(8);
+        buffer.skipBytes(8);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        buffer.skipBytes(readLength());
+        break;
+      case WIRETYPE_START_GROUP:
+        skipGroup(getTagFieldNumber(tag));
+        break;
+      case WIRETYPE_FIXED32:
+        ensureReadable(4);
+        buffer.skipBytes(4);
+        break;
+      default:
+        throw new IOException("ByteBufInput: protocol message tag had an invalid wire type: " + tag);
+    }
+  }
+
+  private void skipGroup(int fieldNumber) throws IOException {
+    while (true) {
+      if (buffer.readerIndex() >= limit) {
+        throw new IOException("ByteBufInput: group was not terminated");
+      }
+      final int tag = readRawVarInt32();
+      if (tag == makeTag(fieldNumber, WIRETYPE_END_GROUP)) {
+        return;
+      }
+      skipField(tag);
+    }
+  }
+
+  private int readLength() throws IOException {
+    final int length = readRawVarInt32();
+    if (length < 0) {
+      throw new IOException("ByteBufInput: encountered an embedded string or message which claimed to have "
+          + "a negative size");
+    }
+    ensureReadable(length);
+    return length;
+  }
+
+  private int readRawVarInt32() throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final byte b = readRawByte();
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    // A negative int32 is encoded as ten bytes, sign-extended to 64 bits; discard the upper bits.
+    for (int i = 0; i < 5; i++) {
+      if (readRawByte() >= 0) {
+        return result;
+      }
+    }
+    throw new IOException("ByteBufInput: encountered a malformed varint");
+  }
+
+  private long readRawVarInt64() throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = readRawByte();
+      result |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new IOException("ByteBufInput: encountered a malformed varint");
+  }
+
+  private byte readRawByte() throws IOException {
+    ensureReadable(1);
+    return buffer.readByte();
+  }
+
+  private void ensureReadable(int length) throws IOException {
+    if (limit - buffer.readerIndex() < length) {
+      throw new IOException("ByteBufInput: while parsing a protocol message, the input ended unexpectedly "
+          + "in the middle of a field");
+    }
+  }
+}
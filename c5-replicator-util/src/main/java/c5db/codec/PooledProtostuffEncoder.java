@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.protostuff.Message;
+
+import java.util.List;
+
+import static c5db.codec.ProtobufByteBufSerializer.DEFAULT_ZERO_COPY_THRESHOLD_BYTES;
+
+/**
+ * Serialize a protostuff object - using 'protobuf' format - preceded by its length as a varint32, directly
+ * into a pooled direct buffer (see {@link ProtobufByteBufSerializer}). It takes the place of a
+ * ProtostuffEncoder followed by a ProtobufVarint32LengthFieldPrepender, without their intermediate buffers
+ * and copying; its output can be decoded by a ProtobufVarint32FrameDecoder followed by a ProtostuffDecoder.
+ * The replication library uses this class to encode replication messages over the wire.
+ */
+public class PooledProtostuffEncoder<T extends Message<T>> extends MessageToMessageEncoder<T> {
+  private final ByteBufAllocator allocator;
+  private final int zeroCopyThreshold;
+
+  /**
+   * @param messageType The type of message to encode; other outbound messages are passed on unchanged.
+   */
+  public PooledProtostuffEncoder(Class<? extends T> messageType) {
+    this(messageType, PooledByteBufAllocator.DEFAULT, DEFAULT_ZERO_COPY_THRESHOLD_BYTES);
+  }
+
+  public PooledProtostuffEncoder(Class<? extends T> messageType, ByteBufAllocator allocator, int zeroCopyThreshold) {
+    super(messageType);
+    this.allocator = allocator;
+    this.zeroCopyThreshold = zeroCopyThreshold;
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, T msg, List<Object> out) throws Exception {
+    out.add(ProtobufByteBufSerializer.serialize(msg, msg.cachedSchema(), allocator, true, zeroCopyThreshold));
+  }
+}
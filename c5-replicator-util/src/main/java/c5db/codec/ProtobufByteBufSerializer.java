@@ -0,0 +1,424 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.EncoderException;
+import io.protostuff.ByteString;
+import io.protostuff.Output;
+import io.protostuff.Schema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.protostuff.WireFormat.WIRETYPE_FIXED32;
+import static io.protostuff.WireFormat.WIRETYPE_FIXED64;
+import static io.protostuff.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static io.protostuff.WireFormat.WIRETYPE_VARINT;
+import static io.protostuff.WireFormat.makeTag;
+
+/**
+ * Serialize a protostuff object, in 'protobuf' format, directly into a buffer obtained from a given
+ * ByteBufAllocator, optionally preceded by its length as a varint32 (the framing ProtobufVarint32FrameDecoder
+ * expects).
+ * <p>
+ * Serialization takes two passes over the object. The first computes its exact serialized size, remembering
+ * the size of each nested message along the way; so the second can write everything into a single buffer of
+ * exactly the right size, with no intermediate buffers or copies. Bytes fields whose values are at least
+ * zeroCopyThreshold bytes long, such as large LogEntry data, are not copied at all: instead the result is a
+ * composite of slices of that buffer and the values' own ByteBuffers. Those ByteBuffers must not be modified
+ * until the result has been released.
+ */
+public final class ProtobufByteBufSerializer {
+  public static final int DEFAULT_ZERO_COPY_THRESHOLD_BYTES = 1024;
+
+  private ProtobufByteBufSerializer() {
+  }
+
+  /**
+   * @param message           The object to serialize.
+   * @param schema            Its schema.
+   * @param allocator         Allocator of the (direct) buffer into which the object is written.
+   * @param lengthPrefixed    If true, precede the serialized object with its length, as a varint32.
+   * @param zeroCopyThreshold Minimum length of a bytes field's value for it to be included without copying.
+   * @return A buffer containing the serialized object; the caller is responsible for releasing it.
+   */
+  public static <T> ByteBuf serialize(T message,
+                                      Schema<T> schema,
+                                      ByteBufAllocator allocator,
+                                      boolean lengthPrefixed,
+                                      int zeroCopyThreshold) throws IOException {
+    final SizingOutput sizingOutput = new SizingOutput(zeroCopyThreshold);
+    schema.writeTo(sizingOutput, message);
+
+    final long messageSize = sizingOutput.size;
+    if (messageSize > Integer.MAX_VALUE) {
+      throw new EncoderException("Serialized form was too large, actual size: " + messageSize);
+    }
+    final int prefixSize = lengthPrefixed ? varInt32Size((int) messageSize) : 0;
+    final int copiedSize = (int) (prefixSize + messageSize - sizingOutput.zeroCopySize);
+
+    final WritingOutput writingOutput = new WritingOutput(
+        allocator.directBuffer(copiedSize, copiedSize), sizingOutput.nestedSizes, zeroCopyThreshold);
+    try {
+      if (lengthPrefixed) {
+        writingOutput.writeVarInt32((int) messageSize);
+      }
+      schema.writeTo(writingOutput, message);
+      return writingOutput.finish();
+    } catch (IOException | RuntimeException e) {
+      writingOutput.discard();
+      throw e;
+    }
+  }
+
+  static int varInt32Size(int value) {
+    if ((value & (0xffffffff << 7)) == 0) {
+      return 1;
+    } else if ((value & (0xffffffff << 14)) == 0) {
+      return 2;
+    } else if ((value & (0xffffffff << 21)) == 0) {
+      return 3;
+    } else if ((value & (0xffffffff << 28)) == 0) {
+      return 4;
+    } else {
+      return 5;
+    }
+  }
+
+  static int varInt64Size(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * The encoding of each kind of field, common to both passes, in terms of a few primitive operations.
+   */
+  private abstract static class ProtobufFieldOutput implements Output {
+    protected final int zeroCopyThreshold;
+
+    protected ProtobufFieldOutput(int zeroCopyThreshold) {
+      this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
+    abstract void writeVarInt32(int value);
+
+    abstract void writeVarInt64(long value);
+
+    abstract void writeLittleEndian32(int value);
+
+    abstract void writeLittleEndian64(long value);
+
+    abstract void writeRawBytes(byte[] value, int offset, int length);
+
+    abstract void writeRawBuffer(ByteBuffer value);
+
+    abstract <T> void writeNested(T value, Schema<T> schema) throws IOException;
+
+    @Override
+    public void writeInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      if (value >= 0) {
+        writeVarInt32(value);
+      } else {
+        // Negative values are sign-extended to 64 bits, as protobuf requires
+        writeVarInt64(value);
+      }
+    }
+
+    @Override
+    public void writeUInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      writeVarInt32(value);
+    }
+
+    @Override
+    public void writeSInt32(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      writeVarInt32((value << 1) ^ (value >> 31));
+    }
+
+    @Override
+    public void writeFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED32));
+      writeLittleEndian32(value);
+    }
+
+    @Override
+    public void writeSFixed32(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeFixed32(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      writeVarInt64(value);
+    }
+
+    @Override
+    public void writeUInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+      writeInt64(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeSInt64(int fieldNumber, long value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      writeVarInt64((value << 1) ^ (value >> 63));
+    }
+
+    @Override
+    public void writeFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_FIXED64));
+      writeLittleEndian64(value);
+    }
+
+    @Override
+    public void writeSFixed64(int fieldNumber, long value, boolean repeated) throws IOException {
+      writeFixed64(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeFloat(int fieldNumber, float value, boolean repeated) throws IOException {
+      writeFixed32(fieldNumber, Float.floatToRawIntBits(value), repeated);
+    }
+
+    @Override
+    public void writeDouble(int fieldNumber, double value, boolean repeated) throws IOException {
+      writeFixed64(fieldNumber, Double.doubleToRawLongBits(value), repeated);
+    }
+
+    @Override
+    public void writeBool(int fieldNumber, boolean value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_VARINT));
+      writeVarInt32(value ? 1 : 0);
+    }
+
+    @Override
+    public void writeEnum(int fieldNumber, int value, boolean repeated) throws IOException {
+      writeInt32(fieldNumber, value, repeated);
+    }
+
+    @Override
+    public void writeString(int fieldNumber, String value, boolean repeated) throws IOException {
+      final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      writeByteRange(true, fieldNumber, utf8, 0, utf8.length, repeated);
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteString value, boolean repeated) throws IOException {
+      writeByteArray(fieldNumber, value.toByteArray(), repeated);
+    }
+
+    @Override
+    public void writeByteArray(int fieldNumber, byte[] value, boolean repeated) throws IOException {
+      writeByteRange(false, fieldNumber, value, 0, value.length, repeated);
+    }
+
+    @Override
+    public void writeByteRange(boolean utf8String, int fieldNumber, byte[] value, int offset, int length,
+                               boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+      writeVarInt32(length);
+      writeRawBytes(value, offset, length);
+    }
+
+    @Override
+    public void writeBytes(int fieldNumber, ByteBuffer value, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+      writeVarInt32(value.remaining());
+      writeRawBuffer(value);
+    }
+
+    @Override
+    public <T> void writeObject(int fieldNumber, T value, Schema<T> schema, boolean repeated) throws IOException {
+      writeVarInt32(makeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED));
+      writeNested(value, schema);
+    }
+  }
+
+  /**
+   * First pass: compute the total size, the size of each nested message in the order they're encountered,
+   * and the total size of the values which will be included without copying.
+   */
+  private static class SizingOutput extends ProtobufFieldOutput {
+    private long size;
+    private long zeroCopySize;
+    private int[] nestedSizes = new int[8];
+    private int nestedCount;
+
+    SizingOutput(int zeroCopyThreshold) {
+      super(zeroCopyThreshold);
+    }
+
+    @Override
+    void writeVarInt32(int value) {
+      size += varInt32Size(value);
+    }
+
+    @Override
+    void writeVarInt64(long value) {
+      size += varInt64Size(value);
+    }
+
+    @Override
+    void writeLittleEndian32(int value) {
+      size += 4;
+    }
+
+    @Override
+    void writeLittleEndian64(long value) {
+      size += 8;
+    }
+
+    @Override
+    void writeRawBytes(byte[] value, int offset, int length) {
+      size += length;
+    }
+
+    @Override
+    void writeRawBuffer(ByteBuffer value) {
+      size += value.remaining();
+      if (value.remaining() >= zeroCopyThreshold) {
+        zeroCopySize += value.remaining();
+      }
+    }
+
+    @Override
+    <T> void writeNested(T value, Schema<T> schema) throws IOException {
+      if (nestedCount == nestedSizes.length) {
+        nestedSizes = Arrays.copyOf(nestedSizes, nestedCount * 2);
+      }
+      final int nestedIndex = nestedCount++;
+
+      final long outerSize = size;
+      size = 0;
+      schema.writeTo(this, value);
+      final long nestedSize = size;
+      if (nestedSize > Integer.MAX_VALUE) {
+        throw new EncoderException("Serialized form was too large, actual size: " + nestedSize);
+      }
+
+      nestedSizes[nestedIndex] = (int) nestedSize;
+      size = outerSize;
+      writeVarInt32((int) nestedSize);
+      size += nestedSize;
+    }
+  }
+
+  /**
+   * Second pass: write into a buffer sized by the first pass, setting aside a slice of it wherever a value
+   * is to be included without copying.
+   */
+  private static class WritingOutput extends ProtobufFieldOutput {
+    private final ByteBuf buffer;
+    private final int[] nestedSizes;
+    private final List<ByteBuf> components = new ArrayList<>();
+    private int nextNestedIndex;
+    private int sliceStart;
+
+    WritingOutput(ByteBuf buffer, int[] nestedSizes, int zeroCopyThreshold) {
+      super(zeroCopyThreshold);
+      this.buffer = buffer;
+      this.nestedSizes = nestedSizes;
+    }
+
+    @Override
+    void writeVarInt32(int value) {
+      while ((value & ~0x7F) != 0) {
+        buffer.writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer.writeByte(value);
+    }
+
+    @Override
+    void writeVarInt64(long value) {
+      while ((value & ~0x7FL) != 0) {
+        buffer.writeByte(((int) value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer.writeByte((int) value);
+    }
+
+    @Override
+    void writeLittleEndian32(int value) {
+      buffer.writeInt(Integer.reverseBytes(value));
+    }
+
+    @Override
+    void writeLittleEndian64(long value) {
+      buffer.writeLong(Long.reverseBytes(value));
+    }
+
+    @Override
+    void writeRawBytes(byte[] value, int offset, int length) {
+      buffer.writeBytes(value, offset, length);
+    }
+
+    @Override
+    void writeRawBuffer(ByteBuffer value) {
+      if (value.remaining() >= zeroCopyThreshold) {
+        addPendingSlice();
+        components.add(Unpooled.wrappedBuffer(value.slice()));
+      } else {
+        buffer.writeBytes(value.duplicate());
+      }
+    }
+
+    @Override
+    <T> void writeNested(T value, Schema<T> schema) throws IOException {
+      writeVarInt32(nestedSizes[nextNestedIndex++]);
+      schema.writeTo(this, value);
+    }
+
+    ByteBuf finish() {
+      if (buffer.isWritable()) {
+        throw new EncoderException("Object changed while it was being serialized");
+      }
+      if (components.isEmpty()) {
+        return buffer;
+      }
+
+      addPendingSlice();
+      buffer.release();
+      return Unpooled.wrappedBuffer(components.size(), components.toArray(new ByteBuf[components.size()]));
+    }
+
+    void discard() {
+      components.forEach(ByteBuf::release);
+      buffer.release();
+    }
+
+    private void addPendingSlice() {
+      final int sliceLength = buffer.writerIndex() - sliceStart;
+      if (sliceLength > 0) {
+        components.add(buffer.slice(sliceStart, sliceLength).retain());
+        sliceStart = buffer.writerIndex();
+      }
+    }
+  }
+}
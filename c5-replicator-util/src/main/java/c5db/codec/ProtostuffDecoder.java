@@ -28,21 +28,38 @@ import java.util.List;
 /**
  * Decode a protobuf object using the "protostuff" library.
  * The replication library uses this class to decode replication messages over the wire.
+ * <p>
+ * By default, the decoded object's bytes fields are copied out of the buffer, and the object is passed on
+ * by itself. If instead retainPayloads is set, ByteBuffer-typed bytes fields (such as LogEntry data) are
+ * views of the buffer (see {@link ByteBufInput}), and the object is passed on within a {@link RetainedMessage}
+ * holding a reference to the buffer. Whoever ends up with the RetainedMessage is responsible for releasing it,
+ * once the payloads are no longer needed.
  */
 public class ProtostuffDecoder<T extends Message<T>> extends MessageToMessageDecoder<ByteBuf> {
   final Schema<T> schema;
+  private final boolean retainPayloads;
 
   public ProtostuffDecoder(Schema<T> schema) {
+    this(schema, false);
+  }
+
+  public ProtostuffDecoder(Schema<T> schema, boolean retainPayloads) {
     this.schema = schema;
+    this.retainPayloads = retainPayloads;
   }
 
 
   @Override
   protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-    ByteBufferInput input = new ByteBufferInput(in.nioBuffer(), false);
     T newMsg = schema.newMessage();
 
-    schema.mergeFrom(input, newMsg);
-    out.add(newMsg);
+    if (retainPayloads) {
+      schema.mergeFrom(new ByteBufInput(in.duplicate()), newMsg);
+      out.add(new RetainedMessage<>(newMsg, in.retain()));
+    } else {
+      ByteBufferInput input = new ByteBufferInput(in.nioBuffer(), false);
+      schema.mergeFrom(input, newMsg);
+      out.add(newMsg);
+    }
   }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * A decoded message together with the buffer it was decoded from, which may still be referenced by the
+ * message's bytes fields (see {@link ByteBufInput}). The buffer is released when this holder's reference
+ * count reaches zero; after that, those fields must not be used.
+ *
+ * @param <T> The type of message.
+ */
+public class RetainedMessage<T> extends DefaultByteBufHolder {
+  public final T message;
+
+  public RetainedMessage(T message, ByteBuf buffer) {
+    super(buffer);
+    this.message = message;
+  }
+
+  @Override
+  public String toString() {
+    return "RetainedMessage{" +
+        "message=" + message +
+        ", buffer=" + content() +
+        '}';
+  }
+}
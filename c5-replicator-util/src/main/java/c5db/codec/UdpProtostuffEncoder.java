@@ -17,12 +17,12 @@
 package c5db.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.protostuff.LinkBuffer;
-import io.protostuff.LowCopyProtobufOutput;
 import io.protostuff.LowCopyProtostuffOutput;
 import io.protostuff.Message;
 import io.protostuff.Schema;
@@ -54,22 +54,22 @@ public class UdpProtostuffEncoder<T extends Message<T>> extends MessageToMessage
 
   @Override
   protected void encode(ChannelHandlerContext ctx, UdpProtostuffMessage<T> msg, List<Object> out) throws Exception {
-    LinkBuffer buffer = new LinkBuffer(bufferAllocSize);
+    final ByteBuf data;
     if (protostuffOutput) {
+      LinkBuffer buffer = new LinkBuffer(bufferAllocSize);
       LowCopyProtostuffOutput lcpo = new LowCopyProtostuffOutput(buffer);
       schema.writeTo(lcpo, msg.message);
+
+      List<ByteBuffer> buffers = buffer.finish();
+      data = Unpooled.wrappedBuffer(buffers.toArray(new ByteBuffer[buffers.size()]));
     } else {
-      LowCopyProtobufOutput lcpo = new LowCopyProtobufOutput(buffer);
-      schema.writeTo(lcpo, msg.message);
+      // Serialize straight into a pooled direct buffer. The packet takes ownership of it, and the
+      // channel releases the packet once it has been sent.
+      data = ProtobufByteBufSerializer.serialize(msg.message, schema, PooledByteBufAllocator.DEFAULT, false,
+          ProtobufByteBufSerializer.DEFAULT_ZERO_COPY_THRESHOLD_BYTES);
     }
 
-    List<ByteBuffer> buffers = buffer.finish();
-    ByteBuf data = Unpooled.wrappedBuffer(buffers.toArray(new ByteBuffer[buffers.size()]));
-    data.retain();
-
-    DatagramPacket dg = new DatagramPacket(data, msg.remoteAddress);
-    dg.retain();
-    out.add(dg);
+    out.add(new DatagramPacket(data, msg.remoteAddress));
   }
 
   public static class UdpProtostuffMessage<Q extends Message<Q>> {
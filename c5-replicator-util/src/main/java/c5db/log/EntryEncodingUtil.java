@@ -29,6 +29,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.zip.Adler32;
@@ -115,12 +116,39 @@ public class EntryEncodingUtil {
   public static List<ByteBuffer> appendCrcToBufferList(List<ByteBuffer> content) throws IOException {
     assert content != null;
 
-    final Adler32 crc = new Adler32();
-    content.forEach((ByteBuffer buffer) -> crc.update(buffer.duplicate()));
+    return appendCrcToBufferList(content, computeCrc(content));
+  }
+
+  /**
+   * Append a CRC already computed from the given list of ByteBuffers, as one or more additional ByteBuffers.
+   * Return the entire resulting collection as a new list, including the original ByteBuffers.
+   *
+   * @param content non-null list of ByteBuffers; no mutation will be performed on them.
+   * @param crc     CRC of the content, as computed by {@link #computeCrc}.
+   * @return New list of ByteBuffers, with the CRC appended to the original ByteBuffers
+   */
+  public static List<ByteBuffer> appendCrcToBufferList(List<ByteBuffer> content, long crc) throws IOException {
+    assert content != null;
+
+    final List<ByteBuffer> buffers = new ArrayList<>(content.size() + 1);
+    buffers.addAll(content);
     final LinkBuffer crcBuf = new LinkBuffer(8);
-    putCrc(crcBuf, crc.getValue());
+    putCrc(crcBuf, crc);
+    buffers.addAll(crcBuf.finish());
+    return buffers;
+  }
 
-    return Lists.newArrayList(Iterables.concat(content, crcBuf.finish()));
+  /**
+   * Compute the combined CRC of a list of ByteBuffers: the CRC stored following them by
+   * {@link #appendCrcToBufferList(List)}.
+   *
+   * @param content non-null list of ByteBuffers; no mutation will be performed on them.
+   * @return The CRC, a 4-byte unsigned integer stored in a long.
+   */
+  public static long computeCrc(Collection<ByteBuffer> content) {
+    final Adler32 crc = new Adler32();
+    content.forEach((ByteBuffer buffer) -> crc.update(buffer.duplicate()));
+    return crc.getValue();
   }
 
   /**
@@ -153,6 +181,16 @@ public class EntryEncodingUtil {
    */
   public static ByteBuffer getAndCheckContent(InputStream inputStream, int contentLength)
       throws IOException, CrcError {
+    return getAndCheckContentWithCrc(inputStream, contentLength).content;
+  }
+
+  /**
+   * Read a specified number of bytes from the input stream (the "content"), then read one or more CRC codes and
+   * check the validity of the data, in the same way as {@link #getAndCheckContent}. Return the content together
+   * with its CRC, so that the CRC may be stored again without being computed again.
+   */
+  public static CheckedContent getAndCheckContentWithCrc(InputStream inputStream, int contentLength)
+      throws IOException, CrcError {
     // TODO probably not the correct way to do this... should use IOUtils?
     final CrcInputStream crcStream = new CrcInputStream(inputStream, new Adler32());
     final byte[] content = new byte[contentLength];
@@ -169,7 +207,20 @@ public class EntryEncodingUtil {
       throw new CrcError("CRC mismatch on log entry contents");
     }
 
-    return ByteBuffer.wrap(content);
+    return new CheckedContent(ByteBuffer.wrap(content), diskCrc);
+  }
+
+  /**
+   * Content read and validated by {@link #getAndCheckContentWithCrc}, together with its CRC.
+   */
+  public static class CheckedContent {
+    public final ByteBuffer content;
+    public final long crc;
+
+    private CheckedContent(ByteBuffer content, long crc) {
+      this.content = content;
+      this.crc = crc;
+    }
   }
 
   public static void skip(InputStream inputStream, int numBytes) throws IOException {
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * A limit on the number of bytes of data which may be held in memory, awaiting some operation,
+ * shared among all the users of a single instance. For instance, a node may create one ByteBudget
+ * and give it to both its log and its replicators, so that the total amount of log data they
+ * hold in flight is bounded.
+ * <p>
+ * A user acquires credits for some number of bytes before taking on that much data, and releases
+ * them once it no longer holds the data. When the budget is exhausted, tryAcquire rejects the
+ * request immediately, whereas acquire returns a future which completes once the credits have been
+ * granted. Waiting requests are granted in the order they were made. A single request for more
+ * bytes than the capacity is granted once nothing else is outstanding, so that it can't wait forever.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ByteBudget {
+  private final long capacityBytes;
+  private final Queue<PendingAcquisition> pendingAcquisitions = new ArrayDeque<>();
+  private long usedBytes = 0;
+
+  public ByteBudget(long capacityBytes) {
+    if (capacityBytes <= 0) {
+      throw new IllegalArgumentException("ByteBudget: capacity must be positive");
+    }
+    this.capacityBytes = capacityBytes;
+  }
+
+  /**
+   * Create a budget which never refuses a request, but which still keeps track of usage.
+   */
+  public static ByteBudget unlimited() {
+    return new ByteBudget(Long.MAX_VALUE);
+  }
+
+  /**
+   * Acquire credits for the given number of bytes, if that can be done without waiting.
+   *
+   * @param bytes Number of bytes
+   * @return True if the credits were acquired, false if the budget is exhausted.
+   */
+  public synchronized boolean tryAcquire(long bytes) {
+    if (pendingAcquisitions.isEmpty() && canGrant(bytes)) {
+      usedBytes += bytes;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Acquire credits for the given number of bytes, waiting for them to become available if necessary.
+   *
+   * @param bytes Number of bytes
+   * @return A future which will complete when the credits have been acquired.
+   */
+  public ListenableFuture<Void> acquire(long bytes) {
+    final SettableFuture<Void> acquisitionFuture = SettableFuture.create();
+    synchronized (this) {
+      if (!tryAcquire(bytes)) {
+        pendingAcquisitions.add(new PendingAcquisition(bytes, acquisitionFuture));
+        return acquisitionFuture;
+      }
+    }
+    acquisitionFuture.set(null);
+    return acquisitionFuture;
+  }
+
+  /**
+   * Acquire credits for the given number of bytes immediately, even if doing so exceeds the capacity.
+   * This is intended for users who must accept data unconditionally, so that usage is still accounted
+   * for, and so that other users see the budget as exhausted.
+   *
+   * @param bytes Number of bytes
+   */
+  public synchronized void forceAcquire(long bytes) {
+    usedBytes += bytes;
+  }
+
+  /**
+   * Release credits previously acquired, and grant any waiting requests which now fit.
+   *
+   * @param bytes Number of bytes
+   */
+  public void release(long bytes) {
+    final List<SettableFuture<Void>> grantedFutures = new ArrayList<>();
+
+    synchronized (this) {
+      usedBytes -= bytes;
+      assert usedBytes >= 0;
+
+      while (!pendingAcquisitions.isEmpty() && canGrant(pendingAcquisitions.peek().bytes)) {
+        final PendingAcquisition granted = pendingAcquisitions.poll();
+        usedBytes += granted.bytes;
+        grantedFutures.add(granted.future);
+      }
+    }
+
+    // Complete the futures outside the lock, because their listeners may call back into this budget.
+    for (SettableFuture<Void> future : grantedFutures) {
+      future.set(null);
+    }
+  }
+
+  /**
+   * @return The number of bytes for which credits are currently held.
+   */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  public long getCapacityBytes() {
+    return capacityBytes;
+  }
+
+  private boolean canGrant(long bytes) {
+    return usedBytes == 0 || bytes <= capacityBytes - usedBytes;
+  }
+
+  private static class PendingAcquisition {
+    private final long bytes;
+    private final SettableFuture<Void> future;
+
+    private PendingAcquisition(long bytes, SettableFuture<Void> future) {
+      this.bytes = bytes;
+      this.future = future;
+    }
+  }
+
+  /**
+   * Exception indicating that an operation was refused because the budget was exhausted.
+   */
+  public static class ByteBudgetExhausted extends Exception {
+    public ByteBudgetExhausted(String s) {
+      super(s);
+    }
+  }
+}
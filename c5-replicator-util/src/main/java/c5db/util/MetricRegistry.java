@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+/**
+ * A source of named instruments with which components record measurements of their own behavior.
+ * Components obtain their instruments from the registry they are given, and record into them as
+ * they run; what happens to the measurements, e.g. whether they are kept in memory or exported to
+ * a monitoring system, is up to the registry implementation.
+ * <p>
+ * Asking for the same name more than once returns instruments which record into the same
+ * measurement, so several components may contribute to one aggregate, such as a node-wide total.
+ * Implementations must be thread-safe, and recording should be cheap enough to do on every
+ * operation.
+ */
+public interface MetricRegistry {
+  /**
+   * Command which modules recording into a registry accept in acceptCommand, replying with the
+   * registry's description of its measurements.
+   */
+  String DESCRIBE_COMMAND = "metrics";
+
+  /**
+   * A registry whose instruments discard everything recorded into them.
+   */
+  MetricRegistry NO_OP = new MetricRegistry() {
+    private final Counter counter = (delta) -> {
+    };
+    private final Histogram histogram = (value) -> {
+    };
+
+    @Override
+    public Counter counter(String name) {
+      return counter;
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+      return histogram;
+    }
+
+    @Override
+    public String describe() {
+      return "";
+    }
+  };
+
+  Counter counter(String name);
+
+  Histogram histogram(String name);
+
+  /**
+   * @return A human-readable snapshot of the registry's current measurements, one per line; empty
+   * if the registry does not keep them.
+   */
+  String describe();
+
+  /**
+   * A value which goes up and down, such as a number of events, or a number of operations in progress.
+   */
+  interface Counter {
+    void add(long delta);
+
+    default void increment() {
+      add(1);
+    }
+
+    default void decrement() {
+      add(-1);
+    }
+  }
+
+  /**
+   * A distribution of recorded values, such as latencies or sizes.
+   */
+  interface Histogram {
+    void record(long value);
+  }
+}
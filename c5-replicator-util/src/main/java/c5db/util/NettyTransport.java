@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The Netty transports the network services can use: the JDK's NIO, available everywhere, or Linux's
+ * native epoll, which has less overhead per message and supports some further socket options. A service's
+ * channels must use the same transport as the EventLoopGroup they're registered with; so a service given an
+ * EventLoopGroup picks its channel classes using {@link #of(EventLoopGroup)}, and whoever creates the
+ * EventLoopGroup chooses the transport, usually {@link #preferred()}.
+ */
+public enum NettyTransport {
+  NIO {
+    @Override
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+      return new NioEventLoopGroup(nThreads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverSocketChannelClass() {
+      return NioServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+      return NioSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends DatagramChannel> datagramChannelClass() {
+      return NioDatagramChannel.class;
+    }
+
+    @Override
+    public void configureServer(ServerBootstrap bootstrap) {
+    }
+
+    @Override
+    public void configureClient(Bootstrap bootstrap) {
+    }
+  },
+
+  EPOLL {
+    @Override
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+      return new EpollEventLoopGroup(nThreads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverSocketChannelClass() {
+      return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+      return EpollSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends DatagramChannel> datagramChannelClass() {
+      return EpollDatagramChannel.class;
+    }
+
+    @Override
+    public void configureServer(ServerBootstrap bootstrap) {
+      bootstrap
+          .option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+          .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+          .childOption(EpollChannelOption.TCP_QUICKACK, true);
+    }
+
+    @Override
+    public void configureClient(Bootstrap bootstrap) {
+      bootstrap
+          .option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+          .option(EpollChannelOption.TCP_QUICKACK, true);
+    }
+  };
+
+  /**
+   * @return EPOLL if the native library is available on this platform, otherwise NIO.
+   */
+  public static NettyTransport preferred() {
+    return preferred(Epoll.isAvailable());
+  }
+
+  static NettyTransport preferred(boolean epollAvailable) {
+    return epollAvailable ? EPOLL : NIO;
+  }
+
+  /**
+   * @return The transport of the given EventLoopGroup, whose channels must therefore use that transport.
+   */
+  public static NettyTransport of(EventLoopGroup eventLoopGroup) {
+    return eventLoopGroup instanceof EpollEventLoopGroup ? EPOLL : NIO;
+  }
+
+  public abstract EventLoopGroup newEventLoopGroup(int nThreads);
+
+  public abstract Class<? extends ServerChannel> serverSocketChannelClass();
+
+  public abstract Class<? extends SocketChannel> socketChannelClass();
+
+  public abstract Class<? extends DatagramChannel> datagramChannelClass();
+
+  /**
+   * Set the transport-specific options for TCP connections accepted by a server: with epoll, edge-triggered
+   * reads and TCP_QUICKACK.
+   */
+  public abstract void configureServer(ServerBootstrap bootstrap);
+
+  /**
+   * Set the transport-specific options for outgoing TCP connections; see configureServer.
+   */
+  public abstract void configureClient(Bootstrap bootstrap);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * MetricRegistry keeping its measurements in memory, where they may be read back, e.g. by tests or
+ * by a module's acceptCommand. Histograms keep counts in buckets whose bounds are powers of two,
+ * so their percentiles are approximate: each is reported as the upper bound of its bucket.
+ */
+public class SimpleMetricRegistry implements MetricRegistry {
+  private final Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+  private final Map<String, SimpleHistogram> histograms = new ConcurrentHashMap<>();
+
+  @Override
+  public SimpleCounter counter(String name) {
+    return counters.computeIfAbsent(name, (ignore) -> new SimpleCounter());
+  }
+
+  @Override
+  public SimpleHistogram histogram(String name) {
+    return histograms.computeIfAbsent(name, (ignore) -> new SimpleHistogram());
+  }
+
+  /**
+   * @return A description of every measurement in the registry, one per line, in order by name.
+   */
+  @Override
+  public String describe() {
+    final SortedMap<String, String> descriptions = new TreeMap<>();
+    counters.forEach((name, counter) -> descriptions.put(name, Long.toString(counter.get())));
+    histograms.forEach((name, histogram) -> descriptions.put(name, histogram.toString()));
+
+    final StringBuilder builder = new StringBuilder();
+    descriptions.forEach((name, description) ->
+        builder.append(name).append(' ').append(description).append('\n'));
+    return builder.toString();
+  }
+
+  public static class SimpleCounter implements Counter {
+    private final AtomicLong value = new AtomicLong(0);
+
+    @Override
+    public void add(long delta) {
+      value.addAndGet(delta);
+    }
+
+    public long get() {
+      return value.get();
+    }
+  }
+
+  public static class SimpleHistogram implements Histogram {
+    // Bucket i holds values v such that 2^(i-1) <= v < 2^i; bucket 0 holds zero (and negative values).
+    private static final int NUMBER_OF_BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    @Override
+    public void record(long value) {
+      buckets.incrementAndGet(bucketOf(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+
+      long currentMax;
+      while (value > (currentMax = max.get())) {
+        if (max.compareAndSet(currentMax, value)) {
+          break;
+        }
+      }
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getSum() {
+      return sum.get();
+    }
+
+    /**
+     * @return The greatest value recorded, or 0 if none has been recorded.
+     */
+    public long getMax() {
+      return count.get() == 0 ? 0 : max.get();
+    }
+
+    public double getMean() {
+      final long currentCount = count.get();
+      return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * @param percentile Percentile, between 0 and 100
+     * @return An upper bound on the value at the given percentile, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+      final long currentCount = count.get();
+      if (currentCount == 0) {
+        return 0;
+      }
+
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * currentCount));
+      long seen = 0;
+      for (int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+        seen += buckets.get(bucket);
+        if (seen >= rank) {
+          return Math.min(upperBoundOf(bucket), getMax());
+        }
+      }
+      return getMax();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d",
+          getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+
+    private static int bucketOf(long value) {
+      return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long upperBoundOf(int bucket) {
+      return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+  }
+}
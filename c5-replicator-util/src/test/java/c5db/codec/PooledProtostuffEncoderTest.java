@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class PooledProtostuffEncoderTest {
+  private static final int ZERO_COPY_THRESHOLD = 64;
+
+  private final EmbeddedChannel channel = new EmbeddedChannel(new PooledProtostuffEncoder<>(
+      ReplicationWireMessage.class, UnpooledByteBufAllocator.DEFAULT, ZERO_COPY_THRESHOLD));
+
+  @Test
+  public void producesTheSameBytesAsProtostuffEncoderPrecededByTheirLength() throws Exception {
+    final ReplicationWireMessage message = wireMessage(
+        entry(1, ByteBuffer.wrap(new byte[]{1, 2, 3})),
+        entry(2, ByteBuffer.wrap(new byte[ZERO_COPY_THRESHOLD * 2])),
+        entry(-3, ByteBuffer.wrap(new byte[ZERO_COPY_THRESHOLD - 1])));
+
+    channel.writeOutbound(message);
+    final ByteBuf frame = readFrame((ByteBuf) channel.readOutbound());
+
+    final List<Object> expected = new ArrayList<>();
+    new ProtostuffEncoder<ReplicationWireMessage>().encode(null, message, expected);
+
+    try {
+      assertThat(ByteBufUtil.equals(frame, (ByteBuf) expected.get(0)), is(true));
+    } finally {
+      frame.release();
+      ((ByteBuf) expected.get(0)).release();
+    }
+  }
+
+  @Test
+  public void includesLargeDataWithoutCopyingIt() throws Exception {
+    final ByteBuffer largeData = ByteBuffer.allocateDirect(ZERO_COPY_THRESHOLD * 4);
+    channel.writeOutbound(wireMessage(entry(1, largeData)));
+
+    // Modifying the data after encoding is visible in the encoded message, because it wasn't copied.
+    largeData.put(0, (byte) 42);
+
+    final ByteBuf frame = readFrame((ByteBuf) channel.readOutbound());
+    try {
+      final ReplicationWireMessage decoded = decode(frame);
+      final ByteBuffer decodedData = decoded.getAppendEntries().getEntriesList().get(0).getDataList().get(0);
+      assertThat(decodedData.get(decodedData.position()), is(equalTo((byte) 42)));
+      assertThat(decodedData.remaining(), is(equalTo(largeData.remaining())));
+    } finally {
+      frame.release();
+    }
+  }
+
+  private static ByteBuf readFrame(ByteBuf encoded) {
+    final EmbeddedChannel frameDecoder = new EmbeddedChannel(new ProtobufVarint32FrameDecoder());
+    frameDecoder.writeInbound(encoded);
+    return (ByteBuf) frameDecoder.readInbound();
+  }
+
+  private static ReplicationWireMessage decode(ByteBuf frame) throws Exception {
+    final List<Object> decoded = new ArrayList<>();
+    new ProtostuffDecoder<>(ReplicationWireMessage.getSchema()).decode(null, frame, decoded);
+    return (ReplicationWireMessage) decoded.get(0);
+  }
+
+  private static LogEntry entry(long term, ByteBuffer data) {
+    return new LogEntry(term, 1, Arrays.asList(data), null, 0);
+  }
+
+  private static ReplicationWireMessage wireMessage(LogEntry... entries) {
+    final AppendEntries appendEntries = new AppendEntries(3, 1, 0, 0, Arrays.asList(entries), 0, false);
+    return new ReplicationWireMessage(1, 1, 2, "quorumId", false,
+        null, null, appendEntries, null, null, null, null, null);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.codec;
+
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.generated.QuorumConfigurationMessage;
+import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class ProtostuffDecoderTest {
+  private final ProtostuffDecoder<ReplicationWireMessage> retainingDecoder =
+      new ProtostuffDecoder<>(ReplicationWireMessage.getSchema(), true);
+  private final ProtostuffDecoder<ReplicationWireMessage> copyingDecoder =
+      new ProtostuffDecoder<>(ReplicationWireMessage.getSchema());
+
+  @Test
+  public void decodesTheSameMessageWhetherOrNotItRetainsPayloads() throws Exception {
+    final ByteBuf frame = serialize(wireMessage(
+        entry(1, ByteBuffer.wrap(new byte[]{1, 2, 3})),
+        new LogEntry(-2, 2, new ArrayList<>(),
+            new QuorumConfigurationMessage(true, Arrays.asList(1L, 2L, 3L), Arrays.asList(1L, 2L), Arrays.asList(3L)),
+            Long.MIN_VALUE)));
+
+    try {
+      final RetainedMessage<ReplicationWireMessage> retained = decode(retainingDecoder, frame);
+      final ReplicationWireMessage copied = decode(copyingDecoder, frame);
+
+      assertReserializesIdentically(retained.message, copied);
+      retained.release();
+    } finally {
+      frame.release();
+    }
+  }
+
+  @Test
+  public void decodesEntryDataAsViewsOfTheFrameAndHoldsAReferenceToIt() throws Exception {
+    final byte[] dataBytes = {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF};
+    final ByteBuf frame = serialize(wireMessage(entry(1, ByteBuffer.wrap(dataBytes))));
+
+    final RetainedMessage<ReplicationWireMessage> retained = decode(retainingDecoder, frame);
+    assertThat(frame.refCnt(), is(equalTo(2)));
+
+    final ByteBuffer data = retained.message.getAppendEntries().getEntriesList().get(0).getDataList().get(0);
+    assertThat(data, is(equalTo(ByteBuffer.wrap(dataBytes))));
+
+    // The data is a view of the frame, so it reflects a change to the frame.
+    frame.setByte(indexOf(frame, dataBytes), 42);
+    assertThat(data.get(data.position()), is(equalTo((byte) 42)));
+
+    retained.release();
+    assertThat(frame.refCnt(), is(equalTo(1)));
+    frame.release();
+  }
+
+  @Test
+  public void doesNotRetainTheFrameIfDecodingFails() throws Exception {
+    final ByteBuf frame = serialize(wireMessage(entry(1, ByteBuffer.wrap(new byte[]{1, 2, 3}))));
+    final ByteBuf truncatedFrame = frame.slice(0, frame.readableBytes() - 1);
+
+    try {
+      decode(retainingDecoder, truncatedFrame);
+    } catch (IOException expected) {
+      assertThat(frame.refCnt(), is(equalTo(1)));
+      return;
+    } finally {
+      frame.release();
+    }
+    throw new AssertionError("decoding a truncated frame did not fail");
+  }
+
+  private static ByteBuf serialize(ReplicationWireMessage message) throws IOException {
+    return ProtobufByteBufSerializer.serialize(message, ReplicationWireMessage.getSchema(),
+        UnpooledByteBufAllocator.DEFAULT, false, ProtobufByteBufSerializer.DEFAULT_ZERO_COPY_THRESHOLD_BYTES);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <M> M decode(ProtostuffDecoder<ReplicationWireMessage> decoder, ByteBuf frame) throws Exception {
+    final List<Object> decoded = new ArrayList<>();
+    decoder.decode(null, frame, decoded);
+    assertThat(decoded.size(), is(equalTo(1)));
+    return (M) decoded.get(0);
+  }
+
+  private static void assertReserializesIdentically(ReplicationWireMessage first, ReplicationWireMessage second)
+      throws IOException {
+    final ByteBuf firstSerialized = serialize(first);
+    final ByteBuf secondSerialized = serialize(second);
+    try {
+      assertThat(ByteBufUtil.equals(firstSerialized, secondSerialized), is(true));
+    } finally {
+      firstSerialized.release();
+      secondSerialized.release();
+    }
+  }
+
+  private static int indexOf(ByteBuf buf, byte[] bytes) {
+    for (int i = buf.readerIndex(); i <= buf.writerIndex() - bytes.length; i++) {
+      if (buf.slice(i, bytes.length).equals(Unpooled.wrappedBuffer(bytes))) {
+        return i;
+      }
+    }
+    throw new AssertionError("bytes not found");
+  }
+
+  private static LogEntry entry(long term, ByteBuffer data) {
+    return new LogEntry(term, 1, Arrays.asList(data), null, 0);
+  }
+
+  private static ReplicationWireMessage wireMessage(LogEntry... entries) {
+    final AppendEntries appendEntries = new AppendEntries(3, 1, 0, 0, Arrays.asList(entries), 0, false);
+    return new ReplicationWireMessage(1, 1, 2, "quorumId", false,
+        null, null, appendEntries, null, null, null, null, null);
+  }
+}
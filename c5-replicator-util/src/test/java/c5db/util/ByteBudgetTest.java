@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class ByteBudgetTest {
+  private final ByteBudget budget = new ByteBudget(100);
+
+  @Test
+  public void grantsRequestsWhichFitWithinTheCapacityAndTracksUsage() {
+    assertThat(budget.tryAcquire(60), is(true));
+    assertThat(budget.tryAcquire(40), is(true));
+    assertThat(budget.getUsedBytes(), is(equalTo(100L)));
+
+    budget.release(60);
+    assertThat(budget.getUsedBytes(), is(equalTo(40L)));
+  }
+
+  @Test
+  public void refusesRequestsWhichDoNotFitWithinTheRemainingCapacity() {
+    assertThat(budget.tryAcquire(60), is(true));
+    assertThat(budget.tryAcquire(41), is(false));
+    assertThat(budget.getUsedBytes(), is(equalTo(60L)));
+  }
+
+  @Test
+  public void grantsASingleRequestLargerThanTheCapacityWhenNothingElseIsOutstanding() {
+    assertThat(budget.tryAcquire(500), is(true));
+    assertThat(budget.tryAcquire(1), is(false));
+  }
+
+  @Test
+  public void completesWaitingAcquisitionsInOrderAsCreditsAreReleased() {
+    budget.tryAcquire(100);
+    ListenableFuture<Void> first = budget.acquire(50);
+    ListenableFuture<Void> second = budget.acquire(50);
+
+    assertThat(first.isDone(), is(false));
+
+    budget.release(50);
+    assertThat(first.isDone(), is(true));
+    assertThat(second.isDone(), is(false));
+
+    budget.release(50);
+    assertThat(second.isDone(), is(true));
+    assertThat(budget.getUsedBytes(), is(equalTo(100L)));
+  }
+
+  @Test
+  public void refusesRequestsWhileOthersAreWaiting() {
+    budget.tryAcquire(90);
+    budget.acquire(50);
+    budget.release(30);
+
+    assertThat(budget.tryAcquire(10), is(false));
+  }
+
+  @Test
+  public void accountsForForcedAcquisitionsBeyondTheCapacity() {
+    budget.forceAcquire(150);
+
+    assertThat(budget.getUsedBytes(), is(equalTo(150L)));
+    assertThat(budget.tryAcquire(1), is(false));
+  }
+}
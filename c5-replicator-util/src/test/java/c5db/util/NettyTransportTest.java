@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class NettyTransportTest {
+  @Test
+  public void prefersEpollWhenItIsAvailableAndFallsBackToNioOtherwise() {
+    assertThat(NettyTransport.preferred(true), is(NettyTransport.EPOLL));
+    assertThat(NettyTransport.preferred(false), is(NettyTransport.NIO));
+    assertThat(NettyTransport.preferred(), is(NettyTransport.preferred(Epoll.isAvailable())));
+  }
+
+  @Test
+  public void identifiesTheTransportOfAnEventLoopGroupItCreated() throws Exception {
+    final NettyTransport transport = NettyTransport.preferred();
+    final EventLoopGroup group = transport.newEventLoopGroup(1);
+    try {
+      assertThat(NettyTransport.of(group), is(equalTo(transport)));
+    } finally {
+      group.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  public void usesNioChannelsForAnNioEventLoopGroup() throws Exception {
+    final EventLoopGroup group = new NioEventLoopGroup(1);
+    try {
+      final NettyTransport transport = NettyTransport.of(group);
+
+      assertThat(transport, is(NettyTransport.NIO));
+      assertThat(transport.serverSocketChannelClass(), is(equalTo(NioServerSocketChannel.class)));
+      assertThat(transport.socketChannelClass(), is(equalTo(NioSocketChannel.class)));
+      assertThat(transport.datagramChannelClass(), is(equalTo(NioDatagramChannel.class)));
+    } finally {
+      group.shutdownGracefully().sync();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.util;
+
+import org.junit.Test;
+
+import static c5db.util.SimpleMetricRegistry.SimpleHistogram;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SimpleMetricRegistryTest {
+  private final SimpleMetricRegistry registry = new SimpleMetricRegistry();
+
+  @Test
+  public void returnsTheSameInstrumentEachTimeItIsAskedForTheSameName() {
+    assertThat(registry.counter("a"), is(sameInstance(registry.counter("a"))));
+    assertThat(registry.histogram("a"), is(sameInstance(registry.histogram("a"))));
+  }
+
+  @Test
+  public void countersSumTheDeltasAddedToThem() {
+    registry.counter("inFlight").increment();
+    registry.counter("inFlight").add(5);
+    registry.counter("inFlight").decrement();
+
+    assertThat(registry.counter("inFlight").get(), is(equalTo(5L)));
+  }
+
+  @Test
+  public void histogramsReportUpperBoundsOfTheirPercentilesAndTheExactMaximum() {
+    final SimpleHistogram histogram = registry.histogram("latency");
+    for (long value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.getCount(), is(equalTo(100L)));
+    assertThat(histogram.getMean(), is(equalTo(50.5)));
+    assertThat(histogram.getValueAtPercentile(50), is(equalTo(63L)));
+    assertThat(histogram.getValueAtPercentile(10), is(equalTo(15L)));
+    assertThat(histogram.getValueAtPercentile(100), is(equalTo(100L)));
+    assertThat(histogram.getMax(), is(equalTo(100L)));
+  }
+
+  @Test
+  public void describesEachMeasurementByName() {
+    registry.counter("elections").increment();
+    registry.histogram("latency").record(7);
+
+    assertThat(registry.describe(), containsString("elections 1\n"));
+    assertThat(registry.describe(), containsString("latency count=1"));
+  }
+}
@@ -30,6 +30,21 @@ public class ReplicatorConstants {
   public static final int REPLICATOR_DEFAULT_BASE_ELECTION_TIMEOUT_MILLISECONDS = 1000;
   public static final int REPLICATOR_DEFAULT_ELECTION_CHECK_INTERVAL_MILLISECONDS = 100;
   public static final int REPLICATOR_DEFAULT_LEADER_LOG_INTERVAL_MILLISECONDS = 100;
+  public static final int REPLICATOR_DEFAULT_LEADER_BATCHING_MAX_DELAY_MILLISECONDS = 0;
+  public static final int REPLICATOR_DEFAULT_LEADER_BATCHING_MAX_ENTRIES = Integer.MAX_VALUE;
   public static final int REPLICATOR_VOTE_RPC_TIMEOUT_MILLISECONDS = 1000;
   public static final int REPLICATOR_APPEND_RPC_TIMEOUT_MILLISECONDS = 5000;
+  public static final long REPLICATOR_APPEND_CATCH_UP_MAX_BYTES = 4 * 1024 * 1024;
+  public static final int REPLICATOR_DEFAULT_APPEND_MAX_ENTRIES = 1000;
+  public static final long REPLICATOR_DEFAULT_APPEND_MAX_BYTES = 1024 * 1024;
+  public static final int REPLICATOR_DEFAULT_APPEND_WINDOW_MAX_REQUESTS = 8;
+  public static final long REPLICATOR_DEFAULT_SNAPSHOT_INSTALL_THRESHOLD_ENTRIES = 100000;
+  public static final int REPLICATOR_DEFAULT_SNAPSHOT_CHUNK_MAX_BYTES = 1024 * 1024;
+  public static final int REPLICATOR_INSTALL_SNAPSHOT_RPC_TIMEOUT_MILLISECONDS = 5000;
+  public static final long REPLICATOR_DEFAULT_LEADER_LEASE_MILLISECONDS = 0;
+  public static final long REPLICATOR_DEFAULT_QUIESCENCE_IDLE_MILLISECONDS = 0;
+  public static final long REPLICATOR_FLUSH_COALESCING_MAX_PENDING_BYTES = 64 * 1024;
+  public static final long REPLICATOR_CONNECTION_PROBE_INTERVAL_MILLISECONDS = 1000;
+  public static final long REPLICATOR_CONNECTION_IDLE_TIMEOUT_MILLISECONDS = 5000;
+  public static final int REPLICATOR_SERVICE_DISPATCH_FIBERS = Runtime.getRuntime().availableProcessors();
 }
@@ -18,114 +18,279 @@ package c5db.log;
 
 import c5db.interfaces.replication.QuorumConfiguration;
 import c5db.interfaces.replication.ReplicatorLog;
+import c5db.interfaces.replication.TermRun;
 import c5db.replication.generated.LogEntry;
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static c5db.log.EntryEncodingUtil.sumRemaining;
 
 /**
- * ReplicatorLog hosted in memory, e.g. for unit testing ReplicatorInstance in-memory. This
- * implementation just provides the basics needed to make the consensus algorithm work.
+ * ReplicatorLog hosted in memory, e.g. for unit testing ReplicatorInstance in-memory, or for simulating
+ * many replicators within a single process. Entries are stored, with copies of their data, in a list
+ * addressed by their index, so lookups by index or range take time independent of the size of the log;
+ * and any number of readers may access the log concurrently.
+ * <p>
+ * The futures returned by logEntries and truncateLog complete on a thread belonging to this log, optionally
+ * after a fixed delay, which can be used to model the latency of writing to a disk. Closing the log stops
+ * that thread, once any futures already returned have completed; the futures returned by any calls made
+ * after that, e.g. by a replicator which is still being disposed of, fail with an IllegalStateException.
  */
-public class InRamLog implements ReplicatorLog {
+public class InRamLog implements ReplicatorLog, AutoCloseable {
+  private final ScheduledExecutorService completionExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("in-ram-log-%d").setDaemon(true).build());
+
+  private final long writeLatencyMillis;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+  // The entry with index i is at position (i - firstIndex) in this list.
   private final List<LogEntry> log = new ArrayList<>();
+  private final NavigableMap<Long, LogEntry> configurationEntries = new TreeMap<>();
+  private long firstIndex = 0;
+
+  // The index and term of the entry the log is considered to follow, after a reset; see resetLog.
+  private long baseIndex = 0;
+  private long baseTerm = 0;
 
   public InRamLog() {
+    this(0);
+  }
+
+  /**
+   * @param writeLatencyMillis Delay before completing the future returned by each call to logEntries
+   *                           or truncateLog.
+   */
+  public InRamLog(long writeLatencyMillis) {
+    this.writeLatencyMillis = writeLatencyMillis;
   }
 
   @Override
-  public synchronized ListenableFuture<Boolean> logEntries(List<LogEntry> entries) {
-    validateEntries(entries);
-    log.addAll(entries);
+  public ListenableFuture<Boolean> logEntries(List<LogEntry> entries) {
+    lock.writeLock().lock();
+    try {
+      validateEntries(entries);
+      if (log.isEmpty() && !entries.isEmpty()) {
+        firstIndex = entries.get(0).getIndex();
+      }
 
-    return blockingFuture(true);
+      for (LogEntry entry : entries) {
+        // The entry's data may be a view of a buffer which is reused once this call's future completes.
+        final LogEntry storedEntry = copyOf(entry);
+        log.add(storedEntry);
+        if (entry.getQuorumConfiguration() != null) {
+          configurationEntries.put(entry.getIndex(), storedEntry);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    return delayedFuture(true);
   }
 
   @Override
-  public synchronized ListenableFuture<List<LogEntry>> getLogEntries(long start, long end) {
+  public ListenableFuture<List<LogEntry>> getLogEntries(long start, long end) {
     assert start > 0;
     assert end >= start;
 
-    List<LogEntry> foundEntries = log.stream()
-        .filter((entry) -> start <= entry.getIndex() && entry.getIndex() < end)
-        .collect(Collectors.toList());
+    lock.readLock().lock();
+    try {
+      if (start != end && !(containsIndex(start) && containsIndex(end - 1))) {
+        throw new RuntimeException("requested [" + start + ", " + end + "); log contains ["
+            + firstIndex + ", " + (lastIndexInternal() + 1) + ")");
+      }
 
-    if (foundEntries.size() != (end - start)) {
-      throw new RuntimeException("requested [" + start + ", " + end + "); received" + foundEntries.toString());
+      return immediateFuture(copyOfRange(start, end));
+    } finally {
+      lock.readLock().unlock();
     }
+  }
+
+  @Override
+  public ListenableFuture<List<LogEntry>> getLogEntries(long start, long end, long maxBytes) {
+    assert start > 0;
+    assert end >= start;
+
+    lock.readLock().lock();
+    try {
+      if (start != end && !containsIndex(start)) {
+        throw new RuntimeException("requested [" + start + ", " + end + "); found no entries");
+      }
+
+      final long availableEnd = Math.min(end, lastIndexInternal() + 1);
+      long remainingBytes = maxBytes;
+      long prefixEnd = start;
+
+      while (prefixEnd < availableEnd) {
+        remainingBytes -= sumRemaining(getEntryInternal(prefixEnd).getDataList());
+        if (remainingBytes < 0 && prefixEnd > start) {
+          break;
+        }
+        prefixEnd++;
+      }
 
-    return blockingFuture(foundEntries);
+      return immediateFuture(copyOfRange(start, prefixEnd));
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   @Override
-  public synchronized long getLogTerm(long index) {
+  public long getLogTerm(long index) {
     assert index > 0;
 
-    Optional<LogEntry> requestedEntry = optionallyGetEntryInternal(index);
+    lock.readLock().lock();
+    try {
+      return termInternal(index);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
 
-    if (requestedEntry.isPresent()) {
-      return requestedEntry.get().getTerm();
-    } else {
-      return 0;
+  @Override
+  public List<TermRun> getTermRuns(long first, long last) {
+    lock.readLock().lock();
+    try {
+      final List<TermRun> runs = new ArrayList<>();
+      long runStart = first;
+
+      while (runStart <= last) {
+        final long term = termInternal(runStart);
+        final long runEnd = containsIndex(runStart) ?
+            lastIndexWithTerm(runStart, Math.min(last, lastIndexInternal()), term) :
+            endOfRangeOutsideLog(runStart, last);
+
+        final int lastRunPosition = runs.size() - 1;
+        if (lastRunPosition >= 0 && runs.get(lastRunPosition).term == term) {
+          runs.set(lastRunPosition, new TermRun(runs.get(lastRunPosition).firstIndex, runEnd, term));
+        } else {
+          runs.add(new TermRun(runStart, runEnd, term));
+        }
+        runStart = runEnd + 1;
+      }
+      return runs;
+    } finally {
+      lock.readLock().unlock();
     }
   }
 
   @Override
-  public synchronized long getLastTerm() {
-    if (log.isEmpty()) {
-      return 0;
+  public long getLastTerm() {
+    lock.readLock().lock();
+    try {
+      if (log.isEmpty()) {
+        return baseTerm;
+      }
+      return log.get(log.size() - 1).getTerm();
+    } finally {
+      lock.readLock().unlock();
     }
-    return log.get(log.size() - 1).getTerm();
   }
 
   @Override
-  public synchronized long getLastIndex() {
-    if (log.isEmpty()) {
-      return 0;
+  public long getLastIndex() {
+    lock.readLock().lock();
+    try {
+      return lastIndexInternal();
+    } finally {
+      lock.readLock().unlock();
     }
-    return log.get(log.size() - 1).getIndex();
   }
 
   @Override
-  public synchronized ListenableFuture<Boolean> truncateLog(long entryIndex) {
-    LogEntry firstRemovedEntry = getEntryInternal(entryIndex);
-    int listIndex = log.lastIndexOf(firstRemovedEntry);
-    log.subList(listIndex, log.size()).clear();
+  public long getFirstIndex() {
+    lock.readLock().lock();
+    try {
+      return log.isEmpty() ? lastIndexInternal() + 1 : firstIndex;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
 
-    return blockingFuture(true);
+  @Override
+  public ListenableFuture<Boolean> truncateLog(long entryIndex) {
+    lock.writeLock().lock();
+    try {
+      if (!containsIndex(entryIndex)) {
+        throw new RuntimeException("entry index " + entryIndex + " not found");
+      }
+      log.subList(listPosition(entryIndex), log.size()).clear();
+      configurationEntries.tailMap(entryIndex, true).clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    return delayedFuture(true);
   }
 
   @Override
-  public synchronized QuorumConfiguration getLastConfiguration() {
-    for (LogEntry entry : Lists.reverse(log)) {
-      if (entry.getQuorumConfiguration() != null) {
-        return QuorumConfiguration.fromProtostuff(entry.getQuorumConfiguration());
+  public ListenableFuture<Boolean> resetLog(long baseIndex, long baseTerm, QuorumConfiguration baseConfiguration) {
+    lock.writeLock().lock();
+    try {
+      log.clear();
+      configurationEntries.clear();
+      this.baseIndex = baseIndex;
+      this.baseTerm = baseTerm;
+      this.firstIndex = baseIndex + 1;
+
+      if (!baseConfiguration.isEmpty()) {
+        configurationEntries.put(baseIndex,
+            new LogEntry(baseTerm, baseIndex, new ArrayList<>(), baseConfiguration.toProtostuff(), 0));
       }
+    } finally {
+      lock.writeLock().unlock();
     }
 
-    return QuorumConfiguration.EMPTY;
+    return delayedFuture(true);
   }
 
   @Override
-  public synchronized long getLastConfigurationIndex() {
-    for (LogEntry entry : Lists.reverse(log)) {
-      if (entry.getQuorumConfiguration() != null) {
-        return entry.getIndex();
+  public QuorumConfiguration getLastConfiguration() {
+    lock.readLock().lock();
+    try {
+      final Map.Entry<Long, LogEntry> lastConfigurationEntry = configurationEntries.lastEntry();
+      if (lastConfigurationEntry == null) {
+        return QuorumConfiguration.EMPTY;
       }
+      return QuorumConfiguration.fromProtostuff(lastConfigurationEntry.getValue().getQuorumConfiguration());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long getLastConfigurationIndex() {
+    lock.readLock().lock();
+    try {
+      return configurationEntries.isEmpty() ? 0 : configurationEntries.lastKey();
+    } finally {
+      lock.readLock().unlock();
     }
+  }
 
-    return 0;
+  @Override
+  public void close() {
+    completionExecutor.shutdown();
   }
 
   private void validateEntries(List<LogEntry> entries) {
     // Ensure ascending with no gaps
-    long lastIndex = getLastIndex();
+    long lastIndex = lastIndexInternal();
     for (LogEntry e : entries) {
       if (lastIndex == 0 || e.getIndex() == lastIndex + 1) {
         lastIndex = e.getIndex();
@@ -135,26 +300,103 @@ public class InRamLog implements ReplicatorLog {
     }
   }
 
-  private Optional<LogEntry> optionallyGetEntryInternal(long index) {
-    return log.stream()
-        .filter((entry) -> entry.getIndex() == index)
-        .findFirst();
+  private long lastIndexInternal() {
+    if (log.isEmpty()) {
+      return baseIndex;
+    }
+    return log.get(log.size() - 1).getIndex();
+  }
+
+  private boolean containsIndex(long index) {
+    return !log.isEmpty() && index >= firstIndex && index - firstIndex < log.size();
+  }
+
+  private long termInternal(long index) {
+    if (containsIndex(index)) {
+      return getEntryInternal(index).getTerm();
+    } else if (index == baseIndex) {
+      return baseTerm;
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Binary search for the greatest index, no greater than limit, whose entry has the given term; the
+   * entry at index from must have that term, and the log must contain every index up to limit. This
+   * relies on the terms of the entries in the log being nondecreasing.
+   */
+  private long lastIndexWithTerm(long from, long limit, long term) {
+    long low = from;
+    long high = limit;
+    while (low < high) {
+      final long mid = low + (high - low + 1) / 2;
+      if (getEntryInternal(mid).getTerm() == term) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Given an index which the log does not contain, find the end of the range of indexes, beginning with
+   * that one and ending no later than limit, over which termInternal is certain not to change.
+   */
+  private long endOfRangeOutsideLog(long from, long limit) {
+    long end = limit;
+    for (long boundary : new long[]{baseIndex, baseIndex + 1, firstIndex, lastIndexInternal() + 1}) {
+      if (boundary > from) {
+        end = Math.min(end, boundary - 1);
+      }
+    }
+    return end;
+  }
+
+  private int listPosition(long index) {
+    return (int) (index - firstIndex);
   }
 
   private LogEntry getEntryInternal(long index) {
-    Optional<LogEntry> requestedEntry = optionallyGetEntryInternal(index);
+    return log.get(listPosition(index));
+  }
 
-    if (!requestedEntry.isPresent()) {
-      throw new RuntimeException("entry index " + index + " not found");
+  private List<LogEntry> copyOfRange(long start, long end) {
+    if (start == end) {
+      return new ArrayList<>();
     }
+    return new ArrayList<>(log.subList(listPosition(start), listPosition(end)));
+  }
 
-    return requestedEntry.get();
+  private static LogEntry copyOf(LogEntry entry) {
+    final List<ByteBuffer> data = entry.getDataList() == null ? new ArrayList<>() : entry.getDataList();
+    final List<ByteBuffer> dataCopy = new ArrayList<>(data.size());
+    for (ByteBuffer buffer : data) {
+      final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+      copy.put(buffer.duplicate());
+      copy.flip();
+      dataCopy.add(copy);
+    }
+    return new LogEntry(entry.getTerm(), entry.getIndex(), dataCopy, entry.getQuorumConfiguration(),
+        entry.getContentCrc());
   }
 
-  private static <V> ListenableFuture<V> blockingFuture(V result) {
+  private <V> ListenableFuture<V> immediateFuture(V result) {
+    return delayedFuture(result, 0);
+  }
+
+  private <V> ListenableFuture<V> delayedFuture(V result) {
+    return delayedFuture(result, writeLatencyMillis);
+  }
+
+  private <V> ListenableFuture<V> delayedFuture(V result, long delayMillis) {
     SettableFuture<V> future = SettableFuture.create();
-    new Thread(() -> future.set(result))
-        .start();
+    try {
+      completionExecutor.schedule(() -> future.set(result), delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      return Futures.immediateFailedFuture(new IllegalStateException("InRamLog has been closed", e));
+    }
     return future;
   }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+/**
+ * Flow control for the AppendEntries requests a leader sends to one peer: the number of requests
+ * which may be awaiting reply (in flight) at once. The window grows by one request with each
+ * successful reply, up to a maximum, and halves whenever a request times out, down to one.
+ * <p>
+ * This class is not thread-safe; a ReplicatorInstance uses it only from its fiber.
+ */
+class AppendEntriesWindow {
+  private final int maxSize;
+  private int size;
+  private int inFlight = 0;
+
+  AppendEntriesWindow(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("AppendEntriesWindow: maximum size must be at least one");
+    }
+    this.maxSize = maxSize;
+    this.size = maxSize;
+  }
+
+  boolean hasRoom() {
+    return inFlight < size;
+  }
+
+  int room() {
+    return Math.max(size - inFlight, 0);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int inFlight() {
+    return inFlight;
+  }
+
+  void requestSent() {
+    inFlight++;
+  }
+
+  void replyReceived() {
+    requestFinished();
+    if (size < maxSize) {
+      size++;
+    }
+  }
+
+  void requestTimedOut() {
+    requestFinished();
+    size = Math.max(size / 2, 1);
+  }
+
+  private void requestFinished() {
+    if (inFlight > 0) {
+      inFlight--;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import c5db.interfaces.replication.ReplicateSubmissionInfo;
 import c5db.interfaces.replication.Replicator;
 import c5db.interfaces.replication.ReplicatorInstanceEvent;
 import c5db.interfaces.replication.ReplicatorReceipt;
+import c5db.interfaces.replication.SnapshotProvider;
 import c5db.util.C5Futures;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -110,6 +111,16 @@ public class C5GeneralizedReplicator implements GeneralizedReplicator {
     return returnedFuture;
   }
 
+  @Override
+  public ListenableFuture<Long> readBarrier() {
+    return replicator.readBarrier();
+  }
+
+  @Override
+  public void setSnapshotProvider(SnapshotProvider snapshotProvider) {
+    replicator.setSnapshotProvider(snapshotProvider);
+  }
+
   private void setupCommitNoticeSubscription() {
     final String quorumId = replicator.getQuorumId();
     final long serverNodeId = replicator.getId();
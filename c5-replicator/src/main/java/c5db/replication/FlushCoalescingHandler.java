@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Coalesce the flushes of a channel, so that the messages written to it in quick succession -- for
+ * instance, heartbeats and replies from the many quorums which share a pair of nodes -- reach the socket
+ * in one gathering write, rather than one write per message. A flush is passed on only after the event
+ * loop has run the tasks queued ahead of it, which include the writes other threads have queued in the
+ * meantime; or at once, if the bytes written since the last flush reach a threshold.
+ * <p>
+ * The handler must be placed nearer the head of the pipeline than the encoders, so that it sees encoded
+ * bytes. It keeps per-channel state, so each channel needs its own instance.
+ */
+public class FlushCoalescingHandler extends ChannelOutboundHandlerAdapter {
+  private final long maxPendingBytes;
+  private long pendingBytes = 0;
+  private boolean flushScheduled = false;
+
+  /**
+   * @param maxPendingBytes Number of bytes written since the last flush at or beyond which a requested
+   *                        flush is passed on immediately.
+   */
+  public FlushCoalescingHandler(long maxPendingBytes) {
+    this.maxPendingBytes = maxPendingBytes;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof ByteBuf) {
+      pendingBytes += ((ByteBuf) msg).readableBytes();
+    }
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void flush(ChannelHandlerContext ctx) throws Exception {
+    if (pendingBytes >= maxPendingBytes) {
+      flushNow(ctx);
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      ctx.channel().eventLoop().execute(() -> {
+        if (flushScheduled) {
+          flushNow(ctx);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    flushNow(ctx);
+    ctx.disconnect(promise);
+  }
+
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    flushNow(ctx);
+    ctx.close(promise);
+  }
+
+  private void flushNow(ChannelHandlerContext ctx) {
+    flushScheduled = false;
+    pendingBytes = 0;
+    ctx.flush();
+  }
+}
@@ -25,6 +25,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import static c5db.log.EntryEncodingUtil.computeCrc;
+import static c5db.log.EntryEncodingUtil.sumRemaining;
+
 /**
  * Represents a log request, for internal use by ReplicatorInstance.
  */
@@ -32,6 +35,13 @@ class InternalReplicationRequest {
   public final List<ByteBuffer> data;
   public final QuorumConfiguration config;
   public final SettableFuture<ReplicatorReceipt> logReceiptFuture;
+  public final long dataLength;
+  /**
+   * CRC of the data, computed once here, by the thread submitting the request, and carried by the entry
+   * to each log that stores it; or 0 if the request is not for data.
+   */
+  public final long contentCrc;
+  public final long creationNanos;
 
   public static InternalReplicationRequest toLogData(List<ByteBuffer> data) {
     return new InternalReplicationRequest(data, null);
@@ -42,12 +52,15 @@ class InternalReplicationRequest {
   }
 
   public LogEntry getEntry(long term, long index) {
-    return new LogEntry(term, index, data, config == null ? null : config.toProtostuff());
+    return new LogEntry(term, index, data, config == null ? null : config.toProtostuff(), contentCrc);
   }
 
   private InternalReplicationRequest(List<ByteBuffer> data, QuorumConfiguration config) {
     this.data = data;
     this.config = config;
     this.logReceiptFuture = SettableFuture.create();
+    this.dataLength = sumRemaining(data);
+    this.contentCrc = config == null ? computeCrc(data) : 0;
+    this.creationNanos = ReplicatorMetrics.nanoTime();
   }
 }
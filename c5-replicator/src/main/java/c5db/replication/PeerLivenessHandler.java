@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package c5db.replication;
+
+import c5db.codec.RetainedMessage;
+import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Keep a connection to another server alive while no requests are passing over it, for instance while
+ * all the quorums the two servers share are quiesced, and close it if the other server falls silent. A
+ * server which fails or is partitioned away may never close its connections, so without this, nothing
+ * would tell this node that it is gone.
+ * <p>
+ * The handler acts on the events of an {@link IdleStateHandler} placed at the head of the pipeline: when
+ * nothing has been written for a while, it writes a probe, i.e. an empty message, which carries message
+ * ID 0 whereas every request and reply carries a positive one; and when nothing, not even a probe, has
+ * been read for longer, or a probe cannot be written, it closes the connection. Servers on both ends of a
+ * connection probe it, and each discards the probes it receives. The handler must be placed between the
+ * decoder and the handler of the messages read, and farther from the head than the encoder.
+ */
+@ChannelHandler.Sharable
+public class PeerLivenessHandler extends ChannelInboundHandlerAdapter {
+  private static final ReplicationWireMessage PROBE = new ReplicationWireMessage();
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof RetainedMessage && isProbe(((RetainedMessage<?>) msg).message)) {
+      ReferenceCountUtil.release(msg);
+    } else {
+      ctx.fireChannelRead(msg);
+    }
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (!(evt instanceof IdleStateEvent)) {
+      ctx.fireUserEventTriggered(evt);
+      return;
+    }
+
+    final IdleState state = ((IdleStateEvent) evt).state();
+    if (state == IdleState.WRITER_IDLE) {
+      ctx.writeAndFlush(PROBE).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    } else if (state == IdleState.READER_IDLE) {
+      ctx.close();
+    }
+  }
+
+  private static boolean isProbe(Object message) {
+    return message instanceof ReplicationWireMessage && ((ReplicationWireMessage) message).getMessageId() == 0;
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.QuorumConfiguration;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A leader's record of its peers' progress: for each peer, the next index of the log to send it, the
+ * last index it has acknowledged, and its latest confirmation of the leader's leadership. The peers of
+ * a quorum configuration are assigned slots when the table is built, so that the record is kept in
+ * primitive arrays, rather than in maps of boxed values.
+ * <p>
+ * The table also keeps track of the greatest index which a majority of the configuration's peers have
+ * acknowledged (a majority of each of its sets of peers, if the configuration is transitional). It's
+ * updated as acknowledgements are recorded, by a selection over the acknowledged indexes, which doesn't
+ * allocate; and only when the acknowledgement could change it. Leadership confirmations are tracked
+ * the same way: the greatest confirmation round, and the latest send time, which a majority have confirmed.
+ * <p>
+ * This class is not thread-safe; a ReplicatorInstance uses it only from its fiber.
+ */
+class PeerSlotTable {
+  private static final int NO_SLOT = -1;
+
+  private final QuorumConfiguration configuration;
+
+  // Peer ids in ascending order; a peer's slot is its position in this array.
+  private final long[] peerIds;
+  private final long[] nextIndexes;
+  private final long[] lastAckedIndexes;
+  private final long[] confirmedRounds;
+  private final long[] confirmedSendTimes;
+
+  // The slots of each set of peers a majority of which must acknowledge an index: the configuration's
+  // previous and next peers if it's transitional, or else all of its peers.
+  private final int[][] majoritySets;
+  private final long[] selectionScratch;
+
+  private long majorityAckedIndex = 0;
+  private long majorityConfirmedRound = 0;
+  private long majorityConfirmedSendTime = 0;
+
+  PeerSlotTable(QuorumConfiguration configuration) {
+    this.configuration = configuration;
+    this.peerIds = toSortedArray(configuration.allPeers());
+    this.nextIndexes = new long[peerIds.length];
+    this.lastAckedIndexes = new long[peerIds.length];
+    this.confirmedRounds = new long[peerIds.length];
+    this.confirmedSendTimes = new long[peerIds.length];
+    this.selectionScratch = new long[peerIds.length];
+
+    if (configuration.isTransitional) {
+      this.majoritySets = new int[][]{slotsOf(configuration.prevPeers()), slotsOf(configuration.nextPeers())};
+    } else {
+      this.majoritySets = new int[][]{slotsOf(configuration.allPeers())};
+    }
+  }
+
+  /**
+   * Build a table for a new configuration, carrying over the progress recorded in another table for
+   * each peer the two configurations have in common.
+   */
+  PeerSlotTable(QuorumConfiguration configuration, PeerSlotTable previous) {
+    this(configuration);
+
+    for (int slot = 0; slot < peerIds.length; slot++) {
+      final int previousSlot = previous.slotOf(peerIds[slot]);
+      if (previousSlot != NO_SLOT) {
+        nextIndexes[slot] = previous.nextIndexes[previousSlot];
+        lastAckedIndexes[slot] = previous.lastAckedIndexes[previousSlot];
+        confirmedRounds[slot] = previous.confirmedRounds[previousSlot];
+        confirmedSendTimes[slot] = previous.confirmedSendTimes[previousSlot];
+      }
+    }
+    majorityAckedIndex = selectMajorityValue(lastAckedIndexes);
+    majorityConfirmedRound = selectMajorityValue(confirmedRounds);
+    majorityConfirmedSendTime = selectMajorityValue(confirmedSendTimes);
+  }
+
+  QuorumConfiguration getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * @return The next index to send the peer, or defaultIndex if none has been set, or if the peer is
+   * not in this table's configuration.
+   */
+  long getNextIndex(long peerId, long defaultIndex) {
+    final int slot = slotOf(peerId);
+    if (slot == NO_SLOT || nextIndexes[slot] == 0) {
+      return defaultIndex;
+    }
+    return nextIndexes[slot];
+  }
+
+  /**
+   * Set the next index to send the peer; this has no effect if the peer is not in this table's configuration.
+   */
+  void setNextIndex(long peerId, long nextIndex) {
+    final int slot = slotOf(peerId);
+    if (slot != NO_SLOT) {
+      nextIndexes[slot] = nextIndex;
+    }
+  }
+
+  /**
+   * @return The last index the peer has acknowledged, or 0 if none, or if the peer is not in this table's
+   * configuration.
+   */
+  long getLastAckedIndex(long peerId) {
+    final int slot = slotOf(peerId);
+    return slot == NO_SLOT ? 0 : lastAckedIndexes[slot];
+  }
+
+  /**
+   * Record that the peer has acknowledged the given index, and so every index before it. Acknowledgements
+   * of indexes lower than one already recorded, and of peers not in this table's configuration, are ignored.
+   */
+  void recordAck(long peerId, long ackedIndex) {
+    final int slot = slotOf(peerId);
+    if (slot == NO_SLOT || ackedIndex <= lastAckedIndexes[slot]) {
+      return;
+    }
+
+    lastAckedIndexes[slot] = ackedIndex;
+
+    // Raising an index to no more than the current majority-acknowledged index cannot raise the latter.
+    if (ackedIndex > majorityAckedIndex) {
+      majorityAckedIndex = selectMajorityValue(lastAckedIndexes);
+    }
+  }
+
+  /**
+   * @return The greatest index which a majority of the configuration's peers have acknowledged; or, if the
+   * configuration is transitional, which a majority of each of its sets of peers have acknowledged.
+   */
+  long getMajorityAckedIndex() {
+    return majorityAckedIndex;
+  }
+
+  /**
+   * Record that the peer has replied, in the leader's current term, to a request which the leader sent
+   * during the given confirmation round, at the given time. As with acknowledgements, a round or a send
+   * time earlier than one already recorded for the peer is ignored, as are peers not in this table's
+   * configuration.
+   */
+  void recordConfirmation(long peerId, long round, long sentMillis) {
+    final int slot = slotOf(peerId);
+    if (slot == NO_SLOT) {
+      return;
+    }
+
+    if (round > confirmedRounds[slot]) {
+      confirmedRounds[slot] = round;
+      if (round > majorityConfirmedRound) {
+        majorityConfirmedRound = selectMajorityValue(confirmedRounds);
+      }
+    }
+
+    if (sentMillis > confirmedSendTimes[slot]) {
+      confirmedSendTimes[slot] = sentMillis;
+      if (sentMillis > majorityConfirmedSendTime) {
+        majorityConfirmedSendTime = selectMajorityValue(confirmedSendTimes);
+      }
+    }
+  }
+
+  /**
+   * @return The greatest confirmation round which a majority of the configuration's peers (a majority of
+   * each of its sets of peers, if it's transitional) have confirmed; or 0 if there is none.
+   */
+  long getMajorityConfirmedRound() {
+    return majorityConfirmedRound;
+  }
+
+  /**
+   * @return The latest send time which a majority of the configuration's peers (a majority of each of its
+   * sets of peers, if it's transitional) have confirmed. This is meaningful only if getMajorityConfirmedRound
+   * is not 0.
+   */
+  long getMajorityConfirmedSendTime() {
+    return majorityConfirmedSendTime;
+  }
+
+  private long selectMajorityValue(long[] values) {
+    long majorityValue = Long.MAX_VALUE;
+    for (int[] slots : majoritySets) {
+      majorityValue = Math.min(majorityValue, selectMajorityValue(values, slots));
+    }
+    return majorityValue;
+  }
+
+  /**
+   * Find the greatest value reached by a majority of the peers in the given slots: that is, sorting their
+   * values in descending order, the value at position (majority - 1). Quorums are small, so an insertion
+   * sort into a preallocated array suffices.
+   */
+  private long selectMajorityValue(long[] values, int[] slots) {
+    final int count = slots.length;
+    if (count == 0) {
+      return 0;
+    }
+
+    for (int i = 0; i < count; i++) {
+      final long value = values[slots[i]];
+      int j = i;
+      while (j > 0 && selectionScratch[j - 1] < value) {
+        selectionScratch[j] = selectionScratch[j - 1];
+        j--;
+      }
+      selectionScratch[j] = value;
+    }
+
+    final int majority = (count / 2) + 1;
+    return selectionScratch[majority - 1];
+  }
+
+  private int slotOf(long peerId) {
+    final int slot = Arrays.binarySearch(peerIds, peerId);
+    return slot < 0 ? NO_SLOT : slot;
+  }
+
+  private int[] slotsOf(Set<Long> peers) {
+    final int[] slots = new int[peers.size()];
+    int i = 0;
+    for (long peerId : peers) {
+      slots[i] = slotOf(peerId);
+      i++;
+    }
+    return slots;
+  }
+
+  private static long[] toSortedArray(Set<Long> peers) {
+    final long[] array = new long[peers.size()];
+    int i = 0;
+    for (long peerId : peers) {
+      array[i] = peerId;
+      i++;
+    }
+    Arrays.sort(array);
+    return array;
+  }
+}
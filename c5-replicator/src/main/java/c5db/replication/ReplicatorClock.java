@@ -16,6 +16,8 @@
 
 package c5db.replication;
 
+import c5db.ReplicatorConstants;
+
 /**
  * Information used by a {@link c5db.replication.ReplicatorInstance} to configure itself; for instance,
  * tunable timing-related parameters.
@@ -40,9 +42,111 @@ public interface ReplicatorClock {
   public long electionTimeout();
 
   /**
-   * How frequently we should check the append queue, and send RPCs to the clients.
+   * How frequently the leader sends heartbeats, and retries sending entries to peers which are
+   * behind. In polling mode (see {@link #leaderBatchingMaxDelay()}) this is also how frequently
+   * it checks the append queue.
    *
    * @return
    */
   public long leaderLogRequestsProcessingInterval();
+
+  /**
+   * The longest the leader waits, after a log request arrives at an empty append queue, before
+   * draining the queue, logging its requests, and sending them to peers. Requests arriving in the
+   * meantime are batched along with it. Zero means drain as soon as possible; a negative value
+   * selects polling mode, in which the queue is only checked every leaderLogRequestsProcessingInterval.
+   *
+   * @return
+   */
+  public default long leaderBatchingMaxDelay() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_LEADER_BATCHING_MAX_DELAY_MILLISECONDS;
+  }
+
+  /**
+   * The greatest number of log requests the leader drains from the append queue at a time. Any
+   * requests left over are drained in a later batch.
+   *
+   * @return
+   */
+  public default int leaderBatchingMaxEntries() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_LEADER_BATCHING_MAX_ENTRIES;
+  }
+
+  /**
+   * The greatest number of entries the leader sends to a peer in one AppendEntries request.
+   *
+   * @return
+   */
+  public default int leaderAppendMaxEntries() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_APPEND_MAX_ENTRIES;
+  }
+
+  /**
+   * The greatest amount of entry data, in bytes, the leader sends to a peer in one AppendEntries
+   * request; except that a request always contains at least one entry, however large.
+   *
+   * @return
+   */
+  public default long leaderAppendMaxBytes() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_APPEND_MAX_BYTES;
+  }
+
+  /**
+   * The greatest number of AppendEntries requests carrying entries that the leader may have awaiting
+   * reply from any one peer. The leader shrinks a peer's window below this when requests time out.
+   *
+   * @return
+   */
+  public default int leaderAppendWindowMaxRequests() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_APPEND_WINDOW_MAX_REQUESTS;
+  }
+
+  /**
+   * How many entries behind the leader's log a peer must be for the leader to send it a snapshot, if
+   * one is available which covers the entries the peer lacks, rather than the entries themselves. A
+   * peer needing entries the leader's log no longer retains is sent a snapshot regardless.
+   *
+   * @return
+   */
+  public default long leaderSnapshotInstallThreshold() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_SNAPSHOT_INSTALL_THRESHOLD_ENTRIES;
+  }
+
+  /**
+   * The greatest amount of snapshot data, in bytes, the leader sends to a peer in one InstallSnapshot
+   * request.
+   *
+   * @return
+   */
+  public default int leaderSnapshotChunkMaxBytes() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_SNAPSHOT_CHUNK_MAX_BYTES;
+  }
+
+  /**
+   * How long after sending a request to which a majority of the quorum reply the leader considers its
+   * leadership confirmed, so that it may serve read barriers without a further round of requests; zero
+   * disables leases. When leases are enabled, a follower which has heard from a leader within its election
+   * timeout refuses to help elect another. The lease must be shorter than the smallest election timeout
+   * of any peer, by a margin covering the greatest drift between their clocks; and every peer should be
+   * configured alike.
+   *
+   * @return
+   */
+  public default long leaderLeaseDuration() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_LEADER_LEASE_MILLISECONDS;
+  }
+
+  /**
+   * How long the quorum must have been idle -- no requests, and every peer holding every entry, all of
+   * them committed -- before the leader quiesces it; zero disables quiescence. A quiesced leader sends no
+   * heartbeats, and its quiesced followers stop checking on elections, until a request arrives, a peer
+   * starts an election, or the replicator is told that a peer is unreachable (see
+   * {@link ReplicatorInstance#peerUnreachable}). So quiescence should only be enabled where something
+   * outside the quorum, such as a node-wide failure detector, reports unreachable peers.
+   *
+   * @return
+   */
+  public default long quiescenceIdleTimeout() {
+    return ReplicatorConstants.REPLICATOR_DEFAULT_QUIESCENCE_IDLE_MILLISECONDS;
+  }
 }
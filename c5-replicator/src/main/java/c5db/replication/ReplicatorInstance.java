@@ -17,14 +17,21 @@
 package c5db.replication;
 
 import c5db.ReplicatorConstants;
+import c5db.interfaces.replication.GeneralizedReplicator.InvalidReplicatorStateException;
 import c5db.interfaces.replication.IndexCommitNotice;
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReadFreshness;
 import c5db.interfaces.replication.Replicator;
 import c5db.interfaces.replication.ReplicatorInstanceEvent;
 import c5db.interfaces.replication.ReplicatorLog;
 import c5db.interfaces.replication.ReplicatorReceipt;
+import c5db.interfaces.replication.ReplicatorSnapshot;
+import c5db.interfaces.replication.SnapshotProvider;
+import c5db.interfaces.replication.TermRun;
 import c5db.replication.generated.AppendEntries;
 import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.InstallSnapshot;
+import c5db.replication.generated.InstallSnapshotReply;
 import c5db.replication.generated.LogEntry;
 import c5db.replication.generated.PreElectionPoll;
 import c5db.replication.generated.PreElectionReply;
@@ -34,7 +41,10 @@ import c5db.replication.rpc.RpcReply;
 import c5db.replication.rpc.RpcRequest;
 import c5db.replication.rpc.RpcWireReply;
 import c5db.replication.rpc.RpcWireRequest;
+import c5db.replication.rpc.SerializedEntries;
+import c5db.util.ByteBudget;
 import c5db.util.C5Futures;
+import c5db.util.MetricRegistry;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
@@ -48,27 +58,37 @@ import org.jetlang.channels.MemoryChannel;
 import org.jetlang.channels.MemoryRequestChannel;
 import org.jetlang.channels.Request;
 import org.jetlang.channels.RequestChannel;
+import org.jetlang.channels.Session;
 import org.jetlang.channels.Subscriber;
 import org.jetlang.core.Disposable;
+import org.jetlang.core.SynchronousDisposingExecutor;
 import org.jetlang.fibers.Fiber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static c5db.ReplicatorConstants.REPLICATOR_APPEND_CATCH_UP_MAX_BYTES;
 import static c5db.ReplicatorConstants.REPLICATOR_APPEND_RPC_TIMEOUT_MILLISECONDS;
+import static c5db.ReplicatorConstants.REPLICATOR_INSTALL_SNAPSHOT_RPC_TIMEOUT_MILLISECONDS;
 import static c5db.ReplicatorConstants.REPLICATOR_VOTE_RPC_TIMEOUT_MILLISECONDS;
+import static c5db.log.EntryEncodingUtil.sumRemaining;
 
 
 /**
@@ -81,6 +101,11 @@ import static c5db.ReplicatorConstants.REPLICATOR_VOTE_RPC_TIMEOUT_MILLISECONDS;
 public class ReplicatorInstance implements Replicator {
   private final Channel<State> stateMemoryChannel = new MemoryChannel<>();
   private final RequestChannel<RpcWireRequest, RpcReply> incomingChannel = new MemoryRequestChannel<>();
+
+  // Requests received from the incoming channel which the replicator has neither replied to nor dropped. Once
+  // the replicator is disposed, it never will, so it releases them then. May be accessed from any thread.
+  private final Set<RpcWireRequest> unfinishedWireRequests = ConcurrentHashMap.newKeySet();
+  private volatile boolean disposed = false;
   private final RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel;
   private final Channel<ReplicatorInstanceEvent> eventChannel;
   private final Channel<IndexCommitNotice> commitNoticeChannel;
@@ -99,6 +124,22 @@ public class ReplicatorInstance implements Replicator {
   final ReplicatorClock clock;
   final ReplicatorInfoPersistence persister;
 
+  /**
+   * Node-wide budget for data held in memory: log requests waiting to be logged, and catch-up
+   * entries retrieved from the log for sending to peers.
+   */
+  private final ByteBudget byteBudget;
+
+  /**
+   * Instruments recording the progress of requests through the replication pipeline, and of elections.
+   */
+  private final ReplicatorMetrics metrics;
+
+  /**
+   * Source and destination of snapshots of the replicated state machine; only access from the fiber.
+   */
+  private SnapshotProvider snapshotProvider = SnapshotProvider.NONE;
+
   /**
    * These fields are mutable state used by leader. All of these must only be accessed from the fiber.
    */
@@ -106,15 +147,39 @@ public class ReplicatorInstance implements Replicator {
   private final BlockingQueue<InternalReplicationRequest> logRequests =
       new ArrayBlockingQueue<>(ReplicatorConstants.REPLICATOR_MAXIMUM_SIMULTANEOUS_LOG_REQUESTS);
 
-  // this is the next index from our log we need to send to each peer, kept track of on a per-peer basis.
-  private final Map<Long, Long> peersNextIndex = new HashMap<>();
+  // For each peer in the current configuration, the next index from our log we need to send it, and the last
+  // index it has successfully acked. I also keep track of my own acked log messages in here. Rebuilt whenever
+  // the quorum configuration changes.
+  private PeerSlotTable peerSlots = new PeerSlotTable(QuorumConfiguration.EMPTY);
+
+  // Flow control for the AppendEntries requests carrying entries to each peer.
+  private final Map<Long, AppendEntriesWindow> peersAppendWindow = new HashMap<>();
 
-  // The last successfully acked message from our peers.  I also keep track of my own acked log messages in here.
-  private final Map<Long, Long> peersLastAckedIndex = new HashMap<>();
+  // Peers for which entries are being retrieved from the log, in order to catch them up.
+  private final Set<Long> peersAwaitingCatchUp = new HashSet<>();
+
+  // Peers being sent a snapshot in place of entries; they are sent no AppendEntries until the transfer ends.
+  private final Map<Long, SnapshotTransfer> peersSnapshotTransfer = new HashMap<>();
 
   private long myFirstIndexAsLeader;
+
+  // When a leader excluded from the committed configuration will resign even if some peer of that
+  // configuration has yet to acknowledge it; zero until the leader finds itself excluded. See checkOnQuorumChange.
+  private long resignationDeadline;
+
+  // Read barriers awaiting confirmation of this replicator's leadership, in the order of their rounds; see
+  // readBarrier. Every AppendEntries request carries the confirmation round current when it's sent.
+  private final Queue<PendingReadBarrier> pendingReadBarriers = new ArrayDeque<>();
+  private long confirmationRound = 0;
+  private boolean confirmationRoundScheduled = false;
   private Disposable queueConsumer;
 
+  // When the quorum was last seen to be other than idle and fully replicated; see readyToQuiesce.
+  private long lastActiveMillis;
+
+  // Whether a drain of logRequests has been scheduled on the fiber and not yet begun; may be set from any thread.
+  private final AtomicBoolean queueDrainScheduled = new AtomicBoolean(false);
+
   /**
    * These fields are mutable state used by everyone; volatiles should only be updated from the
    * fiber, but may be read not-on-the-fiber; for instance, several of these are included in
@@ -128,7 +193,22 @@ public class ReplicatorInstance implements Replicator {
   private volatile long lastCommittedIndex;
   private volatile State myState = State.FOLLOWER;
   private volatile long lastRPC;
+  private volatile boolean quiesced = false;
   private long whosLeader = 0;
+  private Disposable electionChecker;
+
+  // A follower's knowledge of the leader, as of the last AppendEntries request received; see getReadFreshness.
+  private long leaderCommitIndex = 0;
+  private long lastLeaderContactMillis = 0;
+  private boolean hasLeaderContact = false;
+
+  /**
+   * These fields are mutable state used by a follower receiving a snapshot from the leader. They must only
+   * be accessed from the fiber.
+   */
+
+  private ReplicatorSnapshot incomingSnapshot;
+  private long incomingSnapshotNextOffset;
 
 
   public ReplicatorInstance(final Fiber fiber,
@@ -141,6 +221,37 @@ public class ReplicatorInstance implements Replicator {
                             final Channel<ReplicatorInstanceEvent> eventChannel,
                             final Channel<IndexCommitNotice> commitNoticeChannel,
                             State initialState) {
+    this(fiber, myId, quorumId, log, clock, persister, sendRpcChannel, eventChannel, commitNoticeChannel,
+        initialState, ByteBudget.unlimited());
+  }
+
+  public ReplicatorInstance(final Fiber fiber,
+                            final long myId,
+                            final String quorumId,
+                            ReplicatorLog log,
+                            ReplicatorClock clock,
+                            ReplicatorInfoPersistence persister,
+                            RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel,
+                            final Channel<ReplicatorInstanceEvent> eventChannel,
+                            final Channel<IndexCommitNotice> commitNoticeChannel,
+                            State initialState,
+                            ByteBudget byteBudget) {
+    this(fiber, myId, quorumId, log, clock, persister, sendRpcChannel, eventChannel, commitNoticeChannel,
+        initialState, byteBudget, MetricRegistry.NO_OP);
+  }
+
+  public ReplicatorInstance(final Fiber fiber,
+                            final long myId,
+                            final String quorumId,
+                            ReplicatorLog log,
+                            ReplicatorClock clock,
+                            ReplicatorInfoPersistence persister,
+                            RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel,
+                            final Channel<ReplicatorInstanceEvent> eventChannel,
+                            final Channel<IndexCommitNotice> commitNoticeChannel,
+                            State initialState,
+                            ByteBudget byteBudget,
+                            MetricRegistry metricRegistry) {
     this.fiber = fiber;
     this.myId = myId;
     this.quorumId = quorumId;
@@ -149,10 +260,13 @@ public class ReplicatorInstance implements Replicator {
     this.log = log;
     this.clock = clock;
     this.persister = persister;
+    this.byteBudget = byteBudget;
+    this.metrics = new ReplicatorMetrics(metricRegistry, quorumId);
     this.eventChannel = eventChannel;
     this.commitNoticeChannel = commitNoticeChannel;
     this.myElectionTimeout = clock.electionTimeout();
     this.lastRPC = clock.currentTimeMillis();
+    this.lastActiveMillis = lastRPC;
 
     commitNoticeChannel.subscribe(
         new ChannelSubscription<>(fiber, this::onCommit,
@@ -160,9 +274,8 @@ public class ReplicatorInstance implements Replicator {
                 notice.nodeId == myId
                     && notice.quorumId.equals(quorumId)));
 
-    incomingChannel.subscribe(fiber, this::onIncomingMessage);
-    fiber.scheduleWithFixedDelay(this::checkOnElection, clock.electionCheckInterval(),
-        clock.electionCheckInterval(), TimeUnit.MILLISECONDS);
+    incomingChannel.subscribe(new SynchronousDisposingExecutor(), this::receiveIncomingMessage);
+    startElectionChecks();
 
     this.myState = initialState;
 
@@ -227,11 +340,62 @@ public class ReplicatorInstance implements Replicator {
     }
 
     InternalReplicationRequest req = InternalReplicationRequest.toLogData(data);
+    if (!byteBudget.tryAcquire(req.dataLength)) {
+      logger.debug("refused logData because the node's byte budget is exhausted");
+      return Futures.immediateFailedFuture(
+          new ByteBudget.ByteBudgetExhausted("Unable to accept " + req.dataLength + " bytes; "
+              + byteBudget.getUsedBytes() + " of " + byteBudget.getCapacityBytes() + " bytes in use"));
+    }
     logRequests.put(req);
+    scheduleQueueDrain();
 
     return req.logReceiptFuture;
   }
 
+  @Override
+  public ListenableFuture<Long> readBarrier() {
+    final SettableFuture<Long> readIndexFuture = SettableFuture.create();
+
+    fiber.execute(() -> {
+      if (myState != State.LEADER) {
+        readIndexFuture.setException(new InvalidReplicatorStateException("Replicator is not in the leader state"));
+        return;
+      }
+
+      if (hasCommittedInCurrentTerm() && holdsLeaderLease()) {
+        readIndexFuture.set(lastCommittedIndex);
+        return;
+      }
+
+      // The heartbeats confirming leadership wake the followers, so the leader must wake too.
+      wake();
+
+      // Any round begun from now on, once confirmed, shows this replicator was still the leader after the
+      // read barrier was requested. Barriers requested before the round is sent all share it.
+      pendingReadBarriers.add(new PendingReadBarrier(readIndexFuture, confirmationRound + 1));
+      if (!confirmationRoundScheduled) {
+        confirmationRoundScheduled = true;
+        fiber.execute(this::sendConfirmationRound);
+      }
+
+      if (myFirstIndexAsLeader == 0 && logRequests.isEmpty()) {
+        // The commit index is not known to be current until an entry of the leader's own term commits. The
+        // entry logged to bring that about is an ordinary, empty data entry, which readers of the log will see.
+        logRequests.offer(InternalReplicationRequest.toLogData(new ArrayList<>()));
+        scheduleQueueDrain();
+      }
+    });
+
+    return readIndexFuture;
+  }
+
+  @Override
+  public ListenableFuture<ReadFreshness> getReadFreshness() {
+    final SettableFuture<ReadFreshness> freshnessFuture = SettableFuture.create();
+    fiber.execute(() -> freshnessFuture.set(readFreshness()));
+    return freshnessFuture;
+  }
+
   @Override
   public long getId() {
     return myId;
@@ -247,6 +411,7 @@ public class ReplicatorInstance implements Replicator {
         ", currentTerm=" + currentTerm +
         ", votedFor=" + votedFor +
         ", lastRPC=" + lastRPC +
+        ", quiesced=" + quiesced +
         ", quorumConfig=" + quorumConfig +
         '}';
   }
@@ -266,6 +431,11 @@ public class ReplicatorInstance implements Replicator {
     return commitNoticeChannel;
   }
 
+  @Override
+  public void setSnapshotProvider(SnapshotProvider snapshotProvider) {
+    fiber.execute(() -> this.snapshotProvider = snapshotProvider);
+  }
+
   public RequestChannel<RpcWireRequest, RpcReply> getIncomingChannel() {
     return incomingChannel;
   }
@@ -276,7 +446,26 @@ public class ReplicatorInstance implements Replicator {
   }
 
   public void dispose() {
+    disposed = true;
     fiber.dispose();
+    failQueuedLogRequests("Replicator was disposed");
+    finishUnfinishedWireRequests();
+  }
+
+  /**
+   * Inform the replicator that the given node is believed to be unreachable, for instance because the
+   * connection to it has closed. If the node is one of its peers and the quorum is quiesced, the replicator
+   * wakes, so that the quorum resumes detecting the failure of its leader, or the leader resumes keeping
+   * track of its followers.
+   *
+   * @param peerId id of the node believed to be unreachable.
+   */
+  public void peerUnreachable(long peerId) {
+    fiber.execute(() -> {
+      if (quorumConfig.allPeers().contains(peerId)) {
+        wake();
+      }
+    });
   }
 
   /**
@@ -306,7 +495,7 @@ public class ReplicatorInstance implements Replicator {
     long seqNum = 1;
     QuorumConfiguration config = QuorumConfiguration.of(peerIds);
     LogEntry configEntry = InternalReplicationRequest.toChangeConfig(config).getEntry(0, seqNum);
-    AppendEntries message = new AppendEntries(0, 0, 0, 0, Lists.newArrayList(configEntry), 0);
+    AppendEntries message = new AppendEntries(0, 0, 0, 0, Lists.newArrayList(configEntry), 0, false);
     RpcWireRequest request = new RpcWireRequest(myId, quorumId, message);
 
     // Send the append entries message to our own incoming message channel; we will receive it
@@ -327,7 +516,10 @@ public class ReplicatorInstance implements Replicator {
             null,
             e)
     );
+    disposed = true;
     fiber.dispose(); // kill us forever.
+    failQueuedLogRequests("Replicator failed");
+    finishUnfinishedWireRequests();
   }
 
 
@@ -351,6 +543,7 @@ public class ReplicatorInstance implements Replicator {
       throws InterruptedException {
     InternalReplicationRequest req = InternalReplicationRequest.toChangeConfig(quorumConfig);
     logRequests.put(req);
+    scheduleQueueDrain();
     return req.logReceiptFuture;
   }
 
@@ -370,6 +563,7 @@ public class ReplicatorInstance implements Replicator {
 
     InternalReplicationRequest req = InternalReplicationRequest.toChangeConfig(quorumConfig);
     if (logRequests.offer(req)) {
+      scheduleQueueDrain();
       return req.logReceiptFuture;
     } else {
       logger.warn("change request could not be submitted because log request queue was full {}", quorumConfig);
@@ -385,8 +579,8 @@ public class ReplicatorInstance implements Replicator {
 
   @FiberOnly
   private void onIncomingMessage(Request<RpcWireRequest, RpcReply> message) {
+    RpcWireRequest req = message.getRequest();
     try {
-      RpcWireRequest req = message.getRequest();
       if (req.isPreElectionPollMessage()) {
         doPreElectionPollMessage(message);
 
@@ -396,15 +590,76 @@ public class ReplicatorInstance implements Replicator {
       } else if (req.isAppendMessage()) {
         doAppendMessage(message);
 
+      } else if (req.isInstallSnapshotMessage()) {
+        doInstallSnapshotMessage(message);
+
       } else {
         logger.warn("got a message of protobuf type I don't know: {}", req);
+        finishWireRequest(req);
       }
     } catch (Exception e) {
       logger.error("Uncaught exception while processing message {}: {}", message, e);
+      finishWireRequest(req);
       throw e;
     }
   }
 
+  /**
+   * Accept a request from the incoming channel, on the publisher's thread, and pass it to the fiber to
+   * handle. Until the replicator replies to the request, it is unfinished; see finishWireRequest.
+   */
+  private void receiveIncomingMessage(Request<RpcWireRequest, RpcReply> message) {
+    final RpcWireRequest request = message.getRequest();
+    unfinishedWireRequests.add(request);
+
+    fiber.execute(() -> onIncomingMessage(new IncomingRequest(message)));
+
+    if (disposed) {
+      // The fiber may have been disposed before the request could run on it.
+      finishUnfinishedWireRequests();
+    }
+  }
+
+  /**
+   * Mark a request from the incoming channel as finished, releasing its payloads, if it isn't already.
+   */
+  private void finishWireRequest(RpcWireRequest request) {
+    if (unfinishedWireRequests.remove(request)) {
+      request.releasePayloads();
+    }
+  }
+
+  private void finishUnfinishedWireRequests() {
+    unfinishedWireRequests.forEach(this::finishWireRequest);
+  }
+
+  /**
+   * A request from the incoming channel which is finished as soon as it is replied to.
+   */
+  private class IncomingRequest implements Request<RpcWireRequest, RpcReply> {
+    private final Request<RpcWireRequest, RpcReply> request;
+
+    private IncomingRequest(Request<RpcWireRequest, RpcReply> request) {
+      this.request = request;
+    }
+
+    @Override
+    public Session getSession() {
+      return request.getSession();
+    }
+
+    @Override
+    public RpcWireRequest getRequest() {
+      return request.getRequest();
+    }
+
+    @Override
+    public void reply(RpcReply reply) {
+      request.reply(reply);
+      finishWireRequest(request.getRequest());
+    }
+  }
+
   @FiberOnly
   private void doPreElectionPollMessage(Request<RpcWireRequest, RpcReply> message) {
     final RpcWireRequest request = message.getRequest();
@@ -412,10 +667,14 @@ public class ReplicatorInstance implements Replicator {
     final long msgLastLogTerm = msg.getLastLogTerm();
     final long msgLastLogIndex = msg.getLastLogIndex();
 
+    // A peer considering an election has lost touch with the leader, so the quorum can't remain quiesced.
+    wake();
+
     final boolean wouldVote =
         msg.getTerm() >= currentTerm
             && atLeastAsUpToDateAsLocalLog(msgLastLogTerm, msgLastLogIndex)
-            && !rejectPollFromOldConfiguration(request.from, msgLastLogTerm, msgLastLogIndex);
+            && !rejectPollFromOldConfiguration(request.from, msgLastLogTerm, msgLastLogIndex)
+            && !upholdingLeaderLease();
 
     logger.debug("sending pre-election reply to {} wouldVote = {}", message.getRequest().from, wouldVote);
     PreElectionReply m = new PreElectionReply(currentTerm, wouldVote);
@@ -448,12 +707,27 @@ public class ReplicatorInstance implements Replicator {
         && myState == State.FOLLOWER;
   }
 
+  /**
+   * When leader leases are enabled, a follower which has heard from a leader within its election timeout
+   * refuses pre-election polls and votes, so that no other leader can be elected while the lease holds.
+   */
+  @FiberOnly
+  private boolean upholdingLeaderLease() {
+    return clock.leaderLeaseDuration() > 0
+        && myState == State.FOLLOWER
+        && whosLeader != 0
+        && clock.currentTimeMillis() < lastRPC + myElectionTimeout;
+  }
+
   @FiberOnly
   private void doRequestVote(Request<RpcWireRequest, RpcReply> message) {
     RequestVote msg = message.getRequest().getRequestVoteMessage();
 
-    // 1. Return if term < currentTerm (sec 5.1)
-    if (msg.getTerm() < currentTerm) {
+    // As with a pre-election poll, a candidate's request means the quorum can't remain quiesced.
+    wake();
+
+    // 1. Return if term < currentTerm (sec 5.1), or if upholding a leader's lease
+    if (msg.getTerm() < currentTerm || upholdingLeaderLease()) {
       RequestVoteReply m = new RequestVoteReply(currentTerm, false);
       RpcReply reply = new RpcReply(m);
       message.reply(reply);
@@ -526,6 +800,12 @@ public class ReplicatorInstance implements Replicator {
 
     // 4. reset election timeout
     lastRPC = clock.currentTimeMillis();
+    lastLeaderContactMillis = lastRPC;
+    hasLeaderContact = true;
+    leaderCommitIndex = Math.max(leaderCommitIndex, appendMessage.getCommitIndex());
+    if (!appendMessage.getQuiesce()) {
+      wake();
+    }
 
     long theLeader = appendMessage.getLeaderId();
     if (whosLeader != theLeader) {
@@ -548,6 +828,14 @@ public class ReplicatorInstance implements Replicator {
       appendReply(request, true);
       long newCommitIndex = Math.min(appendMessage.getCommitIndex(), log.getLastIndex());
       setLastCommittedIndex(newCommitIndex);
+
+      // Quiesce only if the leader and this follower agree that every entry is replicated and committed;
+      // otherwise, this follower's election timeout will eventually wake the quorum.
+      if (appendMessage.getQuiesce()
+          && log.getLastIndex() == msgPrevLogIndex
+          && lastCommittedIndex == msgPrevLogIndex) {
+        quiesce();
+      }
       return;
     }
 
@@ -555,12 +843,14 @@ public class ReplicatorInstance implements Replicator {
     // existing entries starting with first conflicting entry (sec 5.3)
     // nb: The process in which we fix the local log may involve several async log operations, so that is entirely
     // hidden up in these futures.  Note that the process can fail, so we handle that as well.
+    final long logWriteStartNanos = ReplicatorMetrics.nanoTime();
     List<ListenableFuture<Boolean>> logOperationFutures = reconcileAppendMessageWithLocalLog(appendMessage);
     ListenableFuture<List<Boolean>> bundledLogFuture = Futures.allAsList(logOperationFutures);
 
     // wait for the log to commit before returning message.  But do so async.
     C5Futures.addCallback(bundledLogFuture,
         (resultList) -> {
+          metrics.logWriteMicros.record(ReplicatorMetrics.microsSince(logWriteStartNanos));
           appendReply(request, true);
 
           // 8. Signal the client of the Replicator that it can apply newly committed entries to state machine
@@ -582,15 +872,141 @@ public class ReplicatorInstance implements Replicator {
     request.reply(reply);
   }
 
+  @FiberOnly
+  private void doInstallSnapshotMessage(final Request<RpcWireRequest, RpcReply> request) {
+    final InstallSnapshot snapshotMessage = request.getRequest().getInstallSnapshotMessage();
+
+    // The leader checks are the same as for AppendEntries (sec 5.1, 5.2)
+    if (snapshotMessage.getTerm() < currentTerm) {
+      installSnapshotReply(request, false, 0);
+      return;
+    }
+
+    if (snapshotMessage.getTerm() > currentTerm) {
+      setCurrentTerm(snapshotMessage.getTerm());
+    }
+
+    if (myState != State.FOLLOWER) {
+      becomeFollower();
+    }
+
+    lastRPC = clock.currentTimeMillis();
+    wake();
+
+    long theLeader = snapshotMessage.getLeaderId();
+    if (whosLeader != theLeader) {
+      updateFollowersKnowledgeOfCurrentLeader(theLeader);
+    }
+
+    final long offset = snapshotMessage.getOffset();
+    if (offset == 0) {
+      if (snapshotMessage.getLastIncludedIndex() <= lastCommittedIndex) {
+        // Every entry the snapshot reflects is already committed here, so there is nothing to install.
+        installSnapshotReply(request, true, snapshotMessage.getSnapshotSize());
+        return;
+      }
+
+      incomingSnapshot = new ReplicatorSnapshot(
+          snapshotMessage.getLastIncludedIndex(),
+          snapshotMessage.getLastIncludedTerm(),
+          QuorumConfiguration.fromProtostuff(snapshotMessage.getLastIncludedConfiguration()),
+          snapshotMessage.getSnapshotSize());
+      incomingSnapshotNextOffset = 0;
+
+    } else if (incomingSnapshot == null
+        || incomingSnapshot.lastIncludedIndex != snapshotMessage.getLastIncludedIndex()
+        || incomingSnapshot.lastIncludedTerm != snapshotMessage.getLastIncludedTerm()
+        || offset != incomingSnapshotNextOffset) {
+      // Chunks must arrive in order; the leader will begin the transfer again.
+      installSnapshotReply(request, false, 0);
+      return;
+    }
+
+    final ReplicatorSnapshot snapshot = incomingSnapshot;
+    final ByteBuffer data = snapshotMessage.getData() == null ? ByteBuffer.allocate(0) : snapshotMessage.getData();
+    final long nextOffset = offset + data.remaining();
+    final boolean done = snapshotMessage.getDone();
+
+    C5Futures.addCallback(snapshotProvider.writeSnapshot(snapshot, offset, data, done),
+        (ignore) -> {
+          if (snapshot != incomingSnapshot) {
+            // A newer transfer has begun in the meantime.
+            installSnapshotReply(request, false, 0);
+          } else if (done) {
+            resetLogToSnapshot(request, snapshot);
+          } else {
+            incomingSnapshotNextOffset = nextOffset;
+            installSnapshotReply(request, true, nextOffset);
+          }
+        },
+        (Throwable t) -> {
+          logger.error("failure writing a snapshot received from the leader", t);
+          if (snapshot == incomingSnapshot) {
+            incomingSnapshot = null;
+          }
+          installSnapshotReply(request, false, 0);
+        }, fiber);
+  }
+
+  /**
+   * The state machine now reflects the snapshot, so discard the log (every entry of which is either
+   * reflected in the snapshot, or in conflict with it), and continue the log from the snapshot.
+   */
+  @FiberOnly
+  private void resetLogToSnapshot(Request<RpcWireRequest, RpcReply> request, ReplicatorSnapshot snapshot) {
+    logger.info("installed snapshot {}; resetting the log to follow it", snapshot);
+    incomingSnapshot = null;
+
+    final ListenableFuture<Boolean> resetFuture = log.resetLog(
+        snapshot.lastIncludedIndex, snapshot.lastIncludedTerm, snapshot.lastIncludedConfiguration);
+    refreshQuorumConfigurationFromLog();
+
+    // The snapshot reflects only committed entries; they need no commit notices, having been applied already.
+    if (snapshot.lastIncludedIndex > lastCommittedIndex) {
+      lastCommittedIndex = snapshot.lastIncludedIndex;
+    }
+
+    C5Futures.addCallback(resetFuture,
+        (result) -> installSnapshotReply(request, true, snapshot.sizeBytes),
+        (Throwable t) -> {
+          logger.error("failure resetting the log to follow an installed snapshot", t);
+          failReplicatorInstance(t);
+        }, fiber);
+  }
+
+  @FiberOnly
+  private void installSnapshotReply(Request<RpcWireRequest, RpcReply> request, boolean success, long nextOffset) {
+    InstallSnapshotReply m = new InstallSnapshotReply(currentTerm, success, nextOffset);
+    RpcReply reply = new RpcReply(m);
+    request.reply(reply);
+  }
+
   @FiberOnly
   private boolean isLeader() {
     return myState == State.LEADER;
   }
 
+  @FiberOnly
+  private ReadFreshness readFreshness() {
+    final long now = clock.currentTimeMillis();
+
+    if (myState == State.LEADER) {
+      final long millisSinceConfirmation = peerSlots.getMajorityConfirmedRound() == 0 ?
+          ReadFreshness.NO_LEADER_CONTACT : Math.max(now - peerSlots.getMajorityConfirmedSendTime(), 0);
+      return new ReadFreshness(lastCommittedIndex, lastCommittedIndex, millisSinceConfirmation);
+    }
+
+    final long millisSinceLeaderContact = hasLeaderContact ?
+        Math.max(now - lastLeaderContactMillis, 0) : ReadFreshness.NO_LEADER_CONTACT;
+    return new ReadFreshness(lastCommittedIndex, Math.max(leaderCommitIndex, lastCommittedIndex),
+        millisSinceLeaderContact);
+  }
+
   @FiberOnly
   private void updateFollowersKnowledgeOfCurrentLeader(long theLeader) {
     logger.debug("discovered new leader: {}", theLeader);
     whosLeader = theLeader;
+    metrics.electionEnded();
 
     eventChannel.publish(
         new ReplicatorInstanceEvent(
@@ -685,6 +1101,7 @@ public class ReplicatorInstance implements Replicator {
             clock.currentTimeMillis(),
             null, null)
     );
+    metrics.preElectionStarted();
 
     // Start new election "timer".
     lastRPC = clock.currentTimeMillis();
@@ -781,6 +1198,7 @@ public class ReplicatorInstance implements Replicator {
             clock.currentTimeMillis(),
             null, null)
     );
+    metrics.electionStarted();
 
     // Start new election "timer".
     lastRPC = clock.currentTimeMillis();
@@ -903,6 +1321,7 @@ public class ReplicatorInstance implements Replicator {
   private void becomeFollower() {
     boolean wasLeader = myState == State.LEADER;
     setState(State.FOLLOWER);
+    metrics.electionEnded();
 
     if (wasLeader) {
       eventChannel.publish(
@@ -916,6 +1335,9 @@ public class ReplicatorInstance implements Replicator {
     }
 
     stopQueueConsumer();
+    failQueuedLogRequests("Replicator ceased to be the leader before logging the request");
+    failPendingReadBarriers();
+    metrics.leadershipEnded();
   }
 
   @FiberOnly
@@ -926,24 +1348,152 @@ public class ReplicatorInstance implements Replicator {
     }
   }
 
+  @FiberOnly
+  private void startElectionChecks() {
+    electionChecker = fiber.scheduleWithFixedDelay(this::checkOnElection, clock.electionCheckInterval(),
+        clock.electionCheckInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  @FiberOnly
+  private void stopElectionChecks() {
+    if (electionChecker != null) {
+      electionChecker.dispose();
+      electionChecker = null;
+    }
+  }
+
+  /**
+   * Determine whether the leader should quiesce the quorum: whether quiescence is enabled, and the quorum has
+   * been idle and fully replicated for the configured time.
+   */
+  @FiberOnly
+  private boolean readyToQuiesce() {
+    final long idleTimeout = clock.quiescenceIdleTimeout();
+    if (idleTimeout <= 0) {
+      return false;
+    }
+
+    final long now = clock.currentTimeMillis();
+    if (!isIdleAndFullyReplicated()) {
+      lastActiveMillis = now;
+      return false;
+    }
+    return now - lastActiveMillis >= idleTimeout;
+  }
+
+  /**
+   * @return true if there are no requests waiting or in progress, and every peer holds every entry of the
+   * leader's log, all of which are committed.
+   */
+  @FiberOnly
+  private boolean isIdleAndFullyReplicated() {
+    final long lastIndex = log.getLastIndex();
+
+    if (!logRequests.isEmpty()
+        || !pendingReadBarriers.isEmpty()
+        || confirmationRoundScheduled
+        || !peersAwaitingCatchUp.isEmpty()
+        || !peersSnapshotTransfer.isEmpty()
+        || quorumConfig.isTransitional
+        || lastCommittedIndex != lastIndex) {
+      return false;
+    }
+
+    for (long peer : allPeersExceptMe()) {
+      if (peerSlots.getLastAckedIndex(peer) != lastIndex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ask every peer to quiesce, with a heartbeat which it will accept only if its log and commit index match
+   * the leader's; then quiesce, stopping heartbeats. If any peer doesn't accept, the leader wakes.
+   */
+  @FiberOnly
+  private void quiesceAsLeader() {
+    logger.debug("quiescing after {} ms idle", clock.currentTimeMillis() - lastActiveMillis);
+
+    final long nextIndex = log.getLastIndex() + 1;
+    for (long peer : allPeersExceptMe()) {
+      sendAppendEntries(peer, nextIndex, nextIndex - 1, Collections.emptyList(), null, true);
+    }
+    quiesce();
+
+    if (!logRequests.isEmpty()) {
+      // A request arrived as the quorum quiesced, perhaps before the request could see it was quiesced.
+      wake();
+    }
+  }
+
+  @FiberOnly
+  private void quiesce() {
+    if (quiesced) {
+      return;
+    }
+
+    quiesced = true;
+    stopQueueConsumer();
+    stopElectionChecks();
+    publishQuiescenceEvent(ReplicatorInstanceEvent.EventType.QUORUM_QUIESCED);
+  }
+
+  /**
+   * If quiesced, resume heartbeats (as leader) or election checks. A follower allows the leader a full
+   * election timeout from now to reach it before it considers starting an election.
+   */
+  @FiberOnly
+  private void wake() {
+    if (!quiesced) {
+      return;
+    }
+
+    quiesced = false;
+    lastRPC = clock.currentTimeMillis();
+    lastActiveMillis = lastRPC;
+    startElectionChecks();
+    if (myState == State.LEADER) {
+      startQueueConsumer();
+    }
+    publishQuiescenceEvent(ReplicatorInstanceEvent.EventType.QUORUM_WOKEN);
+  }
+
+  @FiberOnly
+  private void publishQuiescenceEvent(ReplicatorInstanceEvent.EventType eventType) {
+    eventChannel.publish(
+        new ReplicatorInstanceEvent(
+            eventType,
+            this,
+            isLeader() ? myId : whosLeader,
+            currentTerm,
+            clock.currentTimeMillis(),
+            null, null));
+  }
+
   @FiberOnly
   private void becomeLeader() {
     logger.warn("I AM THE LEADER NOW, commence AppendEntries RPCs term = {}", currentTerm);
 
     setState(State.LEADER);
+    metrics.electionWon();
 
     // Page 7, para 5
     long myNextLog = log.getLastIndex() + 1;
 
-    peersLastAckedIndex.clear();
-    peersNextIndex.clear();
+    peerSlots = new PeerSlotTable(quorumConfig);
+    peersAppendWindow.clear();
+    peersAwaitingCatchUp.clear();
+    peersSnapshotTransfer.clear();
 
     for (long peer : allPeersExceptMe()) {
-      peersNextIndex.put(peer, myNextLog);
+      peerSlots.setNextIndex(peer, myNextLog);
     }
 
     // none so far!
     myFirstIndexAsLeader = 0;
+    resignationDeadline = 0;
+    lastActiveMillis = clock.currentTimeMillis();
 
     eventChannel.publish(
         new ReplicatorInstanceEvent(
@@ -958,32 +1508,100 @@ public class ReplicatorInstance implements Replicator {
     startQueueConsumer();
   }
 
+  /**
+   * The queue consumer runs on a fixed schedule; each run drains the queue (in polling mode) and sends
+   * heartbeats. Except in polling mode, requests are also drained as they arrive: see scheduleQueueDrain.
+   */
   @FiberOnly
   private void startQueueConsumer() {
-    queueConsumer = fiber.scheduleAtFixedRate(() -> {
-      try {
-        consumeQueue();
-        checkOnQuorumChange();
-      } catch (Throwable t) {
-        logger.error("Exception in consumeQueue: ", t);
-        failReplicatorInstance(t);
+    queueConsumer = fiber.scheduleAtFixedRate(this::runQueueConsumer,
+        0, clock.leaderLogRequestsProcessingInterval(), TimeUnit.MILLISECONDS);
+
+    if (!logRequests.isEmpty()) {
+      scheduleQueueDrain();
+    }
+  }
+
+  @FiberOnly
+  private void runQueueConsumer() {
+    try {
+      if (readyToQuiesce()) {
+        quiesceAsLeader();
+        return;
       }
-    }, 0, clock.leaderLogRequestsProcessingInterval(), TimeUnit.MILLISECONDS);
+      consumeQueue();
+      checkOnQuorumChange();
+    } catch (Throwable t) {
+      logger.error("Exception in consumeQueue: ", t);
+      failReplicatorInstance(t);
+    }
+  }
+
+  /**
+   * Arrange for the log request queue to be drained on the fiber, unless in polling mode, or unless a
+   * drain is already scheduled (in which case it will pick up any requests queued before it begins).
+   * This method may be called from any thread, after a request has been added to the queue.
+   */
+  private void scheduleQueueDrain() {
+    if (quiesced) {
+      // Waking restarts the queue consumer, which drains the queue.
+      fiber.execute(this::wake);
+      return;
+    }
+
+    final long maxDelay = clock.leaderBatchingMaxDelay();
+    if (maxDelay < 0 || !queueDrainScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    if (maxDelay == 0) {
+      fiber.execute(this::drainQueue);
+    } else {
+      fiber.schedule(this::drainQueue, maxDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @FiberOnly
+  private void drainQueue() {
+    queueDrainScheduled.set(false);
+
+    if (quiesced) {
+      // The quorum quiesced after this drain was scheduled, so the requests it was scheduled for remain.
+      wake();
+      return;
+    }
+
+    // Heartbeats are the queue consumer's business, so there is nothing to do if the queue is empty.
+    // If this replicator is not the leader, any requests wait for the queue consumer to be started.
+    if (myState != State.LEADER || queueConsumer == null || logRequests.isEmpty()) {
+      return;
+    }
+    runQueueConsumer();
   }
 
   @FiberOnly
   private void consumeQueue() {
-    // retrieve as many items as possible. send rpc.
+    // retrieve as many items as possible, up to the batch limit. send rpc.
     // If there are no pending log requests, this method sends out heartbeats.
     final List<InternalReplicationRequest> reqs = new ArrayList<>();
+    final int maxEntries = clock.leaderBatchingMaxEntries();
 
     logger.trace("queue consuming");
-    while (logRequests.peek() != null) {
-      reqs.add(logRequests.poll());
+    beginConfirmationRound();
+    metrics.logRequestQueueDepth.record(logRequests.size());
+    while (reqs.size() < maxEntries && logRequests.peek() != null) {
+      final InternalReplicationRequest req = logRequests.poll();
+      metrics.logRequestQueueWaitMicros.record(ReplicatorMetrics.microsSince(req.creationNanos));
+      reqs.add(req);
     }
 
     logger.trace("{} queue items to commit", reqs.size());
 
+    if (!logRequests.isEmpty()) {
+      // The batch limit was reached; drain the rest in another batch.
+      scheduleQueueDrain();
+    }
+
     final long firstIndexInList = log.getLastIndex() + 1;
     final long lastIndexInList = firstIndexInList + reqs.size() - 1;
 
@@ -991,31 +1609,81 @@ public class ReplicatorInstance implements Replicator {
     leaderLogNewEntries(newLogEntries, lastIndexInList);
     refreshQuorumConfigurationFromLog();
 
+    // The log now holds (and accounts for) the data of the requests just logged.
+    releaseLogRequestCredits(reqs);
+
     assert lastIndexInList == log.getLastIndex();
 
+    // Peers which are up to date are all sent the same requests, which share their serialized entries.
+    final List<SerializedEntries> newEntriesRequests = splitIntoRequests(newLogEntries);
+    try {
+      sendToEachPeer(newLogEntries, newEntriesRequests, firstIndexInList, lastIndexInList);
+    } finally {
+      newEntriesRequests.forEach(SerializedEntries::release);
+    }
+  }
+
+  @FiberOnly
+  private void sendToEachPeer(List<LogEntry> newLogEntries,
+                              List<SerializedEntries> newEntriesRequests,
+                              long firstIndexInList,
+                              long lastIndexInList) {
     for (final long peer : allPeersExceptMe()) {
 
+      if (peersSnapshotTransfer.containsKey(peer)) {
+        // The peer is receiving a snapshot; the chunks of the transfer serve as heartbeats.
+        continue;
+      }
+
       // for each peer, figure out how many "back messages" should I send:
-      final long peerNextIdx = this.peersNextIndex.getOrDefault(peer, firstIndexInList);
+      final long peerNextIdx = peerSlots.getNextIndex(peer, firstIndexInList);
 
       if (peerNextIdx < firstIndexInList) {
         final long moreCount = firstIndexInList - peerNextIdx;
-        logger.debug("sending {} more log entries to peer {}", moreCount, peer);
+        final AppendEntriesWindow window = appendWindow(peer);
+
+        if (!window.hasRoom() || peersAwaitingCatchUp.contains(peer)) {
+          // Requests already sent to this peer, or entries already being retrieved for it, have to
+          // complete before it is sent any more.
+          continue;
+        }
+
+        // A peer too far behind, or needing entries the log no longer retains, is sent a snapshot instead.
+        final ReplicatorSnapshot snapshot = snapshotToCatchUp(peerNextIdx);
+        if (snapshot != null) {
+          startSnapshotTransfer(peer, snapshot);
+          continue;
+        } else if (peerNextIdx < log.getFirstIndex()) {
+          logger.warn("unable to catch up peer {}: it needs entries from index {} but the log begins at {}, "
+              + "and no snapshot is available to take their place", peer, peerNextIdx, log.getFirstIndex());
+          continue;
+        }
+
+        // Retrieve no more than the peer's window has room to receive.
+        final long catchUpBytes = Math.min(REPLICATOR_APPEND_CATCH_UP_MAX_BYTES,
+            window.room() * clock.leaderAppendMaxBytes());
 
-        // TODO check moreCount is reasonable, and available in log. Otherwise do alternative peer catch up
-        // TODO alternative peer catchup is by a different process, send message to that then skip sending AppendRpc
+        if (!byteBudget.tryAcquire(catchUpBytes)) {
+          logger.debug("deferring catch-up of peer {} because the node's byte budget is exhausted", peer);
+          continue;
+        }
 
-        // TODO allow for smaller 'catch up' messages so we don't try to create a 400GB sized message.
+        logger.debug("sending {} more log entries to peer {}", moreCount, peer);
 
         // TODO cache these extra LogEntry objects so we don't recreate too many of them.
 
-        ListenableFuture<List<LogEntry>> peerEntriesFuture = log.getLogEntries(peerNextIdx, firstIndexInList);
+        // Catch-up retrievals are bounded in size; if the peer is further behind than one retrieval
+        // covers, send what was retrieved, and the next run of consumeQueue will continue from there.
+        peersAwaitingCatchUp.add(peer);
+        ListenableFuture<List<LogEntry>> peerEntriesFuture =
+            log.getLogEntries(peerNextIdx, firstIndexInList, catchUpBytes);
 
         C5Futures.addCallback(peerEntriesFuture,
             (entriesFromLog) -> {
-              // TODO make sure the lists splice neatly together.
-              assert entriesFromLog.size() == moreCount;
-              if (peerNextIdx != peersNextIndex.get(peer) ||
+              byteBudget.release(catchUpBytes);
+              peersAwaitingCatchUp.remove(peer);
+              assert entriesFromLog.size() > 0 && entriesFromLog.size() <= moreCount;
+              if (peerNextIdx != peerSlots.getNextIndex(peer, 0) ||
                   myState != State.LEADER) {
                 // These were the same when we started checking the log, but they're not now -- that means
                 // things happened while the log was retrieving, so discard this result. This is safe because
@@ -1023,22 +1691,248 @@ public class ReplicatorInstance implements Replicator {
                 return;
               }
 
+              if (entriesFromLog.size() < moreCount) {
+                sendEntriesWithinWindow(peer, entriesFromLog);
+                return;
+              }
+
               List<LogEntry> entriesToAppend = new ArrayList<>((int) (newLogEntries.size() + moreCount));
               entriesToAppend.addAll(entriesFromLog);
               entriesToAppend.addAll(newLogEntries);
-              sendAppendEntries(peer, peerNextIdx, lastIndexInList, entriesToAppend);
+              sendEntriesWithinWindow(peer, entriesToAppend);
             },
             (Throwable t) -> {
+              byteBudget.release(catchUpBytes);
+              peersAwaitingCatchUp.remove(peer);
               // TODO is this situation ever recoverable?
               logger.error("failed to retrieve from log", t);
               failReplicatorInstance(t);
             }, fiber);
+      } else if (newLogEntries.isEmpty()) {
+        // Heartbeats carry no entries, so they are not subject to the peer's window.
+        sendAppendEntries(peer, peerNextIdx, lastIndexInList, newLogEntries, null);
       } else {
-        sendAppendEntries(peer, peerNextIdx, lastIndexInList, newLogEntries);
+        sendRequestsWithinWindow(peer, newEntriesRequests);
       }
     }
   }
 
+  /**
+   * Send the given entries, which must begin at the peer's next index, in a train of AppendEntries
+   * requests, for as long as the peer's window has room. Entries which don't fit are left for a later
+   * catch-up, which begins from the peer's next index.
+   */
+  @FiberOnly
+  private void sendEntriesWithinWindow(long peer, List<LogEntry> entries) {
+    final List<SerializedEntries> requests = splitIntoRequests(entries);
+    try {
+      sendRequestsWithinWindow(peer, requests);
+    } finally {
+      requests.forEach(SerializedEntries::release);
+    }
+  }
+
+  @FiberOnly
+  private void sendRequestsWithinWindow(long peer, List<SerializedEntries> requests) {
+    final AppendEntriesWindow window = appendWindow(peer);
+
+    for (int i = 0; i < requests.size() && window.hasRoom(); i++) {
+      final List<LogEntry> requestEntries = requests.get(i).entries;
+      sendAppendEntries(peer, requestEntries.get(0).getIndex(),
+          requestEntries.get(requestEntries.size() - 1).getIndex(), requestEntries, requests.get(i));
+    }
+  }
+
+  /**
+   * Divide the given entries into the entries of a train of AppendEntries requests, each limited in its
+   * number of entries and bytes. The caller must release each of the returned SerializedEntries.
+   */
+  @FiberOnly
+  private List<SerializedEntries> splitIntoRequests(List<LogEntry> entries) {
+    final int maxEntries = clock.leaderAppendMaxEntries();
+    final long maxBytes = clock.leaderAppendMaxBytes();
+    final List<SerializedEntries> requests = new ArrayList<>();
+
+    int start = 0;
+    while (start < entries.size()) {
+      int end = start + 1;
+      long requestBytes = sumRemaining(entries.get(start).getDataList());
+
+      while (end < entries.size() && end - start < maxEntries) {
+        final long entryBytes = sumRemaining(entries.get(end).getDataList());
+        if (requestBytes + entryBytes > maxBytes) {
+          break;
+        }
+        requestBytes += entryBytes;
+        end++;
+      }
+
+      requests.add(new SerializedEntries(entries.subList(start, end)));
+      start = end;
+    }
+    return requests;
+  }
+
+  /**
+   * Find a snapshot with which to catch up a peer, if the peer needs one: that is, if its next index
+   * precedes the oldest entry the log retains, or it is at least the snapshot install threshold behind.
+   *
+   * @return The latest snapshot, provided it reflects the entry at peerNextIdx and follows directly
+   * on to the entries in the log; or null if there is no such snapshot, or the peer doesn't need one.
+   */
+  @FiberOnly
+  @Nullable
+  private ReplicatorSnapshot snapshotToCatchUp(long peerNextIdx) {
+    final long firstIndexInLog = log.getFirstIndex();
+    if (peerNextIdx >= firstIndexInLog
+        && log.getLastIndex() - peerNextIdx < clock.leaderSnapshotInstallThreshold()) {
+      return null;
+    }
+
+    final ReplicatorSnapshot snapshot = snapshotProvider.getLatestSnapshot();
+    if (snapshot == null
+        || snapshot.lastIncludedIndex < peerNextIdx
+        || snapshot.lastIncludedIndex + 1 < firstIndexInLog) {
+      return null;
+    }
+    return snapshot;
+  }
+
+  @FiberOnly
+  private void startSnapshotTransfer(long peer, ReplicatorSnapshot snapshot) {
+    logger.info("sending snapshot {} to peer {}, whose next index is {}", snapshot, peer,
+        peerSlots.getNextIndex(peer, 0));
+    final SnapshotTransfer transfer = new SnapshotTransfer(snapshot, currentTerm);
+    peersSnapshotTransfer.put(peer, transfer);
+    sendSnapshotChunk(peer, transfer, 0);
+  }
+
+  /**
+   * Read a chunk of the snapshot beginning at the given offset, and send it to the peer. The peer's reply
+   * prompts the next chunk, so there is one chunk at a time in flight to each peer receiving a snapshot.
+   */
+  @FiberOnly
+  private void sendSnapshotChunk(long peer, SnapshotTransfer transfer, long offset) {
+    final ReplicatorSnapshot snapshot = transfer.snapshot;
+    final int chunkBytes = (int) Math.min(clock.leaderSnapshotChunkMaxBytes(), snapshot.sizeBytes - offset);
+
+    C5Futures.addCallback(snapshotProvider.readSnapshot(snapshot, offset, chunkBytes),
+        (chunk) -> {
+          if (!isCurrentSnapshotTransfer(peer, transfer)) {
+            return;
+          }
+
+          final boolean done = offset + chunk.remaining() >= snapshot.sizeBytes;
+          if (!chunk.hasRemaining() && !done) {
+            logger.error("read no data from snapshot {} at offset {}", snapshot, offset);
+            endSnapshotTransfer(peer, transfer);
+            return;
+          }
+
+          InstallSnapshot msg = new InstallSnapshot(
+              currentTerm, myId,
+              snapshot.lastIncludedIndex, snapshot.lastIncludedTerm,
+              snapshot.lastIncludedConfiguration.toProtostuff(),
+              snapshot.sizeBytes, offset, chunk, done);
+
+          RpcRequest request = new RpcRequest(peer, myId, quorumId, msg);
+          AsyncRequest.withOneReply(fiber, sendRpcChannel, request,
+              message -> handleInstallSnapshotReply(peer, transfer, message),
+              REPLICATOR_INSTALL_SNAPSHOT_RPC_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS, () -> {
+                // The transfer will begin again on a later run of consumeQueue.
+                logger.debug("peer {} timed out receiving a snapshot", peer);
+                endSnapshotTransfer(peer, transfer);
+              });
+        },
+        (Throwable t) -> {
+          logger.error("failed to read snapshot {} to send to peer {}", snapshot, peer, t);
+          endSnapshotTransfer(peer, transfer);
+        }, fiber);
+  }
+
+  @FiberOnly
+  private void handleInstallSnapshotReply(long peer, SnapshotTransfer transfer, RpcWireReply message) {
+    if (!isCurrentSnapshotTransfer(peer, transfer)) {
+      return;
+    }
+
+    final InstallSnapshotReply reply = message.getInstallSnapshotReplyMessage();
+    final ReplicatorSnapshot snapshot = transfer.snapshot;
+
+    if (!reply.getSuccess()) {
+      logger.debug("peer {} refused a chunk of snapshot {}", peer, snapshot);
+      endSnapshotTransfer(peer, transfer);
+
+    } else if (reply.getNextOffset() < snapshot.sizeBytes) {
+      sendSnapshotChunk(peer, transfer, reply.getNextOffset());
+
+    } else {
+      // The peer has installed the snapshot, so it has the equivalent of every entry the snapshot reflects.
+      logger.debug("peer {} installed snapshot {}", peer, snapshot);
+      endSnapshotTransfer(peer, transfer);
+      peerSlots.setNextIndex(peer, snapshot.lastIncludedIndex + 1);
+      peerSlots.recordAck(peer, snapshot.lastIncludedIndex);
+      checkIfMajorityCanCommit(snapshot.lastIncludedIndex);
+    }
+  }
+
+  @FiberOnly
+  private boolean isCurrentSnapshotTransfer(long peer, SnapshotTransfer transfer) {
+    return myState == State.LEADER
+        && currentTerm == transfer.term
+        && peersSnapshotTransfer.get(peer) == transfer;
+  }
+
+  @FiberOnly
+  private void endSnapshotTransfer(long peer, SnapshotTransfer transfer) {
+    peersSnapshotTransfer.remove(peer, transfer);
+  }
+
+  /**
+   * One attempt to send a snapshot to a peer. Each attempt is a distinct object, so that replies
+   * belonging to an abandoned attempt can be recognized and ignored.
+   */
+  private static class SnapshotTransfer {
+    private final ReplicatorSnapshot snapshot;
+    private final long term;
+
+    private SnapshotTransfer(ReplicatorSnapshot snapshot, long term) {
+      this.snapshot = snapshot;
+      this.term = term;
+    }
+  }
+
+  @FiberOnly
+  private AppendEntriesWindow appendWindow(long peer) {
+    return peersAppendWindow.computeIfAbsent(peer,
+        (ignore) -> new AppendEntriesWindow(clock.leaderAppendWindowMaxRequests()));
+  }
+
+  private void releaseLogRequestCredits(List<InternalReplicationRequest> requests) {
+    long dataLength = 0;
+    for (InternalReplicationRequest request : requests) {
+      dataLength += request.dataLength;
+    }
+    if (dataLength > 0) {
+      byteBudget.release(dataLength);
+    }
+  }
+
+  /**
+   * Fail every request still waiting in the log request queue, releasing the credits held for its data,
+   * when there is no longer a leader to log it. The queue is thread-safe, so this may be called from any
+   * thread, e.g. after the fiber has been disposed.
+   */
+  private void failQueuedLogRequests(String reason) {
+    final List<InternalReplicationRequest> reqs = new ArrayList<>();
+    logRequests.drainTo(reqs);
+    releaseLogRequestCredits(reqs);
+
+    for (InternalReplicationRequest req : reqs) {
+      req.logReceiptFuture.setException(new InvalidReplicatorStateException(reason));
+    }
+  }
+
   @FiberOnly
   private void checkOnQuorumChange() {
 
@@ -1052,9 +1946,16 @@ public class ReplicatorInstance implements Replicator {
 
         if (!quorumConfig.allPeers().contains(myId)) {
           // Committed, stable configuration
-          // Resign if it does not include me.
+          // Resign if it does not include me; but first give each of its peers the chance to acknowledge the
+          // configuration entry, since any catch-up still in progress for a new peer is abandoned on resigning.
+          // Having acknowledged it, a peer learns it's committed from the heartbeat just sent.
           // TODO should there be a special event for this? Should the replicator shut itself down completely?
-          becomeFollower();
+          if (resignationDeadline == 0) {
+            resignationDeadline = clock.currentTimeMillis() + myElectionTimeout;
+          }
+          if (allPeersHaveAcked(quorumConfigIndex) || clock.currentTimeMillis() >= resignationDeadline) {
+            becomeFollower();
+          }
         }
       }
     }
@@ -1090,12 +1991,15 @@ public class ReplicatorInstance implements Replicator {
     if (newLogEntries.isEmpty()) {
       return;
     }
+    final long logWriteStartNanos = ReplicatorMetrics.nanoTime();
     localLogFuture = log.logEntries(newLogEntries);
+    metrics.leaderLogged(lastIndexInList);
 
     // TODO this callback and some others should have timeouts in case the log hangs somehow
     C5Futures.addCallback(localLogFuture,
         (result) -> {
-          peersLastAckedIndex.put(myId, lastIndexInList);
+          metrics.logWriteMicros.record(ReplicatorMetrics.microsSince(logWriteStartNanos));
+          peerSlots.recordAck(myId, lastIndexInList);
           checkIfMajorityCanCommit(lastIndexInList);
         },
         (Throwable t) -> {
@@ -1104,8 +2008,23 @@ public class ReplicatorInstance implements Replicator {
         }, fiber);
   }
 
+  /**
+   * Send one AppendEntries request to a peer. If serializedEntries is not null, it must hold the given entries;
+   * the request holds a reference to it until the peer replies or the request times out.
+   */
   @FiberOnly
-  private void sendAppendEntries(long peer, long peerNextIdx, long lastIndexSent, final List<LogEntry> entries) {
+  private void sendAppendEntries(long peer, long peerNextIdx, long lastIndexSent, final List<LogEntry> entries,
+                                 @Nullable SerializedEntries serializedEntries) {
+    sendAppendEntries(peer, peerNextIdx, lastIndexSent, entries, serializedEntries, false);
+  }
+
+  /**
+   * Send one AppendEntries request to a peer, as above; if quiesce is true, the request must be a heartbeat,
+   * asking the peer to quiesce. Unless the peer accepts it, the leader wakes.
+   */
+  @FiberOnly
+  private void sendAppendEntries(long peer, long peerNextIdx, long lastIndexSent, final List<LogEntry> entries,
+                                 @Nullable SerializedEntries serializedEntries, boolean quiesce) {
 
     assert (entries.size() == 0) || (entries.get(0).getIndex() == peerNextIdx);
     assert (entries.size() == 0) || (entries.get(entries.size() - 1).getIndex() == lastIndexSent);
@@ -1119,37 +2038,98 @@ public class ReplicatorInstance implements Replicator {
     }
 
     // catch them up so the next RPC wont over-send old junk.
-    peersNextIndex.put(peer, lastIndexSent + 1);
+    peerSlots.setNextIndex(peer, lastIndexSent + 1);
 
     AppendEntries msg = new AppendEntries(
         currentTerm, myId, prevLogIndex, prevLogTerm,
         entries,
-        lastCommittedIndex
+        lastCommittedIndex,
+        quiesce
     );
 
-    RpcRequest request = new RpcRequest(peer, myId, quorumId, msg);
+    final RpcRequest request;
+    if (serializedEntries == null) {
+      request = new RpcRequest(peer, myId, quorumId, msg);
+    } else {
+      serializedEntries.retain();
+      request = new RpcRequest(peer, myId, quorumId, msg, serializedEntries);
+    }
+    final ReplicatorMetrics.PeerMetrics peerMetrics = metrics.forPeer(peer);
+    final long sentNanos = ReplicatorMetrics.nanoTime();
+    final long sentMillis = clock.currentTimeMillis();
+    final long round = confirmationRound;
+    final long termSent = currentTerm;
+    peerMetrics.appendSent();
+
+    final AppendEntriesWindow window = appendWindow(peer);
+    final boolean isHeartbeat = entries.isEmpty();
+    if (!isHeartbeat) {
+      window.requestSent();
+    }
+
     AsyncRequest.withOneReply(fiber, sendRpcChannel, request, message -> {
       logger.trace("got a reply {}", message);
+      releaseIfNotNull(serializedEntries);
+      peerMetrics.appendReplied(sentNanos);
+      if (!isHeartbeat) {
+        window.replyReceived();
+      }
+
+      if (message.getAppendReplyMessage().getTerm() == termSent && termSent == currentTerm
+          && myState == State.LEADER) {
+        // The peer recognizes this replicator as the leader of the term, whether or not its log matched.
+        peerSlots.recordConfirmation(peer, round, sentMillis);
+        completeReadBarriers();
+      }
 
       boolean wasSuccessful = message.getAppendReplyMessage().getSuccess();
+      if (quiesce && (!wasSuccessful || message.getAppendReplyMessage().getTerm() != termSent)) {
+        wake();
+      }
+
       if (!wasSuccessful) {
         // This is per Page 7, paragraph 5.  "After a rejection, the leader decrements nextIndex and retries"
         if (message.getAppendReplyMessage().getMyNextLogEntry() != 0) {
-          peersNextIndex.put(peer, message.getAppendReplyMessage().getMyNextLogEntry());
+          peerSlots.setNextIndex(peer, message.getAppendReplyMessage().getMyNextLogEntry());
         } else {
-          peersNextIndex.put(peer, Math.max(peerNextIdx - 1, 1));
+          peerSlots.setNextIndex(peer, Math.max(peerNextIdx - 1, 1));
         }
       } else {
         // we have been successfully acked up to this point.
         logger.trace("peer {} acked for {}", peer, lastIndexSent);
-        peersLastAckedIndex.put(peer, lastIndexSent);
+        peerSlots.recordAck(peer, lastIndexSent);
 
         checkIfMajorityCanCommit(lastIndexSent);
       }
-    }, REPLICATOR_APPEND_RPC_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS, () ->
-        // Do nothing -> let next timeout handle things.
-        // This timeout exists just so that we can cancel and clean up stuff in jetlang.
-        logger.trace("peer {} timed out", peer));
+    }, REPLICATOR_APPEND_RPC_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS, () -> {
+      // Do nothing -> let next timeout handle things.
+      // This timeout exists just so that we can cancel and clean up stuff in jetlang.
+      logger.trace("peer {} timed out", peer);
+      releaseIfNotNull(serializedEntries);
+      peerMetrics.appendTimedOut();
+      if (!isHeartbeat) {
+        window.requestTimedOut();
+      }
+      if (quiesce) {
+        wake();
+      }
+    });
+  }
+
+  private static void releaseIfNotNull(@Nullable SerializedEntries serializedEntries) {
+    if (serializedEntries != null) {
+      serializedEntries.release();
+    }
+  }
+
+  @FiberOnly
+  private boolean allPeersHaveAcked(long index) {
+    for (long peer : allPeersExceptMe()) {
+      if (peerSlots.getLastAckedIndex(peer) < index) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @FiberOnly
@@ -1174,12 +2154,13 @@ public class ReplicatorInstance implements Replicator {
     }
 
     /**
-     * Goal: find an N such that N > lastCommittedIndex, a majority of peersLastAckedIndex[peerId] >= N
+     * Goal: find an N such that N > lastCommittedIndex, a majority of peers' last acked indexes >= N
      * (considering peers within the current peer configuration) and N >= myFirstIndexAsLeader. If found,
-     * commit up to the greatest such N. (sec 5.3, sec 5.4).
+     * commit up to the greatest such N. (sec 5.3, sec 5.4). peerSlots keeps the greatest N acked by a
+     * majority up to date as acks arrive.
      */
 
-    final long newCommitIndex = quorumConfig.calculateCommittedIndex(peersLastAckedIndex);
+    final long newCommitIndex = peerSlots.getMajorityAckedIndex();
 
     if (newCommitIndex <= lastCommittedIndex) {
       return;
@@ -1209,25 +2190,101 @@ public class ReplicatorInstance implements Replicator {
     } else if (newLastCommittedIndex > lastCommittedIndex) {
       long oldLastCommittedIndex = lastCommittedIndex;
       lastCommittedIndex = newLastCommittedIndex;
+      metrics.committed(newLastCommittedIndex, log.getLastIndex());
       issueCommitNotifications(oldLastCommittedIndex);
+      completeReadBarriers();
     }
   }
 
+  /**
+   * Begin a new round of leadership confirmation. The requests sent from now on carry the new round; when a
+   * majority of the quorum, counting this replicator, have replied to one in the current term, the round
+   * is confirmed.
+   */
   @FiberOnly
-  private void issueCommitNotifications(long oldLastCommittedIndex) {
-    // TODO inefficient, because it calls getLogTerm once for every index. Possible optimization here.
-    final long firstCommittedIndex = oldLastCommittedIndex + 1;
-    long firstIndexOfTerm = firstCommittedIndex;
-    long nextTerm = log.getLogTerm(firstCommittedIndex);
-
-    for (long index = firstCommittedIndex; index <= lastCommittedIndex; index++) {
-      long currentTerm = nextTerm;
-      if (index == lastCommittedIndex
-          || (nextTerm = log.getLogTerm(index + 1)) != currentTerm) {
-        commitNoticeChannel.publish(new IndexCommitNotice(quorumId, myId, firstIndexOfTerm, index, currentTerm));
-        firstIndexOfTerm = index + 1;
+  private void beginConfirmationRound() {
+    confirmationRound++;
+    peerSlots.recordConfirmation(myId, confirmationRound, clock.currentTimeMillis());
+  }
+
+  /**
+   * Begin a confirmation round on behalf of pending read barriers, sending it with heartbeats rather than
+   * waiting for the queue consumer's next run. Peers which aren't up to date are left to the requests
+   * catching them up.
+   */
+  @FiberOnly
+  private void sendConfirmationRound() {
+    confirmationRoundScheduled = false;
+    if (myState != State.LEADER) {
+      return;
+    }
+
+    beginConfirmationRound();
+
+    final long nextIndex = log.getLastIndex() + 1;
+    for (long peer : allPeersExceptMe()) {
+      if (!peersSnapshotTransfer.containsKey(peer) && peerSlots.getNextIndex(peer, nextIndex) == nextIndex) {
+        sendAppendEntries(peer, nextIndex, nextIndex - 1, Collections.emptyList(), null);
       }
     }
+
+    completeReadBarriers();
+  }
+
+  @FiberOnly
+  private void completeReadBarriers() {
+    if (pendingReadBarriers.isEmpty() || !hasCommittedInCurrentTerm()) {
+      return;
+    }
+
+    final long confirmedRound = peerSlots.getMajorityConfirmedRound();
+    while (!pendingReadBarriers.isEmpty() && pendingReadBarriers.peek().round <= confirmedRound) {
+      pendingReadBarriers.poll().readIndexFuture.set(lastCommittedIndex);
+    }
+  }
+
+  @FiberOnly
+  private void failPendingReadBarriers() {
+    while (!pendingReadBarriers.isEmpty()) {
+      pendingReadBarriers.poll().readIndexFuture.setException(
+          new InvalidReplicatorStateException("Replicator ceased to be the leader before confirming its leadership"));
+    }
+  }
+
+  /**
+   * A leader's commit index is only known to include every entry committed by earlier leaders once it has
+   * committed an entry of its own term (sec 8).
+   */
+  @FiberOnly
+  private boolean hasCommittedInCurrentTerm() {
+    return myFirstIndexAsLeader != 0 && lastCommittedIndex >= myFirstIndexAsLeader;
+  }
+
+  @FiberOnly
+  private boolean holdsLeaderLease() {
+    final long leaseDuration = clock.leaderLeaseDuration();
+    return leaseDuration > 0
+        && peerSlots.getMajorityConfirmedRound() != 0
+        && clock.currentTimeMillis() < peerSlots.getMajorityConfirmedSendTime() + leaseDuration;
+  }
+
+  private static class PendingReadBarrier {
+    private final SettableFuture<Long> readIndexFuture;
+    private final long round;
+
+    private PendingReadBarrier(SettableFuture<Long> readIndexFuture, long round) {
+      this.readIndexFuture = readIndexFuture;
+      this.round = round;
+    }
+  }
+
+  @FiberOnly
+  private void issueCommitNotifications(long oldLastCommittedIndex) {
+    // One notice per term among the newly committed entries; the log finds the term boundaries
+    // without examining each index.
+    for (TermRun run : log.getTermRuns(oldLastCommittedIndex + 1, lastCommittedIndex)) {
+      commitNoticeChannel.publish(new IndexCommitNotice(quorumId, myId, run.firstIndex, run.lastIndex, run.term));
+    }
   }
 
   @FiberOnly
@@ -1277,5 +2334,9 @@ public class ReplicatorInstance implements Replicator {
   private void refreshQuorumConfigurationFromLog() {
     quorumConfig = log.getLastConfiguration();
     quorumConfigIndex = log.getLastConfigurationIndex();
+
+    if (!quorumConfig.equals(peerSlots.getConfiguration())) {
+      peerSlots = new PeerSlotTable(quorumConfig, peerSlots);
+    }
   }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.util.MetricRegistry;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.util.MetricRegistry.Counter;
+import static c5db.util.MetricRegistry.Histogram;
+
+/**
+ * The instruments with which a ReplicatorInstance records what it is doing. Every measurement is
+ * recorded twice: under a name specific to the quorum, "replicator.quorum.(quorum ID).(measurement)",
+ * and under a node-wide name, "replicator.node.(measurement)", which aggregates all the quorums
+ * given the same registry. Latencies are recorded in microseconds unless their names say otherwise.
+ * <p>
+ * Apart from construction, methods of this class must only be called from the ReplicatorInstance's fiber.
+ */
+class ReplicatorMetrics {
+  static final String NODE_PREFIX = "replicator.node.";
+  static final String QUORUM_PREFIX = "replicator.quorum.";
+
+  final Histogram logRequestQueueDepth;
+  final Histogram logRequestQueueWaitMicros;
+  final Histogram logWriteMicros;
+  final Histogram commitLagEntries;
+  final Histogram commitLagMillis;
+  final Counter preElectionsStarted;
+  final Counter electionsStarted;
+  final Counter electionsWon;
+  final Histogram electionMillis;
+  final Counter appendRequestsInFlight;
+  final Histogram appendRoundTripMicros;
+  final Counter appendTimeouts;
+
+  private final MetricRegistry registry;
+  private final String quorumPrefix;
+  private final Map<Long, PeerMetrics> peerMetrics = new HashMap<>();
+
+  // Indexes the leader has logged but not yet committed, with the times they were logged (in pairs).
+  private final Queue<long[]> uncommittedLoggingTimes = new ArrayDeque<>();
+  private long electionStartNanos = 0;
+
+  ReplicatorMetrics(MetricRegistry registry, String quorumId) {
+    this.registry = registry;
+    this.quorumPrefix = QUORUM_PREFIX + quorumId + ".";
+
+    logRequestQueueDepth = histogram("logRequestQueueDepth");
+    logRequestQueueWaitMicros = histogram("logRequestQueueWaitMicros");
+    logWriteMicros = histogram("logWriteMicros");
+    commitLagEntries = histogram("commitLagEntries");
+    commitLagMillis = histogram("commitLagMillis");
+    preElectionsStarted = counter("preElectionsStarted");
+    electionsStarted = counter("electionsStarted");
+    electionsWon = counter("electionsWon");
+    electionMillis = histogram("electionMillis");
+    appendRequestsInFlight = counter("appendRequestsInFlight");
+    appendRoundTripMicros = histogram("appendRoundTripMicros");
+    appendTimeouts = counter("appendTimeouts");
+  }
+
+  static long nanoTime() {
+    return System.nanoTime();
+  }
+
+  static long microsSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanoTime() - startNanos);
+  }
+
+  PeerMetrics forPeer(long peerId) {
+    return peerMetrics.computeIfAbsent(peerId, PeerMetrics::new);
+  }
+
+  /**
+   * Note the start of a pre-election poll. The time taken by an election is measured from the first
+   * pre-election poll which leads up to it.
+   */
+  void preElectionStarted() {
+    preElectionsStarted.increment();
+    startElectionTimer();
+  }
+
+  /**
+   * Note the start of an election, i.e. of a new term in which this replicator is a candidate.
+   */
+  void electionStarted() {
+    electionsStarted.increment();
+    startElectionTimer();
+  }
+
+  void electionWon() {
+    electionsWon.increment();
+    electionEnded();
+  }
+
+  /**
+   * Note the end of an election, won or not, e.g. because another candidate's leadership was recognized.
+   */
+  void electionEnded() {
+    if (electionStartNanos != 0) {
+      electionMillis.record(TimeUnit.NANOSECONDS.toMillis(nanoTime() - electionStartNanos));
+      electionStartNanos = 0;
+    }
+  }
+
+  private void startElectionTimer() {
+    if (electionStartNanos == 0) {
+      electionStartNanos = nanoTime();
+    }
+  }
+
+  void leaderLogged(long lastIndex) {
+    uncommittedLoggingTimes.add(new long[]{lastIndex, nanoTime()});
+  }
+
+  void committed(long commitIndex, long lastIndexInLog) {
+    commitLagEntries.record(lastIndexInLog - commitIndex);
+
+    final long now = nanoTime();
+    while (!uncommittedLoggingTimes.isEmpty() && uncommittedLoggingTimes.peek()[0] <= commitIndex) {
+      commitLagMillis.record(TimeUnit.NANOSECONDS.toMillis(now - uncommittedLoggingTimes.poll()[1]));
+    }
+  }
+
+  void leadershipEnded() {
+    uncommittedLoggingTimes.clear();
+    for (PeerMetrics peer : peerMetrics.values()) {
+      peer.clearInFlight();
+    }
+  }
+
+  private Counter counter(String measurement) {
+    final Counter quorumCounter = registry.counter(quorumPrefix + measurement);
+    final Counter nodeCounter = registry.counter(NODE_PREFIX + measurement);
+    return (delta) -> {
+      quorumCounter.add(delta);
+      nodeCounter.add(delta);
+    };
+  }
+
+  private Histogram histogram(String measurement) {
+    final Histogram quorumHistogram = registry.histogram(quorumPrefix + measurement);
+    final Histogram nodeHistogram = registry.histogram(NODE_PREFIX + measurement);
+    return (value) -> {
+      quorumHistogram.record(value);
+      nodeHistogram.record(value);
+    };
+  }
+
+  /**
+   * Per-peer AppendEntries measurements, recorded under the quorum's name and also into the
+   * quorum-wide and node-wide totals.
+   */
+  class PeerMetrics {
+    private final Counter inFlight;
+    private final Histogram roundTripMicros;
+    private long inFlightCount = 0;
+
+    private PeerMetrics(long peerId) {
+      inFlight = registry.counter(quorumPrefix + "peer." + peerId + ".appendRequestsInFlight");
+      roundTripMicros = registry.histogram(quorumPrefix + "peer." + peerId + ".appendRoundTripMicros");
+    }
+
+    void appendSent() {
+      inFlightCount++;
+      inFlight.increment();
+      appendRequestsInFlight.increment();
+    }
+
+    void appendReplied(long sentNanos) {
+      final long micros = microsSince(sentNanos);
+      roundTripMicros.record(micros);
+      appendRoundTripMicros.record(micros);
+      appendFinished();
+    }
+
+    void appendTimedOut() {
+      appendTimeouts.increment();
+      appendFinished();
+    }
+
+    private void appendFinished() {
+      if (inFlightCount > 0) {
+        inFlightCount--;
+        inFlight.decrement();
+        appendRequestsInFlight.decrement();
+      }
+    }
+
+    private void clearInFlight() {
+      inFlight.add(-inFlightCount);
+      appendRequestsInFlight.add(-inFlightCount);
+      inFlightCount = 0;
+    }
+  }
+}
@@ -17,8 +17,9 @@
 package c5db.replication;
 
 import c5db.ReplicatorConstants;
+import c5db.codec.PooledProtostuffEncoder;
 import c5db.codec.ProtostuffDecoder;
-import c5db.codec.ProtostuffEncoder;
+import c5db.codec.RetainedMessage;
 import c5db.interfaces.C5Module;
 import c5db.interfaces.DiscoveryModule;
 import c5db.interfaces.LogModule;
@@ -35,9 +36,13 @@ import c5db.replication.generated.ReplicationWireMessage;
 import c5db.replication.rpc.RpcRequest;
 import c5db.replication.rpc.RpcWireReply;
 import c5db.replication.rpc.RpcWireRequest;
+import c5db.replication.rpc.SerializedAppendEntries;
+import c5db.util.ByteBudget;
 import c5db.util.C5Futures;
 import c5db.util.FiberOnly;
 import c5db.util.FiberSupplier;
+import c5db.util.MetricRegistry;
+import c5db.util.NettyTransport;
 import com.google.common.util.concurrent.AbstractService;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -57,10 +62,9 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
-import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import org.jetlang.channels.AsyncRequest;
@@ -70,17 +74,20 @@ import org.jetlang.channels.Request;
 import org.jetlang.channels.RequestChannel;
 import org.jetlang.channels.Session;
 import org.jetlang.core.Callback;
+import org.jetlang.core.SynchronousDisposingExecutor;
 import org.jetlang.fibers.Fiber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -112,9 +119,26 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
 
   @Override
   public String acceptCommand(String commandString) {
+    if (MetricRegistry.DESCRIBE_COMMAND.equals(commandString)) {
+      return metricRegistry.describe();
+    }
     return null;
   }
 
+  /**
+   * The channel on which this node's ReplicatorInstances send their requests to other servers.
+   */
+  RequestChannel<RpcRequest, RpcWireReply> getOutgoingRequests() {
+    return outgoingRequests;
+  }
+
+  /**
+   * The number of bulk requests from the given quorum to the given server which have not ended; see RequestLanes.
+   */
+  int bulkRequestCount(long to, String quorumId) {
+    return requestLanes.bulkRequestCount(to, quorumId);
+  }
+
   @Override
   public ListenableFuture<Replicator> createReplicator(final String quorumId,
                                                        final Collection<Long> peers) {
@@ -137,8 +161,16 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
   private final int port;
   private final ModuleInformationProvider moduleInformationProvider;
   private final FiberSupplier fiberSupplier;
+  private final ByteBudget byteBudget;
+  private final MetricRegistry metricRegistry;
   private final long nodeId;
 
+  // Node-wide message counts; per-quorum measurements are recorded by the ReplicatorInstances
+  private final MetricRegistry.Counter inboundMessages;
+  private final MetricRegistry.Counter outboundMessages;
+  private final MetricRegistry.Counter outboundFailures;
+  private final MetricRegistry.Counter outstandingRpcCount;
+
   // Netty infrastructure
   private final EventLoopGroup bossGroup;
   private final EventLoopGroup workerGroup;
@@ -146,22 +178,49 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
   private final ServerBootstrap serverBootstrap = new ServerBootstrap();
   private final Bootstrap outgoingBootstrap = new Bootstrap();
 
-  // ReplicatorInstances and objects shared among them
-  private final Map<String, ReplicatorInstance> replicatorInstances = new HashMap<>();
+  // ReplicatorInstances and objects shared among them. Instances are added and removed on the service fiber,
+  // but looked up from any thread, e.g. to dispatch inbound requests straight from the network threads.
+  private final Map<String, ReplicatorInstance> replicatorInstances = new ConcurrentHashMap<>();
   private final Persister persister;
   private final RequestChannel<RpcRequest, RpcWireReply> outgoingRequests = new MemoryRequestChannel<>();
   private final MemoryChannel<ReplicatorInstanceEvent> replicatorEventChannel = new MemoryChannel<>();
   private final MemoryChannel<IndexCommitNotice> indexCommitNotices = new MemoryChannel<>();
 
-  // Connections to other servers by their node IDs
-  private final Map<Long, Channel> connections = new HashMap<>();
+  // Outgoing requests are handled on one of several dispatch fibers, chosen by the node ID of the recipient,
+  // so that the requests to any one server are handled in order, but not behind those to every other server.
+  private final List<Fiber> dispatchFibers = new ArrayList<>();
+
+  // Connections to other servers by their node IDs, one map per lane; each entry is only modified on its server's
+  // dispatch fiber.
+  private final Map<Long, Channel> controlConnections = new ConcurrentHashMap<>();
+  private final Map<Long, Channel> bulkConnections = new ConcurrentHashMap<>();
+
+  // The lane of each outgoing request; the requests to each server are passed to it on that server's dispatch fiber.
+  private final RequestLanes requestLanes = new RequestLanes();
+
+  // Outgoing requests waiting for a connection to their recipient to be looked up or established, by session; those
+  // waiting for their recipient's address to be looked up, one map per lane, by recipient node ID; and those waiting
+  // for a connection which is being established. The lists are in the order the requests are to be sent. A request
+  // cancelled while it waits is removed from the set; it is still sent, so that the requests after it arrive in
+  // order, but its reply is not awaited. Each request and each connection is only accessed on its recipient's
+  // dispatch fiber.
+  private final Set<Session> sessionsAwaitingConnection = ConcurrentHashMap.newKeySet();
+  private final Map<Long, List<Request<RpcRequest, RpcWireReply>>> controlRequestsAwaitingLookup =
+      new ConcurrentHashMap<>();
+  private final Map<Long, List<Request<RpcRequest, RpcWireReply>>> bulkRequestsAwaitingLookup =
+      new ConcurrentHashMap<>();
+  private final Map<Channel, List<Request<RpcRequest, RpcWireReply>>> requestsAwaitingConnection =
+      new ConcurrentHashMap<>();
+
+  // Connections from other servers, by the node IDs of the servers which sent requests over them
+  private final Map<Channel, Long> inboundConnections = new ConcurrentHashMap<>();
 
   // Map of message ID -> Request
   // TODO we need a way to remove these after a while, because if we fail to get a reply we will be unhappy.
-  private final Map<Long, Request<RpcRequest, RpcWireReply>> outstandingRPCs = new HashMap<>();
+  private final Map<Long, Request<RpcRequest, RpcWireReply>> outstandingRPCs = new ConcurrentHashMap<>();
 
   // Map of Session -> message ID
-  private final Map<Session, Long> outstandingRPCbySession = new HashMap<>();
+  private final Map<Session, Long> outstandingRPCbySession = new ConcurrentHashMap<>();
 
   // Initialized in the module start, by the time any messages or fiber executions trigger, these should be not-null
   private DiscoveryModule discoveryModule = null;
@@ -170,7 +229,7 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
   private Fiber fiber;
 
   // Sequence number for sent messages
-  private long messageIdGen = 1;
+  private final AtomicLong messageIdGen = new AtomicLong(1);
 
   /**
    * ReplicatorService creates and starts fibers; it must be stopped (or failed) in
@@ -183,12 +242,54 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
                            ModuleInformationProvider moduleInformationProvider,
                            FiberSupplier fiberSupplier,
                            QuorumFileReaderWriter quorumFileReaderWriter) {
+    this(bossGroup, workerGroup, nodeId, port, moduleInformationProvider, fiberSupplier, quorumFileReaderWriter,
+        ByteBudget.unlimited());
+  }
+
+  /**
+   * @param byteBudget Node-wide budget for log data held in memory by the replicator instances; when
+   *                   it is exhausted, their logData methods refuse new requests.
+   */
+  public ReplicatorService(EventLoopGroup bossGroup,
+                           EventLoopGroup workerGroup,
+                           long nodeId,
+                           int port,
+                           ModuleInformationProvider moduleInformationProvider,
+                           FiberSupplier fiberSupplier,
+                           QuorumFileReaderWriter quorumFileReaderWriter,
+                           ByteBudget byteBudget) {
+    this(bossGroup, workerGroup, nodeId, port, moduleInformationProvider, fiberSupplier, quorumFileReaderWriter,
+        byteBudget, MetricRegistry.NO_OP);
+  }
+
+  /**
+   * @param byteBudget Node-wide budget for log data held in memory by the replicator instances; when
+   *                   it is exhausted, their logData methods refuse new requests.
+   * @param metricRegistry Registry into which the service and its replicator instances record their
+   *                       measurements, both per quorum and aggregated for the node.
+   */
+  public ReplicatorService(EventLoopGroup bossGroup,
+                           EventLoopGroup workerGroup,
+                           long nodeId,
+                           int port,
+                           ModuleInformationProvider moduleInformationProvider,
+                           FiberSupplier fiberSupplier,
+                           QuorumFileReaderWriter quorumFileReaderWriter,
+                           ByteBudget byteBudget,
+                           MetricRegistry metricRegistry) {
     this.bossGroup = bossGroup;
     this.workerGroup = workerGroup;
     this.nodeId = nodeId;
     this.port = port;
     this.moduleInformationProvider = moduleInformationProvider;
     this.fiberSupplier = fiberSupplier;
+    this.byteBudget = byteBudget;
+    this.metricRegistry = metricRegistry;
+
+    this.inboundMessages = metricRegistry.counter(ReplicatorMetrics.NODE_PREFIX + "inboundMessages");
+    this.outboundMessages = metricRegistry.counter(ReplicatorMetrics.NODE_PREFIX + "outboundMessages");
+    this.outboundFailures = metricRegistry.counter(ReplicatorMetrics.NODE_PREFIX + "outboundFailures");
+    this.outstandingRpcCount = metricRegistry.counter(ReplicatorMetrics.NODE_PREFIX + "outstandingRpcs");
 
     this.allChannels = new DefaultChannelGroup(workerGroup.next());
     this.persister = new Persister(quorumFileReaderWriter);
@@ -198,7 +299,7 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
    * *************** Handlers for netty/messages from the wire/TCP ***********************
    */
   @ChannelHandler.Sharable
-  private class MessageHandler extends SimpleChannelInboundHandler<ReplicationWireMessage> {
+  private class MessageHandler extends SimpleChannelInboundHandler<RetainedMessage<ReplicationWireMessage>> {
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
       allChannels.add(ctx.channel());
@@ -207,13 +308,21 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
     }
 
     @Override
-    protected void channelRead0(final ChannelHandlerContext ctx, final ReplicationWireMessage msg) throws Exception {
-      fiber.execute(() -> handleWireInboundMessage(ctx.channel(), msg));
+    protected void channelRead0(final ChannelHandlerContext ctx, final RetainedMessage<ReplicationWireMessage> msg)
+        throws Exception {
+      handleWireInboundMessage(ctx.channel(), msg.message, msg);
     }
   }
 
-  @FiberOnly
-  private void handleWireInboundMessage(Channel channel, ReplicationWireMessage msg) {
+  /**
+   * Handle a message from the wire, on the network thread which received it: a reply is passed straight to
+   * the fiber awaiting it, and a request straight to its ReplicatorInstance's fiber.
+   * <p>
+   * The message's payloads (e.g. entries' data) are views of the inbound buffer, which payloads holds; it is
+   * released after this method returns unless it is retained here.
+   */
+  void handleWireInboundMessage(Channel channel, ReplicationWireMessage msg, ReferenceCounted payloads) {
+    inboundMessages.increment();
     long messageId = msg.getMessageId();
     if (msg.getReceiverId() != nodeId) {
       LOG.debug("Got messageId {} for {} but I am {}, ignoring!", messageId, msg.getReceiverId(), nodeId);
@@ -221,36 +330,47 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
     }
 
     if (msg.getInReply()) {
-      Request<RpcRequest, RpcWireReply> request = outstandingRPCs.get(messageId);
+      Request<RpcRequest, RpcWireReply> request = outstandingRPCs.remove(messageId);
       if (request == null) {
         LOG.debug("Got a reply message_id {} which we don't track", messageId);
         return;
       }
 
-      outstandingRPCs.remove(messageId);
-      outstandingRPCbySession.remove(request.getSession());
+      final Session session = request.getSession();
+      outstandingRPCbySession.remove(session);
+      outstandingRpcCount.decrement();
+      if (requestLanes.isBulkRequest(session)) {
+        dispatchFiberFor(request.getRequest().to).execute(() -> requestLanes.requestEnded(session));
+      }
       request.reply(new RpcWireReply(msg));
     } else {
-      handleWireRequestMessage(channel, msg);
+      handleWireRequestMessage(channel, msg, payloads);
     }
   }
 
-  @FiberOnly
-  private void handleWireRequestMessage(final Channel channel, final ReplicationWireMessage msg) {
-    RpcWireRequest wireRequest = new RpcWireRequest(msg);
+  private void handleWireRequestMessage(final Channel channel,
+                                        final ReplicationWireMessage msg,
+                                        final ReferenceCounted payloads) {
+    // The request holds its own reference to the payloads, which the instance releases once it's done with
+    // the request -- in particular, for AppendEntries, once the entries have been written to the log.
+    RpcWireRequest wireRequest = new RpcWireRequest(msg, payloads.retain());
     String quorumId = wireRequest.quorumId;
 
+    watchInboundConnection(channel, wireRequest.from);
+
     ReplicatorInstance replInst = replicatorInstances.get(quorumId);
     if (replInst == null) {
       LOG.trace("Instance not found {} for message id {} from {} (normal during region bootstrap)",
           quorumId,
           msg.getMessageId(),
           msg.getSenderId());
+      wireRequest.releasePayloads();
       // TODO send RPC failure to the sender?
       return;
     }
 
-    AsyncRequest.withOneReply(fiber, replInst.getIncomingChannel(), wireRequest, reply -> {
+    // The reply is written from the instance's fiber as it replies; the channel may be written from any thread.
+    replInst.getIncomingChannel().publish(new SynchronousDisposingExecutor(), wireRequest, reply -> {
       if (!channel.isOpen()) {
         // TODO cant signal comms failure, so just drop on the floor. Is there a better thing to do?
         return;
@@ -276,31 +396,44 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
   /**
    * ************* Handlers for Request<> from replicator instances ***********************************
    */
+  Fiber dispatchFiberFor(long nodeId) {
+    return dispatchFibers.get((int) Math.floorMod(nodeId, (long) dispatchFibers.size()));
+  }
+
   @FiberOnly
   private void handleCancelledSession(Session session) {
-    Long messageId = outstandingRPCbySession.get(session);
-    outstandingRPCbySession.remove(session);
+    requestLanes.requestEnded(session);
+    sessionsAwaitingConnection.remove(session);
+    Long messageId = outstandingRPCbySession.remove(session);
     if (messageId == null) {
       return;
     }
     LOG.trace("Removing cancelled RPC, message ID {}", messageId);
-    outstandingRPCs.remove(messageId);
+    if (outstandingRPCs.remove(messageId) != null) {
+      outstandingRpcCount.decrement();
+    }
   }
 
   @FiberOnly
   private void handleOutgoingMessage(final Request<RpcRequest, RpcWireReply> message) {
     final RpcRequest request = message.getRequest();
+    final Session session = message.getSession();
     final long to = request.to;
+    final Fiber dispatchFiber = dispatchFiberFor(to);
 
     if (to == nodeId) {
       handleLoopBackMessage(message);
       return;
     }
 
+    final RequestLanes.Lane lane = requestLanes.laneFor(session, request);
+    final Map<Long, Channel> connections = connectionsFor(lane);
+    sessionsAwaitingConnection.add(session);
+
     // check to see if we have a connection:
     Channel channel = connections.get(to);
     if (channel != null && channel.isOpen()) {
-      sendMessageAsync(message, channel);
+      sendWhenConnected(message, channel);
       return;
     } else if (channel != null) {
       // stale?
@@ -308,25 +441,38 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
       connections.remove(to);
     }
 
+    // If the peer's address is already being looked up, the request waits behind those which started the lookup
+    // or arrived during it; looking it up again could let the request overtake them, should the replies arrive
+    // out of order.
+    final Map<Long, List<Request<RpcRequest, RpcWireReply>>> requestsAwaitingLookup = requestsAwaitingLookupFor(lane);
+    if (requestsAwaitingLookup.containsKey(to)) {
+      requestsAwaitingLookup.get(to).add(message);
+      return;
+    }
+    final List<Request<RpcRequest, RpcWireReply>> awaitingLookup = new ArrayList<>();
+    awaitingLookup.add(message);
+    requestsAwaitingLookup.put(to, awaitingLookup);
+
     NodeInfoRequest nodeInfoRequest = new NodeInfoRequest(to, ModuleType.Replication);
     LOG.debug("node {} sending node info request {} ", nodeId, nodeInfoRequest);
-    AsyncRequest.withOneReply(fiber, discoveryModule.getNodeInfo(), nodeInfoRequest, new Callback<NodeInfoReply>() {
+    AsyncRequest.withOneReply(dispatchFiber, discoveryModule.getNodeInfo(), nodeInfoRequest, new Callback<NodeInfoReply>() {
       @SuppressWarnings("RedundantCast")
       @FiberOnly
       @Override
       public void onMessage(NodeInfoReply nodeInfoReply) {
+        requestsAwaitingLookup.remove(to, awaitingLookup);
         if (!nodeInfoReply.found) {
           LOG.debug("Can't find the info for the peer {}", to);
           // TODO signal TCP/transport layer failure in a better way
           //message.reply(null);
+          endRequestsAwaitingConnection(awaitingLookup);
           return;
         }
 
         LOG.debug("node {} got node info for node {} reply {} ", nodeId, to, nodeInfoReply);
-        // what if existing outgoing connection attempt?
         Channel channel = connections.get(to);
         if (channel != null && channel.isOpen()) {
-          sendMessageAsync(message, channel);
+          awaitingLookup.forEach(awaitingMessage -> sendWhenConnected(awaitingMessage, channel));
           return;
         } else if (channel != null) {
           LOG.debug("Removing stale2 !isOpen channel from connections.get() for peer {}", to);
@@ -337,54 +483,160 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
         ChannelFuture channelFuture = outgoingBootstrap.connect(nodeInfoReply.addresses.get(0), nodeInfoReply.port);
         LOG.trace("Connecting to peer {} at address {} port {}", to, nodeInfoReply.addresses.get(0), nodeInfoReply.port);
 
-        // the channel might not be open, so defer the write.
-        connections.put(to, channelFuture.channel());
-        channelFuture.channel().closeFuture().addListener((ChannelFutureListener)
+        // The channel is not yet connected, so the requests, and any others for it meanwhile, wait until it is.
+        final Channel newChannel = channelFuture.channel();
+        connections.put(to, newChannel);
+        requestsAwaitingConnection.put(newChannel, awaitingLookup);
+        newChannel.closeFuture().addListener((ChannelFutureListener)
             future ->
-                fiber.execute(() -> {
+                dispatchFiber.execute(() -> {
                   // remove only THIS channel. It might have been removed prior so.
                   connections.remove(to, future.channel());
+                  wakeQuorumsWithPeer(to);
                 }));
 
-        // funny hack, if the channel future is already open, we execute immediately!
+        // The listener is called on a network thread, or on this one if the connect attempt has already ended.
         channelFuture.addListener((ChannelFutureListener)
-            future -> {
-              if (future.isSuccess()) {
-                sendMessageAsync(message, future.channel());
-              }
-            });
+            future -> dispatchFiber.execute(() -> connectAttemptEnded(future)));
       }
     },
         // If the NodeInfoRequest times out:
         ReplicatorConstants.REPLICATOR_NODE_INFO_REQUEST_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS,
-        () -> LOG.warn("node info request timeout {} ", nodeInfoRequest));
+        () -> {
+          LOG.warn("node info request timeout {} ", nodeInfoRequest);
+          requestsAwaitingLookup.remove(to, awaitingLookup);
+          endRequestsAwaitingConnection(awaitingLookup);
+        });
   }
 
-  private void sendMessageAsync(final Request<RpcRequest, RpcWireReply> message, final Channel channel) {
-    fiber.execute(() -> {
-      RpcRequest request = message.getRequest();
-      long to = request.to;
-      long messageId = messageIdGen++;
+  /**
+   * Stop counting requests which could not be sent on their lane, unless they were cancelled meanwhile.
+   */
+  @FiberOnly
+  private void endRequestsAwaitingConnection(List<Request<RpcRequest, RpcWireReply>> awaitingConnection) {
+    for (Request<RpcRequest, RpcWireReply> message : awaitingConnection) {
+      if (sessionsAwaitingConnection.remove(message.getSession())) {
+        requestLanes.requestEnded(message.getSession());
+      }
+    }
+  }
 
+  /**
+   * Send a request over an open channel: straight away, unless the channel is still connecting, in which case the
+   * request is sent after those already waiting for it.
+   */
+  @FiberOnly
+  private void sendWhenConnected(Request<RpcRequest, RpcWireReply> message, Channel channel) {
+    final List<Request<RpcRequest, RpcWireReply>> awaitingConnection = requestsAwaitingConnection.get(channel);
+    if (awaitingConnection != null) {
+      awaitingConnection.add(message);
+    } else {
+      sendMessageAsync(message, channel, sessionsAwaitingConnection.remove(message.getSession()));
+    }
+  }
+
+  /**
+   * Send the requests which were waiting for a channel to connect, in order, awaiting the replies only of those
+   * which were not cancelled meanwhile; or if it failed to connect, stop counting them on their lane.
+   */
+  @FiberOnly
+  private void connectAttemptEnded(ChannelFuture connectFuture) {
+    if (!connectFuture.isSuccess()) {
+      LOG.debug("node {} unable to connect to a peer: {}", nodeId, connectFuture.cause());
+    }
+
+    for (Request<RpcRequest, RpcWireReply> message : requestsAwaitingConnection.remove(connectFuture.channel())) {
+      final Session session = message.getSession();
+      final boolean awaitingReply = sessionsAwaitingConnection.remove(session);
+
+      if (connectFuture.isSuccess()) {
+        sendMessageAsync(message, connectFuture.channel(), awaitingReply);
+      } else if (awaitingReply) {
+        requestLanes.requestEnded(session);
+      }
+    }
+  }
+
+  private Map<Long, Channel> connectionsFor(RequestLanes.Lane lane) {
+    return lane == RequestLanes.Lane.BULK ? bulkConnections : controlConnections;
+  }
+
+  private Map<Long, List<Request<RpcRequest, RpcWireReply>>> requestsAwaitingLookupFor(RequestLanes.Lane lane) {
+    return lane == RequestLanes.Lane.BULK ? bulkRequestsAwaitingLookup : controlRequestsAwaitingLookup;
+  }
+
+  /**
+   * The first time a request arrives over a connection from another server, arrange to be told when the
+   * connection closes, as a sign that the server may be unreachable.
+   */
+  private void watchInboundConnection(Channel channel, long from) {
+    if (inboundConnections.putIfAbsent(channel, from) != null) {
+      return;
+    }
+
+    channel.closeFuture().addListener((ChannelFutureListener)
+        future -> {
+          inboundConnections.remove(future.channel());
+          wakeQuorumsWithPeer(from);
+        });
+  }
+
+  /**
+   * Losing a connection to another server is this node's signal that the server may have failed, whether the
+   * server closed it or it fell silent (see {@link PeerLivenessHandler}); so wake any quiesced quorums it
+   * belongs to, which would otherwise not notice.
+   */
+  private void wakeQuorumsWithPeer(long peerId) {
+    LOG.debug("node {} lost a connection to node {}; waking any quiesced quorums it belongs to", nodeId, peerId);
+    replicatorInstances.values().forEach(instance -> instance.peerUnreachable(peerId));
+  }
+
+  /**
+   * @param awaitingReply False if the request has been cancelled, in which case it is sent, but any reply to it is
+   *                      ignored.
+   */
+  @FiberOnly
+  private void sendMessageAsync(final Request<RpcRequest, RpcWireReply> message,
+                                final Channel channel,
+                                boolean awaitingReply) {
+    RpcRequest request = message.getRequest();
+    long to = request.to;
+    long messageId = messageIdGen.getAndIncrement();
+
+    if (awaitingReply) {
       outstandingRPCs.put(messageId, message);
       outstandingRPCbySession.put(message.getSession(), messageId);
+      outstandingRpcCount.increment();
+    }
+    outboundMessages.increment();
 
-      LOG.trace("Sending message id {} to {} / {}", messageId, to, request.quorumId);
+    LOG.trace("Sending message id {} to {} / {}", messageId, to, request.quorumId);
 
-      ReplicationWireMessage wireMessage = request.getWireMessage(
-          messageId,
-          nodeId,
-          to,
-          false
-      );
+    ReplicationWireMessage wireMessage = request.getWireMessage(
+        messageId,
+        nodeId,
+        to,
+        false
+    );
 
-      channel.writeAndFlush(wireMessage).addListener(
-          future -> {
-            if (!future.isSuccess()) {
-              LOG.warn("Error sending from node {} request {}: {}", nodeId, request, future.cause());
-            }
-          });
-    });
+    // If the entries' serialized form can be shared with the requests to other peers, the pipeline writes
+    // that in place of serializing the entries. Unless the sender has already released the entries, i.e.
+    // because the request has timed out, in which case they're serialized as usual.
+    final Object outboundMessage;
+    if (request.serializedEntries != null && request.serializedEntries.tryRetain()) {
+      outboundMessage = new SerializedAppendEntries(wireMessage, request.serializedEntries);
+    } else {
+      outboundMessage = wireMessage;
+    }
+
+    channel.writeAndFlush(outboundMessage).addListener(
+        future -> {
+          if (!future.isSuccess()) {
+            outboundFailures.increment();
+            LOG.warn("Error sending from node {} request {}: {}", nodeId, request, future.cause());
+            dispatchFiberFor(to).execute(() -> requestLanes.requestEnded(message.getSession()));
+          }
+        });
   }
 
   private void handleLoopBackMessage(final Request<RpcRequest, RpcWireReply> origMessage) {
@@ -400,7 +652,7 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
     }
 
     final RpcWireRequest newRequest = new RpcWireRequest(toFrom, quorumId, request.message);
-    AsyncRequest.withOneReply(fiber, repl.getIncomingChannel(), newRequest, msg -> {
+    repl.getIncomingChannel().publish(new SynchronousDisposingExecutor(), newRequest, msg -> {
       assert msg.message != null;
       RpcWireReply newReply = new RpcWireReply(toFrom, toFrom, quorumId, msg.message);
       origMessage.reply(newReply);
@@ -418,28 +670,46 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
     setupEventChannelSubscription();
     fiber.start();
 
+    for (int i = 0; i < ReplicatorConstants.REPLICATOR_SERVICE_DISPATCH_FIBERS; i++) {
+      final Fiber dispatchFiber = fiberSupplier.getNewFiber(this::failModule);
+      dispatchFibers.add(dispatchFiber);
+      dispatchFiber.start();
+    }
+
     C5Futures.addCallback(getDependedOnModules(),
         (ignore) -> {
           ChannelInitializer<SocketChannel> initer = new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
               ChannelPipeline p = ch.pipeline();
+              p.addLast("idleState", new IdleStateHandler(
+                  ReplicatorConstants.REPLICATOR_CONNECTION_IDLE_TIMEOUT_MILLISECONDS,
+                  ReplicatorConstants.REPLICATOR_CONNECTION_PROBE_INTERVAL_MILLISECONDS,
+                  0, TimeUnit.MILLISECONDS));
               p.addLast("frameDecode", new ProtobufVarint32FrameDecoder());
-              p.addLast("pbufDecode", new ProtostuffDecoder<>(ReplicationWireMessage.getSchema()));
+              p.addLast("pbufDecode", new ProtostuffDecoder<>(ReplicationWireMessage.getSchema(), true));
 
-              p.addLast("frameEncode", new ProtobufVarint32LengthFieldPrepender());
-              p.addLast("pbufEncoder", new ProtostuffEncoder<ReplicationWireMessage>());
+              p.addLast("flushCoalesce",
+                  new FlushCoalescingHandler(ReplicatorConstants.REPLICATOR_FLUSH_COALESCING_MAX_PENDING_BYTES));
+              p.addLast("pbufEncoder", new PooledProtostuffEncoder<>(ReplicationWireMessage.class));
+              p.addLast("appendEntriesEncoder", new SerializedAppendEntriesEncoder());
 
+              p.addLast("peerLiveness", new PeerLivenessHandler());
               p.addLast(new MessageHandler());
             }
           };
 
+          // The channels must use the same transport as the event loops they're registered with.
+          final NettyTransport transport = NettyTransport.of(workerGroup);
+          LOG.info("node {} using the {} transport", nodeId, transport);
+
           serverBootstrap.group(bossGroup, workerGroup)
-              .channel(NioServerSocketChannel.class)
+              .channel(transport.serverSocketChannelClass())
               .option(ChannelOption.SO_REUSEADDR, true)
               .option(ChannelOption.SO_BACKLOG, 100)
               .childOption(ChannelOption.TCP_NODELAY, true)
               .childHandler(initer);
+          transport.configureServer(serverBootstrap);
 
           //noinspection RedundantCast
           serverBootstrap.bind(port).addListener((ChannelFutureListener)
@@ -454,15 +724,18 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
               });
 
           outgoingBootstrap.group(workerGroup)
-              .channel(NioSocketChannel.class)
+              .channel(transport.socketChannelClass())
               .option(ChannelOption.SO_REUSEADDR, true)
               .option(ChannelOption.TCP_NODELAY, true)
               .handler(initer);
+          transport.configureClient(outgoingBootstrap);
 
-          //noinspection Convert2MethodRef
-          outgoingRequests.subscribe(fiber, message -> handleOutgoingMessage(message),
+          // Each request is passed, on the thread of the instance sending it, to its recipient's dispatch fiber.
+          outgoingRequests.subscribe(new SynchronousDisposingExecutor(),
+              message -> dispatchFiberFor(message.getRequest().to).execute(() -> handleOutgoingMessage(message)),
               // Clean up cancelled requests.
-              message -> handleCancelledSession(message.getSession())
+              message -> dispatchFiberFor(message.getOriginalRequest().to).execute(
+                  () -> handleCancelledSession(message.getSession()))
           );
 
           notifyStarted();
@@ -480,6 +753,7 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
       replicatorInstances.values().forEach(ReplicatorInstance::dispose);
       replicatorInstances.clear();
       fiber.dispose();
+      dispatchFibers.forEach(Fiber::dispose);
       if (listenChannel != null) {
         listenChannel.close();
       }
@@ -495,6 +769,7 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
       final AtomicInteger countDown = new AtomicInteger(1);
       GenericFutureListener<? extends Future<? super Void>> listener = future -> {
         if (countDown.decrementAndGet() == 0) {
+          dispatchFibers.forEach(Fiber::dispose);
           fiber.dispose();
           fiber = null;
           notifyStopped();
@@ -573,7 +848,9 @@ public class ReplicatorService extends AbstractService implements ReplicationMod
             outgoingRequests,
             replicatorEventChannel,
             indexCommitNotices,
-            Replicator.State.FOLLOWER
+            Replicator.State.FOLLOWER,
+            byteBudget,
+            metricRegistry
         );
     if (log.getLastIndex() == 0) {
       instance.bootstrapQuorum(peers);
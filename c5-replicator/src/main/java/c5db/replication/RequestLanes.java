@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.replication.rpc.RpcRequest;
+import org.jetlang.channels.Session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Each other server is reached over two connections, or lanes: one for bulk data, i.e. AppendEntries requests
+ * carrying entries, and snapshot chunks; and one for everything else, i.e. elections and heartbeats. So, however
+ * much data is queued to be written to a server, e.g. to catch up one of its quorums, the control traffic to it,
+ * and the replies to the requests it sends this node, are not stuck behind that data.
+ * <p>
+ * The exception is that a quorum's AppendEntries requests must arrive in the order they were sent, or else a
+ * heartbeat could overtake the entries preceding it, be rejected, and cause the leader to send them again. So,
+ * while a quorum has any bulk requests to a server which have not ended -- been answered, cancelled, or failed
+ * to be sent -- its heartbeats to that server follow them on the bulk lane. That quorum's heartbeats are then no
+ * longer needed in any case, because the requests they follow serve the same purpose.
+ * <p>
+ * This class chooses the lane for each request, and counts the bulk requests which have not ended. The requests
+ * to any one server must be passed to it from a single thread at a time, i.e. that server's dispatch fiber; those
+ * to different servers may be passed to it concurrently.
+ */
+class RequestLanes {
+  enum Lane {
+    CONTROL,
+    BULK
+  }
+
+  // Bulk requests which have not ended, by session; and their number, by recipient node ID and then quorum ID.
+  private final Map<Session, RpcRequest> bulkRequestsBySession = new ConcurrentHashMap<>();
+  private final Map<Long, Map<String, Integer>> bulkRequestCounts = new ConcurrentHashMap<>();
+
+  /**
+   * Choose the lane for a request, and if it is the bulk lane, count the request until requestEnded is called
+   * with its session.
+   */
+  Lane laneFor(Session session, RpcRequest request) {
+    final Map<String, Integer> quorumCounts =
+        bulkRequestCounts.computeIfAbsent(request.to, to -> new ConcurrentHashMap<>());
+
+    final boolean isBulk = request.isInstallSnapshotMessage()
+        || (request.isAppendMessage()
+        && (!request.getAppendMessage().getEntriesList().isEmpty() || quorumCounts.containsKey(request.quorumId)));
+    if (!isBulk) {
+      return Lane.CONTROL;
+    }
+
+    quorumCounts.merge(request.quorumId, 1, Integer::sum);
+    bulkRequestsBySession.put(session, request);
+    return Lane.BULK;
+  }
+
+  /**
+   * Stop counting the request with the given session, if it was sent on the bulk lane. A request may end in
+   * more than one way, e.g. it may fail to be sent and then be cancelled; it is only counted down once.
+   */
+  void requestEnded(Session session) {
+    final RpcRequest request = bulkRequestsBySession.remove(session);
+    if (request != null) {
+      bulkRequestCounts.get(request.to).computeIfPresent(request.quorumId,
+          (quorumId, count) -> count == 1 ? null : count - 1);
+    }
+  }
+
+  /**
+   * Whether the request with the given session was sent on the bulk lane and has not yet ended; this may be
+   * called from any thread.
+   */
+  boolean isBulkRequest(Session session) {
+    return bulkRequestsBySession.containsKey(session);
+  }
+
+  int bulkRequestCount(long to, String quorumId) {
+    final Map<String, Integer> quorumCounts = bulkRequestCounts.get(to);
+    if (quorumCounts == null) {
+      return 0;
+    }
+    return quorumCounts.getOrDefault(quorumId, 0);
+  }
+}
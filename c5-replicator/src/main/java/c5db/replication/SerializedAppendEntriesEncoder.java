@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.ReplicationWireMessage;
+import c5db.replication.rpc.SerializedAppendEntries;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.protostuff.LowCopyProtobufOutput;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static io.protostuff.WireFormat.WIRETYPE_LENGTH_DELIMITED;
+import static io.protostuff.WireFormat.makeTag;
+
+/**
+ * Serialize a SerializedAppendEntries into the same length-prefixed protobuf format PooledProtostuffEncoder
+ * would produce for its ReplicationWireMessage, but without serializing the entries again: the output is a
+ * composite of the per-peer envelope -- the length prefix, the wire message's own fields, and the AppendEntries
+ * fields other than its entries -- and the entries' shared serialized form.
+ */
+public class SerializedAppendEntriesEncoder extends MessageToMessageEncoder<SerializedAppendEntries> {
+  private static final int APPEND_ENTRIES_FIELD_NUMBER = 102;
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, SerializedAppendEntries msg, List<Object> out) throws Exception {
+    final AppendEntries appendEntries = msg.getAppendEntries();
+
+    // The AppendEntries fields are written in field number order: those before the entries (1-4), then
+    // the entries (5), then those after them (6-7).
+    final LowCopyProtobufOutput head = new LowCopyProtobufOutput();
+    head.writeInt64(1, appendEntries.getTerm(), false);
+    head.writeInt64(2, appendEntries.getLeaderId(), false);
+    head.writeInt64(3, appendEntries.getPrevLogIndex(), false);
+    head.writeInt64(4, appendEntries.getPrevLogTerm(), false);
+
+    final LowCopyProtobufOutput tail = new LowCopyProtobufOutput();
+    tail.writeInt64(6, appendEntries.getCommitIndex(), false);
+    if (appendEntries.getQuiesce()) {
+      tail.writeBool(7, true, false);
+    }
+
+    final ByteBuf entries = msg.serializedEntries.serializedEntries();
+    try {
+      final long appendEntriesSize = head.buffer.size() + entries.readableBytes() + tail.buffer.size();
+      if (appendEntriesSize > Integer.MAX_VALUE) {
+        throw new EncoderException("Serialized form was too large, actual size: " + appendEntriesSize);
+      }
+
+      final LowCopyProtobufOutput envelope = new LowCopyProtobufOutput();
+      ReplicationWireMessage.getSchema().writeTo(envelope, withoutContent(msg.wireMessage));
+      envelope.buffer.writeVarInt32(makeTag(APPEND_ENTRIES_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED));
+      envelope.buffer.writeVarInt32((int) appendEntriesSize);
+
+      final long messageSize = envelope.buffer.size() + appendEntriesSize;
+      if (messageSize > Integer.MAX_VALUE) {
+        throw new EncoderException("Serialized form was too large, actual size: " + messageSize);
+      }
+
+      final LowCopyProtobufOutput lengthPrefix = new LowCopyProtobufOutput();
+      lengthPrefix.buffer.writeVarInt32((int) messageSize);
+
+      out.add(Unpooled.wrappedBuffer(
+          toByteBuf(lengthPrefix), toByteBuf(envelope), toByteBuf(head), entries, toByteBuf(tail)));
+    } catch (Exception e) {
+      entries.release();
+      throw e;
+    }
+  }
+
+  private static ReplicationWireMessage withoutContent(ReplicationWireMessage wireMessage) {
+    return new ReplicationWireMessage(
+        wireMessage.getMessageId(),
+        wireMessage.getSenderId(),
+        wireMessage.getReceiverId(),
+        wireMessage.getQuorumId(),
+        wireMessage.getInReply(),
+        null, null, null, null, null, null, null, null);
+  }
+
+  private static ByteBuf toByteBuf(LowCopyProtobufOutput output) {
+    final List<ByteBuffer> buffers = output.buffer.finish();
+    return Unpooled.wrappedBuffer(buffers.toArray(new ByteBuffer[buffers.size()]));
+  }
+}
@@ -18,9 +18,11 @@ package c5db.replication;
 
 import c5db.interfaces.replication.IndexCommitNotice;
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReadFreshness;
 import c5db.interfaces.replication.Replicator;
 import c5db.interfaces.replication.ReplicatorInstanceEvent;
 import c5db.interfaces.replication.ReplicatorReceipt;
+import c5db.interfaces.replication.SnapshotProvider;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -85,6 +87,24 @@ public class SingleNodeFakeReplicator implements Replicator {
     return receiptFuture;
   }
 
+  @Override
+  public synchronized ListenableFuture<Long> readBarrier() {
+    SettableFuture<Long> readIndexFuture = SettableFuture.create();
+    final long lastSeqNum = nextSeqNum - 1;
+
+    // Complete after the commit notices of all the requests logged before this call.
+    doLater(() ->
+        doLater(() -> readIndexFuture.set(lastSeqNum)));
+
+    return readIndexFuture;
+  }
+
+  @Override
+  public synchronized ListenableFuture<ReadFreshness> getReadFreshness() {
+    final long lastSeqNum = nextSeqNum - 1;
+    return Futures.immediateFuture(new ReadFreshness(lastSeqNum, lastSeqNum, 0));
+  }
+
   @Override
   public long getId() {
     return nodeId;
@@ -111,6 +131,11 @@ public class SingleNodeFakeReplicator implements Replicator {
     return commitNoticeChannel;
   }
 
+  @Override
+  public void setSnapshotProvider(SnapshotProvider snapshotProvider) {
+    // A single node has no peers to catch up, so it never transfers snapshots.
+  }
+
   private void doLater(Runnable runnable) {
     fiber.execute(runnable);
   }
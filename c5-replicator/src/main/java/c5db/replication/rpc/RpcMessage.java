@@ -18,6 +18,8 @@ package c5db.replication.rpc;
 
 import c5db.replication.generated.AppendEntries;
 import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.InstallSnapshot;
+import c5db.replication.generated.InstallSnapshotReply;
 import c5db.replication.generated.PreElectionPoll;
 import c5db.replication.generated.PreElectionReply;
 import c5db.replication.generated.ReplicationWireMessage;
@@ -81,6 +83,14 @@ public class RpcMessage {
       return wireMessage.getPreElectionReply();
     }
 
+    if (wireMessage.getInstallSnapshot() != null) {
+      return wireMessage.getInstallSnapshot();
+    }
+
+    if (wireMessage.getInstallSnapshotReply() != null) {
+      return wireMessage.getInstallSnapshotReply();
+    }
+
     return null;
   }
 
@@ -106,7 +116,9 @@ public class RpcMessage {
         getAppendMessage(),
         getAppendReplyMessage(),
         getPreElectionPollMessage(),
-        getPreElectionReplyMessage()
+        getPreElectionReplyMessage(),
+        getInstallSnapshotMessage(),
+        getInstallSnapshotReplyMessage()
     );
   }
 
@@ -135,6 +147,14 @@ public class RpcMessage {
     return message instanceof PreElectionReply;
   }
 
+  public boolean isInstallSnapshotMessage() {
+    return message instanceof InstallSnapshot;
+  }
+
+  public boolean isInstallSnapshotReplyMessage() {
+    return message instanceof InstallSnapshotReply;
+  }
+
   public AppendEntries getAppendMessage() {
     if (isAppendMessage()) {
       return (AppendEntries) message;
@@ -176,4 +196,18 @@ public class RpcMessage {
     }
     return null;
   }
+
+  public InstallSnapshot getInstallSnapshotMessage() {
+    if (isInstallSnapshotMessage()) {
+      return (InstallSnapshot) message;
+    }
+    return null;
+  }
+
+  public InstallSnapshotReply getInstallSnapshotReplyMessage() {
+    if (isInstallSnapshotReplyMessage()) {
+      return (InstallSnapshotReply) message;
+    }
+    return null;
+  }
 }
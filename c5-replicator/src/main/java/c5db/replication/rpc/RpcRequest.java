@@ -16,8 +16,9 @@
 
 package c5db.replication.rpc;
 
-
+import c5db.replication.generated.AppendEntries;
 import io.protostuff.Message;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * An outbound request for the transport.  Since the transport knows who 'we' are, the only
@@ -27,11 +28,27 @@ import io.protostuff.Message;
  * who 'we' are.  So include that.
  */
 public class RpcRequest extends RpcMessage {
+  /**
+   * For an AppendEntries request, its entries, whose serialized form may be shared with requests to other
+   * peers; or null. A transport which serializes the request may use it in place of serializing the entries.
+   */
+  @Nullable
+  public final SerializedEntries serializedEntries;
 
   public RpcRequest(long to, long from, String quorumId, Message message) {
     // Note that the RPC system should sub in a message id, that is an implementation detail
     // since not all transports (eg: in RAM only transport) need message IDs to keep request/replies in line.
     super(to, from, quorumId, message);
+    this.serializedEntries = null;
+  }
+
+  /**
+   * Create an AppendEntries request whose entries are those of serializedEntries. The request does not take
+   * a reference to serializedEntries; its sender is responsible for holding one while the request is in flight.
+   */
+  public RpcRequest(long to, long from, String quorumId, AppendEntries message, SerializedEntries serializedEntries) {
+    super(to, from, quorumId, message);
+    this.serializedEntries = serializedEntries;
   }
 }
 
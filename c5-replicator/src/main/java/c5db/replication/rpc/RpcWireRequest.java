@@ -17,19 +17,50 @@
 package c5db.replication.rpc;
 
 import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.util.ReferenceCounted;
 import io.protostuff.Message;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * And RPC request from off the wire, from a remote sender.
+ * <p>
+ * The request's entries may be views of the buffer it was decoded from; if so, the request holds a reference
+ * to that buffer, which the recipient releases, by calling releasePayloads, once it is done with the request.
  */
 public class RpcWireRequest extends RpcMessage {
+  @Nullable
+  private final ReferenceCounted payloads;
+  private final AtomicBoolean payloadsReleased = new AtomicBoolean(false);
 
   public RpcWireRequest(long from, String quorumId, Message message) {
     super(0, from, quorumId, message);
+    this.payloads = null;
   }
 
   public RpcWireRequest(ReplicationWireMessage wireMessage) {
+    this(wireMessage, null);
+  }
+
+  /**
+   * @param payloads the buffer holding the payloads of the message's entries, or null if there is none. The
+   *                 caller passes its reference to the buffer to the request.
+   */
+  public RpcWireRequest(ReplicationWireMessage wireMessage, @Nullable ReferenceCounted payloads) {
     super(wireMessage);
+    this.payloads = payloads;
+  }
+
+  /**
+   * Release the request's reference to the buffer holding its entries' payloads, if it has one. The recipient
+   * calls this when it's done with the request, whether it has replied to the request or dropped it. Calls
+   * after the first have no effect.
+   */
+  public void releasePayloads() {
+    if (payloads != null && payloadsReleased.compareAndSet(false, true)) {
+      payloads.release();
+    }
   }
 }
 
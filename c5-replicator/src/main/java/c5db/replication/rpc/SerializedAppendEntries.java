@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication.rpc;
+
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.util.AbstractReferenceCounted;
+
+/**
+ * An AppendEntries request on its way to the wire, whose entries have (or will have) a serialized form
+ * shared with the requests to other peers. It consists of the wire message, whose AppendEntries supplies
+ * the per-peer fields (prevLogIndex, prevLogTerm, commitIndex, etc.), together with the shared entries.
+ * <p>
+ * Each instance holds one reference to the SerializedEntries, which it releases when its own reference
+ * count reaches zero: that is, when the encoder has written it, or when the write fails.
+ */
+public class SerializedAppendEntries extends AbstractReferenceCounted {
+  public final ReplicationWireMessage wireMessage;
+  public final SerializedEntries serializedEntries;
+
+  /**
+   * @param wireMessage       Message to send; it must contain an AppendEntries request whose entries are
+   *                          those of serializedEntries.
+   * @param serializedEntries Shared entries, a reference to which is passed to the new instance.
+   */
+  public SerializedAppendEntries(ReplicationWireMessage wireMessage, SerializedEntries serializedEntries) {
+    assert wireMessage.getAppendEntries() != null;
+
+    this.wireMessage = wireMessage;
+    this.serializedEntries = serializedEntries;
+  }
+
+  public AppendEntries getAppendEntries() {
+    return wireMessage.getAppendEntries();
+  }
+
+  @Override
+  protected void deallocate() {
+    serializedEntries.release();
+  }
+
+  @Override
+  public String toString() {
+    return "SerializedAppendEntries{" +
+        "wireMessage=" + wireMessage +
+        '}';
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication.rpc;
+
+import c5db.replication.generated.LogEntry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.protostuff.LowCopyProtobufOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The entries of an AppendEntries request, together with their serialized form, which may be shared
+ * by the requests sent to several peers. A leader usually sends the same entries to every peer in a
+ * quorum; rather than serializing them once per peer, each peer's request is written as a small
+ * per-peer envelope followed by the shared serialized entries (see SerializedAppendEntries).
+ * <p>
+ * The entries are serialized lazily, the first time they're written to the wire, so that requests
+ * which never leave the process (e.g. over an in-RAM transport) don't pay for it. The serialized
+ * form is exactly what AppendEntries' schema writes for its repeated entries field.
+ * <p>
+ * Instances are reference-counted, and thread-safe. The serialized bytes are released when the
+ * count reaches zero; each holder of a reference is responsible for releasing it.
+ */
+public class SerializedEntries extends AbstractReferenceCounted {
+  private static final int ENTRIES_FIELD_NUMBER = 5;
+
+  public final List<LogEntry> entries;
+  private ByteBuf serialized;
+
+  public SerializedEntries(List<LogEntry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Take an additional reference, unless every reference has already been released.
+   *
+   * @return True if a reference was taken, in which case the caller must later release it.
+   */
+  public boolean tryRetain() {
+    try {
+      retain();
+      return true;
+    } catch (IllegalReferenceCountException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Get the serialized entries, serializing them if this is the first call.
+   *
+   * @return A buffer sharing the serialized bytes, with its own reader index; it holds a reference to
+   * them, which is released when the buffer is released.
+   */
+  public synchronized ByteBuf serializedEntries() throws IOException {
+    if (refCnt() == 0) {
+      throw new IllegalReferenceCountException(0);
+    }
+    if (serialized == null) {
+      serialized = serialize(entries);
+    }
+    return serialized.retain().duplicate();
+  }
+
+  @Override
+  protected synchronized void deallocate() {
+    if (serialized != null) {
+      serialized.release();
+      serialized = null;
+    }
+  }
+
+  private static ByteBuf serialize(List<LogEntry> entries) throws IOException {
+    final LowCopyProtobufOutput lcpo = new LowCopyProtobufOutput();
+    for (LogEntry entry : entries) {
+      lcpo.writeObject(ENTRIES_FIELD_NUMBER, entry, LogEntry.getSchema(), true);
+    }
+    final List<ByteBuffer> buffers = lcpo.buffer.finish();
+    return Unpooled.wrappedBuffer(buffers.toArray(new ByteBuffer[buffers.size()]));
+  }
+}
@@ -57,6 +57,12 @@ public class RpcMatchers {
               .appendText("an AppendEntries request"));
     }
 
+    public static RequestMatcher anInstallSnapshotRequest() {
+      return new RequestMatcher().addCriterion(
+          (request) -> request.getRequest().isInstallSnapshotMessage(),
+          (description) -> description.appendText("an InstallSnapshot request"));
+    }
+
     public static RequestMatcher aPreElectionPoll() {
       return new RequestMatcher().addCriterion(
           (request) -> request.getRequest().isPreElectionPollMessage(),
@@ -95,6 +101,14 @@ public class RpcMatchers {
               description.appendText(" containing a log entry with index ").appendValue(index));
     }
 
+    public RequestMatcher withEntryCount(Matcher<Integer> countMatcher) {
+      return addCriterion(
+          (request) ->
+              countMatcher.matches(entryList(request).size()),
+          (description) ->
+              description.appendText(" with a number of entries ").appendDescriptionOf(countMatcher));
+    }
+
     public RequestMatcher withCommitIndex(Matcher<Long> indexMatcher) {
       return addCriterion(
           (request) ->
@@ -111,6 +125,14 @@ public class RpcMatchers {
               description.appendText(" with prevLogIndex ").appendDescriptionOf(indexMatcher));
     }
 
+    public RequestMatcher withQuiesce(boolean quiesce) {
+      return addCriterion(
+          (request) ->
+              request.getRequest().getAppendMessage().getQuiesce() == quiesce,
+          (description) ->
+              description.appendText(" with quiesce ").appendValue(quiesce));
+    }
+
     public RequestMatcher containingQuorumConfig(QuorumConfiguration quorumConfig) {
       return addCriterion(
           (request) ->
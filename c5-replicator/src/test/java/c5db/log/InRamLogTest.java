@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.log;
+
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.TermRun;
+import c5db.replication.generated.LogEntry;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static c5db.replication.ReplicatorTestUtil.entries;
+import static c5db.replication.ReplicatorTestUtil.makeProtostuffEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class InRamLogTest {
+  private final InRamLog log = new InRamLog();
+
+  @After
+  public void closeLog() {
+    log.close();
+  }
+
+  @Test
+  public void retrievesRangesAndTermsOfALogWhichDoesNotBeginAtIndexOne() throws Exception {
+    log.logEntries(
+        entries()
+            .term(3).indexes(5, 6, 7)
+            .term(4).indexes(8, 9)
+            .build());
+
+    assertThat(indexesOf(log.getLogEntries(6, 9)), contains(6L, 7L, 8L));
+    assertThat(log.getLogTerm(7), is(equalTo(3L)));
+    assertThat(log.getLogTerm(9), is(equalTo(4L)));
+    assertThat(log.getLogTerm(10), is(equalTo(0L)));
+    assertThat(log.getLastIndex(), is(equalTo(9L)));
+  }
+
+  @Test
+  public void dividesARangeOfIndexesIntoRunsOfTheSameTerm() throws Exception {
+    log.logEntries(
+        entries()
+            .term(3).indexes(5, 6, 7)
+            .term(4).indexes(8)
+            .term(6).indexes(9, 10)
+            .build());
+
+    assertThat(log.getTermRuns(3, 12), contains(
+        new TermRun(3, 4, 0),
+        new TermRun(5, 7, 3),
+        new TermRun(8, 8, 4),
+        new TermRun(9, 10, 6),
+        new TermRun(11, 12, 0)));
+    assertThat(log.getTermRuns(6, 9), contains(
+        new TermRun(6, 7, 3),
+        new TermRun(8, 8, 4),
+        new TermRun(9, 9, 6)));
+    assertThat(log.getTermRuns(6, 5), is(empty()));
+  }
+
+  @Test
+  public void includesTheBaseIndexOfAResetLogInTheRunOfItsTerm() throws Exception {
+    log.resetLog(10, 2, QuorumConfiguration.EMPTY).get();
+    log.logEntries(entries().term(2).indexes(11, 12).term(3).indexes(13).build());
+
+    assertThat(log.getTermRuns(9, 13), contains(
+        new TermRun(9, 9, 0),
+        new TermRun(10, 12, 2),
+        new TermRun(13, 13, 3)));
+  }
+
+  @Test
+  public void truncatesEntriesAndTheConfigurationsAmongThem() throws Exception {
+    final QuorumConfiguration firstConfig = QuorumConfiguration.of(Longs.asList(1, 2, 3));
+    final QuorumConfiguration secondConfig = QuorumConfiguration.of(Longs.asList(4, 5, 6));
+
+    log.logEntries(
+        entries()
+            .configurationAndIndex(firstConfig, 1)
+            .indexes(2, 3)
+            .configurationAndIndex(secondConfig, 4)
+            .indexes(5)
+            .build());
+
+    assertThat(log.getLastConfiguration(), is(equalTo(secondConfig)));
+
+    log.truncateLog(3).get();
+
+    assertThat(log.getLastIndex(), is(equalTo(2L)));
+    assertThat(log.getLastConfiguration(), is(equalTo(firstConfig)));
+    assertThat(log.getLastConfigurationIndex(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void retrievesAPrefixOfTheRequestedRangeLimitedByDataSize() throws Exception {
+    // Each entry built by LogSequenceBuilder has 10 bytes of data
+    log.logEntries(entries().indexes(1, 2, 3, 4, 5).build());
+
+    assertThat(indexesOf(log.getLogEntries(2, 6, 25)), contains(2L, 3L));
+    assertThat(indexesOf(log.getLogEntries(2, 6, 0)), contains(2L));
+  }
+
+  @Test
+  public void continuesFromTheBaseIndexAndTermGivenWhenReset() throws Exception {
+    final QuorumConfiguration config = QuorumConfiguration.of(Longs.asList(1, 2, 3));
+    log.logEntries(entries().term(1).indexes(1, 2, 3).build());
+
+    log.resetLog(10, 2, config).get();
+
+    assertThat(log.getLastIndex(), is(equalTo(10L)));
+    assertThat(log.getFirstIndex(), is(equalTo(11L)));
+    assertThat(log.getLastTerm(), is(equalTo(2L)));
+    assertThat(log.getLogTerm(10), is(equalTo(2L)));
+    assertThat(log.getLogTerm(3), is(equalTo(0L)));
+    assertThat(log.getLastConfiguration(), is(equalTo(config)));
+    assertThat(log.getLastConfigurationIndex(), is(equalTo(10L)));
+
+    log.logEntries(entries().term(3).indexes(11, 12).build());
+    assertThat(indexesOf(log.getLogEntries(11, 13)), contains(11L, 12L));
+    assertThat(log.getFirstIndex(), is(equalTo(11L)));
+  }
+
+  @Test
+  public void retainsACopyOfTheDataOfTheEntriesItLogs() throws Exception {
+    final ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3});
+    log.logEntries(Lists.newArrayList(makeProtostuffEntry(1, 1, data))).get();
+
+    // The logged data may be a view of a buffer which its owner reuses once the log is done with it.
+    data.put(0, (byte) 9);
+
+    assertThat(log.getLogEntries(1, 2).get().get(0).getDataList(),
+        contains(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+  }
+
+  @Test(timeout = 3000)
+  public void completesLogEntriesFuturesAfterTheConfiguredWriteLatency() throws Exception {
+    final long writeLatencyMillis = 200;
+    try (InRamLog slowLog = new InRamLog(writeLatencyMillis)) {
+      final long startTime = System.nanoTime();
+      slowLog.logEntries(entries().indexes(1).build()).get();
+
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) >= writeLatencyMillis, is(true));
+    }
+  }
+
+  @Test(timeout = 3000)
+  public void completesFuturesReturnedBeforeItWasClosed() throws Exception {
+    final InRamLog slowLog = new InRamLog(200);
+    ListenableFuture<Boolean> logFuture = slowLog.logEntries(entries().indexes(1).build());
+
+    slowLog.close();
+
+    assertThat(logFuture.get(), is(true));
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void failsTheFuturesOfCallsMadeAfterItWasClosed() throws Exception {
+    final InRamLog closedLog = new InRamLog();
+    closedLog.close();
+
+    closedLog.logEntries(entries().indexes(1).build()).get();
+  }
+
+  private static List<Long> indexesOf(ListenableFuture<List<LogEntry>> entriesFuture) throws Exception {
+    return entriesFuture.get().stream()
+        .map(LogEntry::getIndex)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class AppendEntriesWindowTest {
+  private final AppendEntriesWindow window = new AppendEntriesWindow(4);
+
+  @Test
+  public void hasRoomUntilAsManyRequestsAsItsSizeAreInFlight() {
+    sendRequests(3);
+    assertThat(window.hasRoom(), is(true));
+    assertThat(window.room(), is(equalTo(1)));
+
+    sendRequests(1);
+    assertThat(window.hasRoom(), is(false));
+
+    window.replyReceived();
+    assertThat(window.hasRoom(), is(true));
+  }
+
+  @Test
+  public void halvesItsSizeWhenARequestTimesOutButNeverShrinksBelowOne() {
+    sendRequests(4);
+
+    window.requestTimedOut();
+    assertThat(window.size(), is(equalTo(2)));
+    assertThat(window.inFlight(), is(equalTo(3)));
+    assertThat(window.hasRoom(), is(false));
+
+    window.requestTimedOut();
+    window.requestTimedOut();
+    window.requestTimedOut();
+    assertThat(window.size(), is(equalTo(1)));
+    assertThat(window.hasRoom(), is(true));
+  }
+
+  @Test
+  public void growsBackToItsMaximumSizeAsRepliesAreReceived() {
+    sendRequests(1);
+    window.requestTimedOut();
+    assertThat(window.size(), is(equalTo(2)));
+
+    for (int i = 0; i < 5; i++) {
+      sendRequests(1);
+      window.replyReceived();
+    }
+    assertThat(window.size(), is(equalTo(4)));
+  }
+
+  private void sendRequests(int count) {
+    for (int i = 0; i < count; i++) {
+      window.requestSent();
+    }
+  }
+}
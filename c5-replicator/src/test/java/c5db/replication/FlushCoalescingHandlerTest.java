@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FlushCoalescingHandlerTest {
+  private static final int MAX_PENDING_BYTES = 100;
+
+  private final EmbeddedChannel channel = new EmbeddedChannel(new FlushCoalescingHandler(MAX_PENDING_BYTES));
+
+  @Test
+  public void defersFlushesUntilTheEventLoopHasRunItsQueuedTasks() throws Exception {
+    // EmbeddedChannel runs its pending tasks whenever a write reaches it, so write both messages before flushing.
+    channel.write(bytes(10));
+    channel.write(bytes(20));
+    channel.flush();
+    channel.flush();
+
+    assertThat(channel.readOutbound(), is(nullValue()));
+
+    channel.runPendingTasks();
+
+    assertThat(readableBytesOf(channel.readOutbound()), is(equalTo(10)));
+    assertThat(readableBytesOf(channel.readOutbound()), is(equalTo(20)));
+  }
+
+  @Test
+  public void flushesAtOnceWhenTheBytesWrittenSinceTheLastFlushReachTheThreshold() throws Exception {
+    channel.writeAndFlush(bytes(60));
+    channel.writeAndFlush(bytes(60));
+
+    assertThat(readableBytesOf(channel.readOutbound()), is(equalTo(60)));
+    assertThat(readableBytesOf(channel.readOutbound()), is(equalTo(60)));
+  }
+
+  @Test
+  public void flushesPendingWritesWhenTheChannelIsClosed() throws Exception {
+    channel.writeAndFlush(bytes(10));
+    channel.close();
+
+    assertThat(readableBytesOf(channel.readOutbound()), is(equalTo(10)));
+  }
+
+  private static ByteBuf bytes(int length) {
+    return Unpooled.wrappedBuffer(new byte[length]);
+  }
+
+  private static int readableBytesOf(Object message) {
+    return ((ByteBuf) message).readableBytes();
+  }
+}
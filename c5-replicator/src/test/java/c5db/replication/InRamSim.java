@@ -162,7 +162,7 @@ public class InRamSim {
   private final Set<Long> peerIds = new HashSet<>();
   private final Set<Long> offlinePeers = new HashSet<>();
   private final Map<Long, ReplicatorInstance> replicators = new HashMap<>();
-  private final Map<Long, ReplicatorLog> replicatorLogs = new HashMap<>();
+  private final Map<Long, InRamLog> replicatorLogs = new HashMap<>();
   private final List<WireObstruction> wireObstructions
       = Collections.<WireObstruction>synchronizedList(new ArrayList<>());
   private final RequestChannel<RpcRequest, RpcWireReply> rpcChannel = new MemoryRequestChannel<>();
@@ -203,7 +203,7 @@ public class InRamSim {
         continue;
       }
 
-      ReplicatorLog log = new InRamLog();
+      InRamLog log = new InRamLog();
       ReplicatorInstance rep = new ReplicatorInstance(fiberPool.create(batchExecutor),
           peerId,
           "foobar",
@@ -235,7 +235,8 @@ public class InRamSim {
   public void restartPeer(long peerId) {
     assert replicators.containsKey(peerId);
     ReplicatorInstance oldRepl = replicators.get(peerId);
-    ReplicatorLog log = new InRamLog();
+    replicatorLogs.get(peerId).close();
+    InRamLog log = new InRamLog();
     ReplicatorInstance repl = new ReplicatorInstance(fiberPool.create(batchExecutor),
         peerId,
         "foobar",
@@ -396,6 +397,7 @@ public class InRamSim {
     for (ReplicatorInstance repl : replicators.values()) {
       repl.dispose();
     }
+    replicatorLogs.values().forEach(InRamLog::close);
     fiberPool.dispose();
     executorService.shutdownNow();
   }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+
+package c5db.replication;
+
+import c5db.codec.PooledProtostuffEncoder;
+import c5db.codec.ProtostuffDecoder;
+import c5db.codec.RetainedMessage;
+import c5db.replication.generated.ReplicationWireMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PeerLivenessHandlerTest {
+  @Test
+  public void discardsTheProbesItReadsAndPassesOtherMessagesOn() throws Exception {
+    final EmbeddedChannel channel = new EmbeddedChannel(new PeerLivenessHandler());
+    final ByteBuf probeBuffer = Unpooled.buffer(1);
+
+    channel.writeInbound(new RetainedMessage<>(new ReplicationWireMessage(), probeBuffer));
+    channel.writeInbound(new RetainedMessage<>(aMessageWithId(1), Unpooled.buffer(1)));
+
+    assertThat(probeBuffer.refCnt(), is(equalTo(0)));
+    final RetainedMessage<?> passedOn = (RetainedMessage<?>) channel.readInbound();
+    assertThat(((ReplicationWireMessage) passedOn.message).getMessageId(), is(equalTo(1L)));
+    assertThat(channel.readInbound(), is(nullValue()));
+    passedOn.release();
+  }
+
+  @Test
+  public void discardsAProbeWhichHasCrossedTheWire() throws Exception {
+    final EmbeddedChannel sender = new EmbeddedChannel(new PooledProtostuffEncoder<>(ReplicationWireMessage.class));
+    final EmbeddedChannel receiver = new EmbeddedChannel(new ProtobufVarint32FrameDecoder(),
+        new ProtostuffDecoder<>(ReplicationWireMessage.getSchema(), true), new PeerLivenessHandler());
+
+    sender.writeOutbound(new ReplicationWireMessage());
+    receiver.writeInbound(sender.readOutbound());
+
+    assertThat(receiver.readInbound(), is(nullValue()));
+    receiver.checkException();
+  }
+
+  @Test
+  public void writesAProbeWhenNothingHasBeenWrittenForAWhile() throws Exception {
+    final EmbeddedChannel channel = new EmbeddedChannel(new PeerLivenessHandler());
+
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_WRITER_IDLE_STATE_EVENT);
+
+    final Object written = channel.readOutbound();
+    assertThat(written, is(instanceOf(ReplicationWireMessage.class)));
+    assertThat(((ReplicationWireMessage) written).getMessageId(), is(equalTo(0L)));
+    assertThat(channel.isOpen(), is(true));
+  }
+
+  @Test
+  public void closesTheConnectionWhenNothingHasBeenReadForAWhile() throws Exception {
+    final EmbeddedChannel channel = new EmbeddedChannel(new PeerLivenessHandler());
+
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+
+    assertThat(channel.isOpen(), is(false));
+  }
+
+  private static ReplicationWireMessage aMessageWithId(long messageId) {
+    return new ReplicationWireMessage(messageId, 1, 2, "quorumId", false,
+        null, null, null, null, null, null, null, null);
+  }
+}
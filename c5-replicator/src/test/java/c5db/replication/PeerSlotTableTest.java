@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.QuorumConfiguration;
+import com.google.common.primitives.Longs;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class PeerSlotTableTest {
+  private final QuorumConfiguration stableConfiguration = QuorumConfiguration.of(Longs.asList(1, 2, 3, 4, 5));
+  private final QuorumConfiguration transitionalConfiguration =
+      stableConfiguration.getTransitionalConfiguration(Longs.asList(4, 5, 6, 7));
+
+  @Test
+  public void findsTheGreatestIndexAckedByAMajorityOfAStableConfiguration() {
+    final PeerSlotTable table = new PeerSlotTable(stableConfiguration);
+
+    table.recordAck(1, 10);
+    table.recordAck(2, 8);
+    assertThat(table.getMajorityAckedIndex(), is(equalTo(0L)));
+
+    table.recordAck(3, 9);
+    assertThat(table.getMajorityAckedIndex(), is(equalTo(8L)));
+
+    table.recordAck(4, 12);
+    assertThat(table.getMajorityAckedIndex(), is(equalTo(9L)));
+  }
+
+  @Test
+  public void requiresAMajorityOfEachPeerSetOfATransitionalConfiguration() {
+    final PeerSlotTable table = new PeerSlotTable(transitionalConfiguration);
+
+    table.recordAck(1, 10);
+    table.recordAck(2, 10);
+    table.recordAck(3, 10);
+    assertThat(table.getMajorityAckedIndex(), is(equalTo(0L)));
+
+    table.recordAck(4, 7);
+    table.recordAck(5, 6);
+    table.recordAck(6, 5);
+    assertThat(table.getMajorityAckedIndex(), is(equalTo(5L)));
+  }
+
+  @Test
+  public void agreesWithTheQuorumConfigurationsOwnCalculationForAnySequenceOfAcks() {
+    final Random random = new Random(1234);
+
+    for (QuorumConfiguration configuration : new QuorumConfiguration[]{stableConfiguration, transitionalConfiguration}) {
+      final PeerSlotTable table = new PeerSlotTable(configuration);
+      final Map<Long, Long> lastAckedIndexes = new HashMap<>();
+
+      for (int i = 0; i < 1000; i++) {
+        final long peerId = 1 + random.nextInt(8);
+        final long ackedIndex = lastAckedIndexes.getOrDefault(peerId, 0L) + random.nextInt(3);
+        lastAckedIndexes.put(peerId, ackedIndex);
+        table.recordAck(peerId, ackedIndex);
+
+        assertThat(table.getMajorityAckedIndex(),
+            is(equalTo(configuration.calculateCommittedIndex(lastAckedIndexes))));
+      }
+    }
+  }
+
+  @Test
+  public void ignoresAcksOfIndexesLowerThanOneAlreadyRecordedAndAcksFromPeersOutsideTheConfiguration() {
+    final PeerSlotTable table = new PeerSlotTable(stableConfiguration);
+
+    table.recordAck(1, 10);
+    table.recordAck(1, 5);
+    table.recordAck(9, 20);
+
+    assertThat(table.getLastAckedIndex(1), is(equalTo(10L)));
+    assertThat(table.getLastAckedIndex(9), is(equalTo(0L)));
+  }
+
+  @Test
+  public void findsTheGreatestConfirmationRoundAndSendTimeConfirmedByAMajority() {
+    final PeerSlotTable table = new PeerSlotTable(stableConfiguration);
+
+    table.recordConfirmation(1, 3, 1300);
+    table.recordConfirmation(2, 2, 1200);
+    assertThat(table.getMajorityConfirmedRound(), is(equalTo(0L)));
+
+    table.recordConfirmation(3, 1, 1100);
+    assertThat(table.getMajorityConfirmedRound(), is(equalTo(1L)));
+    assertThat(table.getMajorityConfirmedSendTime(), is(equalTo(1100L)));
+
+    table.recordConfirmation(3, 3, 1300);
+    table.recordConfirmation(2, 1, 1000);
+    assertThat(table.getMajorityConfirmedRound(), is(equalTo(2L)));
+    assertThat(table.getMajorityConfirmedSendTime(), is(equalTo(1200L)));
+  }
+
+  @Test
+  public void carriesOverTheProgressOfPeersCommonToThePreviousConfiguration() {
+    final PeerSlotTable table = new PeerSlotTable(stableConfiguration);
+    table.setNextIndex(4, 11);
+    table.recordAck(4, 10);
+    table.recordAck(5, 10);
+
+    final PeerSlotTable nextTable = new PeerSlotTable(transitionalConfiguration, table);
+
+    assertThat(nextTable.getNextIndex(4, 1), is(equalTo(11L)));
+    assertThat(nextTable.getNextIndex(6, 1), is(equalTo(1L)));
+
+    nextTable.recordAck(1, 10);
+    nextTable.recordAck(2, 10);
+    assertThat(nextTable.getMajorityAckedIndex(), is(equalTo(0L)));
+
+    nextTable.recordAck(6, 10);
+    assertThat(nextTable.getMajorityAckedIndex(), is(equalTo(10L)));
+  }
+}
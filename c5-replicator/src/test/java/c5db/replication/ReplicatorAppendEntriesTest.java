@@ -18,6 +18,7 @@ package c5db.replication;
 
 import c5db.interfaces.replication.IndexCommitNotice;
 import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReadFreshness;
 import c5db.interfaces.replication.ReplicatorInstanceEvent;
 import c5db.interfaces.replication.ReplicatorLog;
 import c5db.log.InRamLog;
@@ -116,6 +117,7 @@ public class ReplicatorAppendEntriesTest {
       allowing(log).getLastIndex();
       allowing(log).getLastTerm();
       allowing(log).getLogTerm(with(any(Long.class)));
+      allowing(log).getTermRuns(with(any(Long.class)), with(any(Long.class)));
       allowing(log).getLastConfiguration();
       allowing(log).getLastConfigurationIndex();
     }});
@@ -132,6 +134,7 @@ public class ReplicatorAppendEntriesTest {
   public void disposeReplicatorAndRpcFiber() {
     replicatorInstance.dispose();
     rpcFiber.dispose();
+    internalLog.close();
   }
 
   @Test
@@ -380,6 +383,28 @@ public class ReplicatorAppendEntriesTest {
     assertThat(internalLog.getLogEntries(1, 6), resultsIn(aListOfEntriesWithConsecutiveSeqNums(1, 6)));
   }
 
+  @Test
+  public void reportsHowFarBehindTheLeadersCommitIndexItIsAndHowLongSinceItHeardFromTheLeader() throws Exception {
+    havingLogged(
+        entries().term(CURRENT_TERM).indexes(1, 2, 3));
+
+    havingReceived(
+        anAppendEntriesRequest()
+            .withPrevLogTerm(CURRENT_TERM).withPrevLogIndex(3)
+            .withCommitIndex(5));
+    assertThat(reply(), is(anAppendReply().withResult(true)));
+
+    clock.advanceTime(250);
+
+    assertThat(replicatorInstance.getReadFreshness(), resultsIn(equalTo(new ReadFreshness(3, 5, 250))));
+  }
+
+  @Test
+  public void reportsNoLeaderContactBeforeReceivingAnyAppendEntriesRequest() throws Exception {
+    assertThat(replicatorInstance.getReadFreshness(),
+        resultsIn(equalTo(new ReadFreshness(0, 0, ReadFreshness.NO_LEADER_CONTACT))));
+  }
+
   private final Channel<IndexCommitNotice> commitNotices = new MemoryChannel<>();
   private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
       new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
@@ -388,16 +413,17 @@ public class ReplicatorAppendEntriesTest {
   private final ChannelHistoryMonitor<ReplicatorInstanceEvent> eventMonitor =
       new ChannelHistoryMonitor<>(eventChannel, rpcFiber);
 
+  private final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(0, Integer.MAX_VALUE / 2L);
+
   private ReplicatorInstance makeTestInstance() throws Exception {
     long thisReplicatorId = 1;
-    ReplicatorClock info = new InRamSim.StoppableClock(0, Integer.MAX_VALUE / 2L);
     ReplicatorLog proxyLog = getReplicatorLogWhichInvokesMock();
 
     return new ReplicatorInstance(new ThreadFiber(new RunnableExecutorImpl(batchExecutor), null, true),
         thisReplicatorId,
         QUORUM_ID,
         proxyLog,
-        info,
+        clock,
         persistence,
         new MemoryRequestChannel<>(),
         eventChannel,
@@ -505,7 +531,7 @@ public class ReplicatorAppendEntriesTest {
     }
 
     public AppendEntries build() {
-      return new AppendEntries(term, leaderId, prevLogIndex, prevLogTerm, entries, commitIndex);
+      return new AppendEntries(term, leaderId, prevLogIndex, prevLogTerm, entries, commitIndex, false);
     }
   }
 
@@ -519,7 +545,7 @@ public class ReplicatorAppendEntriesTest {
     return QuorumConfiguration.of(Lists.newArrayList(2L, 3L, 4L, 5L));
   }
 
-  private final ReplicatorLog internalLog = new InRamLog();
+  private final InRamLog internalLog = new InRamLog();
 
   private void havingLogged(ReplicatorTestUtil.LogSequenceBuilder sequenceBuilder) throws Exception {
     List<LogEntry> entries = sequenceBuilder.build();
@@ -29,9 +29,11 @@ import c5db.replication.rpc.RpcReply;
 import c5db.replication.rpc.RpcRequest;
 import c5db.replication.rpc.RpcWireReply;
 import c5db.replication.rpc.RpcWireRequest;
+import c5db.util.ByteBudget;
 import c5db.util.CheckedConsumer;
 import c5db.util.ExceptionHandlingBatchExecutor;
 import c5db.util.JUnitRuleFiberExceptions;
+import c5db.util.SimpleMetricRegistry;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -111,6 +113,7 @@ public class ReplicatorElectionTest {
   private final ReplicatorInfoPersistence persistence = context.mock(ReplicatorInfoPersistence.class);
   private final ReplicatorLog log = context.mock(ReplicatorLog.class);
   private final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(0, ELECTION_TIMEOUT_MILLIS);
+  private final SimpleMetricRegistry metricRegistry = new SimpleMetricRegistry();
 
   private ReplicatorInstance replicatorInstance;
 
@@ -189,6 +192,24 @@ public class ReplicatorElectionTest {
         expectReplicatorToSend(aRequestVote().to(peerId)));
   }
 
+  @Test
+  public void countsAPreElectionPollAndTheElectionItLeadsToAsOneOfEach() throws Exception {
+    final QuorumConfiguration configuration = aFiveNodeConfiguration();
+    withLogReflectingConfiguration(configuration);
+    context.checking(expectTermIncrementAndVote());
+
+    whenTheReplicatorIsInState(FOLLOWER);
+
+    havingTimedOutAndInitiatedAPreElectionPoll();
+
+    chooseTwo(otherPeers(configuration)).forEach((peerId) ->
+        withTheRequest(aPreElectionPoll().to(peerId)).receiveReply(preElectionReply(true)));
+
+    expectReplicatorToSend(aRequestVote().to(MY_ID));
+    assertThat(countOf("preElectionsStarted"), is(equalTo(1L)));
+    assertThat(countOf("electionsStarted"), is(equalTo(1L)));
+  }
+
   @Test
   public void ifAFollowerReceivesAnRpcDuringAPreElectionPollThenItWillNotInitiateAnElectionEvenIfItGetsEnoughVotes()
       throws Exception {
@@ -317,7 +338,9 @@ public class ReplicatorElectionTest {
         sendRpcChannel,
         eventChannel,
         commitNotices,
-        state);
+        state,
+        ByteBudget.unlimited(),
+        metricRegistry);
 
     sendRpcChannel.subscribe(rpcFiber, (request) -> {
       if (request.getRequest().to == MY_ID) {
@@ -328,6 +351,10 @@ public class ReplicatorElectionTest {
     replicatorInstance.start();
   }
 
+  private long countOf(String measurement) {
+    return metricRegistry.counter(ReplicatorMetrics.QUORUM_PREFIX + QUORUM_ID + "." + measurement).get();
+  }
+
   private SentRequest withTheRequest(RequestMatcher requestMatcher) {
     return new SentRequest(requestMonitor.waitFor(requestMatcher));
   }
@@ -340,7 +367,7 @@ public class ReplicatorElectionTest {
     long from = chooseOne(log.getLastConfiguration().allPeers());
     return new RpcWireRequest(from, QUORUM_ID,
         new AppendEntries(CURRENT_TERM, from, log.getLastIndex(), log.getLastTerm(), new ArrayList<>(),
-            lastCommittedIndex(0)));
+            lastCommittedIndex(0), false));
   }
 
   private void allowTimeToPass() throws Exception {
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.GeneralizedReplicator.InvalidReplicatorStateException;
+import c5db.interfaces.replication.IndexCommitNotice;
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReplicatorReceipt;
+import c5db.log.InRamLog;
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.rpc.RpcReply;
+import c5db.replication.rpc.RpcRequest;
+import c5db.replication.rpc.RpcWireReply;
+import c5db.replication.rpc.RpcWireRequest;
+import c5db.util.ByteBudget;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.JUnitRuleFiberExceptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jetlang.channels.AsyncRequest;
+import org.jetlang.channels.MemoryChannel;
+import org.jetlang.channels.MemoryRequestChannel;
+import org.jetlang.channels.Request;
+import org.jetlang.channels.RequestChannel;
+import org.jetlang.core.BatchExecutor;
+import org.jetlang.core.RunnableExecutorImpl;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.ThreadFiber;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.AsyncChannelAsserts.ChannelHistoryMonitor;
+import static c5db.FutureMatchers.resultsInException;
+import static c5db.IndexCommitMatcher.aCommitNotice;
+import static c5db.RpcMatchers.RequestMatcher.anAppendRequest;
+import static c5db.interfaces.replication.Replicator.State;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests of how the leader batches log requests into log writes and AppendEntries requests. The
+ * heartbeat interval is much longer than any of the tests wait for: requests must be drained as
+ * they arrive, not when the queue consumer's schedule comes around.
+ */
+public class ReplicatorLeaderBatchingTest {
+  private static final long LEADER_ID = 1;
+  private static final long CURRENT_TERM = 4;
+  private static final String QUORUM_ID = "quorumId";
+  private static final List<Long> PEER_ID_LIST = ImmutableList.of(1L, 2L, 3L);
+  private static final long HEARTBEAT_INTERVAL_MILLIS = 60000;
+
+  @Rule
+  public JUnitRuleFiberExceptions fiberExceptionHandler = new JUnitRuleFiberExceptions();
+  private final BatchExecutor batchExecutor = new ExceptionHandlingBatchExecutor(fiberExceptionHandler);
+  private final Fiber rpcFiber = new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "rpcFiber-Thread", true);
+
+  private final RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel = new MemoryRequestChannel<>();
+  private final MemoryChannel<Request<RpcRequest, RpcWireReply>> requestLog = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<Request<RpcRequest, RpcWireReply>> requestMonitor =
+      new ChannelHistoryMonitor<>(requestLog, rpcFiber);
+  private final MemoryChannel<IndexCommitNotice> commitNotices = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
+      new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
+
+  private final InRamLog log = new InRamLog();
+  private ReplicatorInstance replicatorInstance;
+
+  private final ByteBudget byteBudget = new ByteBudget(1024 * 1024);
+
+  private long batchingMaxDelayMillis = 0;
+  private int batchingMaxEntries = Integer.MAX_VALUE;
+  private int appendMaxEntries = Integer.MAX_VALUE;
+
+  @After
+  public final void disposeResources() {
+    replicatorInstance.dispose();
+    rpcFiber.dispose();
+    log.close();
+  }
+
+  @Test
+  public void logsAndSendsARequestWithoutWaitingForTheNextHeartbeat() throws Exception {
+    startLeader();
+
+    final long index = replicatorInstance.logData(someData()).get().seqNum;
+
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(index)));
+  }
+
+  @Test
+  public void batchesRequestsArrivingWithinTheMaximumDelayUpToTheMaximumBatchSize() throws Exception {
+    batchingMaxDelayMillis = 200;
+    batchingMaxEntries = 2;
+    startLeader();
+
+    replicatorInstance.logData(someData());
+    replicatorInstance.logData(someData());
+    final long lastIndex = replicatorInstance.logData(someData()).get().seqNum;
+
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(lastIndex)));
+    assertThat(requestMonitor.hasAny(anAppendRequest().to(2).withEntryCount(equalTo(2))), is(true));
+    assertThat(requestMonitor.hasAny(anAppendRequest().withEntryCount(greaterThan(2))), is(false));
+  }
+
+  @Test
+  public void sendsABatchToEachPeerInRequestsContainingNoMoreThanTheMaximumNumberOfEntries() throws Exception {
+    batchingMaxDelayMillis = 200;
+    appendMaxEntries = 2;
+    startLeader();
+
+    for (int i = 0; i < 4; i++) {
+      replicatorInstance.logData(someData());
+    }
+    final long lastIndex = replicatorInstance.logData(someData()).get().seqNum;
+
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(lastIndex)));
+    requestMonitor.waitFor(anAppendRequest().to(2).containingEntryIndex(lastIndex));
+    assertThat(requestMonitor.hasAny(anAppendRequest().withEntryCount(greaterThan(2))), is(false));
+  }
+
+  @Test
+  public void failsTheRequestsStillQueuedWhenItIsDeposedAndReleasesTheirShareOfTheByteBudget() throws Exception {
+    batchingMaxDelayMillis = -1; // Polling mode: requests wait in the queue until the next heartbeat.
+    startLeader();
+
+    final ListenableFuture<ReplicatorReceipt> receipt = replicatorInstance.logData(someData());
+    assertThat(byteBudget.getUsedBytes(), is(greaterThan(0L)));
+
+    havingReceivedAnAppendEntriesRequestFromANewLeader();
+
+    assertThat(receipt, resultsInException(InvalidReplicatorStateException.class));
+    assertThat(byteBudget.getUsedBytes(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void failsTheRequestsStillQueuedWhenItIsDisposedAndReleasesTheirShareOfTheByteBudget() throws Exception {
+    batchingMaxDelayMillis = -1;
+    startLeader();
+
+    final ListenableFuture<ReplicatorReceipt> receipt = replicatorInstance.logData(someData());
+    replicatorInstance.dispose();
+
+    assertThat(receipt, resultsInException(InvalidReplicatorStateException.class));
+    assertThat(byteBudget.getUsedBytes(), is(equalTo(0L)));
+  }
+
+  private void startLeader() throws Exception {
+    sendRpcChannel.subscribe(rpcFiber, requestLog::publish);
+    sendRpcChannel.subscribe(rpcFiber, ReplicatorLeaderBatchingTest::replyWithSuccess);
+
+    log.logEntries(
+        Lists.newArrayList(
+            new LogEntry(CURRENT_TERM, 1, new ArrayList<>(), QuorumConfiguration.of(PEER_ID_LIST).toProtostuff(), 0)));
+
+    final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(0, 1000) {
+      @Override
+      public long leaderLogRequestsProcessingInterval() {
+        return HEARTBEAT_INTERVAL_MILLIS;
+      }
+
+      @Override
+      public long leaderBatchingMaxDelay() {
+        return batchingMaxDelayMillis;
+      }
+
+      @Override
+      public int leaderBatchingMaxEntries() {
+        return batchingMaxEntries;
+      }
+
+      @Override
+      public int leaderAppendMaxEntries() {
+        return appendMaxEntries;
+      }
+    };
+
+    final ReplicatorInfoPersistence persister = new InRamSim.Persister();
+    persister.writeCurrentTermAndVotedFor(QUORUM_ID, CURRENT_TERM, LEADER_ID);
+
+    replicatorInstance = new ReplicatorInstance(
+        new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "replicatorFiber-Thread", true),
+        LEADER_ID,
+        QUORUM_ID,
+        log,
+        clock,
+        persister,
+        sendRpcChannel,
+        new MemoryChannel<>(),
+        commitNotices,
+        State.LEADER,
+        byteBudget);
+    replicatorInstance.start();
+    rpcFiber.start();
+
+    // The leader sends heartbeats once, as soon as it starts; after that, not for a long time.
+    requestMonitor.waitFor(anAppendRequest().to(2));
+  }
+
+  private void havingReceivedAnAppendEntriesRequestFromANewLeader() throws Exception {
+    final long newLeaderId = 2;
+    final RpcWireRequest request = new RpcWireRequest(newLeaderId, QUORUM_ID,
+        new AppendEntries(CURRENT_TERM + 1, newLeaderId, log.getLastIndex(), log.getLastTerm(), new ArrayList<>(),
+            0, false));
+
+    final SettableFuture<RpcReply> reply = SettableFuture.create();
+    AsyncRequest.withOneReply(rpcFiber, replicatorInstance.getIncomingChannel(), request, reply::set);
+    reply.get(4, TimeUnit.SECONDS);
+  }
+
+  private static void replyWithSuccess(Request<RpcRequest, RpcWireReply> request) {
+    final RpcRequest message = request.getRequest();
+    final AppendEntriesReply reply = new AppendEntriesReply(message.getAppendMessage().getTerm(), true, 0);
+    request.reply(new RpcWireReply(message.from, message.to, QUORUM_ID, reply));
+  }
+
+  private static List<ByteBuffer> someData() {
+    return Lists.newArrayList(ReplicatorLeaderTest.someData());
+  }
+}
@@ -18,14 +18,15 @@ package c5db.replication;
 
 import c5db.interfaces.replication.IndexCommitNotice;
 import c5db.interfaces.replication.QuorumConfiguration;
-import c5db.interfaces.replication.ReplicatorLog;
 import c5db.log.InRamLog;
 import c5db.replication.generated.AppendEntriesReply;
 import c5db.replication.generated.LogEntry;
 import c5db.replication.rpc.RpcRequest;
 import c5db.replication.rpc.RpcWireReply;
+import c5db.util.ByteBudget;
 import c5db.util.ExceptionHandlingBatchExecutor;
 import c5db.util.JUnitRuleFiberExceptions;
+import c5db.util.SimpleMetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.hamcrest.Matcher;
@@ -61,10 +62,12 @@ import static c5db.IndexCommitMatcher.aCommitNotice;
 import static c5db.RpcMatchers.RequestMatcher;
 import static c5db.RpcMatchers.RequestMatcher.anAppendRequest;
 import static c5db.interfaces.replication.Replicator.State;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertFalse;
 
 
@@ -101,7 +104,8 @@ public class ReplicatorLeaderTest {
   private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
       new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
 
-  private final ReplicatorLog log = new InRamLog();
+  private final InRamLog log = new InRamLog();
+  private final SimpleMetricRegistry metricRegistry = new SimpleMetricRegistry();
 
   private ReplicatorInstance replicatorInstance;
   private long lastIndex;
@@ -118,7 +122,7 @@ public class ReplicatorLeaderTest {
 
     log.logEntries(
         Lists.newArrayList(
-            new LogEntry(CURRENT_TERM, 1, new ArrayList<>(), QuorumConfiguration.of(PEER_ID_LIST).toProtostuff())));
+            new LogEntry(CURRENT_TERM, 1, new ArrayList<>(), QuorumConfiguration.of(PEER_ID_LIST).toProtostuff(), 0)));
     lastIndex = 1;
 
     ReplicatorInfoPersistence persister = new InRamSim.Persister();
@@ -133,7 +137,9 @@ public class ReplicatorLeaderTest {
         sendRpcChannel,
         new MemoryChannel<>(),
         commitNotices,
-        State.LEADER);
+        State.LEADER,
+        ByteBudget.unlimited(),
+        metricRegistry);
     replicatorInstance.start();
     rpcFiber.start();
   }
@@ -143,6 +149,7 @@ public class ReplicatorLeaderTest {
     commitListener.dispose();
     replicatorInstance.dispose();
     rpcFiber.dispose();
+    log.close();
   }
 
   @Test
@@ -249,6 +256,27 @@ public class ReplicatorLeaderTest {
   }
 
 
+  @Test
+  public void recordsTheStagesOfReplicationInItsMetricRegistryPerQuorumAndForTheNode() throws Throwable {
+    peer(2).willIgnoreAllRequests();
+    peer(3).willReplyToAllRequestsWith(true);
+
+    leader().logDataUpToIndex(5);
+    expectLeaderToCommitUpToIndex(5);
+
+    assertThat(quorumHistogram("logRequestQueueWaitMicros").getCount(), is(greaterThan(0L)));
+    assertThat(quorumHistogram("logWriteMicros").getCount(), is(greaterThan(0L)));
+    assertThat(quorumHistogram("peer.3.appendRoundTripMicros").getCount(), is(greaterThan(0L)));
+    assertThat(quorumHistogram("commitLagMillis").getCount(), is(greaterThan(0L)));
+    assertThat(
+        metricRegistry.histogram(ReplicatorMetrics.NODE_PREFIX + "logWriteMicros").getCount(),
+        is(equalTo(quorumHistogram("logWriteMicros").getCount())));
+  }
+
+  private SimpleMetricRegistry.SimpleHistogram quorumHistogram(String measurement) {
+    return metricRegistry.histogram(ReplicatorMetrics.QUORUM_PREFIX + QUORUM_ID + "." + measurement);
+  }
+
   private long lastIndexLogged() {
     return lastIndex;
   }
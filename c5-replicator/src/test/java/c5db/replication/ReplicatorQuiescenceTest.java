@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.IndexCommitNotice;
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReplicatorInstanceEvent;
+import c5db.log.InRamLog;
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.rpc.RpcReply;
+import c5db.replication.rpc.RpcRequest;
+import c5db.replication.rpc.RpcWireReply;
+import c5db.replication.rpc.RpcWireRequest;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.JUnitRuleFiberExceptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jetlang.channels.AsyncRequest;
+import org.jetlang.channels.MemoryChannel;
+import org.jetlang.channels.MemoryRequestChannel;
+import org.jetlang.channels.Request;
+import org.jetlang.channels.RequestChannel;
+import org.jetlang.core.BatchExecutor;
+import org.jetlang.core.RunnableExecutorImpl;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.ThreadFiber;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static c5db.AsyncChannelAsserts.ChannelHistoryMonitor;
+import static c5db.IndexCommitMatcher.aCommitNotice;
+import static c5db.RpcMatchers.RequestMatcher.aPreElectionPoll;
+import static c5db.RpcMatchers.RequestMatcher.anAppendRequest;
+import static c5db.interfaces.replication.Replicator.State;
+import static c5db.replication.ReplicationMatchers.aReplicatorEvent;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests of quiescence: how a leader quiesces an idle, fully replicated quorum, how its followers agree to,
+ * and what wakes them.
+ */
+public class ReplicatorQuiescenceTest {
+  private static final long MY_ID = 1;
+  private static final long LEADER_ID = 2;
+  private static final long CURRENT_TERM = 4;
+  private static final String QUORUM_ID = "quorumId";
+  private static final List<Long> PEER_ID_LIST = ImmutableList.of(1L, 2L, 3L);
+  private static final long IDLE_MILLIS = 200;
+
+  @Rule
+  public JUnitRuleFiberExceptions fiberExceptionHandler = new JUnitRuleFiberExceptions();
+  private final BatchExecutor batchExecutor = new ExceptionHandlingBatchExecutor(fiberExceptionHandler);
+  private final Fiber rpcFiber = new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "rpcFiber-Thread", true);
+
+  private final RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel = new MemoryRequestChannel<>();
+  private final MemoryChannel<Request<RpcRequest, RpcWireReply>> requestLog = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<Request<RpcRequest, RpcWireReply>> requestMonitor =
+      new ChannelHistoryMonitor<>(requestLog, rpcFiber);
+  private final MemoryChannel<ReplicatorInstanceEvent> eventChannel = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<ReplicatorInstanceEvent> eventMonitor =
+      new ChannelHistoryMonitor<>(eventChannel, rpcFiber);
+  private final MemoryChannel<IndexCommitNotice> commitNotices = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
+      new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
+
+  private final InRamLog log = new InRamLog();
+  private final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(1000, 1000) {
+    @Override
+    public long quiescenceIdleTimeout() {
+      return IDLE_MILLIS;
+    }
+  };
+  private ReplicatorInstance replicatorInstance;
+
+  // Accessed only from rpcFiber
+  private boolean refusingToQuiesce = false;
+
+  @After
+  public final void disposeResources() {
+    replicatorInstance.dispose();
+    rpcFiber.dispose();
+    log.close();
+  }
+
+  @Test
+  public void leaderQuiescesAnIdleFullyReplicatedQuorumAndWakesWhenARequestArrives() throws Exception {
+    clock.startTimeout();
+    startReplicator(State.LEADER);
+    commitAnEntry();
+
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_QUIESCED));
+    requestMonitor.waitFor(anAppendRequest().to(2).withQuiesce(true));
+    requestMonitor.waitFor(anAppendRequest().to(3).withQuiesce(true));
+
+    final long index = replicatorInstance.logData(Lists.newArrayList(ReplicatorLeaderTest.someData())).get().seqNum;
+
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_WOKEN));
+    requestMonitor.waitFor(anAppendRequest().to(2).containingEntryIndex(index));
+  }
+
+  @Test
+  public void leaderWakesIfAPeerDoesNotAcceptTheRequestToQuiesce() throws Exception {
+    rpcFiber.execute(() -> refusingToQuiesce = true);
+    clock.startTimeout();
+    startReplicator(State.LEADER);
+    commitAnEntry();
+
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_QUIESCED));
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_WOKEN));
+    requestMonitor.forgetHistory();
+    requestMonitor.waitFor(anAppendRequest().to(2).withQuiesce(false));
+  }
+
+  @Test
+  public void followerStopsCheckingOnElectionsWhenQuiescedUntilToldTheLeaderIsUnreachable() throws Exception {
+    startReplicator(State.FOLLOWER);
+
+    havingReceived(heartbeat(true));
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_QUIESCED));
+
+    clock.advanceTime(clock.electionTimeout() * 2);
+    Thread.sleep(clock.electionCheckInterval() * 3);
+    assertThat(requestMonitor.hasAny(aPreElectionPoll()), is(false));
+
+    replicatorInstance.peerUnreachable(LEADER_ID);
+    eventMonitor.waitFor(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_WOKEN));
+
+    clock.advanceTime(clock.electionTimeout() * 2);
+    requestMonitor.waitFor(aPreElectionPoll());
+  }
+
+  @Test
+  public void followerDoesNotQuiesceUnlessItsLogIsCommittedThroughTheLeadersLastEntry() throws Exception {
+    startReplicator(State.FOLLOWER);
+
+    havingReceived(new RpcWireRequest(LEADER_ID, QUORUM_ID,
+        new AppendEntries(CURRENT_TERM, LEADER_ID, 1, CURRENT_TERM, new ArrayList<>(), 0, true)));
+
+    assertThat(eventMonitor.hasAny(aReplicatorEvent(ReplicatorInstanceEvent.EventType.QUORUM_QUIESCED)), is(false));
+  }
+
+  private void startReplicator(State initialState) throws Exception {
+    sendRpcChannel.subscribe(rpcFiber, requestLog::publish);
+    sendRpcChannel.subscribe(rpcFiber, this::reply);
+
+    log.logEntries(
+        Lists.newArrayList(
+            new LogEntry(CURRENT_TERM, 1, new ArrayList<>(), QuorumConfiguration.of(PEER_ID_LIST).toProtostuff(), 0)));
+
+    final ReplicatorInfoPersistence persister = new InRamSim.Persister();
+    persister.writeCurrentTermAndVotedFor(QUORUM_ID, CURRENT_TERM, initialState == State.LEADER ? MY_ID : LEADER_ID);
+
+    replicatorInstance = new ReplicatorInstance(
+        new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "replicatorFiber-Thread", true),
+        MY_ID,
+        QUORUM_ID,
+        log,
+        clock,
+        persister,
+        sendRpcChannel,
+        eventChannel,
+        commitNotices,
+        initialState);
+    replicatorInstance.start();
+    rpcFiber.start();
+  }
+
+  private void commitAnEntry() throws Exception {
+    final long index = replicatorInstance.logData(Lists.newArrayList(ReplicatorLeaderTest.someData())).get().seqNum;
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(index)));
+  }
+
+  private RpcWireRequest heartbeat(boolean quiesce) {
+    return new RpcWireRequest(LEADER_ID, QUORUM_ID,
+        new AppendEntries(CURRENT_TERM, LEADER_ID, 1, CURRENT_TERM, new ArrayList<>(), 1, quiesce));
+  }
+
+  private void havingReceived(RpcWireRequest request) throws Exception {
+    final SettableFuture<RpcReply> replyFuture = SettableFuture.create();
+    AsyncRequest.withOneReply(rpcFiber, replicatorInstance.getIncomingChannel(), request, replyFuture::set);
+    replyFuture.get(4, TimeUnit.SECONDS);
+  }
+
+  private void reply(Request<RpcRequest, RpcWireReply> request) {
+    final RpcRequest message = request.getRequest();
+    if (!message.isAppendMessage()) {
+      return;
+    }
+
+    final boolean success = !(refusingToQuiesce && message.getAppendMessage().getQuiesce());
+    final AppendEntriesReply reply = new AppendEntriesReply(message.getAppendMessage().getTerm(), success, 0);
+    request.reply(new RpcWireReply(message.from, message.to, QUORUM_ID, reply));
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.GeneralizedReplicator.InvalidReplicatorStateException;
+import c5db.interfaces.replication.IndexCommitNotice;
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.log.InRamLog;
+import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.rpc.RpcRequest;
+import c5db.replication.rpc.RpcWireReply;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.JUnitRuleFiberExceptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.jetlang.channels.MemoryChannel;
+import org.jetlang.channels.MemoryRequestChannel;
+import org.jetlang.channels.Request;
+import org.jetlang.channels.RequestChannel;
+import org.jetlang.core.BatchExecutor;
+import org.jetlang.core.RunnableExecutorImpl;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.ThreadFiber;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static c5db.AsyncChannelAsserts.ChannelHistoryMonitor;
+import static c5db.FutureMatchers.resultsIn;
+import static c5db.FutureMatchers.resultsInException;
+import static c5db.IndexCommitMatcher.aCommitNotice;
+import static c5db.RpcMatchers.RequestMatcher.anAppendRequest;
+import static c5db.interfaces.replication.Replicator.State;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests of read barriers: how the leader confirms its leadership, by rounds of requests or by a lease,
+ * before returning a read index. The heartbeat interval is much longer than any of the tests wait for,
+ * so rounds must be sent on behalf of the read barriers themselves.
+ */
+public class ReplicatorReadBarrierTest {
+  private static final long LEADER_ID = 1;
+  private static final long CURRENT_TERM = 4;
+  private static final String QUORUM_ID = "quorumId";
+  private static final List<Long> PEER_ID_LIST = ImmutableList.of(1L, 2L, 3L);
+  private static final long HEARTBEAT_INTERVAL_MILLIS = 60000;
+  private static final long LEASE_MILLIS = 60000;
+
+  @Rule
+  public JUnitRuleFiberExceptions fiberExceptionHandler = new JUnitRuleFiberExceptions();
+  private final BatchExecutor batchExecutor = new ExceptionHandlingBatchExecutor(fiberExceptionHandler);
+  private final Fiber rpcFiber = new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "rpcFiber-Thread", true);
+
+  private final RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel = new MemoryRequestChannel<>();
+  private final MemoryChannel<Request<RpcRequest, RpcWireReply>> requestLog = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<Request<RpcRequest, RpcWireReply>> requestMonitor =
+      new ChannelHistoryMonitor<>(requestLog, rpcFiber);
+  private final MemoryChannel<Request<RpcRequest, RpcWireReply>> heldRequestLog = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<Request<RpcRequest, RpcWireReply>> heldRequestMonitor =
+      new ChannelHistoryMonitor<>(heldRequestLog, rpcFiber);
+  private final MemoryChannel<IndexCommitNotice> commitNotices = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
+      new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
+
+  private final InRamLog log = new InRamLog();
+  private final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(1000, 1000) {
+    @Override
+    public long leaderLogRequestsProcessingInterval() {
+      return HEARTBEAT_INTERVAL_MILLIS;
+    }
+
+    @Override
+    public long leaderLeaseDuration() {
+      return leaseMillis;
+    }
+  };
+  private ReplicatorInstance replicatorInstance;
+
+  private long leaseMillis = 0;
+
+  // Accessed only from rpcFiber
+  private boolean holdingReplies = false;
+  private final List<Request<RpcRequest, RpcWireReply>> heldRequests = new ArrayList<>();
+
+  @After
+  public final void disposeResources() {
+    replicatorInstance.dispose();
+    rpcFiber.dispose();
+    log.close();
+  }
+
+  @Test
+  public void commitsAnEntryOfItsOwnTermBeforeReturningItsFirstReadIndex() throws Exception {
+    startReplicator(State.LEADER);
+
+    final long readIndex = replicatorInstance.readBarrier().get();
+
+    assertThat(readIndex, is(greaterThanOrEqualTo(2L)));
+    assertThat(requestMonitor.hasAny(anAppendRequest().to(2).containingEntryIndex(2)), is(true));
+  }
+
+  @Test
+  public void returnsTheCommitIndexOnceAMajorityRepliesToARoundBegunAfterTheRequest() throws Exception {
+    startReplicator(State.LEADER);
+    final long index = committedEntryIndex();
+
+    holdReplies();
+    final ListenableFuture<Long> readIndexFuture = replicatorInstance.readBarrier();
+    heldRequestMonitor.waitFor(anAppendRequest().to(2));
+
+    assertThat(readIndexFuture.isDone(), is(false));
+
+    releaseHeldReplies();
+    assertThat(readIndexFuture, resultsIn(equalTo(index)));
+  }
+
+  @Test
+  public void returnsAReadIndexWithoutARoundOfRequestsWhileHoldingALease() throws Exception {
+    leaseMillis = LEASE_MILLIS;
+    startReplicator(State.LEADER);
+    final long index = committedEntryIndex();
+    replicatorInstance.readBarrier().get();
+
+    holdReplies();
+    assertThat(replicatorInstance.readBarrier(), resultsIn(equalTo(index)));
+
+    clock.advanceTime(LEASE_MILLIS);
+    final ListenableFuture<Long> readIndexFuture = replicatorInstance.readBarrier();
+    heldRequestMonitor.waitFor(anAppendRequest().to(2));
+
+    assertThat(readIndexFuture.isDone(), is(false));
+
+    releaseHeldReplies();
+    assertThat(readIndexFuture, resultsIn(equalTo(index)));
+  }
+
+  @Test
+  public void refusesReadBarriersWhenNotTheLeader() throws Exception {
+    startReplicator(State.FOLLOWER);
+
+    assertThat(replicatorInstance.readBarrier(), resultsInException(InvalidReplicatorStateException.class));
+  }
+
+  private void startReplicator(State initialState) throws Exception {
+    sendRpcChannel.subscribe(rpcFiber, requestLog::publish);
+    sendRpcChannel.subscribe(rpcFiber, this::replyUnlessHolding);
+
+    log.logEntries(
+        Lists.newArrayList(
+            new LogEntry(CURRENT_TERM, 1, new ArrayList<>(), QuorumConfiguration.of(PEER_ID_LIST).toProtostuff(), 0)));
+
+    final ReplicatorInfoPersistence persister = new InRamSim.Persister();
+    persister.writeCurrentTermAndVotedFor(QUORUM_ID, CURRENT_TERM, LEADER_ID);
+
+    replicatorInstance = new ReplicatorInstance(
+        new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "replicatorFiber-Thread", true),
+        LEADER_ID,
+        QUORUM_ID,
+        log,
+        clock,
+        persister,
+        sendRpcChannel,
+        new MemoryChannel<>(),
+        commitNotices,
+        initialState);
+    replicatorInstance.start();
+    rpcFiber.start();
+
+    if (initialState == State.LEADER) {
+      requestMonitor.waitFor(anAppendRequest().to(2));
+    }
+  }
+
+  private long committedEntryIndex() throws Exception {
+    final long index = replicatorInstance.logData(Lists.newArrayList(ReplicatorLeaderTest.someData())).get().seqNum;
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(index)));
+    return index;
+  }
+
+  private void holdReplies() {
+    rpcFiber.execute(() -> holdingReplies = true);
+  }
+
+  private void releaseHeldReplies() {
+    rpcFiber.execute(() -> {
+      holdingReplies = false;
+      heldRequests.forEach(ReplicatorReadBarrierTest::replyWithSuccess);
+      heldRequests.clear();
+    });
+  }
+
+  private void replyUnlessHolding(Request<RpcRequest, RpcWireReply> request) {
+    if (holdingReplies) {
+      heldRequests.add(request);
+      heldRequestLog.publish(request);
+    } else {
+      replyWithSuccess(request);
+    }
+  }
+
+  private static void replyWithSuccess(Request<RpcRequest, RpcWireReply> request) {
+    final RpcRequest message = request.getRequest();
+    final AppendEntriesReply reply = new AppendEntriesReply(message.getAppendMessage().getTerm(), true, 0);
+    request.reply(new RpcWireReply(message.from, message.to, QUORUM_ID, reply));
+  }
+}
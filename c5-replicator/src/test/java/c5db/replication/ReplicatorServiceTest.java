@@ -0,0 +1,491 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.ReplicatorConstants;
+import c5db.codec.PooledProtostuffEncoder;
+import c5db.codec.ProtostuffDecoder;
+import c5db.interfaces.DiscoveryModule;
+import c5db.interfaces.LogModule;
+import c5db.interfaces.ModuleInformationProvider;
+import c5db.interfaces.discovery.NodeInfoReply;
+import c5db.interfaces.discovery.NodeInfoRequest;
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.log.InRamLog;
+import c5db.messages.generated.ModuleType;
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.generated.ReplicationWireMessage;
+import c5db.replication.rpc.RpcRequest;
+import c5db.replication.rpc.RpcWireReply;
+import c5db.replication.rpc.SerializedEntries;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.FiberSupplier;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.protostuff.Message;
+import org.jetlang.channels.MemoryRequestChannel;
+import org.jetlang.channels.Request;
+import org.jetlang.channels.RequestChannel;
+import org.jetlang.core.Disposable;
+import org.jetlang.core.RunnableExecutorImpl;
+import org.jetlang.core.SynchronousDisposingExecutor;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.ThreadFiber;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Tests of how ReplicatorService handles messages from the wire, with the network replaced by direct calls; and
+ * of how it sends the requests of its ReplicatorInstances, over real connections to a fake peer.
+ */
+public class ReplicatorServiceTest {
+  private static final long NODE_ID = 1;
+  private static final long REMOTE_NODE_ID = 2;
+  private static final int PORT = 54455;
+  private static final int PEER_PORT = 54456;
+  private static final int UNUSED_PORT = 54457;
+  private static final String QUORUM_ID = "ReplicatorServiceTest-quorumId";
+  private static final long TERM = 1;
+
+  @Rule
+  public JUnitRuleMockery context = new JUnitRuleMockery() {{
+    setThreadingPolicy(new Synchroniser());
+  }};
+  private final ModuleInformationProvider moduleInformationProvider = context.mock(ModuleInformationProvider.class);
+  private final LogModule logModule = context.mock(LogModule.class);
+  private final DiscoveryModule discoveryModule = context.mock(DiscoveryModule.class);
+
+  private final FiberSupplier fiberSupplier = (throwableHandler) ->
+      new ThreadFiber(new RunnableExecutorImpl(new ExceptionHandlingBatchExecutor(throwableHandler)), "ReplicatorServiceTest-fiber", true);
+
+  private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+  private final EventLoopGroup workerGroup = new NioEventLoopGroup(1);
+  private final EventLoopGroup peerGroup = new NioEventLoopGroup(1);
+  private final InRamLog log = new InRamLog();
+  private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+  private final ReplicatorService service = new ReplicatorService(bossGroup, workerGroup, NODE_ID, PORT,
+      moduleInformationProvider, fiberSupplier, new InRamQuorumFileReaderWriter());
+
+  private final RequestChannel<NodeInfoRequest, NodeInfoReply> nodeInfoRequests = new MemoryRequestChannel<>();
+  private final BlockingQueue<Request<NodeInfoRequest, NodeInfoReply>> deferredNodeInfoRequests =
+      new LinkedBlockingQueue<>();
+  private volatile int remoteNodePort = PEER_PORT;
+  private volatile boolean deferNodeInfoReplies = false;
+
+  private ReplicatorInstance replicatorInstance;
+  private long messageId = 1;
+
+  @Before
+  public void startServiceWithAReplicatorInstance() throws Exception {
+    context.checking(new Expectations() {{
+      allowing(moduleInformationProvider).getModule(ModuleType.Log);
+      will(returnValue(Futures.immediateFuture(logModule)));
+
+      allowing(moduleInformationProvider).getModule(ModuleType.Discovery);
+      will(returnValue(Futures.immediateFuture(discoveryModule)));
+
+      allowing(logModule).getReplicatorLog(QUORUM_ID);
+      will(returnValue(Futures.immediateFuture(log)));
+
+      allowing(discoveryModule).getNodeInfo();
+      will(returnValue(nodeInfoRequests));
+    }});
+
+    nodeInfoRequests.subscribe(new SynchronousDisposingExecutor(), request -> {
+      if (deferNodeInfoReplies) {
+        deferredNodeInfoRequests.add(request);
+      } else {
+        replyToNodeInfoRequest(request);
+      }
+    });
+
+    // A quorum of one, which needs to send no requests of its own.
+    log.logEntries(Lists.newArrayList(
+        new LogEntry(TERM, 1, new ArrayList<>(), QuorumConfiguration.of(Lists.newArrayList(NODE_ID)).toProtostuff(),
+            0))).get();
+
+    service.startAndWait();
+    replicatorInstance = (ReplicatorInstance) service.createReplicator(QUORUM_ID, Lists.newArrayList(NODE_ID))
+        .get(4, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void stopServiceAndReleaseResources() {
+    service.stopAndWait();
+    bossGroup.shutdownGracefully();
+    workerGroup.shutdownGracefully();
+    peerGroup.shutdownGracefully();
+    channel.close();
+    log.close();
+  }
+
+  @Test(timeout = 3000)
+  public void releasesTheInboundBufferOfARequestOnceTheReplicatorInstanceHasRepliedToIt() throws Exception {
+    final ByteBuf payloads = Unpooled.buffer(1);
+
+    receiveFromTheWire(anAppendEntriesRequest(), payloads);
+
+    waitForReplyOnTheChannel();
+    waitUntilReleased(payloads);
+  }
+
+  @Test(timeout = 3000)
+  public void releasesTheInboundBufferOfARequestWhichTheReplicatorInstanceDrops() throws Exception {
+    final ByteBuf payloads = Unpooled.buffer(1);
+
+    // The instance handles no request of this type, so it drops it without replying.
+    receiveFromTheWire(new AppendEntriesReply(TERM, true, 0), payloads);
+
+    waitUntilReleased(payloads);
+  }
+
+  @Test(timeout = 3000)
+  public void releasesTheInboundBufferOfARequestForADisposedReplicatorInstance() throws Exception {
+    final ByteBuf payloads = Unpooled.buffer(1);
+    replicatorInstance.dispose();
+
+    receiveFromTheWire(anAppendEntriesRequest(), payloads);
+
+    waitUntilReleased(payloads);
+  }
+
+  @Test(timeout = 3000)
+  public void sendsAQuorumsHeartbeatsAfterItsEntriesOverTheSameConnectionUntilTheEntriesAreAnswered()
+      throws Exception {
+    final FakePeer peer = new FakePeer(false);
+
+    send(aRequestWithEntries());
+    final ReceivedRequest entries = peer.nextRequest();
+
+    send(aHeartbeat());
+    send(aRequestWithEntries());
+    send(aHeartbeat());
+
+    final ReceivedRequest heartbeat = peer.nextRequest();
+    final ReceivedRequest moreEntries = peer.nextRequest();
+    final ReceivedRequest anotherHeartbeat = peer.nextRequest();
+    assertThat(heartbeat.message.getAppendEntries().getEntriesList(), is(empty()));
+    assertThat(moreEntries.message.getAppendEntries().getEntriesList(), is(not(empty())));
+    assertThat(anotherHeartbeat.message.getAppendEntries().getEntriesList(), is(empty()));
+
+    assertThat(heartbeat.connection, is(sameInstance(entries.connection)));
+    assertThat(moreEntries.connection, is(sameInstance(entries.connection)));
+    assertThat(anotherHeartbeat.connection, is(sameInstance(entries.connection)));
+  }
+
+  @Test(timeout = 3000)
+  public void sendsRequestsInTheOrderTheyWereSentWhileConnectingToTheirRecipient() throws Exception {
+    final FakePeer peer = new FakePeer(false);
+
+    send(aRequestWithEntries());
+    send(aHeartbeat());
+    send(aRequestWithEntries());
+    send(aHeartbeat());
+
+    final ReceivedRequest entries = peer.nextRequest();
+    final ReceivedRequest heartbeat = peer.nextRequest();
+    final ReceivedRequest moreEntries = peer.nextRequest();
+    final ReceivedRequest anotherHeartbeat = peer.nextRequest();
+    assertThat(entries.message.getAppendEntries().getEntriesList(), is(not(empty())));
+    assertThat(heartbeat.message.getAppendEntries().getEntriesList(), is(empty()));
+    assertThat(moreEntries.message.getAppendEntries().getEntriesList(), is(not(empty())));
+    assertThat(anotherHeartbeat.message.getAppendEntries().getEntriesList(), is(empty()));
+    assertThat(anotherHeartbeat.connection, is(sameInstance(entries.connection)));
+  }
+
+  @Test(timeout = 3000)
+  public void sendsRequestsInTheOrderTheyWereSentWhileLookingUpTheirRecipient() throws Exception {
+    final FakePeer peer = new FakePeer(false);
+    deferNodeInfoReplies = true;
+
+    send(new RpcRequest(REMOTE_NODE_ID, NODE_ID, QUORUM_ID, anAppendEntriesWithAnEntryAt(2)));
+    send(new RpcRequest(REMOTE_NODE_ID, NODE_ID, QUORUM_ID, anAppendEntriesWithAnEntryAt(3)));
+    waitUntilDispatched();
+
+    // Answer the lookups, if there are more than one, in the reverse of the order they were made.
+    final List<Request<NodeInfoRequest, NodeInfoReply>> lookups = new ArrayList<>();
+    deferredNodeInfoRequests.drainTo(lookups);
+    Collections.reverse(lookups);
+    lookups.forEach(this::replyToNodeInfoRequest);
+
+    final ReceivedRequest first = peer.nextRequest();
+    final ReceivedRequest second = peer.nextRequest();
+    assertThat(first.message.getAppendEntries().getPrevLogIndex(), is(equalTo(1L)));
+    assertThat(second.message.getAppendEntries().getPrevLogIndex(), is(equalTo(2L)));
+  }
+
+  @Test(timeout = 3000)
+  public void sendsARequestCancelledWhileConnectingSoThatTheRequestsAfterItArriveInOrder() throws Exception {
+    final FakePeer peer = new FakePeer(false);
+
+    send(aRequestWithEntries()).dispose();
+    send(aRequestWithEntries());
+
+    final ReceivedRequest cancelled = peer.nextRequest();
+    final ReceivedRequest next = peer.nextRequest();
+    assertThat(next.connection, is(sameInstance(cancelled.connection)));
+    assertThat(next.message.getMessageId(), is(greaterThan(cancelled.message.getMessageId())));
+  }
+
+  @Test
+  public void handlesTheRequestsToEachServerOnASingleDispatchFiberSharedWithAsFewOtherServersAsPossible() {
+    final int dispatchFibers = ReplicatorConstants.REPLICATOR_SERVICE_DISPATCH_FIBERS;
+
+    final Set<Fiber> fibers = new HashSet<>();
+    for (long nodeId = 1; nodeId <= dispatchFibers; nodeId++) {
+      fibers.add(service.dispatchFiberFor(nodeId));
+      assertThat(service.dispatchFiberFor(nodeId + dispatchFibers), is(sameInstance(service.dispatchFiberFor(nodeId))));
+    }
+    assertThat(fibers.size(), is(equalTo(dispatchFibers)));
+  }
+
+  @Test(timeout = 3000)
+  public void sendsAQuorumsHeartbeatsOverTheControlConnectionOnceItsEntriesHaveBeenAnswered() throws Exception {
+    final FakePeer peer = new FakePeer(true);
+
+    final CountDownLatch replied = new CountDownLatch(1);
+    send(aRequestWithEntries(), replied);
+    replied.await();
+    waitUntilNoBulkRequestsAreCounted();
+
+    send(aHeartbeat());
+
+    final ReceivedRequest entries = peer.nextRequest();
+    final ReceivedRequest heartbeat = peer.nextRequest();
+    assertThat(heartbeat.connection, is(not(sameInstance(entries.connection))));
+  }
+
+  @Test(timeout = 3000)
+  public void stopsCountingABulkRequestWhichIsCancelled() throws Exception {
+    final FakePeer peer = new FakePeer(false);
+
+    final Disposable request = send(aRequestWithEntries());
+    peer.nextRequest();
+    assertThat(service.bulkRequestCount(REMOTE_NODE_ID, QUORUM_ID), is(equalTo(1)));
+
+    request.dispose();
+    waitUntilNoBulkRequestsAreCounted();
+  }
+
+  @Test(timeout = 3000)
+  public void stopsCountingABulkRequestWhichFailsToBeWritten() throws Exception {
+    new FakePeer(false);
+
+    // The entries' serialized form is written in place of the entries; and it cannot be serialized.
+    final SerializedEntries unserializableEntries = new SerializedEntries(Lists.newArrayList((LogEntry) null));
+    send(new RpcRequest(REMOTE_NODE_ID, NODE_ID, QUORUM_ID, anAppendEntriesWithEntries(), unserializableEntries));
+    waitUntilDispatched();
+
+    waitUntilNoBulkRequestsAreCounted();
+    unserializableEntries.release();
+  }
+
+  @Test(timeout = 3000)
+  public void stopsCountingABulkRequestWhichCannotConnectToItsRecipient() throws Exception {
+    remoteNodePort = UNUSED_PORT;
+
+    send(aRequestWithEntries());
+    waitUntilDispatched();
+
+    waitUntilNoBulkRequestsAreCounted();
+  }
+
+  private void replyToNodeInfoRequest(Request<NodeInfoRequest, NodeInfoReply> request) {
+    request.reply(new NodeInfoReply(true, Lists.newArrayList("127.0.0.1"), remoteNodePort));
+  }
+
+  private AppendEntries anAppendEntriesRequest() {
+    return new AppendEntries(TERM, REMOTE_NODE_ID, log.getLastIndex(), log.getLastTerm(), new ArrayList<>(), 0, false);
+  }
+
+  /**
+   * Pass the service a request as its network handler does: the service may retain payloads, but must release
+   * whatever it retains; the handler releases its own reference as soon as the service returns.
+   */
+  private void receiveFromTheWire(Message request, ByteBuf payloads) {
+    final ReplicationWireMessage wireMessage = new RpcRequest(NODE_ID, REMOTE_NODE_ID, QUORUM_ID, request)
+        .getWireMessage(messageId++, REMOTE_NODE_ID, NODE_ID, false);
+
+    service.handleWireInboundMessage(channel, wireMessage, payloads);
+    payloads.release();
+  }
+
+  private RpcRequest aRequestWithEntries() {
+    return new RpcRequest(REMOTE_NODE_ID, NODE_ID, QUORUM_ID, anAppendEntriesWithEntries());
+  }
+
+  private AppendEntries anAppendEntriesWithEntries() {
+    return anAppendEntriesWithAnEntryAt(2);
+  }
+
+  private AppendEntries anAppendEntriesWithAnEntryAt(long index) {
+    return new AppendEntries(TERM, NODE_ID, index - 1, TERM,
+        Lists.newArrayList(new LogEntry(TERM, index, Lists.newArrayList(ByteBuffer.allocate(1)), null, 0)), 1, false);
+  }
+
+  private RpcRequest aHeartbeat() {
+    return new RpcRequest(REMOTE_NODE_ID, NODE_ID, QUORUM_ID,
+        new AppendEntries(TERM, NODE_ID, 1, TERM, new ArrayList<>(), 1, false));
+  }
+
+  private Disposable send(RpcRequest request) {
+    return send(request, new CountDownLatch(1));
+  }
+
+  /**
+   * Send a request as a ReplicatorInstance does, counting down replied when it is answered.
+   */
+  private Disposable send(RpcRequest request, CountDownLatch replied) {
+    return service.getOutgoingRequests().publish(new SynchronousDisposingExecutor(), request,
+        reply -> replied.countDown());
+  }
+
+  /**
+   * Wait until the service has begun to handle every request sent so far, at least as far as choosing its lane.
+   */
+  private void waitUntilDispatched() throws Exception {
+    final CountDownLatch dispatched = new CountDownLatch(1);
+    service.dispatchFiberFor(REMOTE_NODE_ID).execute(dispatched::countDown);
+    dispatched.await();
+  }
+
+  private void waitUntilNoBulkRequestsAreCounted() throws Exception {
+    while (service.bulkRequestCount(REMOTE_NODE_ID, QUORUM_ID) != 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void waitForReplyOnTheChannel() throws Exception {
+    while (channel.readOutbound() == null) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static void waitUntilReleased(ByteBuf payloads) throws Exception {
+    while (payloads.refCnt() != 0) {
+      Thread.sleep(10);
+    }
+    assertThat(payloads.refCnt(), is(equalTo(0)));
+  }
+
+  private static class ReceivedRequest {
+    public final Channel connection;
+    public final ReplicationWireMessage message;
+
+    private ReceivedRequest(Channel connection, ReplicationWireMessage message) {
+      this.connection = connection;
+      this.message = message;
+    }
+  }
+
+  /**
+   * The server REMOTE_NODE_ID, as far as the requests sent to it are concerned: it records each request along
+   * with the connection it arrived over, and optionally replies to AppendEntries requests.
+   */
+  private class FakePeer {
+    private final BlockingQueue<ReceivedRequest> requests = new LinkedBlockingQueue<>();
+
+    private FakePeer(boolean replies) throws Exception {
+      new ServerBootstrap()
+          .group(peerGroup)
+          .channel(NioServerSocketChannel.class)
+          .option(ChannelOption.SO_REUSEADDR, true)
+          .childHandler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) throws Exception {
+              ch.pipeline().addLast(
+                  new ProtobufVarint32FrameDecoder(),
+                  new ProtostuffDecoder<>(ReplicationWireMessage.getSchema()),
+                  new PooledProtostuffEncoder<>(ReplicationWireMessage.class),
+                  new SimpleChannelInboundHandler<ReplicationWireMessage>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ReplicationWireMessage msg) {
+                      requests.add(new ReceivedRequest(ctx.channel(), msg));
+                      if (replies) {
+                        ctx.writeAndFlush(new RpcWireReply(NODE_ID, REMOTE_NODE_ID, QUORUM_ID,
+                            new AppendEntriesReply(TERM, true, 0))
+                            .getWireMessage(msg.getMessageId(), REMOTE_NODE_ID, NODE_ID, true));
+                      }
+                    }
+                  });
+            }
+          })
+          .bind(PEER_PORT).sync();
+    }
+
+    private ReceivedRequest nextRequest() throws Exception {
+      return requests.take();
+    }
+  }
+
+  private static class InRamQuorumFileReaderWriter implements QuorumFileReaderWriter {
+    private final Map<String, List<String>> files = new HashMap<>();
+
+    @Override
+    public synchronized List<String> readQuorumFile(String quorumId, String fileName) {
+      return files.getOrDefault(quorumId + "/" + fileName, new ArrayList<>());
+    }
+
+    @Override
+    public synchronized void writeQuorumFile(String quorumId, String fileName, List<String> data) {
+      files.put(quorumId + "/" + fileName, new ArrayList<>(data));
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.interfaces.replication.IndexCommitNotice;
+import c5db.interfaces.replication.QuorumConfiguration;
+import c5db.interfaces.replication.ReplicatorSnapshot;
+import c5db.interfaces.replication.SnapshotProvider;
+import c5db.log.InRamLog;
+import c5db.replication.generated.AppendEntriesReply;
+import c5db.replication.generated.InstallSnapshot;
+import c5db.replication.generated.InstallSnapshotReply;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.rpc.RpcReply;
+import c5db.replication.rpc.RpcRequest;
+import c5db.replication.rpc.RpcWireReply;
+import c5db.replication.rpc.RpcWireRequest;
+import c5db.util.ExceptionHandlingBatchExecutor;
+import c5db.util.JUnitRuleFiberExceptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jetlang.channels.AsyncRequest;
+import org.jetlang.channels.MemoryChannel;
+import org.jetlang.channels.MemoryRequestChannel;
+import org.jetlang.channels.Request;
+import org.jetlang.channels.RequestChannel;
+import org.jetlang.core.BatchExecutor;
+import org.jetlang.core.RunnableExecutorImpl;
+import org.jetlang.fibers.Fiber;
+import org.jetlang.fibers.ThreadFiber;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static c5db.AsyncChannelAsserts.ChannelHistoryMonitor;
+import static c5db.IndexCommitMatcher.aCommitNotice;
+import static c5db.RpcMatchers.RequestMatcher.anAppendRequest;
+import static c5db.RpcMatchers.RequestMatcher.anInstallSnapshotRequest;
+import static c5db.interfaces.replication.Replicator.State;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests of catching up a peer by sending it a snapshot, in place of entries the leader's log doesn't retain.
+ */
+public class ReplicatorSnapshotInstallTest {
+  private static final long LEADER_ID = 1;
+  private static final long FOLLOWER_ID = 2;
+  private static final long CURRENT_TERM = 4;
+  private static final long SNAPSHOT_TERM = 3;
+  private static final long SNAPSHOT_INDEX = 10;
+  private static final String QUORUM_ID = "quorumId";
+  private static final List<Long> PEER_ID_LIST = ImmutableList.of(1L, 2L, 3L);
+  private static final QuorumConfiguration CONFIGURATION = QuorumConfiguration.of(PEER_ID_LIST);
+  private static final byte[] SNAPSHOT_DATA = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+  private static final int CHUNK_SIZE = 4;
+
+  @Rule
+  public JUnitRuleFiberExceptions fiberExceptionHandler = new JUnitRuleFiberExceptions();
+  private final BatchExecutor batchExecutor = new ExceptionHandlingBatchExecutor(fiberExceptionHandler);
+  private final Fiber rpcFiber = new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "rpcFiber-Thread", true);
+
+  private final RequestChannel<RpcRequest, RpcWireReply> sendRpcChannel = new MemoryRequestChannel<>();
+  private final MemoryChannel<Request<RpcRequest, RpcWireReply>> requestLog = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<Request<RpcRequest, RpcWireReply>> requestMonitor =
+      new ChannelHistoryMonitor<>(requestLog, rpcFiber);
+  private final MemoryChannel<IndexCommitNotice> commitNotices = new MemoryChannel<>();
+  private final ChannelHistoryMonitor<IndexCommitNotice> commitMonitor =
+      new ChannelHistoryMonitor<>(commitNotices, rpcFiber);
+
+  private final InRamLog log = new InRamLog();
+  private final ReplicatorSnapshot snapshot =
+      new ReplicatorSnapshot(SNAPSHOT_INDEX, SNAPSHOT_TERM, CONFIGURATION, SNAPSHOT_DATA.length);
+  private final InRamSnapshotProvider snapshotProvider = new InRamSnapshotProvider();
+  private ReplicatorInstance replicatorInstance;
+
+  // What the peers of the leader have received of the snapshot, on the rpc fiber.
+  private final ByteArrayOutputStream peerSnapshotData = new ByteArrayOutputStream();
+  private final AtomicBoolean peerInstalledSnapshot = new AtomicBoolean(false);
+
+  @After
+  public final void disposeResources() {
+    replicatorInstance.dispose();
+    rpcFiber.dispose();
+    log.close();
+  }
+
+  @Test
+  public void sendsASnapshotInChunksToAPeerNeedingEntriesTheLogNoLongerRetainsThenContinuesWithEntries()
+      throws Exception {
+    log.resetLog(SNAPSHOT_INDEX, SNAPSHOT_TERM, CONFIGURATION).get();
+    snapshotProvider.latestSnapshot = snapshot;
+    snapshotProvider.data = SNAPSHOT_DATA;
+    startReplicator(State.LEADER);
+
+    requestMonitor.waitFor(anInstallSnapshotRequest().to(FOLLOWER_ID));
+    requestMonitor.waitFor(anAppendRequest().to(FOLLOWER_ID).withPrevLogIndex(equalTo(SNAPSHOT_INDEX)));
+
+    final long index = replicatorInstance.logData(Lists.newArrayList(ReplicatorLeaderTest.someData())).get().seqNum;
+    commitMonitor.waitFor(aCommitNotice().withIndex(greaterThanOrEqualTo(index)));
+
+    // The other peer's acknowledgement suffices to commit the entry; the lagging peer is sent it only after
+    // the transfer of the snapshot.
+    requestMonitor.waitFor(anAppendRequest().to(FOLLOWER_ID).containingEntryIndex(index));
+
+    assertThat(index, is(equalTo(SNAPSHOT_INDEX + 1)));
+    assertThat(peerInstalledSnapshot.get(), is(true));
+    assertThat(peerSnapshotData.toByteArray(), is(equalTo(SNAPSHOT_DATA)));
+  }
+
+  @Test
+  public void installsASnapshotReceivedInChunksAndResetsItsLogToFollowIt() throws Exception {
+    log.logEntries(
+        Lists.newArrayList(
+            new LogEntry(1, 1, new ArrayList<>(), CONFIGURATION.toProtostuff(), 0),
+            new LogEntry(1, 2, Lists.newArrayList(ReplicatorLeaderTest.someData()), null, 0)));
+    startReplicator(State.FOLLOWER);
+
+    for (int offset = 0; offset < SNAPSHOT_DATA.length; offset += CHUNK_SIZE) {
+      final InstallSnapshotReply reply = sendChunk(offset);
+      assertThat(reply.getSuccess(), is(true));
+      assertThat(reply.getNextOffset(), is(equalTo((long) Math.min(offset + CHUNK_SIZE, SNAPSHOT_DATA.length))));
+    }
+
+    assertThat(snapshotProvider.installedSnapshot, is(equalTo(snapshot)));
+    assertThat(snapshotProvider.received.toByteArray(), is(equalTo(SNAPSHOT_DATA)));
+    assertThat(log.getLastIndex(), is(equalTo(SNAPSHOT_INDEX)));
+    assertThat(log.getLogTerm(SNAPSHOT_INDEX), is(equalTo(SNAPSHOT_TERM)));
+    assertThat(log.getFirstIndex(), is(equalTo(SNAPSHOT_INDEX + 1)));
+    assertThat(log.getLastConfiguration(), is(equalTo(CONFIGURATION)));
+  }
+
+  @Test
+  public void refusesAChunkWhichDoesNotFollowTheLastChunkReceived() throws Exception {
+    startReplicator(State.FOLLOWER);
+
+    assertThat(sendChunk(0).getSuccess(), is(true));
+    assertThat(sendChunk(2 * CHUNK_SIZE).getSuccess(), is(false));
+    assertThat(log.getLastIndex(), is(equalTo(0L)));
+  }
+
+  private InstallSnapshotReply sendChunk(int offset) throws Exception {
+    final int end = Math.min(offset + CHUNK_SIZE, SNAPSHOT_DATA.length);
+    final InstallSnapshot message = new InstallSnapshot(CURRENT_TERM, LEADER_ID,
+        SNAPSHOT_INDEX, SNAPSHOT_TERM, CONFIGURATION.toProtostuff(), (long) SNAPSHOT_DATA.length,
+        (long) offset, ByteBuffer.wrap(Arrays.copyOfRange(SNAPSHOT_DATA, offset, end)), end == SNAPSHOT_DATA.length);
+
+    final SettableFuture<RpcReply> replyFuture = SettableFuture.create();
+    AsyncRequest.withOneReply(rpcFiber, replicatorInstance.getIncomingChannel(),
+        new RpcWireRequest(LEADER_ID, QUORUM_ID, message), replyFuture::set);
+
+    return replyFuture.get(4, TimeUnit.SECONDS).getInstallSnapshotReplyMessage();
+  }
+
+  private void startReplicator(State initialState) throws Exception {
+    sendRpcChannel.subscribe(rpcFiber, requestLog::publish);
+    sendRpcChannel.subscribe(rpcFiber, this::replyAsLaggingPeer);
+
+    final InRamSim.StoppableClock clock = new InRamSim.StoppableClock(0, 1000) {
+      @Override
+      public int leaderSnapshotChunkMaxBytes() {
+        return CHUNK_SIZE;
+      }
+    };
+
+    final ReplicatorInfoPersistence persister = new InRamSim.Persister();
+    persister.writeCurrentTermAndVotedFor(QUORUM_ID, CURRENT_TERM, LEADER_ID);
+
+    replicatorInstance = new ReplicatorInstance(
+        new ThreadFiber(new RunnableExecutorImpl(batchExecutor), "replicatorFiber-Thread", true),
+        initialState == State.LEADER ? LEADER_ID : FOLLOWER_ID,
+        QUORUM_ID,
+        log,
+        clock,
+        persister,
+        sendRpcChannel,
+        new MemoryChannel<>(),
+        commitNotices,
+        initialState);
+    replicatorInstance.setSnapshotProvider(snapshotProvider);
+    replicatorInstance.start();
+    rpcFiber.start();
+  }
+
+  /**
+   * Reply as a peer whose log is empty, until it has installed the snapshot.
+   */
+  private void replyAsLaggingPeer(Request<RpcRequest, RpcWireReply> request) {
+    final RpcRequest message = request.getRequest();
+
+    if (message.isInstallSnapshotMessage()) {
+      final InstallSnapshot chunk = message.getInstallSnapshotMessage();
+      final ByteBuffer data = chunk.getData();
+      final long nextOffset = chunk.getOffset() + data.remaining();
+
+      if (message.to == FOLLOWER_ID) {
+        peerSnapshotData.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        peerInstalledSnapshot.set(chunk.getDone());
+      }
+      request.reply(new RpcWireReply(message.from, message.to, QUORUM_ID,
+          new InstallSnapshotReply(CURRENT_TERM, true, nextOffset)));
+
+    } else if (message.isAppendMessage()) {
+      final boolean success = message.to != FOLLOWER_ID || peerInstalledSnapshot.get();
+      request.reply(new RpcWireReply(message.from, message.to, QUORUM_ID,
+          new AppendEntriesReply(CURRENT_TERM, success, success ? 0 : 1)));
+    }
+  }
+
+  private static class InRamSnapshotProvider implements SnapshotProvider {
+    private volatile ReplicatorSnapshot latestSnapshot;
+    private volatile byte[] data;
+    private volatile ReplicatorSnapshot installedSnapshot;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    @Override
+    public ReplicatorSnapshot getLatestSnapshot() {
+      return latestSnapshot;
+    }
+
+    @Override
+    public ListenableFuture<ByteBuffer> readSnapshot(ReplicatorSnapshot snapshot, long offset, int maxBytes) {
+      final int end = (int) Math.min(offset + maxBytes, data.length);
+      return Futures.immediateFuture(ByteBuffer.wrap(Arrays.copyOfRange(data, (int) offset, end)));
+    }
+
+    @Override
+    public ListenableFuture<Void> writeSnapshot(ReplicatorSnapshot snapshot, long offset, ByteBuffer data,
+                                                boolean done) {
+      if (offset == 0) {
+        received.reset();
+      }
+      while (data.hasRemaining()) {
+        received.write(data.get());
+      }
+      if (done) {
+        installedSnapshot = snapshot;
+      }
+      return Futures.immediateFuture(null);
+    }
+  }
+}
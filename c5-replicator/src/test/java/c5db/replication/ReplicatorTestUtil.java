@@ -34,11 +34,11 @@ public class ReplicatorTestUtil {
   }
 
   public static LogEntry makeProtostuffEntry(long index, long term, ByteBuffer data) {
-    return new LogEntry(term, index, Lists.newArrayList(data), null);
+    return new LogEntry(term, index, Lists.newArrayList(data), null, 0);
   }
 
   public static LogEntry makeConfigurationEntry(long index, long term, QuorumConfiguration configuration) {
-    return new LogEntry(term, index, new ArrayList<>(), configuration.toProtostuff());
+    return new LogEntry(term, index, new ArrayList<>(), configuration.toProtostuff(), 0);
   }
 
   public static LogSequenceBuilder entries() {
@@ -62,7 +62,7 @@ public class ReplicatorTestUtil {
     }
 
     public LogSequenceBuilder configurationAndIndex(QuorumConfiguration configuration, long index) {
-      logSequence.add(new LogEntry(term, index, new ArrayList<>(), configuration.toProtostuff()));
+      logSequence.add(new LogEntry(term, index, new ArrayList<>(), configuration.toProtostuff(), 0));
       return this;
     }
 
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.replication.RequestLanes.Lane;
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.InstallSnapshot;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.generated.RequestVote;
+import c5db.replication.rpc.RpcRequest;
+import com.google.common.collect.Lists;
+import io.protostuff.Message;
+import org.jetlang.channels.Session;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class RequestLanesTest {
+  private static final long NODE_ID = 1;
+  private static final long PEER_ID = 2;
+  private static final long OTHER_PEER_ID = 3;
+  private static final String QUORUM_ID = "RequestLanesTest-quorumId";
+  private static final String OTHER_QUORUM_ID = "RequestLanesTest-otherQuorumId";
+
+  private final RequestLanes lanes = new RequestLanes();
+
+  @Test
+  public void sendsElectionsAndHeartbeatsOnTheControlLane() {
+    assertThat(lanes.laneFor(new Session() {}, aRequestVote(PEER_ID, QUORUM_ID)), is(Lane.CONTROL));
+    assertThat(lanes.laneFor(new Session() {}, aHeartbeat(PEER_ID, QUORUM_ID)), is(Lane.CONTROL));
+    assertThat(lanes.bulkRequestCount(PEER_ID, QUORUM_ID), is(equalTo(0)));
+  }
+
+  @Test
+  public void sendsEntriesAndSnapshotChunksOnTheBulkLane() {
+    assertThat(lanes.laneFor(new Session() {}, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID)), is(Lane.BULK));
+    assertThat(lanes.laneFor(new Session() {}, anInstallSnapshot(PEER_ID, QUORUM_ID)), is(Lane.BULK));
+    assertThat(lanes.bulkRequestCount(PEER_ID, QUORUM_ID), is(equalTo(2)));
+  }
+
+  @Test
+  public void sendsAQuorumsHeartbeatsAfterItsEntriesOnTheBulkLaneUntilEveryBulkRequestHasEnded() {
+    final Session firstEntries = new Session() {};
+    final Session secondEntries = new Session() {};
+    lanes.laneFor(firstEntries, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+    lanes.laneFor(secondEntries, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+
+    final Session heartbeat = new Session() {};
+    assertThat(lanes.laneFor(heartbeat, aHeartbeat(PEER_ID, QUORUM_ID)), is(Lane.BULK));
+    lanes.requestEnded(heartbeat);
+
+    lanes.requestEnded(firstEntries);
+    assertThat(lanes.laneFor(heartbeat, aHeartbeat(PEER_ID, QUORUM_ID)), is(Lane.BULK));
+    lanes.requestEnded(heartbeat);
+
+    lanes.requestEnded(secondEntries);
+    assertThat(lanes.laneFor(new Session() {}, aHeartbeat(PEER_ID, QUORUM_ID)), is(Lane.CONTROL));
+  }
+
+  @Test
+  public void keepsTheHeartbeatsOfOtherQuorumsAndToOtherServersOnTheControlLane() {
+    lanes.laneFor(new Session() {}, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+
+    assertThat(lanes.laneFor(new Session() {}, aHeartbeat(PEER_ID, OTHER_QUORUM_ID)), is(Lane.CONTROL));
+    assertThat(lanes.laneFor(new Session() {}, aHeartbeat(OTHER_PEER_ID, QUORUM_ID)), is(Lane.CONTROL));
+  }
+
+  @Test
+  public void countsDownABulkRequestOnlyOnceHoweverManyTimesItEnds() {
+    final Session entries = new Session() {};
+    lanes.laneFor(entries, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+    lanes.laneFor(new Session() {}, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+
+    // e.g. the request fails to be written, and is then cancelled by its sender
+    lanes.requestEnded(entries);
+    lanes.requestEnded(entries);
+
+    assertThat(lanes.bulkRequestCount(PEER_ID, QUORUM_ID), is(equalTo(1)));
+    assertThat(lanes.isBulkRequest(entries), is(false));
+  }
+
+  @Test
+  public void ignoresTheEndOfRequestsWhichWereNotSentOnTheBulkLane() {
+    final Session heartbeat = new Session() {};
+    lanes.laneFor(heartbeat, aHeartbeat(PEER_ID, QUORUM_ID));
+    lanes.laneFor(new Session() {}, anAppendEntriesWithEntries(PEER_ID, QUORUM_ID));
+
+    lanes.requestEnded(heartbeat);
+
+    assertThat(lanes.bulkRequestCount(PEER_ID, QUORUM_ID), is(equalTo(1)));
+  }
+
+  private static RpcRequest aRequestVote(long to, String quorumId) {
+    return aRequest(to, quorumId, new RequestVote(1, NODE_ID, 0, 0));
+  }
+
+  private static RpcRequest aHeartbeat(long to, String quorumId) {
+    return anAppendEntries(to, quorumId, new ArrayList<>());
+  }
+
+  private static RpcRequest anAppendEntriesWithEntries(long to, String quorumId) {
+    return anAppendEntries(to, quorumId,
+        Lists.newArrayList(new LogEntry(1, 1, Lists.newArrayList(ByteBuffer.allocate(1)), null, 0)));
+  }
+
+  private static RpcRequest anAppendEntries(long to, String quorumId, List<LogEntry> entries) {
+    return aRequest(to, quorumId, new AppendEntries(1, NODE_ID, 0, 0, entries, 0, false));
+  }
+
+  private static RpcRequest anInstallSnapshot(long to, String quorumId) {
+    return aRequest(to, quorumId, new InstallSnapshot());
+  }
+
+  private static RpcRequest aRequest(long to, String quorumId, Message message) {
+    return new RpcRequest(to, NODE_ID, quorumId, message);
+  }
+}
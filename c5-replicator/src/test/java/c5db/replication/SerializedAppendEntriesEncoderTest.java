@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 WANdisco
+ *
+ *  WANdisco licenses this file to you under the Apache License,
+ *  version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  License for the specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package c5db.replication;
+
+import c5db.replication.generated.AppendEntries;
+import c5db.replication.generated.LogEntry;
+import c5db.replication.generated.ReplicationWireMessage;
+import c5db.replication.rpc.SerializedAppendEntries;
+import c5db.replication.rpc.SerializedEntries;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.protostuff.ByteBufferInput;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static c5db.replication.ReplicatorTestUtil.entries;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class SerializedAppendEntriesEncoderTest {
+  private static final String QUORUM_ID = "quorumId";
+
+  private final EmbeddedChannel channel = new EmbeddedChannel(new SerializedAppendEntriesEncoder());
+  private final List<LogEntry> entries = entries().term(3).indexes(5, 6, 7).build();
+
+  @Test
+  public void encodesRequestsToSeveralPeersWhichDecodeToTheirOwnEnvelopesAndTheSharedEntries() throws Exception {
+    final SerializedEntries serializedEntries = new SerializedEntries(entries);
+
+    serializedEntries.retain();
+    channel.writeOutbound(new SerializedAppendEntries(wireMessage(1, 2, 4, 3), serializedEntries));
+    serializedEntries.retain();
+    channel.writeOutbound(new SerializedAppendEntries(wireMessage(2, 3, 2, 1), serializedEntries));
+
+    final ReplicationWireMessage toPeer2 = decode((ByteBuf) channel.readOutbound());
+    final ReplicationWireMessage toPeer3 = decode((ByteBuf) channel.readOutbound());
+
+    assertThat(toPeer2.getMessageId(), is(equalTo(1L)));
+    assertThat(toPeer2.getReceiverId(), is(equalTo(2L)));
+    assertThat(toPeer2.getQuorumId(), is(equalTo(QUORUM_ID)));
+    assertThat(toPeer2.getAppendEntries().getPrevLogIndex(), is(equalTo(4L)));
+    assertThat(toPeer2.getAppendEntries().getPrevLogTerm(), is(equalTo(3L)));
+    assertThat(toPeer2.getAppendEntries().getCommitIndex(), is(equalTo(4L)));
+    assertThat(summaryOf(toPeer2.getAppendEntries().getEntriesList()), is(equalTo(summaryOf(entries))));
+
+    assertThat(toPeer3.getMessageId(), is(equalTo(2L)));
+    assertThat(toPeer3.getReceiverId(), is(equalTo(3L)));
+    assertThat(toPeer3.getAppendEntries().getPrevLogIndex(), is(equalTo(2L)));
+    assertThat(toPeer3.getAppendEntries().getPrevLogTerm(), is(equalTo(1L)));
+    assertThat(summaryOf(toPeer3.getAppendEntries().getEntriesList()), is(equalTo(summaryOf(entries))));
+  }
+
+  @Test
+  public void releasesTheSharedEntriesOnceEveryRequestAndTheirCreatorHaveReleasedThem() throws Exception {
+    final SerializedEntries serializedEntries = new SerializedEntries(entries);
+
+    serializedEntries.retain();
+    channel.writeOutbound(new SerializedAppendEntries(wireMessage(1, 2, 4, 3), serializedEntries));
+    assertThat(serializedEntries.refCnt(), is(equalTo(1)));
+
+    serializedEntries.release();
+    assertThat(serializedEntries.refCnt(), is(equalTo(0)));
+    assertThat(serializedEntries.tryRetain(), is(false));
+
+    // The written buffer holds its own reference to the serialized bytes.
+    final ByteBuf written = (ByteBuf) channel.readOutbound();
+    assertThat(summaryOf(decode(written).getAppendEntries().getEntriesList()), is(equalTo(summaryOf(entries))));
+  }
+
+  private ReplicationWireMessage wireMessage(long messageId, long peerId, long prevLogIndex, long prevLogTerm) {
+    final AppendEntries appendEntries = new AppendEntries(3, 1, prevLogIndex, prevLogTerm, entries, 4, false);
+    return new ReplicationWireMessage(messageId, 1, peerId, QUORUM_ID, false,
+        null, null, appendEntries, null, null, null, null, null);
+  }
+
+  private static ReplicationWireMessage decode(ByteBuf buf) throws Exception {
+    final EmbeddedChannel frameDecoder = new EmbeddedChannel(new ProtobufVarint32FrameDecoder());
+    frameDecoder.writeInbound(buf);
+    final ByteBuf frame = (ByteBuf) frameDecoder.readInbound();
+    try {
+      final ReplicationWireMessage message = ReplicationWireMessage.getSchema().newMessage();
+      ReplicationWireMessage.getSchema().mergeFrom(new ByteBufferInput(frame.nioBuffer(), false), message);
+      return message;
+    } finally {
+      frame.release();
+    }
+  }
+
+  /**
+   * Index, term, and data of each entry; ByteBuffers compare equal if their remaining content is the same.
+   */
+  private static List<List<Object>> summaryOf(List<LogEntry> entries) {
+    return entries.stream()
+        .map((entry) -> Arrays.<Object>asList(entry.getIndex(), entry.getTerm(), entry.getDataList()))
+        .collect(Collectors.toList());
+  }
+}
@@ -48,7 +48,7 @@ public class RpcMessageTest {
 
     AppendEntries appendEntries = new AppendEntries(111, 1, 200, 201,
         Collections.emptyList(),
-        111);
+        111, false);
     RpcMessage msg = new RpcMessage(0, 0, "quorumId", appendEntries);
     ReplicationWireMessage wireMessage = msg.getWireMessage(1, 1, 1, false);
     assertNotEquals(null, wireMessage.getAppendEntries());